@@ -0,0 +1,105 @@
+package com.sampsonjoliver.rotation.bench;
+
+import com.sampsonjoliver.rotation.Quaternion;
+import com.sampsonjoliver.rotation.RotationMatrix;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the end-to-end routes from a pair of rotation vectors to an angle change, as
+ * previously measured by Driver.EfficiencyBenchmark:
+ * <ul>
+ *     <li>tb_qc: Tait-Bryan angles through the Quaternion class</li>
+ *     <li>tb_qf: Tait-Bryan angles through the Quaternion float API</li>
+ *     <li>tb_m: Tait-Bryan angles through rotation matrices</li>
+ *     <li>f_qc: angular distance through the Quaternion class</li>
+ *     <li>f_qf: angular distance through the Quaternion float API</li>
+ * </ul>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AngleChangeBenchmark
+{
+    @Param({"1000", "100000"})
+    public int size;
+
+    @Param({"3", "4"})
+    public int width;
+
+    private float[][] vecs;
+    private float[] r1;
+    private float[] r2;
+    private float[] tb_delta;
+
+    @Setup
+    public void setup()
+    {
+        vecs = VectorData.rotationVectors(size, width);
+        r1 = new float[16];
+        r2 = new float[16];
+        tb_delta = new float[3];
+    }
+
+    @Benchmark
+    public void tb_qc(Blackhole bh)
+    {
+        for (int i = 1; i < vecs.length; ++i)
+        {
+            Quaternion q1 = new Quaternion(vecs[i-1]);
+            Quaternion q2 = new Quaternion(vecs[i]);
+            bh.consume(q1.Difference(q2).toTaitBryan());
+        }
+    }
+
+    @Benchmark
+    public void tb_qf(Blackhole bh)
+    {
+        for (int i = 1; i < vecs.length; ++i)
+        {
+            Quaternion.getTaitBryanAngleChange(tb_delta, vecs[i-1], vecs[i]);
+            bh.consume(tb_delta[0]);
+            bh.consume(tb_delta[1]);
+            bh.consume(tb_delta[2]);
+        }
+    }
+
+    @Benchmark
+    public void tb_m(Blackhole bh)
+    {
+        for (int i = 1; i < vecs.length; ++i)
+        {
+            RotationMatrix.getRotationMatrixFromVector(r1, vecs[i-1]);
+            RotationMatrix.getRotationMatrixFromVector(r2, vecs[i]);
+            RotationMatrix.getAngleChange(tb_delta, r1, r2);
+            bh.consume(tb_delta[0]);
+            bh.consume(tb_delta[1]);
+            bh.consume(tb_delta[2]);
+        }
+    }
+
+    @Benchmark
+    public void f_qc(Blackhole bh)
+    {
+        for (int i = 1; i < vecs.length; ++i)
+        {
+            Quaternion q1 = new Quaternion(vecs[i-1]);
+            Quaternion q2 = new Quaternion(vecs[i]);
+            bh.consume(q1.Distance(q2));
+        }
+    }
+
+    @Benchmark
+    public void f_qf(Blackhole bh)
+    {
+        for (int i = 1; i < vecs.length; ++i)
+        {
+            bh.consume(Quaternion.getDistanceChange(vecs[i-1], vecs[i]));
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.sampsonjoliver.rotation.bench;
+
+import com.sampsonjoliver.rotation.AngleChangePipeline;
+import com.sampsonjoliver.rotation.WaitStrategy;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the latency from handing a rotation vector to AngleChangePipeline until its angle
+ * change can be read from the output ring. Sample-time mode reports the p50, p99 and p99.9
+ * percentiles of each round trip.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AngleChangePipelineBenchmark
+{
+    @Param({"BUSY_SPIN", "YIELD", "PARK"})
+    public WaitStrategy waitStrategy;
+
+    @Param({"3", "4"})
+    public int width;
+
+    private AngleChangePipeline pipeline;
+    private float[][] vecs;
+    private float[] res;
+    private int next;
+
+    @Setup
+    public void setup()
+    {
+        pipeline = new AngleChangePipeline(1024, width, waitStrategy);
+        vecs = VectorData.rotationVectors(4096, width);
+        res = new float[AngleChangePipeline.RESULT_WIDTH];
+
+        // The first sample only primes the tracker and produces no result
+        pipeline.offer(System.nanoTime(), vecs[0]);
+        next = 1;
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        pipeline.close();
+    }
+
+    @Benchmark
+    public long roundTrip()
+    {
+        float[] rv = vecs[next];
+        next = (next + 1) & (vecs.length - 1);
+
+        long stamp = System.nanoTime();
+        while (!pipeline.offer(stamp, rv))
+        {
+            Thread.onSpinWait();
+        }
+
+        return pipeline.take(res) - stamp;
+    }
+}
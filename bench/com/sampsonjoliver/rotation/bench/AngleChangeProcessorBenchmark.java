@@ -0,0 +1,113 @@
+package com.sampsonjoliver.rotation.bench;
+
+import com.sampsonjoliver.rotation.AngleChangeBatch;
+import com.sampsonjoliver.rotation.AngleChangeProcessor;
+import com.sampsonjoliver.rotation.Quaternion;
+import com.sampsonjoliver.rotation.QuaternionBuffer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares mapping every sample of a stream to its angle change with the static Quaternion
+ * methods, as a per-element map operator would, against passing the stream's input batches
+ * through an AngleChangeProcessor and reading its pooled output batches.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AngleChangeProcessorBenchmark
+{
+    private static final int INPUT_BATCH = 100;
+
+    @Param({"100000"})
+    public int size;
+
+    @Param({"64", "1024"})
+    public int batchSize;
+
+    private float[][] vecs;
+    private QuaternionBuffer[] inputs;
+    private AngleChangeProcessor processor;
+    private Blackhole blackhole;
+
+    @Setup
+    public void setup(final Blackhole bh)
+    {
+        vecs = VectorData.rotationVectors(size, 4);
+        inputs = new QuaternionBuffer[size / INPUT_BATCH];
+        for (int b = 0; b < inputs.length; ++b)
+        {
+            inputs[b] = new QuaternionBuffer(INPUT_BATCH);
+            for (int i = 0; i < INPUT_BATCH; ++i)
+                inputs[b].addVector(vecs[b * INPUT_BATCH + i]);
+        }
+
+        blackhole = bh;
+        processor = new AngleChangeProcessor(batchSize);
+        processor.onSubscribe(new Flow.Subscription()
+        {
+            @Override
+            public void request(long n)
+            {
+            }
+
+            @Override
+            public void cancel()
+            {
+            }
+        });
+        processor.subscribe(new Flow.Subscriber<AngleChangeBatch>()
+        {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription)
+            {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(AngleChangeBatch batch)
+            {
+                blackhole.consume(batch.getPhi());
+                batch.release();
+            }
+
+            @Override
+            public void onError(Throwable throwable)
+            {
+            }
+
+            @Override
+            public void onComplete()
+            {
+            }
+        });
+    }
+
+    @Benchmark
+    public void mapPerElement(Blackhole bh)
+    {
+        float[] prev = vecs[0];
+        for (int i = 1; i < size; ++i)
+        {
+            // The static methods modify their inputs, so a map operator must copy them
+            float[] res = new float[4];
+            Quaternion.getTaitBryanAngleChange(res, prev.clone(), vecs[i].clone());
+            res[3] = Quaternion.getDistanceChange(prev, vecs[i]);
+            bh.consume(res);
+            prev = vecs[i];
+        }
+    }
+
+    @Benchmark
+    public void processor()
+    {
+        for (QuaternionBuffer input : inputs)
+            processor.onNext(input);
+    }
+}
@@ -0,0 +1,78 @@
+package com.sampsonjoliver.rotation.bench;
+
+import com.sampsonjoliver.rotation.AngleMath;
+import com.sampsonjoliver.rotation.Quaternion;
+import com.sampsonjoliver.rotation.RotationMatrix;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the EXACT and FAST AngleMath modes on the angle change paths.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AngleMathBenchmark
+{
+    @Param({"100000"})
+    public int size;
+
+    @Param({"3", "4"})
+    public int width;
+
+    @Param({"EXACT", "FAST"})
+    public AngleMath angleMath;
+
+    private float[][] vecs;
+    private float[][] matrices;
+    private float[] res;
+
+    @Setup
+    public void setup()
+    {
+        vecs = VectorData.rotationVectors(size, width);
+        matrices = new float[size][9];
+        for (int i = 0; i < size; ++i)
+        {
+            RotationMatrix.getRotationMatrixFromVector(matrices[i], vecs[i]);
+        }
+        res = new float[3];
+    }
+
+    @Benchmark
+    public void distanceChange(Blackhole bh)
+    {
+        for (int i = 1; i < vecs.length; ++i)
+            bh.consume(Quaternion.getDistanceChange(vecs[i-1], vecs[i], angleMath));
+    }
+
+    @Benchmark
+    public void taitBryanAngleChange(Blackhole bh)
+    {
+        // 3-wide inputs negate v1 in place, which does not change the cost of the operation
+        for (int i = 1; i < vecs.length; ++i)
+        {
+            Quaternion.getTaitBryanAngleChange(res, vecs[i-1], vecs[i], angleMath);
+            bh.consume(res[0]);
+            bh.consume(res[1]);
+            bh.consume(res[2]);
+        }
+    }
+
+    @Benchmark
+    public void matrixAngleChange(Blackhole bh)
+    {
+        for (int i = 1; i < matrices.length; ++i)
+        {
+            RotationMatrix.getAngleChange(res, matrices[i], matrices[i-1], angleMath);
+            bh.consume(res[0]);
+            bh.consume(res[1]);
+            bh.consume(res[2]);
+        }
+    }
+}
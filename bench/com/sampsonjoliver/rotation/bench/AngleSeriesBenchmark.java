@@ -0,0 +1,137 @@
+package com.sampsonjoliver.rotation.bench;
+
+import com.sampsonjoliver.rotation.AngleSeries;
+import com.sampsonjoliver.rotation.AngleSeriesReader;
+import com.sampsonjoliver.rotation.AngleSeriesWriter;
+import com.sampsonjoliver.rotation.OrientationTracker;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares writing a series of angle changes as CSV against the columnar AngleSeriesWriter,
+ * uncompressed and compressed, and reading a single projected column back.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AngleSeriesBenchmark
+{
+    @Param({"100000"})
+    public int size;
+
+    private long[] timestamps;
+    private float[] phi;
+    private float[] theta;
+    private float[] psi;
+    private float[] distance;
+    private Path csv;
+    private Path plain;
+    private Path compressed;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        float[][] vecs = VectorData.restingVectors(size + 1, 4, 0.002, 0.02);
+        OrientationTracker tracker = new OrientationTracker();
+        float[] res = new float[3];
+        timestamps = new long[size];
+        phi = new float[size];
+        theta = new float[size];
+        psi = new float[size];
+        distance = new float[size];
+
+        tracker.update(vecs[0]);
+        for (int i = 0; i < size; ++i)
+        {
+            tracker.update(vecs[i + 1]);
+            tracker.getTaitBryanAngleChange(res);
+            timestamps[i] = 1_000_000_000L + 10_000_000L * i;
+            phi[i] = res[0];
+            theta[i] = res[1];
+            psi[i] = res[2];
+            distance[i] = tracker.getDistanceChange();
+        }
+
+        csv = Files.createTempFile("angles", ".csv");
+        plain = Files.createTempFile("angles", ".ang");
+        compressed = Files.createTempFile("angles", ".ang");
+        writePlain();
+        writeCompressed();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException
+    {
+        Files.deleteIfExists(csv);
+        Files.deleteIfExists(plain);
+        Files.deleteIfExists(compressed);
+    }
+
+    @Benchmark
+    public long writeCsv() throws IOException
+    {
+        try (BufferedWriter writer = Files.newBufferedWriter(csv, StandardCharsets.US_ASCII))
+        {
+            writer.write("timestamp,phi,theta,psi,distance\n");
+            for (int i = 0; i < size; ++i)
+            {
+                writer.write(timestamps[i] + "," + phi[i] + "," + theta[i] + "," + psi[i] + "," + distance[i] + "\n");
+            }
+        }
+        return Files.size(csv);
+    }
+
+    @Benchmark
+    public long writePlain() throws IOException
+    {
+        try (AngleSeriesWriter writer = new AngleSeriesWriter(plain))
+        {
+            writer.write(timestamps, phi, theta, psi, distance, 0, size);
+        }
+        return Files.size(plain);
+    }
+
+    @Benchmark
+    public long writeCompressed() throws IOException
+    {
+        try (AngleSeriesWriter writer = new AngleSeriesWriter(compressed))
+        {
+            writer.setEncoding(AngleSeries.Column.TIMESTAMP, AngleSeries.Encoding.DELTA_VARINT);
+            writer.setEncoding(AngleSeries.Column.PHI, AngleSeries.Encoding.XOR);
+            writer.setEncoding(AngleSeries.Column.THETA, AngleSeries.Encoding.XOR);
+            writer.setEncoding(AngleSeries.Column.PSI, AngleSeries.Encoding.XOR);
+            writer.setEncoding(AngleSeries.Column.DISTANCE, AngleSeries.Encoding.XOR);
+            writer.write(timestamps, phi, theta, psi, distance, 0, size);
+        }
+        return Files.size(compressed);
+    }
+
+    @Benchmark
+    public float[] readPlainColumn() throws IOException
+    {
+        try (AngleSeriesReader reader = new AngleSeriesReader(plain))
+        {
+            reader.readColumn(AngleSeries.Column.DISTANCE, distance);
+        }
+        return distance;
+    }
+
+    @Benchmark
+    public float[] readCompressedColumn() throws IOException
+    {
+        try (AngleSeriesReader reader = new AngleSeriesReader(compressed))
+        {
+            reader.readColumn(AngleSeries.Column.DISTANCE, distance);
+        }
+        return distance;
+    }
+}
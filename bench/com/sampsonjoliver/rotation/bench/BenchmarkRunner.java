@@ -0,0 +1,43 @@
+package com.sampsonjoliver.rotation.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the benchmark jar. Accepts the usual JMH command line, and unless told
+ * otherwise runs headless with the GC/allocation profiler attached and writes JSON results to
+ * jmh-result.json so that runs can be compared across releases.
+ */
+public class BenchmarkRunner
+{
+    public static void main(String[] args) throws Exception
+    {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+
+        if (cmd.shouldHelp())
+        {
+            cmd.showHelp();
+            return;
+        }
+        if (cmd.shouldList())
+        {
+            new Runner(cmd).list();
+            return;
+        }
+
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(cmd);
+
+        if (!cmd.getResultFormat().hasValue())
+            options.resultFormat(ResultFormatType.JSON);
+        if (!cmd.getResult().hasValue())
+            options.result("jmh-result.json");
+        if (cmd.getProfilers().isEmpty())
+            options.addProfiler(GCProfiler.class);
+
+        new Runner(options.build()).run();
+    }
+}
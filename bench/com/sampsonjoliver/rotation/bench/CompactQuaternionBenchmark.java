@@ -0,0 +1,74 @@
+package com.sampsonjoliver.rotation.bench;
+
+import com.sampsonjoliver.rotation.CompactQuaternion;
+import com.sampsonjoliver.rotation.QuaternionBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures bulk encoding and decoding of packed quaternions to and from a direct ByteBuffer, per
+ * quaternion, against copying the raw floats.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompactQuaternionBenchmark
+{
+    private static final int SIZE = 100_000;
+
+    @Param({"SMALLEST_THREE_32", "SMALLEST_THREE_48", "SMALLEST_THREE_64"})
+    public CompactQuaternion format;
+
+    private QuaternionBuffer quats;
+    private QuaternionBuffer decoded;
+    private ByteBuffer encoded;
+    private ByteBuffer raw;
+
+    @Setup
+    public void setup()
+    {
+        quats = QuaternionBuffer.fromVectors(VectorData.rotationVectors(SIZE, 4));
+        decoded = new QuaternionBuffer(SIZE);
+        encoded = ByteBuffer.allocateDirect(SIZE * format.bytes()).order(ByteOrder.LITTLE_ENDIAN);
+        raw = ByteBuffer.allocateDirect(SIZE * 16).order(ByteOrder.LITTLE_ENDIAN);
+
+        format.encode(encoded, quats, 0, SIZE);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public ByteBuffer encode()
+    {
+        encoded.clear();
+        format.encode(encoded, quats, 0, SIZE);
+        return encoded;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public QuaternionBuffer decode()
+    {
+        encoded.clear();
+        format.decode(decoded, encoded, SIZE);
+        return decoded;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public ByteBuffer rawFloats()
+    {
+        raw.clear();
+        float[] w = quats.getW(), x = quats.getX(), y = quats.getY(), z = quats.getZ();
+        for (int i = 0; i < SIZE; ++i)
+        {
+            raw.putFloat(w[i]).putFloat(x[i]).putFloat(y[i]).putFloat(z[i]);
+        }
+        return raw;
+    }
+}
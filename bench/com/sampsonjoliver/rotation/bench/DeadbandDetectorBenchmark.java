@@ -0,0 +1,80 @@
+package com.sampsonjoliver.rotation.bench;
+
+import com.sampsonjoliver.rotation.DeadbandDetector;
+import com.sampsonjoliver.rotation.OrientationTracker;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares computing the angle change of every sample with OrientationTracker against
+ * computing it only for the samples that DeadbandDetector reports as crossing the deadband, on
+ * a stream that is at rest nine tenths of the time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DeadbandDetectorBenchmark
+{
+    private static final float THRESHOLD = 0.01f;
+
+    @Param({"100000"})
+    public int size;
+
+    @Param({"3", "4"})
+    public int width;
+
+    private float[][] vecs;
+    private OrientationTracker tracker;
+    private DeadbandDetector detector;
+    private DeadbandDetector hysteresis;
+    private float[] res;
+
+    @Setup
+    public void setup()
+    {
+        vecs = VectorData.restingVectors(size, width, 0.002, 0.02);
+        tracker = new OrientationTracker();
+        detector = new DeadbandDetector(THRESHOLD);
+        hysteresis = new DeadbandDetector(THRESHOLD, THRESHOLD / 2);
+        res = new float[3];
+    }
+
+    @Benchmark
+    public void trackerEveryFrame(Blackhole bh)
+    {
+        tracker.reset();
+        for (float[] v : vecs)
+        {
+            tracker.update(v);
+            if (tracker.getTaitBryanAngleChange(res) && tracker.getDistanceChange() > THRESHOLD)
+                bh.consume(res[0]);
+        }
+    }
+
+    @Benchmark
+    public void detector(Blackhole bh)
+    {
+        detector.reset();
+        for (float[] v : vecs)
+        {
+            if (detector.update(v) && detector.getTaitBryanAngleChange(res))
+                bh.consume(res[0]);
+        }
+    }
+
+    @Benchmark
+    public void detectorHysteresis(Blackhole bh)
+    {
+        hysteresis.reset();
+        for (float[] v : vecs)
+        {
+            if (hysteresis.update(v) && hysteresis.getTaitBryanAngleChange(res))
+                bh.consume(res[0]);
+        }
+    }
+}
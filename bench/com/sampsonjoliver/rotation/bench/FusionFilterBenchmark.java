@@ -0,0 +1,79 @@
+package com.sampsonjoliver.rotation.bench;
+
+import com.sampsonjoliver.rotation.FusionFilter;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures one 200 Hz tick of fusing gyroscope, accelerometer and magnetometer samples for
+ * thousands of devices, with one FusionFilter per device against a single FusionFilter holding
+ * every device in packed arrays.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FusionFilterBenchmark
+{
+    private static final float DT = 1f / 200;
+
+    @Param({"4096"})
+    public int devices;
+
+    @Param({"MADGWICK", "MAHONY"})
+    public FusionFilter.Algorithm algorithm;
+
+    private float[] gyro;
+    private float[] accel;
+    private float[] mag;
+    private FusionFilter[] filters;
+    private FusionFilter batch;
+
+    @Setup
+    public void setup()
+    {
+        Random random = new Random(42);
+        gyro = new float[3 * devices];
+        accel = new float[3 * devices];
+        mag = new float[3 * devices];
+        for (int i = 0; i < 3 * devices; i += 3)
+        {
+            gyro[i] = (float)(0.1 * random.nextGaussian());
+            gyro[i + 1] = (float)(0.1 * random.nextGaussian());
+            gyro[i + 2] = (float)(0.1 * random.nextGaussian());
+            accel[i] = (float)(0.5 * random.nextGaussian());
+            accel[i + 1] = (float)(0.5 * random.nextGaussian());
+            accel[i + 2] = (float)(9.81 + 0.5 * random.nextGaussian());
+            mag[i] = (float)(25 + random.nextGaussian());
+            mag[i + 1] = (float)random.nextGaussian();
+            mag[i + 2] = (float)(-43 + random.nextGaussian());
+        }
+
+        filters = new FusionFilter[devices];
+        for (int i = 0; i < devices; ++i)
+            filters[i] = new FusionFilter(1, algorithm);
+        batch = new FusionFilter(devices, algorithm);
+    }
+
+    @Benchmark
+    public FusionFilter[] perDevice()
+    {
+        for (int i = 0, j = 0; i < devices; ++i, j += 3)
+        {
+            filters[i].update(0, gyro[j], gyro[j + 1], gyro[j + 2], accel[j], accel[j + 1], accel[j + 2],
+                    mag[j], mag[j + 1], mag[j + 2], DT);
+        }
+        return filters;
+    }
+
+    @Benchmark
+    public FusionFilter updateAll()
+    {
+        batch.updateAll(gyro, accel, mag, DT);
+        return batch;
+    }
+}
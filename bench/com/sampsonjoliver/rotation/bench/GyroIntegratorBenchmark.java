@@ -0,0 +1,86 @@
+package com.sampsonjoliver.rotation.bench;
+
+import com.sampsonjoliver.rotation.GyroIntegrator;
+import com.sampsonjoliver.rotation.Quaternion;
+import com.sampsonjoliver.rotation.QuaternionBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares integrating a packed array of 4 kHz gyroscope samples by composing Quaternion
+ * objects, as callers did before GyroIntegrator, against GyroIntegrator's batch mode with each
+ * integration method.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GyroIntegratorBenchmark
+{
+    private static final float DT = 1f / 4000;
+
+    @Param({"100000"})
+    public int size;
+
+    @Param({"FIRST_ORDER", "EXPONENTIAL", "RK4"})
+    public GyroIntegrator.Method method;
+
+    private float[] rates;
+    private GyroIntegrator integrator;
+    private QuaternionBuffer orientations;
+
+    @Setup
+    public void setup()
+    {
+        Random random = new Random(42);
+        rates = new float[3 * size];
+        for (int i = 0; i < rates.length; ++i)
+            rates[i] = (float)(2 * random.nextGaussian());
+
+        integrator = new GyroIntegrator(method);
+        orientations = new QuaternionBuffer(size);
+    }
+
+    @Benchmark
+    public Quaternion objects()
+    {
+        Quaternion q = new Quaternion(1, 0, 0, 0);
+        float h = 0.5f * DT;
+        for (int i = 0; i < rates.length; i += 3)
+        {
+            float gx = rates[i], gy = rates[i + 1], gz = rates[i + 2];
+            if (method == GyroIntegrator.Method.FIRST_ORDER)
+            {
+                q = q.Add(q.HamiltonProduct(new Quaternion(0, gx, gy, gz)).Multiply(h)).Versor();
+            }
+            else
+            {
+                // Axis-angle rotation for the step
+                float norm = (float)Math.sqrt(gx * gx + gy * gy + gz * gz);
+                float s = norm > 0 ? (float)Math.sin(norm * h) / norm : 0;
+                q = q.HamiltonProduct(new Quaternion((float)Math.cos(norm * h), gx * s, gy * s, gz * s)).Versor();
+            }
+        }
+        return q;
+    }
+
+    @Benchmark
+    public GyroIntegrator integrate()
+    {
+        integrator.reset();
+        integrator.integrate(rates, 0, size, DT);
+        return integrator;
+    }
+
+    @Benchmark
+    public QuaternionBuffer integrateInto()
+    {
+        integrator.reset();
+        integrator.integrate(rates, 0, size, DT, orientations);
+        return orientations;
+    }
+}
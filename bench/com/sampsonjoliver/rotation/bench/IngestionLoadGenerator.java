@@ -0,0 +1,159 @@
+package com.sampsonjoliver.rotation.bench;
+
+import com.sampsonjoliver.rotation.IngestionServer;
+import com.sampsonjoliver.rotation.LatencyHistogram;
+import com.sampsonjoliver.rotation.SensorPacket;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives an in-process IngestionServer over loopback and reports connection and packet rates
+ * and the end-to-end latency from sending a packet to its angle change reaching the sink.
+ * <p>Every session connects first (one TCP connection per device, or one device id on a shared
+ * UDP socket), so that all of them are open at once; then sender threads send one packet per
+ * session per round, stamped with System.nanoTime. Usage:
+ * <pre>
+ *   java -cp target/benchmarks.jar com.sampsonjoliver.rotation.bench.IngestionLoadGenerator \
+ *       [sessions=2000] [packets=100] [tcp|udp]
+ * </pre>
+ */
+public class IngestionLoadGenerator
+{
+    // How long to wait for further results before giving up on lost datagrams
+    private static final long IDLE_TIMEOUT = TimeUnit.SECONDS.toNanos(1);
+
+    public static void main(String[] args) throws Exception
+    {
+        final int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        final int packets = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        final boolean udp = args.length > 2 && args[2].equalsIgnoreCase("udp");
+
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicLong results = new AtomicLong();
+        IngestionServer server = new IngestionServer(new IngestionServer.Sink()
+        {
+            @Override
+            public void accept(int deviceId, long timestamp, float[] angleChange, float distance)
+            {
+                latency.record(System.nanoTime() - timestamp);
+                results.incrementAndGet();
+            }
+        });
+
+        InetSocketAddress local = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        final InetSocketAddress address = udp ? server.bindUdp(local) : server.bindTcp(local);
+        final float[][] vecs = VectorData.rotationVectors(packets, 3);
+
+        System.out.println("sessions=" + sessions + " packets=" + packets + " transport=" + (udp ? "udp" : "tcp")
+                + " virtualThreads=" + IngestionServer.isVirtual());
+
+        long start = System.nanoTime();
+        final SocketChannel[] channels = new SocketChannel[udp ? 0 : sessions];
+        for (int s = 0; s < channels.length; ++s)
+        {
+            channels[s] = SocketChannel.open(address);
+            channels[s].setOption(StandardSocketOptions.TCP_NODELAY, true);
+        }
+        long connected = System.nanoTime();
+
+        int senders = Math.min(sessions, Runtime.getRuntime().availableProcessors());
+        Thread[] threads = new Thread[senders];
+        for (int t = 0; t < senders; ++t)
+        {
+            final int from = (int)((long)sessions * t / senders);
+            final int to = (int)((long)sessions * (t + 1) / senders);
+            threads[t] = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        send(udp ? DatagramChannel.open().connect(address) : null, channels, from, to, vecs);
+                    }
+                    catch (IOException e)
+                    {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }, "sender-" + t);
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        long sent = System.nanoTime();
+
+        long expected = (long)sessions * (packets - 1);
+        long seen = -1;
+        long done = sent;
+        while (results.get() < expected && System.nanoTime() - done < IDLE_TIMEOUT)
+        {
+            if (results.get() != seen)
+            {
+                seen = results.get();
+                done = System.nanoTime();
+            }
+            Thread.sleep(1);
+        }
+        if (results.get() == expected)
+            done = System.nanoTime();
+
+        for (SocketChannel channel : channels)
+            channel.close();
+        server.close();
+
+        System.out.printf("connect:  %.0f sessions/s%n", sessions / seconds(connected - start));
+        System.out.printf("send:     %.0f packets/s%n", (double)sessions * packets / seconds(sent - connected));
+        System.out.printf("overall:  %.0f sessions/s, %.0f packets/s%n",
+                sessions / seconds(done - start), server.getPacketCount() / seconds(done - connected));
+        System.out.println("results:  " + results.get() + " of " + expected + ", malformed " + server.getMalformedCount());
+        System.out.println("latency:  " + latency);
+    }
+
+    /**
+     * Sends one packet per session in [from, to) per round, over the session's TCP connection
+     * or, when datagram is not null, as a datagram with the session index as device id.
+     */
+    private static void send(DatagramChannel datagram, SocketChannel[] channels, int from, int to, float[][] vecs)
+            throws IOException
+    {
+        ByteBuffer buf = ByteBuffer.allocate(SensorPacket.MAX_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        for (float[] rv : vecs)
+        {
+            for (int s = from; s < to; ++s)
+            {
+                buf.clear();
+                SensorPacket.put(buf, s, System.nanoTime(), rv);
+                buf.flip();
+
+                if (datagram != null)
+                {
+                    datagram.write(buf);
+                }
+                else
+                {
+                    while (buf.hasRemaining())
+                        channels[s].write(buf);
+                }
+            }
+        }
+
+        if (datagram != null)
+            datagram.close();
+    }
+
+    private static double seconds(long nanos)
+    {
+        return nanos / 1e9;
+    }
+}
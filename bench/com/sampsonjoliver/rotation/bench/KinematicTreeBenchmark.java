@@ -0,0 +1,137 @@
+package com.sampsonjoliver.rotation.bench;
+
+import com.sampsonjoliver.rotation.KinematicTree;
+import com.sampsonjoliver.rotation.Quaternion;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures one frame of a body rig with a sensor on every segment, in which only a few of the
+ * sensors report a new orientation. Compares recomputing every joint angle with Quaternion
+ * operations against a full KinematicTree update and an incremental update that only recomputes
+ * and converts the joints affected by the new samples.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KinematicTreeBenchmark
+{
+    private static final int FRAMES = 1024;
+
+    @Param({"64"})
+    public int joints;
+
+    @Param({"2", "8"})
+    public int updates;
+
+    private int[] parent;
+    private Quaternion[] globals;
+    private int[][] frameJoints;
+    private float[][][] frameSamples;
+    private KinematicTree full;
+    private KinematicTree incremental;
+    private float[] phi;
+    private float[] theta;
+    private float[] psi;
+    private int frame;
+
+    @Setup
+    public void setup()
+    {
+        Random rand = new Random(42);
+        parent = new int[joints];
+        globals = new Quaternion[joints];
+        full = new KinematicTree(joints);
+        incremental = new KinematicTree(joints);
+
+        // A spine of five joints, with limbs branching from anywhere above
+        for (int i = 0; i < joints; ++i)
+        {
+            parent[i] = (i == 0) ? KinematicTree.ROOT : (i < 5) ? i - 1 : rand.nextInt(i);
+            full.addJoint(parent[i]);
+            incremental.addJoint(parent[i]);
+        }
+
+        float[][] vecs = VectorData.rotationVectors(joints + FRAMES * updates, 4);
+        for (int i = 0; i < joints; ++i)
+        {
+            globals[i] = new Quaternion(vecs[i][3], vecs[i][0], vecs[i][1], vecs[i][2]);
+            full.setGlobal(i, vecs[i]);
+            incremental.setGlobal(i, vecs[i]);
+        }
+        full.update();
+        incremental.update();
+
+        frameJoints = new int[FRAMES][updates];
+        frameSamples = new float[FRAMES][][];
+        for (int f = 0; f < FRAMES; ++f)
+        {
+            frameSamples[f] = new float[updates][];
+            for (int u = 0; u < updates; ++u)
+            {
+                frameJoints[f][u] = rand.nextInt(joints);
+                frameSamples[f][u] = vecs[joints + f * updates + u];
+            }
+        }
+
+        phi = new float[joints];
+        theta = new float[joints];
+        psi = new float[joints];
+    }
+
+    @Benchmark
+    public void quaternionChain(Blackhole bh)
+    {
+        int f = nextFrame();
+        for (int u = 0; u < updates; ++u)
+            globals[frameJoints[f][u]] = new Quaternion(frameSamples[f][u]);
+
+        for (int i = 0; i < joints; ++i)
+        {
+            Quaternion local = (parent[i] == KinematicTree.ROOT) ? globals[i]
+                    : globals[parent[i]].Conjugate().HamiltonProduct(globals[i]);
+            bh.consume(local.toTaitBryan());
+        }
+    }
+
+    @Benchmark
+    public float[] fullUpdate()
+    {
+        int f = nextFrame();
+        for (int u = 0; u < updates; ++u)
+            globals[frameJoints[f][u]] = new Quaternion(frameSamples[f][u]);
+
+        for (int i = 0; i < joints; ++i)
+        {
+            Quaternion q = globals[i];
+            full.setGlobal(i, q.W(), q.X(), q.Y(), q.Z());
+        }
+        full.update();
+        full.getTaitBryanAngles(phi, theta, psi, false);
+        return phi;
+    }
+
+    @Benchmark
+    public float[] incrementalUpdate()
+    {
+        int f = nextFrame();
+        for (int u = 0; u < updates; ++u)
+            incremental.setGlobal(frameJoints[f][u], frameSamples[f][u]);
+
+        incremental.update();
+        incremental.getTaitBryanAngles(phi, theta, psi, true);
+        return phi;
+    }
+
+    private int nextFrame()
+    {
+        frame = (frame + 1) & (FRAMES - 1);
+        return frame;
+    }
+}
@@ -0,0 +1,77 @@
+package com.sampsonjoliver.rotation.bench;
+
+import com.sampsonjoliver.rotation.MatrixOrder;
+import com.sampsonjoliver.rotation.QuaternionBuffer;
+import com.sampsonjoliver.rotation.RotationMatrix;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares filling a direct FloatBuffer with 4x4 matrices for a frame of objects through the
+ * bulk RotationMatrix.getRotationMatrices against a float[16] per object copied into the buffer.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MatrixBufferBenchmark
+{
+    @Param({"100000"})
+    public int size;
+
+    @Param({"ROW_MAJOR", "COLUMN_MAJOR"})
+    public MatrixOrder order;
+
+    private float[][] vecs;
+    private QuaternionBuffer quats;
+    private FloatBuffer dst;
+    private float[] R;
+
+    @Setup
+    public void setup()
+    {
+        vecs = VectorData.rotationVectors(size, 4);
+        quats = QuaternionBuffer.fromVectors(vecs);
+        dst = ByteBuffer.allocateDirect(size * 16 * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        R = new float[16];
+    }
+
+    @Benchmark
+    public FloatBuffer perObject()
+    {
+        dst.clear();
+        for (float[] v : vecs)
+        {
+            RotationMatrix.getRotationMatrixFromVector(R, v);
+            if (order == MatrixOrder.COLUMN_MAJOR)
+            {
+                float t;
+                t = R[1]; R[1] = R[4]; R[4] = t;
+                t = R[2]; R[2] = R[8]; R[8] = t;
+                t = R[6]; R[6] = R[9]; R[9] = t;
+            }
+            dst.put(R);
+        }
+        return dst;
+    }
+
+    @Benchmark
+    public FloatBuffer bulkVectors()
+    {
+        RotationMatrix.getRotationMatrices(dst, 0, 16, 16, order, vecs);
+        return dst;
+    }
+
+    @Benchmark
+    public FloatBuffer bulkQuaternions()
+    {
+        RotationMatrix.getRotationMatrices(dst, 0, 16, 16, order, quats, 0, size);
+        return dst;
+    }
+}
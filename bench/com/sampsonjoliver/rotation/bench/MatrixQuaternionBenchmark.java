@@ -0,0 +1,92 @@
+package com.sampsonjoliver.rotation.bench;
+
+import com.sampsonjoliver.rotation.AngleMath;
+import com.sampsonjoliver.rotation.QuaternionBuffer;
+import com.sampsonjoliver.rotation.RotationMatrix;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the angle change over a stream of rotation matrices through the matrix product of
+ * RotationMatrix.getAngleChange against converting each matrix once to a quaternion with
+ * Shepperd's method and taking the quaternion difference.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MatrixQuaternionBenchmark
+{
+    @Param({"100000"})
+    public int size;
+
+    @Param({"9", "16"})
+    public int matrixSize;
+
+    @Param({"EXACT", "FAST"})
+    public AngleMath angleMath;
+
+    private float[][] matrices;
+    private float[] packed;
+    private QuaternionBuffer quats;
+    private float[] res;
+
+    @Setup
+    public void setup()
+    {
+        float[][] vecs = VectorData.rotationVectors(size, 4);
+        matrices = new float[size][matrixSize];
+        packed = new float[size * matrixSize];
+        for (int i = 0; i < size; ++i)
+        {
+            RotationMatrix.getRotationMatrixFromVector(matrices[i], vecs[i]);
+            System.arraycopy(matrices[i], 0, packed, i * matrixSize, matrixSize);
+        }
+        quats = new QuaternionBuffer(size);
+        res = new float[3];
+    }
+
+    @Benchmark
+    public void matrixProduct(Blackhole bh)
+    {
+        for (int i = 1; i < matrices.length; ++i)
+        {
+            RotationMatrix.getAngleChange(res, matrices[i], matrices[i-1], angleMath);
+            bh.consume(res[0]);
+            bh.consume(res[1]);
+            bh.consume(res[2]);
+        }
+    }
+
+    @Benchmark
+    public void quaternionDifference(Blackhole bh)
+    {
+        float[] prevQ = new float[4];
+        float[] q = new float[4];
+        RotationMatrix.getQuaternionFromMatrix(prevQ, matrices[0]);
+
+        for (int i = 1; i < matrices.length; ++i)
+        {
+            RotationMatrix.getQuaternionFromMatrix(q, matrices[i]);
+            RotationMatrix.getQuaternionAngleChange(res, q, prevQ, angleMath);
+            bh.consume(res[0]);
+            bh.consume(res[1]);
+            bh.consume(res[2]);
+
+            float[] t = prevQ;
+            prevQ = q;
+            q = t;
+        }
+    }
+
+    @Benchmark
+    public QuaternionBuffer bulkConversion()
+    {
+        RotationMatrix.getQuaternionsFromMatrices(quats, packed, matrixSize, size);
+        return quats;
+    }
+}
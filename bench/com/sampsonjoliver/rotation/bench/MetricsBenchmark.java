@@ -0,0 +1,106 @@
+package com.sampsonjoliver.rotation.bench;
+
+import com.sampsonjoliver.rotation.Quaternion;
+import com.sampsonjoliver.rotation.QuaternionBuffer;
+import com.sampsonjoliver.rotation.QuaternionEngine;
+import com.sampsonjoliver.rotation.RotationMetrics;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of RotationMetrics. The plain benchmarks run with metrics disabled, the
+ * default, and should match the uninstrumented baselines, which repeat the library maths
+ * inline; the enabled benchmarks fork a JVM with metrics turned on.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetricsBenchmark
+{
+    private static final String ENABLE = "-D" + RotationMetrics.ENABLE_PROPERTY + "=true";
+
+    @Param({"10000"})
+    public int size;
+
+    private float[][] vecs;
+    private QuaternionBuffer quats;
+    private QuaternionEngine engine;
+    private float[] res;
+    private float[] phi;
+    private float[] theta;
+    private float[] psi;
+
+    @Setup
+    public void setup()
+    {
+        vecs = VectorData.rotationVectors(size, 4);
+        quats = new QuaternionBuffer(size);
+        for (float[] v : vecs)
+            quats.add(v[3], v[0], v[1], v[2]);
+        engine = QuaternionEngine.scalar();
+        res = new float[3];
+        phi = new float[size];
+        theta = new float[size];
+        psi = new float[size];
+    }
+
+    @Benchmark
+    public void distanceBaseline(Blackhole bh)
+    {
+        for (int i = 1; i < vecs.length; ++i)
+        {
+            float[] v1 = vecs[i-1], v2 = vecs[i];
+            bh.consume(2 * (float)Math.acos(v1[0] * v2[0] + v1[1] * v2[1] + v1[2] * v2[2] + v1[3] * v2[3]));
+        }
+    }
+
+    @Benchmark
+    public void distance(Blackhole bh)
+    {
+        for (int i = 1; i < vecs.length; ++i)
+            bh.consume(Quaternion.getDistanceChange(vecs[i-1], vecs[i]));
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = ENABLE)
+    public void distanceEnabled(Blackhole bh)
+    {
+        distance(bh);
+    }
+
+    @Benchmark
+    public void taitBryan(Blackhole bh)
+    {
+        for (int i = 1; i < vecs.length; ++i)
+        {
+            Quaternion.getTaitBryanAngleChange(res, vecs[i-1], vecs[i]);
+            bh.consume(res[0]);
+        }
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = ENABLE)
+    public void taitBryanEnabled(Blackhole bh)
+    {
+        taitBryan(bh);
+    }
+
+    @Benchmark
+    public void engine(Blackhole bh)
+    {
+        engine.getTaitBryanAngleChanges(phi, theta, psi, quats, 1, size);
+        bh.consume(phi);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = ENABLE)
+    public void engineEnabled(Blackhole bh)
+    {
+        engine(bh);
+    }
+}
@@ -0,0 +1,79 @@
+package com.sampsonjoliver.rotation.bench;
+
+import com.sampsonjoliver.rotation.MutableQuaternion;
+import com.sampsonjoliver.rotation.Quaternion;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the chained Quaternion class API, which relies on escape analysis to remove its
+ * temporaries, against the explicit allocation-free MutableQuaternion API.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MutableQuaternionBenchmark
+{
+    @Param({"1000", "100000"})
+    public int size;
+
+    private Quaternion[] quats;
+    private MutableQuaternion[] mutables;
+    private MutableQuaternion diff;
+    private float[] tb;
+
+    @Setup
+    public void setup()
+    {
+        quats = VectorData.quaternions(size);
+        mutables = new MutableQuaternion[size];
+        for (int i = 0; i < size; ++i)
+        {
+            mutables[i] = new MutableQuaternion(quats[i]);
+        }
+        diff = new MutableQuaternion();
+        tb = new float[3];
+    }
+
+    @Benchmark
+    public void chainedDifference(Blackhole bh)
+    {
+        for (int i = 1; i < quats.length; ++i)
+        {
+            Quaternion d = quats[i-1].Versor().Conjugate().HamiltonProduct(quats[i].Versor());
+            bh.consume(d.W());
+        }
+    }
+
+    @Benchmark
+    public void mutableDifference(Blackhole bh)
+    {
+        for (int i = 1; i < mutables.length; ++i)
+        {
+            mutables[i-1].DifferenceInto(mutables[i], diff);
+            bh.consume(diff.w);
+        }
+    }
+
+    @Benchmark
+    public void chainedTaitBryan(Blackhole bh)
+    {
+        for (int i = 1; i < quats.length; ++i)
+            bh.consume(quats[i-1].Difference(quats[i]).toTaitBryan());
+    }
+
+    @Benchmark
+    public void mutableTaitBryan(Blackhole bh)
+    {
+        for (int i = 1; i < mutables.length; ++i)
+        {
+            mutables[i-1].DifferenceInto(mutables[i], diff).toTaitBryanInto(tb);
+            bh.consume(tb);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.sampsonjoliver.rotation.bench;
+
+import com.sampsonjoliver.rotation.OffHeapRotationStore;
+import com.sampsonjoliver.rotation.Quaternion;
+import com.sampsonjoliver.rotation.QuaternionBuffer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares distance changes over quaternions held off-heap against the same quaternions held as
+ * Quaternion objects and in a QuaternionBuffer.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OffHeapRotationStoreBenchmark
+{
+    @Param({"1000000"})
+    public int size;
+
+    private Quaternion[] objects;
+    private QuaternionBuffer buffer;
+    private OffHeapRotationStore store;
+    private float[] res;
+
+    @Setup
+    public void setup()
+    {
+        float[][] vecs = VectorData.rotationVectors(size, 4);
+        objects = VectorData.quaternions(size);
+        buffer = QuaternionBuffer.fromVectors(vecs);
+        store = new OffHeapRotationStore(OffHeapRotationStore.Layout.QUATERNION, size);
+        store.addQuaternions(buffer);
+        res = new float[size];
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        store.close();
+    }
+
+    @Benchmark
+    public void objects(Blackhole bh)
+    {
+        for (int i = 1; i < objects.length; ++i)
+            bh.consume(objects[i-1].Distance(objects[i]));
+    }
+
+    @Benchmark
+    public float[] buffer()
+    {
+        buffer.getDistanceChanges(res);
+        return res;
+    }
+
+    @Benchmark
+    public float[] offHeap()
+    {
+        store.getDistanceChanges(res, 1, size - 1);
+        return res;
+    }
+}
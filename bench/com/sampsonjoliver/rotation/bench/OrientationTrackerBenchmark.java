@@ -0,0 +1,98 @@
+package com.sampsonjoliver.rotation.bench;
+
+import com.sampsonjoliver.rotation.OrientationTracker;
+import com.sampsonjoliver.rotation.Quaternion;
+import com.sampsonjoliver.rotation.RotationMatrix;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the incremental OrientationTracker, which converts each sample once, against the
+ * pairwise float API, which converts both samples of every pair.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OrientationTrackerBenchmark
+{
+    @Param({"1000", "100000"})
+    public int size;
+
+    @Param({"3", "4"})
+    public int width;
+
+    private float[][] vecs;
+    private OrientationTracker tracker;
+    private float[] r1;
+    private float[] r2;
+    private float[] res;
+
+    @Setup
+    public void setup()
+    {
+        vecs = VectorData.rotationVectors(size, width);
+        tracker = new OrientationTracker();
+        r1 = new float[9];
+        r2 = new float[9];
+        res = new float[3];
+    }
+
+    @Benchmark
+    public void pairwiseDistance(Blackhole bh)
+    {
+        for (int i = 1; i < vecs.length; ++i)
+            bh.consume(Quaternion.getDistanceChange(vecs[i-1], vecs[i]));
+    }
+
+    @Benchmark
+    public void trackerDistance(Blackhole bh)
+    {
+        tracker.reset();
+        for (float[] v : vecs)
+        {
+            tracker.update(v);
+            bh.consume(tracker.getDistanceChange());
+        }
+    }
+
+    @Benchmark
+    public void pairwiseMatrix(Blackhole bh)
+    {
+        for (int i = 1; i < vecs.length; ++i)
+        {
+            RotationMatrix.getRotationMatrixFromVector(r1, vecs[i-1]);
+            RotationMatrix.getRotationMatrixFromVector(r2, vecs[i]);
+            RotationMatrix.getAngleChange(res, r2, r1);
+            bh.consume(res[0]);
+        }
+    }
+
+    @Benchmark
+    public void trackerMatrix(Blackhole bh)
+    {
+        tracker.reset();
+        for (float[] v : vecs)
+        {
+            tracker.update(v);
+            if (tracker.getMatrixAngleChange(res))
+                bh.consume(res[0]);
+        }
+    }
+
+    @Benchmark
+    public void trackerTaitBryan(Blackhole bh)
+    {
+        tracker.reset();
+        for (float[] v : vecs)
+        {
+            tracker.update(v);
+            if (tracker.getTaitBryanAngleChange(res))
+                bh.consume(res[0]);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.sampsonjoliver.rotation.bench;
+
+import com.sampsonjoliver.rotation.ParallelAngleChange;
+import com.sampsonjoliver.rotation.QuaternionBuffer;
+import com.sampsonjoliver.rotation.QuaternionEngine;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how ParallelAngleChange throughput scales with the number of worker threads.
+ * Pass -p threads=1,2,...,N to cover every core of the machine under test.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class ParallelAngleChangeBenchmark
+{
+    @Param({"1000000"})
+    public int size;
+
+    @Param({"3", "4"})
+    public int width;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    @Param({"16384"})
+    public int threshold;
+
+    private ForkJoinPool pool;
+    private ParallelAngleChange parallel;
+    private ParallelAngleChange parallelVector;
+    private float[][] vecs;
+    private QuaternionBuffer quats;
+    private float[][] tb;
+    private float[] phi;
+    private float[] theta;
+    private float[] psi;
+    private float[] dist;
+
+    @Setup
+    public void setup()
+    {
+        pool = new ForkJoinPool(threads);
+        parallel = new ParallelAngleChange(pool, threshold);
+        parallelVector = new ParallelAngleChange(pool, threshold, QuaternionEngine.preferred());
+        vecs = VectorData.rotationVectors(size, width);
+        quats = QuaternionBuffer.fromVectors(vecs);
+        tb = new float[size][3];
+        phi = new float[size];
+        theta = new float[size];
+        psi = new float[size];
+        dist = new float[size];
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public void taitBryanVectors(Blackhole bh)
+    {
+        parallel.getTaitBryanAngleChanges(tb, vecs);
+        bh.consume(tb);
+    }
+
+    @Benchmark
+    public void distanceVectors(Blackhole bh)
+    {
+        parallel.getDistanceChanges(dist, vecs);
+        bh.consume(dist);
+    }
+
+    @Benchmark
+    public void taitBryanPacked(Blackhole bh)
+    {
+        parallel.getTaitBryanAngleChanges(phi, theta, psi, quats);
+        bh.consume(phi);
+    }
+
+    @Benchmark
+    public void distancePacked(Blackhole bh)
+    {
+        parallel.getDistanceChanges(dist, quats);
+        bh.consume(dist);
+    }
+
+    @Benchmark
+    public void taitBryanPackedVector(Blackhole bh)
+    {
+        parallelVector.getTaitBryanAngleChanges(phi, theta, psi, quats);
+        bh.consume(phi);
+    }
+}
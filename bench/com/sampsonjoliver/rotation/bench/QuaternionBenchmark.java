@@ -0,0 +1,177 @@
+package com.sampsonjoliver.rotation.bench;
+
+import com.sampsonjoliver.rotation.Quaternion;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks every instance operation of the Quaternion class. Each invocation applies the
+ * operation to size quaternions (or consecutive pairs of quaternions) and consumes every result.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QuaternionBenchmark
+{
+    @Param({"1000", "100000"})
+    public int size;
+
+    private Quaternion[] quats;
+    private float[][] wxyz;
+
+    @Setup
+    public void setup()
+    {
+        quats = VectorData.quaternions(size);
+        wxyz = new float[size][];
+        for (int i = 0; i < size; ++i)
+        {
+            wxyz[i] = new float[]{quats[i].W(), quats[i].X(), quats[i].Y(), quats[i].Z()};
+        }
+    }
+
+    @Benchmark
+    public void construct(Blackhole bh)
+    {
+        for (float[] q : wxyz)
+            bh.consume(new Quaternion(q[0], q[1], q[2], q[3]));
+    }
+
+    @Benchmark
+    public void getVector(Blackhole bh)
+    {
+        for (Quaternion q : quats)
+            bh.consume(q.getVector());
+    }
+
+    @Benchmark
+    public void multiply(Blackhole bh)
+    {
+        for (Quaternion q : quats)
+            bh.consume(q.Multiply(0.5f));
+    }
+
+    @Benchmark
+    public void divide(Blackhole bh)
+    {
+        for (Quaternion q : quats)
+            bh.consume(q.Divide(2.0f));
+    }
+
+    @Benchmark
+    public void hamiltonProduct(Blackhole bh)
+    {
+        for (int i = 1; i < quats.length; ++i)
+            bh.consume(quats[i-1].HamiltonProduct(quats[i]));
+    }
+
+    @Benchmark
+    public void add(Blackhole bh)
+    {
+        for (int i = 1; i < quats.length; ++i)
+            bh.consume(quats[i-1].Add(quats[i]));
+    }
+
+    @Benchmark
+    public void subtract(Blackhole bh)
+    {
+        for (int i = 1; i < quats.length; ++i)
+            bh.consume(quats[i-1].Subtract(quats[i]));
+    }
+
+    @Benchmark
+    public void lengthSquared(Blackhole bh)
+    {
+        for (Quaternion q : quats)
+            bh.consume(q.LengthSquared());
+    }
+
+    @Benchmark
+    public void norm(Blackhole bh)
+    {
+        for (Quaternion q : quats)
+            bh.consume(q.Norm());
+    }
+
+    @Benchmark
+    public void isUnit(Blackhole bh)
+    {
+        for (Quaternion q : quats)
+            bh.consume(q.isUnit());
+    }
+
+    @Benchmark
+    public void isZero(Blackhole bh)
+    {
+        for (Quaternion q : quats)
+            bh.consume(q.isZero());
+    }
+
+    @Benchmark
+    public void conjugate(Blackhole bh)
+    {
+        for (Quaternion q : quats)
+            bh.consume(q.Conjugate());
+    }
+
+    @Benchmark
+    public void inverse(Blackhole bh)
+    {
+        for (Quaternion q : quats)
+            bh.consume(q.Inverse());
+    }
+
+    @Benchmark
+    public void versor(Blackhole bh)
+    {
+        for (Quaternion q : quats)
+            bh.consume(q.Versor());
+    }
+
+    @Benchmark
+    public void difference(Blackhole bh)
+    {
+        for (int i = 1; i < quats.length; ++i)
+            bh.consume(quats[i-1].Difference(quats[i]));
+    }
+
+    @Benchmark
+    public void magnitude(Blackhole bh)
+    {
+        for (Quaternion q : quats)
+            bh.consume(q.Magnitude());
+    }
+
+    @Benchmark
+    public void dotProduct(Blackhole bh)
+    {
+        for (int i = 1; i < quats.length; ++i)
+            bh.consume(quats[i-1].DotProduct(quats[i]));
+    }
+
+    @Benchmark
+    public void distance(Blackhole bh)
+    {
+        for (int i = 1; i < quats.length; ++i)
+            bh.consume(quats[i-1].Distance(quats[i]));
+    }
+
+    @Benchmark
+    public void toTaitBryan(Blackhole bh)
+    {
+        for (Quaternion q : quats)
+            bh.consume(q.toTaitBryan());
+    }
+
+    @Benchmark
+    public void toStringConversion(Blackhole bh)
+    {
+        for (Quaternion q : quats)
+            bh.consume(q.toString());
+    }
+}
@@ -0,0 +1,92 @@
+package com.sampsonjoliver.rotation.bench;
+
+import com.sampsonjoliver.rotation.QuaternionBuffer;
+import com.sampsonjoliver.rotation.QuaternionEngine;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the scalar and vectorized QuaternionEngines over packed quaternions. The forked JVM
+ * adds the jdk.incubator.vector module so that the vectorized engine is available.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class QuaternionEngineBenchmark
+{
+    @Param({"1000", "100000"})
+    public int size;
+
+    @Param({"scalar", "vector"})
+    public String engine;
+
+    @Param({"9", "16"})
+    public int matrixSize;
+
+    private QuaternionEngine kernels;
+    private QuaternionBuffer quats;
+    private QuaternionBuffer dest;
+    private float[] phi;
+    private float[] theta;
+    private float[] psi;
+    private float[] dist;
+    private float[] R;
+
+    @Setup
+    public void setup()
+    {
+        kernels = engine.equals("vector") ? QuaternionEngine.preferred() : QuaternionEngine.scalar();
+        if (engine.equals("vector") && !kernels.isVectorized())
+            throw new IllegalStateException("the Vector API is not available");
+
+        quats = QuaternionBuffer.fromVectors(VectorData.rotationVectors(size, 4));
+        dest = new QuaternionBuffer(size);
+        phi = new float[size];
+        theta = new float[size];
+        psi = new float[size];
+        dist = new float[size];
+        R = new float[size * matrixSize];
+    }
+
+    @Benchmark
+    public void products(Blackhole bh)
+    {
+        kernels.getProducts(dest, quats, quats);
+        bh.consume(dest);
+    }
+
+    @Benchmark
+    public void differences(Blackhole bh)
+    {
+        kernels.getDifferences(dest, quats);
+        bh.consume(dest);
+    }
+
+    @Benchmark
+    public void distanceChanges(Blackhole bh)
+    {
+        kernels.getDistanceChanges(dist, quats, 1, size);
+        bh.consume(dist);
+    }
+
+    @Benchmark
+    public void taitBryanAngleChanges(Blackhole bh)
+    {
+        kernels.getTaitBryanAngleChanges(phi, theta, psi, quats, 1, size);
+        bh.consume(phi);
+        bh.consume(theta);
+        bh.consume(psi);
+    }
+
+    @Benchmark
+    public void rotationMatrices(Blackhole bh)
+    {
+        kernels.getRotationMatrices(R, matrixSize, quats);
+        bh.consume(R);
+    }
+}
@@ -0,0 +1,95 @@
+package com.sampsonjoliver.rotation.bench;
+
+import com.sampsonjoliver.rotation.AngleMath;
+import com.sampsonjoliver.rotation.Quaternion;
+import com.sampsonjoliver.rotation.QuaternionExpression;
+import com.sampsonjoliver.rotation.QuaternionKernel;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares chains of Quaternion calls over consecutive rotation vectors against the same chains
+ * compiled into QuaternionKernels:
+ * <ul>
+ *     <li>difference: q1.Difference(q0).toTaitBryan(), which compiles to straight-line code</li>
+ *     <li>chain: q1.Inverse().HamiltonProduct(q0).Renormalize().toTaitBryan(), which compiles
+ *     to a program</li>
+ * </ul>
+ * With EXACT trigonometry the terminal atan2 and asin dominate every variant; FAST exposes the
+ * cost of the quaternion steps.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QuaternionKernelBenchmark
+{
+    @Param({"10000"})
+    public int size;
+
+    @Param({"EXACT", "FAST"})
+    public AngleMath angleMath;
+
+    private float[][] vectors;
+    private QuaternionKernel difference;
+    private QuaternionKernel chain;
+    private float[] res;
+
+    @Setup
+    public void setup()
+    {
+        QuaternionExpression q0 = QuaternionExpression.input(0), q1 = QuaternionExpression.input(1);
+        vectors = VectorData.rotationVectors(size, 4);
+        difference = q1.difference(q0).compileTaitBryan(angleMath);
+        chain = q1.inverse().product(q0).renormalize().compileTaitBryan(angleMath);
+        res = new float[3];
+    }
+
+    @Benchmark
+    public void difference_objects(Blackhole bh)
+    {
+        for (int i = 1; i < size; ++i)
+        {
+            Quaternion q0 = new Quaternion(vectors[i - 1][3], vectors[i - 1][0], vectors[i - 1][1], vectors[i - 1][2]);
+            Quaternion q1 = new Quaternion(vectors[i][3], vectors[i][0], vectors[i][1], vectors[i][2]);
+            bh.consume(q1.Difference(q0).toTaitBryan(angleMath));
+        }
+    }
+
+    @Benchmark
+    public void difference_kernel(Blackhole bh)
+    {
+        for (int i = 1; i < size; ++i)
+        {
+            difference.set(0, vectors[i - 1][3], vectors[i - 1][0], vectors[i - 1][1], vectors[i - 1][2]);
+            difference.set(1, vectors[i][3], vectors[i][0], vectors[i][1], vectors[i][2]);
+            bh.consume(difference.evaluate(res));
+        }
+    }
+
+    @Benchmark
+    public void chain_objects(Blackhole bh)
+    {
+        for (int i = 1; i < size; ++i)
+        {
+            Quaternion q0 = new Quaternion(vectors[i - 1][3], vectors[i - 1][0], vectors[i - 1][1], vectors[i - 1][2]);
+            Quaternion q1 = new Quaternion(vectors[i][3], vectors[i][0], vectors[i][1], vectors[i][2]);
+            bh.consume(q1.Inverse().HamiltonProduct(q0).Renormalize().toTaitBryan(angleMath));
+        }
+    }
+
+    @Benchmark
+    public void chain_kernel(Blackhole bh)
+    {
+        for (int i = 1; i < size; ++i)
+        {
+            chain.set(0, vectors[i - 1][3], vectors[i - 1][0], vectors[i - 1][1], vectors[i - 1][2]);
+            chain.set(1, vectors[i][3], vectors[i][0], vectors[i][1], vectors[i][2]);
+            bh.consume(chain.evaluate(res));
+        }
+    }
+}
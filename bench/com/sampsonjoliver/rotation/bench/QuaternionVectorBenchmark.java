@@ -0,0 +1,115 @@
+package com.sampsonjoliver.rotation.bench;
+
+import com.sampsonjoliver.rotation.Quaternion;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the Quaternion operations that take rotation vectors, including the static float
+ * API, over 3- and 4-wide input vectors.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QuaternionVectorBenchmark
+{
+    @Param({"1000", "100000"})
+    public int size;
+
+    @Param({"3", "4"})
+    public int width;
+
+    private float[][] vecs;
+    private Quaternion target;
+    private float[] q;
+    private float[] res;
+
+    @Setup
+    public void setup()
+    {
+        vecs = VectorData.rotationVectors(size, width);
+        target = new Quaternion(0, 0, 0, 0);
+        q = new float[4];
+        res = new float[3];
+    }
+
+    @Benchmark
+    public void constructFromVector(Blackhole bh)
+    {
+        for (float[] v : vecs)
+            bh.consume(new Quaternion(v));
+    }
+
+    @Benchmark
+    public void setValues(Blackhole bh)
+    {
+        for (float[] v : vecs)
+        {
+            target.setValues(v);
+            bh.consume(target.W());
+        }
+    }
+
+    @Benchmark
+    public void setVector(Blackhole bh)
+    {
+        for (float[] v : vecs)
+        {
+            target.setVector(v);
+            bh.consume(target.X());
+        }
+    }
+
+    @Benchmark
+    public void setScalar(Blackhole bh)
+    {
+        for (float[] v : vecs)
+        {
+            target.setScalar(v[0]);
+            bh.consume(target.Z());
+        }
+    }
+
+    @Benchmark
+    public void getQuaternionFromVector(Blackhole bh)
+    {
+        for (float[] v : vecs)
+        {
+            Quaternion.getQuaternionFromVector(q, v);
+            bh.consume(q[0]);
+        }
+    }
+
+    @Benchmark
+    public void getMagnitude(Blackhole bh)
+    {
+        for (float[] v : vecs)
+            bh.consume(Quaternion.getMagnitude(v));
+    }
+
+    @Benchmark
+    public void getDistanceChange(Blackhole bh)
+    {
+        for (int i = 1; i < vecs.length; ++i)
+            bh.consume(Quaternion.getDistanceChange(vecs[i-1], vecs[i]));
+    }
+
+    @Benchmark
+    public void getTaitBryanAngleChange(Blackhole bh)
+    {
+        // 3-wide inputs negate v1 in place; every vector is negated once per invocation as the
+        // left operand, which does not change the cost of the operation.
+        for (int i = 1; i < vecs.length; ++i)
+        {
+            Quaternion.getTaitBryanAngleChange(res, vecs[i-1], vecs[i]);
+            bh.consume(res[0]);
+            bh.consume(res[1]);
+            bh.consume(res[2]);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.sampsonjoliver.rotation.bench;
+
+import com.sampsonjoliver.rotation.MutableQuaternion;
+import com.sampsonjoliver.rotation.Quaternion;
+import com.sampsonjoliver.rotation.RelativeOrientationJoin;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the per-sample throughput of joining a 100 Hz reference stream with a 60 Hz target stream, both
+ * with jittered timestamps, against taking the Difference of the latest sample of each stream.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RelativeOrientationJoinBenchmark
+{
+    private static final long REFERENCE_PERIOD = 10_000;
+    private static final long TARGET_PERIOD = 16_667;
+    private static final int SIZE = 100_000;
+
+    @Param({"SLERP", "NLERP"})
+    public RelativeOrientationJoin.Interpolation interpolation;
+
+    // Samples of both streams in arrival order
+    private boolean[] isTarget;
+    private long[] timestamps;
+    private float[][] vecs;
+
+    private RelativeOrientationJoin join;
+    private Blackhole sinkHole;
+    private float[] res;
+
+    @Setup
+    public void setup(final Blackhole bh)
+    {
+        Random random = new Random(VectorData.SEED);
+        vecs = VectorData.rotationVectors(SIZE, 4);
+        isTarget = new boolean[SIZE];
+        timestamps = new long[SIZE];
+
+        long reference = 0, target = 0;
+        for (int i = 0; i < SIZE; ++i)
+        {
+            if (reference <= target)
+            {
+                timestamps[i] = reference;
+                reference += REFERENCE_PERIOD + random.nextInt(2001) - 1000;
+            }
+            else
+            {
+                isTarget[i] = true;
+                timestamps[i] = target;
+                target += TARGET_PERIOD + random.nextInt(3001) - 1500;
+            }
+        }
+
+        sinkHole = bh;
+        res = new float[3];
+        join = new RelativeOrientationJoin(RelativeOrientationJoin.Driver.REFERENCE, interpolation,
+                4 * TARGET_PERIOD, RelativeOrientationJoin.DEFAULT_CAPACITY,
+                new RelativeOrientationJoin.Sink()
+                {
+                    @Override
+                    public void accept(long timestamp, MutableQuaternion relative)
+                    {
+                        sinkHole.consume(relative.toTaitBryanInto(res));
+                    }
+                });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public void join()
+    {
+        join.reset();
+        for (int i = 0; i < timestamps.length; ++i)
+        {
+            if (isTarget[i])
+                join.updateTarget(timestamps[i], vecs[i]);
+            else
+                join.updateReference(timestamps[i], vecs[i]);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public void latestDifference(Blackhole bh)
+    {
+        Quaternion reference = null, target = null;
+        for (int i = 0; i < timestamps.length; ++i)
+        {
+            if (isTarget[i])
+                target = new Quaternion(vecs[i]);
+            else
+                reference = new Quaternion(vecs[i]);
+
+            if (reference != null && target != null)
+                bh.consume(reference.Difference(target).toTaitBryan());
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.sampsonjoliver.rotation.bench;
+
+import com.sampsonjoliver.rotation.RotationMatrix;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the RotationMatrix operations over 3- and 4-wide input vectors and 9- and
+ * 16-element matrices.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RotationMatrixBenchmark
+{
+    @Param({"1000", "100000"})
+    public int size;
+
+    @Param({"3", "4"})
+    public int width;
+
+    @Param({"9", "16"})
+    public int matrixSize;
+
+    private float[][] vecs;
+    private float[][] matrices;
+    private float[] R;
+    private float[] angleChange;
+
+    @Setup
+    public void setup()
+    {
+        vecs = VectorData.rotationVectors(size, width);
+        matrices = new float[size][matrixSize];
+        for (int i = 0; i < size; ++i)
+        {
+            RotationMatrix.getRotationMatrixFromVector(matrices[i], vecs[i]);
+        }
+        R = new float[matrixSize];
+        angleChange = new float[3];
+    }
+
+    @Benchmark
+    public void getRotationMatrixFromVector(Blackhole bh)
+    {
+        for (float[] v : vecs)
+        {
+            RotationMatrix.getRotationMatrixFromVector(R, v);
+            bh.consume(R[0]);
+        }
+    }
+
+    @Benchmark
+    public void getAngleChange(Blackhole bh)
+    {
+        for (int i = 1; i < matrices.length; ++i)
+        {
+            RotationMatrix.getAngleChange(angleChange, matrices[i], matrices[i-1]);
+            bh.consume(angleChange[0]);
+            bh.consume(angleChange[1]);
+            bh.consume(angleChange[2]);
+        }
+    }
+}
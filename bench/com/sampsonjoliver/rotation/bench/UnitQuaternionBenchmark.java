@@ -0,0 +1,81 @@
+package com.sampsonjoliver.rotation.bench;
+
+import com.sampsonjoliver.rotation.Quaternion;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the work saved by Quaternion remembering that it is unit length, and compares the
+ * first-order Renormalize against Versor for quaternions that have drifted slightly.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UnitQuaternionBenchmark
+{
+    @Param({"100000"})
+    public int size;
+
+    private float[][] vecs;
+    private Quaternion[] known;
+    private Quaternion[] drifted;
+
+    @Setup
+    public void setup()
+    {
+        vecs = VectorData.rotationVectors(size, 4);
+        known = new Quaternion[size];
+        drifted = new Quaternion[size];
+        for (int i = 0; i < size; ++i)
+        {
+            known[i] = new Quaternion(vecs[i]).Versor();
+            drifted[i] = new Quaternion(vecs[i]).Multiply(1 + (i % 7 - 3) * 1e-4f);
+        }
+    }
+
+    @Benchmark
+    public void differenceUnknown(Blackhole bh)
+    {
+        // Fresh quaternions have not been checked for unit length yet
+        for (int i = 1; i < vecs.length; ++i)
+            bh.consume(new Quaternion(vecs[i-1]).Difference(new Quaternion(vecs[i])));
+    }
+
+    @Benchmark
+    public void differenceKnown(Blackhole bh)
+    {
+        for (int i = 1; i < known.length; ++i)
+            bh.consume(known[i-1].Difference(known[i]));
+    }
+
+    @Benchmark
+    public void chainedDifference(Blackhole bh)
+    {
+        // Each difference is known to be unit, so the next Difference skips both norms
+        Quaternion d = known[0];
+        for (int i = 1; i < known.length; ++i)
+        {
+            d = d.Difference(known[i]);
+            bh.consume(d);
+        }
+    }
+
+    @Benchmark
+    public void versor(Blackhole bh)
+    {
+        for (Quaternion q : drifted)
+            bh.consume(q.Multiply(1).Versor());
+    }
+
+    @Benchmark
+    public void renormalize(Blackhole bh)
+    {
+        for (Quaternion q : drifted)
+            bh.consume(q.Multiply(1).Renormalize());
+    }
+}
@@ -0,0 +1,118 @@
+package com.sampsonjoliver.rotation.bench;
+
+import com.sampsonjoliver.rotation.Quaternion;
+
+import java.util.Random;
+
+/**
+ * Deterministic input data for the benchmarks.
+ */
+class VectorData
+{
+    static final long SEED = 0x5eed;
+
+    /**
+     * Generates rotation vectors of unit quaternions expressed as [x,y,z] or [x,y,z,w].
+     * 3-wide vectors always describe a quaternion with a non-negative w, so that converting
+     * them back with getQuaternionFromVector gives the same rotation.
+     * @param num the number of vectors to generate
+     * @param width 3 or 4
+     * @return the rotation vectors
+     */
+    static float[][] rotationVectors(int num, int width)
+    {
+        Random random = new Random(SEED);
+        float[][] vecs = new float[num][width];
+
+        for (int i = 0; i < num; ++i)
+        {
+            float w = (float)random.nextGaussian();
+            float x = (float)random.nextGaussian();
+            float y = (float)random.nextGaussian();
+            float z = (float)random.nextGaussian();
+            float norm = (float)Math.sqrt(w*w + x*x + y*y + z*z) * Math.signum(w == 0 ? 1 : w);
+
+            vecs[i][0] = x / norm;
+            vecs[i][1] = y / norm;
+            vecs[i][2] = z / norm;
+            if (width == 4)
+                vecs[i][3] = w / norm;
+        }
+
+        return vecs;
+    }
+
+    /**
+     * Generates unit quaternions from the same sequence as rotationVectors.
+     * @param num the number of quaternions to generate
+     * @return the quaternions
+     */
+    static Quaternion[] quaternions(int num)
+    {
+        float[][] vecs = rotationVectors(num, 4);
+        Quaternion[] quats = new Quaternion[num];
+
+        for (int i = 0; i < num; ++i)
+        {
+            quats[i] = new Quaternion(vecs[i]);
+        }
+
+        return quats;
+    }
+
+    /**
+     * Generates rotation vectors of a sensor that is mostly at rest: the orientation stays fixed
+     * with a little noise, except in one block of every ten, when it turns steadily about a
+     * random axis.
+     * @param num the number of vectors to generate
+     * @param width 3 or 4
+     * @param noise the largest angle, in radians, of the noise about each sample
+     * @param speed the angle, in radians, that the orientation turns per sample while moving
+     * @return the rotation vectors
+     */
+    static float[][] restingVectors(int num, int width, double noise, double speed)
+    {
+        final int block = 200;
+        Random random = new Random(SEED);
+        float[][] vecs = new float[num][width];
+        double[] base = {1, 0, 0, 0};
+        double[] step = {1, 0, 0, 0};
+
+        for (int i = 0; i < num; ++i)
+        {
+            if (i % block == 0)
+                step = (i / block) % 10 == 9 ? axisAngle(random, speed) : new double[] {1, 0, 0, 0};
+
+            base = multiply(base, step);
+            double[] q = multiply(base, axisAngle(random, noise * random.nextDouble()));
+            double norm = Math.sqrt(q[0]*q[0] + q[1]*q[1] + q[2]*q[2] + q[3]*q[3]) * Math.signum(q[0] == 0 ? 1 : q[0]);
+
+            vecs[i][0] = (float)(q[1] / norm);
+            vecs[i][1] = (float)(q[2] / norm);
+            vecs[i][2] = (float)(q[3] / norm);
+            if (width == 4)
+                vecs[i][3] = (float)(q[0] / norm);
+        }
+
+        return vecs;
+    }
+
+    private static double[] axisAngle(Random random, double angle)
+    {
+        double x = random.nextGaussian();
+        double y = random.nextGaussian();
+        double z = random.nextGaussian();
+        double s = Math.sin(angle / 2) / Math.sqrt(x*x + y*y + z*z);
+        return new double[] {Math.cos(angle / 2), x * s, y * s, z * s};
+    }
+
+    private static double[] multiply(double[] a, double[] b)
+    {
+        return new double[] {
+                a[0]*b[0] - a[1]*b[1] - a[2]*b[2] - a[3]*b[3],
+                a[0]*b[1] + a[1]*b[0] + a[2]*b[3] - a[3]*b[2],
+                a[0]*b[2] - a[1]*b[3] + a[2]*b[0] + a[3]*b[1],
+                a[0]*b[3] + a[1]*b[2] - a[2]*b[1] + a[3]*b[0]
+        };
+    }
+}
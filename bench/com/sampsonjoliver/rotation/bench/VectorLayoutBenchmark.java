@@ -0,0 +1,130 @@
+package com.sampsonjoliver.rotation.bench;
+
+import com.sampsonjoliver.rotation.MatrixLayout;
+import com.sampsonjoliver.rotation.Quaternion;
+import com.sampsonjoliver.rotation.RotationMatrix;
+import com.sampsonjoliver.rotation.VectorLayout;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the static angle-change helpers, which branch on the array lengths of every sample
+ * and allocate for 3-part vectors, against the same calculations through a VectorLayout and
+ * MatrixLayout resolved once per run.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VectorLayoutBenchmark
+{
+    @Param({"100000"})
+    public int size;
+
+    @Param({"3", "4"})
+    public int width;
+
+    private float[][] vecs;
+    private VectorLayout layout;
+    private MatrixLayout matrixLayout;
+    private float[] r1;
+    private float[] r2;
+    private float[] tb_delta;
+
+    @Setup
+    public void setup()
+    {
+        vecs = VectorData.rotationVectors(size, width);
+        layout = VectorLayout.of(width);
+        matrixLayout = MatrixLayout.ROW_MAJOR_3X3;
+        r1 = new float[9];
+        r2 = new float[9];
+        tb_delta = new float[3];
+    }
+
+    @Benchmark
+    public void tb_static(Blackhole bh)
+    {
+        for (int i = 1; i < vecs.length; ++i)
+        {
+            Quaternion.getTaitBryanAngleChange(tb_delta, vecs[i-1], vecs[i]);
+            bh.consume(tb_delta[0]);
+            bh.consume(tb_delta[1]);
+            bh.consume(tb_delta[2]);
+        }
+    }
+
+    @Benchmark
+    public void tb_layout(Blackhole bh)
+    {
+        for (int i = 1; i < vecs.length; ++i)
+        {
+            layout.getTaitBryanAngleChange(tb_delta, vecs[i-1], vecs[i]);
+            bh.consume(tb_delta[0]);
+            bh.consume(tb_delta[1]);
+            bh.consume(tb_delta[2]);
+        }
+    }
+
+    @Benchmark
+    public void distance_static(Blackhole bh)
+    {
+        for (int i = 1; i < vecs.length; ++i)
+            bh.consume(Quaternion.getDistanceChange(vecs[i-1], vecs[i]));
+    }
+
+    @Benchmark
+    public void distance_layout(Blackhole bh)
+    {
+        for (int i = 1; i < vecs.length; ++i)
+            bh.consume(layout.getDistanceChange(vecs[i-1], vecs[i]));
+    }
+
+    @Benchmark
+    public void matrix_static(Blackhole bh)
+    {
+        for (int i = 1; i < vecs.length; ++i)
+        {
+            RotationMatrix.getRotationMatrixFromVector(r1, vecs[i-1]);
+            RotationMatrix.getRotationMatrixFromVector(r2, vecs[i]);
+            RotationMatrix.getAngleChange(tb_delta, r2, r1);
+            bh.consume(tb_delta[0]);
+        }
+    }
+
+    @Benchmark
+    public void matrix_layout(Blackhole bh)
+    {
+        for (int i = 1; i < vecs.length; ++i)
+        {
+            layout.getRotationMatrix(r1, 0, vecs[i-1], matrixLayout);
+            layout.getRotationMatrix(r2, 0, vecs[i], matrixLayout);
+            matrixLayout.getAngleChange(tb_delta, r2, r1);
+            bh.consume(tb_delta[0]);
+        }
+    }
+
+    @Benchmark
+    public void convert_static(Blackhole bh)
+    {
+        for (int i = 0; i < vecs.length; ++i)
+        {
+            RotationMatrix.getRotationMatrixFromVector(r1, vecs[i]);
+            bh.consume(r1[0]);
+        }
+    }
+
+    @Benchmark
+    public void convert_layout(Blackhole bh)
+    {
+        for (int i = 0; i < vecs.length; ++i)
+        {
+            layout.getRotationMatrix(r1, 0, vecs[i], matrixLayout);
+            bh.consume(r1[0]);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.sampsonjoliver.rotation;
+
+import java.util.Queue;
+
+/**
+ * A batch of consecutive angle changes, as published by AngleChangeProcessor. Each change is held
+ * as [phi, theta, psi] Tait-Bryan angles and a distance in parallel columns, which are backed by
+ * the batch and valid for indices [0, size()).
+ * <p>Batches are pooled. A subscriber that is finished with a batch should call release, after
+ * which the batch is refilled for a later onNext and must not be read again. A batch that is
+ * never released is simply left to the garbage collector, and the pool allocates a replacement.
+ */
+public class AngleChangeBatch
+{
+    private final float[] phi;
+    private final float[] theta;
+    private final float[] psi;
+    private final float[] distance;
+    private final Queue<AngleChangeBatch> pool;
+    private long sequence;
+    private int size;
+    private boolean released;
+
+    /**
+     * Creates a new, empty batch that belongs to no pool.
+     * @param capacity the largest number of changes the batch can hold
+     */
+    public AngleChangeBatch(int capacity)
+    {
+        this(capacity, null);
+    }
+
+    AngleChangeBatch(int capacity, Queue<AngleChangeBatch> pool)
+    {
+        this.phi = new float[capacity];
+        this.theta = new float[capacity];
+        this.psi = new float[capacity];
+        this.distance = new float[capacity];
+        this.pool = pool;
+    }
+
+    /**
+     * Get the number of changes in the batch
+     * @return the number of changes
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Get the largest number of changes the batch can hold
+     * @return the capacity
+     */
+    public int capacity()
+    {
+        return phi.length;
+    }
+
+    /**
+     * Get the position of the first change in the stream. Change n is between samples n and
+     * n+1 of the stream, counting from zero.
+     * @return the sequence number of the change at index 0
+     */
+    public long getSequence()
+    {
+        return sequence;
+    }
+
+    /**
+     * Get the column of rotations about x. The array is backed by the batch.
+     * @return the phi column
+     */
+    public float[] getPhi()
+    {
+        return phi;
+    }
+
+    /**
+     * Get the column of rotations about y. The array is backed by the batch.
+     * @return the theta column
+     */
+    public float[] getTheta()
+    {
+        return theta;
+    }
+
+    /**
+     * Get the column of rotations about z. The array is backed by the batch.
+     * @return the psi column
+     */
+    public float[] getPsi()
+    {
+        return psi;
+    }
+
+    /**
+     * Get the column of angular distances. The array is backed by the batch.
+     * @return the distance column
+     */
+    public float[] getDistance()
+    {
+        return distance;
+    }
+
+    /**
+     * Returns the batch to the pool it came from, if any.
+     */
+    public void release()
+    {
+        if (released)
+            throw new IllegalStateException("batch has already been released");
+
+        released = true;
+        if (pool != null)
+            pool.offer(this);
+    }
+
+    void reset(long sequence)
+    {
+        this.sequence = sequence;
+        this.size = 0;
+        this.released = false;
+    }
+
+    void setSize(int size)
+    {
+        this.size = size;
+    }
+}
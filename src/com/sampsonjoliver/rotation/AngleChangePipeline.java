@@ -0,0 +1,153 @@
+package com.sampsonjoliver.rotation;
+
+/**
+ * A pipeline stage that computes angle changes on its own worker thread, between an input ring
+ * of rotation vectors and an output ring of results.
+ * <p>The sensor thread hands each rotation vector to offer, which copies it into a preallocated
+ * FloatRing and never blocks or allocates; if the ring is full the sample is rejected. The worker
+ * feeds each sample to an OrientationTracker and publishes [phi, theta, psi, distance] for every
+ * sample after the first to the output ring, carrying the sample's stamp through. The consumer
+ * reads results with poll or take. Each ring has exactly one producer and one consumer thread.
+ * <p>Results are those of OrientationTracker for the previous and current samples: phi, theta
+ * and psi match Quaternion.getTaitBryanAngleChange for 3-wide vectors, and distance matches
+ * Quaternion.getDistanceChange.
+ */
+public class AngleChangePipeline implements AutoCloseable
+{
+    /**
+     * The number of floats in each result: phi, theta, psi and distance
+     */
+    public static final int RESULT_WIDTH = 4;
+
+    private final FloatRing input;
+    private final FloatRing output;
+    private final WaitStrategy waitStrategy;
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    /**
+     * Creates and starts a new pipeline.
+     * @param capacity the number of slots in each ring, a power of two
+     * @param width the width of the rotation vectors, 3 or 4
+     * @param waitStrategy how the worker and blocking calls wait
+     */
+    public AngleChangePipeline(int capacity, int width, WaitStrategy waitStrategy)
+    {
+        if (width != 3 && width != 4)
+            throw new IllegalArgumentException("width must be 3 or 4, not " + width);
+
+        this.input = new FloatRing(capacity, width, waitStrategy);
+        this.output = new FloatRing(capacity, RESULT_WIDTH, waitStrategy);
+        this.waitStrategy = waitStrategy;
+        this.worker = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                process();
+            }
+        }, "angle-change-pipeline");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Hands the next rotation vector to the worker. Never blocks. Sensor thread only.
+     * @param stamp a stamp carried through to the result, such as the sample's timestamp
+     * @param rv the rotation vector, of the pipeline's width
+     * @return false if the input ring is full and the sample was dropped
+     */
+    public boolean offer(long stamp, float[] rv)
+    {
+        if (rv.length != input.slotWidth())
+            throw new IllegalArgumentException("pipeline width is " + input.slotWidth() + ", not " + rv.length);
+
+        return input.offer(stamp, rv);
+    }
+
+    /**
+     * Reads the next result if there is one. Consumer thread only.
+     * @param res an array of at least RESULT_WIDTH floats for [phi, theta, psi, distance]
+     * @return false if no result is ready
+     */
+    public boolean poll(float[] res)
+    {
+        return output.poll(res);
+    }
+
+    /**
+     * Reads the next result, waiting for one if none is ready. Consumer thread only.
+     * @param res an array of at least RESULT_WIDTH floats for [phi, theta, psi, distance]
+     * @return the stamp of the sample the result belongs to
+     */
+    public long take(float[] res)
+    {
+        return output.take(res);
+    }
+
+    /**
+     * Get the stamp of the result most recently returned by poll or take. Consumer thread only.
+     * @return the stamp
+     */
+    public long getResultStamp()
+    {
+        return output.getPolledStamp();
+    }
+
+    /**
+     * Stops the worker thread and waits for it to finish. Samples still in the input ring are
+     * discarded. If the calling thread is interrupted while waiting, close returns with its
+     * interrupt status set and the worker stops on its own.
+     */
+    @Override
+    public void close()
+    {
+        running = false;
+        try
+        {
+            worker.join();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void process()
+    {
+        OrientationTracker tracker = new OrientationTracker();
+        float[] rv = new float[input.slotWidth()];
+        float[] tb = new float[3];
+        float[] res = new float[RESULT_WIDTH];
+
+        while (running)
+        {
+            if (!input.poll(rv))
+            {
+                waitStrategy.idle();
+                continue;
+            }
+
+            long start = RotationMetrics.ENABLED ? RotationMetrics.start() : 0;
+            tracker.update(rv);
+            if (!tracker.getTaitBryanAngleChange(tb))
+                continue;
+
+            res[0] = tb[0];
+            res[1] = tb[1];
+            res[2] = tb[2];
+            res[3] = tracker.getDistanceChange();
+
+            long stamp = input.getPolledStamp();
+            while (!output.offer(stamp, res))
+            {
+                if (!running)
+                    return;
+                waitStrategy.idle();
+            }
+
+            if (RotationMetrics.ENABLED)
+                RotationMetrics.end(RotationMetrics.Stage.ANGLE_CHANGE_PIPELINE, "process", start, 1);
+        }
+    }
+}
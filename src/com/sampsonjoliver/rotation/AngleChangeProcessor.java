@@ -0,0 +1,419 @@
+package com.sampsonjoliver.rotation;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A Flow.Processor that turns a stream of quaternion batches, such as those built from rotation
+ * vectors with QuaternionBuffer.fromVectors or addVector, into a stream of AngleChangeBatches
+ * holding the angle change and distance between every consecutive pair of samples, including
+ * pairs that span two input batches.
+ * <p>Changes are gathered into pooled batches of batchSize changes. A batch is published when it
+ * is full or, if a maximum delay is given, when that long has passed since its first change,
+ * whichever comes first; the rest of a partial batch is published when the upstream completes.
+ * Changes are computed a whole range at a time with a QuaternionEngine, and the samples of each
+ * input batch are copied out before onNext returns, so the publisher may reuse it.
+ * <p>Demand is honoured in both directions: one input batch is requested from the upstream at a
+ * time, and only while the subscriber has outstanding demand and no completed batch is waiting
+ * for it. The processor has a single subscriber; a second is rejected with an
+ * IllegalStateException. On error the waiting batches are discarded and the error is passed on
+ * at once.
+ * <p>With the scalar engine (the default) the values are those of QuaternionBuffer.getTaitBryanAngleChanges
+ * and getDistanceChanges over the whole stream.
+ */
+public class AngleChangeProcessor implements Flow.Processor<QuaternionBuffer, AngleChangeBatch>
+{
+    private final int batchSize;
+    private final long maxDelayNanos;
+    private final ScheduledExecutorService scheduler;
+    private final QuaternionEngine engine;
+    private final Runnable flushTask;
+
+    private final Queue<AngleChangeBatch> pool = new ConcurrentLinkedQueue<AngleChangeBatch>();
+    private final Queue<AngleChangeBatch> ready = new ConcurrentLinkedQueue<AngleChangeBatch>();
+
+    // Guarded by lock: the previous sample followed by the samples of the current batch
+    private final Object lock = new Object();
+    private final QuaternionBuffer work;
+    private AngleChangeBatch current;
+    private long currentStart;
+    private long sequence;
+
+    private final AtomicBoolean claimed = new AtomicBoolean();
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicInteger wip = new AtomicInteger();
+    private volatile Flow.Subscriber<? super AngleChangeBatch> subscriber;
+    private volatile Flow.Subscription upstream;
+    private volatile boolean upstreamRequested;
+    private volatile boolean done;
+    private volatile boolean cancelled;
+    private volatile Throwable error;
+    private boolean terminated;
+
+    /**
+     * Creates a new AngleChangeProcessor that publishes a batch only when it is full, using the
+     * scalar engine.
+     * @param batchSize the number of changes in each batch
+     */
+    public AngleChangeProcessor(int batchSize)
+    {
+        this(batchSize, 0, null, QuaternionEngine.scalar());
+    }
+
+    /**
+     * Creates a new AngleChangeProcessor using the scalar engine.
+     * @param batchSize the largest number of changes in each batch
+     * @param maxDelay the longest time a change waits for its batch to fill
+     * @param unit the unit of maxDelay
+     * @param scheduler the scheduler on which batches that reach maxDelay are published
+     */
+    public AngleChangeProcessor(int batchSize, long maxDelay, TimeUnit unit, ScheduledExecutorService scheduler)
+    {
+        this(batchSize, checkDelay(maxDelay, unit), scheduler, QuaternionEngine.scalar());
+    }
+
+    /**
+     * Creates a new AngleChangeProcessor.
+     * @param batchSize the largest number of changes in each batch
+     * @param maxDelay the longest time a change waits for its batch to fill
+     * @param unit the unit of maxDelay
+     * @param scheduler the scheduler on which batches that reach maxDelay are published
+     * @param engine the engine used to compute the changes
+     */
+    public AngleChangeProcessor(int batchSize, long maxDelay, TimeUnit unit, ScheduledExecutorService scheduler,
+            QuaternionEngine engine)
+    {
+        this(batchSize, checkDelay(maxDelay, unit), scheduler, engine);
+    }
+
+    private AngleChangeProcessor(int batchSize, long maxDelayNanos, ScheduledExecutorService scheduler, QuaternionEngine engine)
+    {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("batchSize must be positive, not " + batchSize);
+        if (maxDelayNanos > 0 && scheduler == null)
+            throw new IllegalArgumentException("a scheduler is required for a maximum delay");
+
+        this.batchSize = batchSize;
+        this.maxDelayNanos = maxDelayNanos;
+        this.scheduler = scheduler;
+        this.engine = engine;
+        this.work = new QuaternionBuffer(batchSize + 1);
+        this.flushTask = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                flushIfDue();
+            }
+        };
+    }
+
+    /**
+     * Get the largest number of changes in each batch
+     * @return the batch size
+     */
+    public int getBatchSize()
+    {
+        return batchSize;
+    }
+
+    /**
+     * Get the longest time a change waits for its batch to fill
+     * @param unit the unit in which to return the delay
+     * @return the maximum delay, or 0 if batches are only published when full
+     */
+    public long getMaxDelay(TimeUnit unit)
+    {
+        return unit.convert(maxDelayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super AngleChangeBatch> subscriber)
+    {
+        if (!claimed.compareAndSet(false, true))
+        {
+            subscriber.onSubscribe(new Flow.Subscription()
+            {
+                @Override
+                public void request(long n)
+                {
+                }
+
+                @Override
+                public void cancel()
+                {
+                }
+            });
+            subscriber.onError(new IllegalStateException("AngleChangeProcessor allows only one subscriber"));
+            return;
+        }
+
+        subscriber.onSubscribe(new Flow.Subscription()
+        {
+            @Override
+            public void request(long n)
+            {
+                AngleChangeProcessor.this.request(n);
+            }
+
+            @Override
+            public void cancel()
+            {
+                AngleChangeProcessor.this.cancel();
+            }
+        });
+        this.subscriber = subscriber;
+        drain();
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription)
+    {
+        if (upstream != null || cancelled)
+        {
+            subscription.cancel();
+            return;
+        }
+
+        upstream = subscription;
+        drain();
+    }
+
+    @Override
+    public void onNext(QuaternionBuffer item)
+    {
+        if (done || cancelled)
+            return;
+
+        synchronized (lock)
+        {
+            append(item);
+        }
+
+        upstreamRequested = false;
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable throwable)
+    {
+        if (done)
+            return;
+
+        error = throwable;
+        done = true;
+        drain();
+    }
+
+    @Override
+    public void onComplete()
+    {
+        if (done)
+            return;
+
+        synchronized (lock)
+        {
+            if (current != null)
+                publish();
+        }
+
+        done = true;
+        drain();
+    }
+
+    private void request(long n)
+    {
+        if (n <= 0)
+        {
+            Flow.Subscription s = upstream;
+            if (s != null)
+                s.cancel();
+            onError(new IllegalArgumentException("request must be positive, not " + n));
+            return;
+        }
+
+        for (;;)
+        {
+            long r = demand.get();
+            long u = r + n;
+            if (u < 0)
+                u = Long.MAX_VALUE;
+            if (demand.compareAndSet(r, u))
+                break;
+        }
+        drain();
+    }
+
+    private void cancel()
+    {
+        cancelled = true;
+        Flow.Subscription s = upstream;
+        if (s != null)
+            s.cancel();
+        drain();
+    }
+
+    /**
+     * Computes the changes up to and including each sample of item, publishing batches as they
+     * fill. Called with lock held.
+     */
+    private void append(QuaternionBuffer item)
+    {
+        int n = item.size();
+        int i = 0;
+
+        // The first sample of the stream only becomes the previous sample
+        if (work.size() == 0 && n > 0)
+        {
+            work.set(0, item.W(0), item.X(0), item.Y(0), item.Z(0));
+            work.setSize(1);
+            i = 1;
+        }
+
+        while (i < n)
+        {
+            if (current == null)
+            {
+                current = acquire();
+                current.reset(sequence);
+                currentStart = System.nanoTime();
+                if (maxDelayNanos > 0)
+                    scheduler.schedule(flushTask, maxDelayNanos, TimeUnit.NANOSECONDS);
+            }
+
+            int from = work.size();
+            int k = Math.min(n - i, batchSize + 1 - from);
+            System.arraycopy(item.getW(), i, work.getW(), from, k);
+            System.arraycopy(item.getX(), i, work.getX(), from, k);
+            System.arraycopy(item.getY(), i, work.getY(), from, k);
+            System.arraycopy(item.getZ(), i, work.getZ(), from, k);
+            work.setSize(from + k);
+
+            engine.getTaitBryanAngleChanges(current.getPhi(), current.getTheta(), current.getPsi(), work, from, from + k);
+            engine.getDistanceChanges(current.getDistance(), work, from, from + k);
+            current.setSize(from + k - 1);
+            sequence += k;
+            i += k;
+
+            if (current.size() == batchSize)
+                publish();
+        }
+
+        if (current != null && maxDelayNanos > 0 && System.nanoTime() - currentStart >= maxDelayNanos)
+            publish();
+    }
+
+    /**
+     * Queues the current batch for the subscriber and keeps its last sample as the previous
+     * sample of the next. Called with lock held.
+     */
+    private void publish()
+    {
+        ready.offer(current);
+        current = null;
+
+        int last = work.size() - 1;
+        work.set(0, work.W(last), work.X(last), work.Y(last), work.Z(last));
+        work.setSize(1);
+    }
+
+    private void flushIfDue()
+    {
+        if (done || cancelled)
+            return;
+
+        synchronized (lock)
+        {
+            // A task scheduled for an earlier batch finds the current one too young
+            if (current == null || System.nanoTime() - currentStart < maxDelayNanos)
+                return;
+            publish();
+        }
+        drain();
+    }
+
+    private AngleChangeBatch acquire()
+    {
+        AngleChangeBatch batch = pool.poll();
+        return (batch != null) ? batch : new AngleChangeBatch(batchSize, pool);
+    }
+
+    /**
+     * Delivers waiting batches and terminal signals to the subscriber and requests more input.
+     * Only one thread drains at a time; calls made while another thread is draining make it
+     * loop again instead.
+     */
+    private void drain()
+    {
+        if (wip.getAndIncrement() != 0)
+            return;
+
+        int missed = 1;
+        for (;;)
+        {
+            Flow.Subscriber<? super AngleChangeBatch> s = subscriber;
+            if (cancelled)
+            {
+                discardReady();
+                subscriber = null;
+            }
+            else if (s != null && !terminated)
+            {
+                Throwable e = error;
+                if (e != null)
+                {
+                    terminated = true;
+                    discardReady();
+                    s.onError(e);
+                }
+                else
+                {
+                    AngleChangeBatch batch;
+                    while (demand.get() > 0 && !cancelled && (batch = ready.poll()) != null)
+                    {
+                        if (demand.get() != Long.MAX_VALUE)
+                            demand.decrementAndGet();
+                        s.onNext(batch);
+                    }
+
+                    Flow.Subscription up = upstream;
+                    if (done && ready.isEmpty())
+                    {
+                        terminated = true;
+                        s.onComplete();
+                    }
+                    else if (!done && !cancelled && up != null && !upstreamRequested && demand.get() > 0 && ready.isEmpty())
+                    {
+                        upstreamRequested = true;
+                        up.request(1);
+                    }
+                }
+            }
+
+            missed = wip.addAndGet(-missed);
+            if (missed == 0)
+                break;
+        }
+    }
+
+    private void discardReady()
+    {
+        AngleChangeBatch batch;
+        while ((batch = ready.poll()) != null)
+            batch.release();
+    }
+
+    private static long checkDelay(long maxDelay, TimeUnit unit)
+    {
+        if (maxDelay <= 0)
+            throw new IllegalArgumentException("maxDelay must be positive, not " + maxDelay);
+
+        return unit.toNanos(maxDelay);
+    }
+}
@@ -0,0 +1,126 @@
+package com.sampsonjoliver.rotation;
+
+/**
+ * The inverse trigonometric functions used to turn quaternions and matrices into angles.
+ * <p>EXACT evaluates java.lang.Math in double precision and rounds the result to float, and is
+ * what every method uses unless told otherwise. FAST evaluates polynomial approximations in float
+ * precision, which is several times faster, with these worst-case absolute errors over finite
+ * arguments:
+ * <pre>
+ *   atan2   2.5e-6 rad
+ *   asin    5.0e-7 rad
+ *   acos    5.0e-7 rad
+ * </pre>
+ * Angle changes built from these, such as a distance of 2 * acos, carry the error scaled by
+ * the same factor. Arguments outside [-1, 1] give NaN from asin and acos in both modes.
+ * <p>Methods that accept an AngleMath let accuracy-critical call sites keep EXACT while hot
+ * paths choose FAST.
+ */
+public enum AngleMath
+{
+    /**
+     * java.lang.Math evaluated in double precision
+     */
+    EXACT
+    {
+        @Override
+        public float atan2(double y, double x)
+        {
+            return (float)Math.atan2(y, x);
+        }
+
+        @Override
+        public float asin(double a)
+        {
+            return (float)Math.asin(a);
+        }
+
+        @Override
+        public float acos(double a)
+        {
+            return (float)Math.acos(a);
+        }
+    },
+
+    /**
+     * Polynomial approximations evaluated in float precision
+     */
+    FAST
+    {
+        @Override
+        public float atan2(double y, double x)
+        {
+            return fastAtan2((float)y, (float)x);
+        }
+
+        @Override
+        public float asin(double a)
+        {
+            return HALF_PI - fastAcos((float)a);
+        }
+
+        @Override
+        public float acos(double a)
+        {
+            return fastAcos((float)a);
+        }
+    };
+
+    private static final float PI = (float)Math.PI;
+    private static final float HALF_PI = (float)(Math.PI / 2);
+
+    /**
+     * Calculates the angle of the point (x, y) from the positive x axis.
+     * @param y the ordinate
+     * @param x the abscissa
+     * @return the angle in radians, in [-pi, pi]
+     */
+    public abstract float atan2(double y, double x);
+
+    /**
+     * Calculates the arc sine.
+     * @param a the sine, in [-1, 1]
+     * @return the angle in radians, in [-pi/2, pi/2]
+     */
+    public abstract float asin(double a);
+
+    /**
+     * Calculates the arc cosine.
+     * @param a the cosine, in [-1, 1]
+     * @return the angle in radians, in [0, pi]
+     */
+    public abstract float acos(double a);
+
+    private static float fastAtan2(float y, float x)
+    {
+        float ax = Math.abs(x);
+        float ay = Math.abs(y);
+        float max = Math.max(ax, ay);
+        if (max == 0)
+            return (x < 0 || (x == 0 && 1 / x < 0)) ? Math.copySign(PI, y) : Math.copySign(0, y);
+
+        // Reduce to atan(t) with t in [0, 1]
+        float t = Math.min(ax, ay) / max;
+        float t2 = t * t;
+        float r = t * (0.99997726f + t2 * (-0.33262347f + t2 * (0.19354346f + t2 * (-0.11643287f
+                + t2 * (0.05265332f + t2 * -0.01172120f)))));
+
+        if (ay > ax)
+            r = HALF_PI - r;
+        if (x < 0)
+            r = PI - r;
+
+        return Math.copySign(r, y);
+    }
+
+    private static float fastAcos(float a)
+    {
+        // Abramowitz and Stegun 4.4.46: acos(a) = sqrt(1 - a) * P(a) for a in [0, 1]
+        float x = Math.abs(a);
+        float p = 1.5707963050f + x * (-0.2145988016f + x * (0.0889789874f + x * (-0.0501743046f
+                + x * (0.0308918810f + x * (-0.0170881256f + x * (0.0066700901f + x * -0.0012624911f))))));
+        float r = (float)Math.sqrt(1 - x) * p;
+
+        return a < 0 ? PI - r : r;
+    }
+}
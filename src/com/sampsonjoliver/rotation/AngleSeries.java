@@ -0,0 +1,145 @@
+package com.sampsonjoliver.rotation;
+
+/**
+ * Constants describing the columnar angle series format written by AngleSeriesWriter and read by
+ * AngleSeriesReader, which stores a timestamp, the Tait-Bryan angle change [phi, theta, psi] and
+ * the distance of each sample in separate columns.
+ * <p>All values are little-endian. The file starts with a 40 byte header:
+ * <pre>
+ *   offset  size  field
+ *        0     4  magic, the bytes 'A' 'N' 'G' 'S'
+ *        4     2  format version, currently 1
+ *        6     2  number of columns, 5
+ *        8     4  rows per block; only the last block may have fewer
+ *       12     4  number of blocks
+ *       16     8  number of rows
+ *       24     8  offset of the block index
+ *       32     5  encoding of each column, in Column order
+ *       37     3  reserved, 0
+ * </pre>
+ * followed by the blocks. Each block holds one chunk per column, in Column order, encoded as:
+ * <ul>
+ * <li>PLAIN: int64 timestamps or float32 values.</li>
+ * <li>DELTA_VARINT (timestamps only): the difference of each timestamp from the previous one,
+ * and the first from 0, zigzag encoded as an unsigned LEB128 varint.</li>
+ * <li>XOR (float columns only): a bit stream, most significant bit first, holding the first
+ * value's 32 bits, then for each value the XOR of its bits with the previous value's: '0' if
+ * the XOR is zero; '10' and the meaningful bits if they fit within the previous leading and
+ * trailing zero counts; otherwise '11', 5 bits of leading zeros, 5 bits of meaningful bit count
+ * minus one, and the meaningful bits.</li>
+ * </ul>
+ * The block index follows the last block, with a 168 byte entry per block:
+ * <pre>
+ *   offset  size  field
+ *        0     4  number of rows in the block
+ *        4     4  reserved, 0
+ *        8   160  one 32 byte entry per column, in Column order:
+ *                   0  8  file offset of the chunk
+ *                   8  4  chunk size in bytes
+ *                  12  4  reserved, 0
+ *                  16  8  minimum value: int64 for timestamps, or float32 and 4 zero bytes
+ *                  24  8  maximum value, as the minimum
+ * </pre>
+ * Float minimums and maximums ignore NaN values, and are NaN only when every value is.
+ */
+public final class AngleSeries
+{
+    /**
+     * The columns of a series
+     */
+    public enum Column
+    {
+        TIMESTAMP,
+        PHI,
+        THETA,
+        PSI,
+        DISTANCE
+    }
+
+    /**
+     * The encodings of a column chunk
+     */
+    public enum Encoding
+    {
+        /**
+         * Fixed-width values
+         */
+        PLAIN,
+        /**
+         * Zigzag varints of the differences between timestamps
+         */
+        DELTA_VARINT,
+        /**
+         * XOR of the bits of consecutive float values
+         */
+        XOR;
+
+        /**
+         * Determine if the encoding can be used for a column
+         * @param column the column
+         * @return true or false
+         */
+        public boolean supports(Column column)
+        {
+            switch (this)
+            {
+                case DELTA_VARINT:
+                    return column == Column.TIMESTAMP;
+                case XOR:
+                    return column != Column.TIMESTAMP;
+                default:
+                    return true;
+            }
+        }
+    }
+
+    /**
+     * The first four bytes of every series, 'A' 'N' 'G' 'S' read as a little-endian int
+     */
+    public static final int MAGIC = 'A' | ('N' << 8) | ('G' << 16) | ('S' << 24);
+
+    /**
+     * The version of the format written by AngleSeriesWriter
+     */
+    public static final short VERSION = 1;
+
+    /**
+     * The size of the header in bytes
+     */
+    public static final int HEADER_SIZE = 40;
+
+    /**
+     * The number of rows per block used unless another is given
+     */
+    public static final int DEFAULT_BLOCK_ROWS = 16384;
+
+    static final int COLUMNS = 5;
+    static final int BLOCK_ROWS_OFFSET = 8;
+    static final int BLOCK_COUNT_OFFSET = 12;
+    static final int ROW_COUNT_OFFSET = 16;
+    static final int INDEX_OFFSET = 24;
+    static final int ENCODINGS_OFFSET = 32;
+    static final int COLUMN_ENTRY_SIZE = 32;
+    static final int INDEX_ENTRY_SIZE = 8 + COLUMNS * COLUMN_ENTRY_SIZE;
+
+    private AngleSeries()
+    {
+    }
+
+    /**
+     * Get the largest size in bytes of a chunk
+     */
+    static int maxChunkSize(Encoding encoding, Column column, int rows)
+    {
+        switch (encoding)
+        {
+            case DELTA_VARINT:
+                return 10 * rows;
+            case XOR:
+                // 32 bits for the first value and at most 44 for each other, plus a partial byte
+                return (32 + 44 * rows) / 8 + 1;
+            default:
+                return (column == Column.TIMESTAMP ? 8 : 4) * rows;
+        }
+    }
+}
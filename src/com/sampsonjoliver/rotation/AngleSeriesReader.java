@@ -0,0 +1,341 @@
+package com.sampsonjoliver.rotation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a columnar angle series in the format described by AngleSeries.
+ * <p>The block index is loaded when the series is opened, so the row count and the minimum and
+ * maximum of every column in every block are available without reading any data. Columns are
+ * read one block at a time, and only the chunk of the requested column is read from the file, so
+ * projecting a single column reads a fifth of the file or less. findBlocks uses the statistics to
+ * select the blocks that may hold values in a range, so that the rest can be skipped.
+ * <p>Instances are not thread safe, as chunks are read through a shared buffer.
+ */
+public class AngleSeriesReader implements Closeable
+{
+    private final FileChannel channel;
+    private final int blockRows;
+    private final int blocks;
+    private final long count;
+    private final AngleSeries.Encoding[] encodings = new AngleSeries.Encoding[AngleSeries.COLUMNS];
+    private final ByteBuffer index;
+    private ByteBuffer chunk;
+
+    /**
+     * Opens a series for reading.
+     * @param path the file to read
+     * @throws IOException if the file cannot be read or is not a complete angle series
+     */
+    public AngleSeriesReader(Path path) throws IOException
+    {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+
+        try
+        {
+            ByteBuffer header = ByteBuffer.allocate(AngleSeries.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(header, 0, path);
+
+            if (header.getInt(0) != AngleSeries.MAGIC)
+                throw new IOException(path + " is not an angle series");
+            if (header.getShort(4) != AngleSeries.VERSION)
+                throw new IOException(path + " has unsupported version " + header.getShort(4));
+            if (header.getShort(6) != AngleSeries.COLUMNS)
+                throw new IOException(path + " has " + header.getShort(6) + " columns, not " + AngleSeries.COLUMNS);
+
+            this.blockRows = header.getInt(AngleSeries.BLOCK_ROWS_OFFSET);
+            this.blocks = header.getInt(AngleSeries.BLOCK_COUNT_OFFSET);
+            this.count = header.getLong(AngleSeries.ROW_COUNT_OFFSET);
+            long indexOffset = header.getLong(AngleSeries.INDEX_OFFSET);
+            if (indexOffset == 0)
+                throw new IOException(path + " was not closed by its writer and has no block index");
+
+            AngleSeries.Column[] columns = AngleSeries.Column.values();
+            AngleSeries.Encoding[] all = AngleSeries.Encoding.values();
+            for (int c = 0; c < AngleSeries.COLUMNS; ++c)
+            {
+                int e = header.get(AngleSeries.ENCODINGS_OFFSET + c);
+                if (e < 0 || e >= all.length || !all[e].supports(columns[c]))
+                    throw new IOException(path + " has unsupported encoding " + e + " for " + columns[c]);
+                encodings[c] = all[e];
+            }
+
+            long indexSize = (long)blocks * AngleSeries.INDEX_ENTRY_SIZE;
+            if (blocks < 0 || indexOffset + indexSize > channel.size() || indexSize > Integer.MAX_VALUE)
+                throw new IOException(path + " is truncated: its block index is incomplete");
+            this.index = ByteBuffer.allocate((int)indexSize).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(index, indexOffset, path);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Get the number of rows in the series
+     * @return the number of rows
+     */
+    public long size()
+    {
+        return count;
+    }
+
+    /**
+     * Get the number of blocks in the series
+     * @return the number of blocks
+     */
+    public int getBlockCount()
+    {
+        return blocks;
+    }
+
+    /**
+     * Get the number of rows in a block
+     * @param block the index of the block
+     * @return the number of rows
+     */
+    public int getBlockSize(int block)
+    {
+        return index.getInt(entry(block));
+    }
+
+    /**
+     * Get the index of the first row of a block
+     * @param block the index of the block
+     * @return the row index
+     */
+    public long getBlockStart(int block)
+    {
+        checkBlock(block);
+        return (long)block * blockRows;
+    }
+
+    /**
+     * Get the encoding of a column
+     * @param column the column
+     * @return the encoding
+     */
+    public AngleSeries.Encoding getEncoding(AngleSeries.Column column)
+    {
+        return encodings[column.ordinal()];
+    }
+
+    /**
+     * Get the smallest timestamp in a block
+     * @param block the index of the block
+     * @return the timestamp
+     */
+    public long getMinTimestamp(int block)
+    {
+        return index.getLong(columnEntry(block, AngleSeries.Column.TIMESTAMP) + 16);
+    }
+
+    /**
+     * Get the largest timestamp in a block
+     * @param block the index of the block
+     * @return the timestamp
+     */
+    public long getMaxTimestamp(int block)
+    {
+        return index.getLong(columnEntry(block, AngleSeries.Column.TIMESTAMP) + 24);
+    }
+
+    /**
+     * Get the smallest value of a float column in a block, ignoring NaN
+     * @param column a column other than TIMESTAMP
+     * @param block the index of the block
+     * @return the value, or NaN if every value is NaN
+     */
+    public float getMin(AngleSeries.Column column, int block)
+    {
+        checkFloatColumn(column);
+        return index.getFloat(columnEntry(block, column) + 16);
+    }
+
+    /**
+     * Get the largest value of a float column in a block, ignoring NaN
+     * @param column a column other than TIMESTAMP
+     * @param block the index of the block
+     * @return the value, or NaN if every value is NaN
+     */
+    public float getMax(AngleSeries.Column column, int block)
+    {
+        checkFloatColumn(column);
+        return index.getFloat(columnEntry(block, column) + 24);
+    }
+
+    /**
+     * Selects the blocks that may hold a timestamp in [from, to].
+     * @param from the smallest timestamp of interest
+     * @param to the largest timestamp of interest
+     * @param dest an array of at least getBlockCount() ints in which to store the block indices,
+     *             in ascending order
+     * @return the number of blocks selected
+     */
+    public int findBlocks(long from, long to, int[] dest)
+    {
+        int n = 0;
+        for (int b = 0; b < blocks; ++b)
+        {
+            if (getMinTimestamp(b) <= to && getMaxTimestamp(b) >= from)
+                dest[n++] = b;
+        }
+        return n;
+    }
+
+    /**
+     * Selects the blocks that may hold a value of a float column in [from, to].
+     * @param column a column other than TIMESTAMP
+     * @param from the smallest value of interest
+     * @param to the largest value of interest
+     * @param dest an array of at least getBlockCount() ints in which to store the block indices,
+     *             in ascending order
+     * @return the number of blocks selected
+     */
+    public int findBlocks(AngleSeries.Column column, float from, float to, int[] dest)
+    {
+        int n = 0;
+        for (int b = 0; b < blocks; ++b)
+        {
+            // Blocks of only NaN compare false and are never selected
+            if (getMin(column, b) <= to && getMax(column, b) >= from)
+                dest[n++] = b;
+        }
+        return n;
+    }
+
+    /**
+     * Reads the timestamps of a block.
+     * @param block the index of the block
+     * @param dest an array in which to store the timestamps
+     * @param offset the index in dest of the first timestamp
+     * @return the number of timestamps read, getBlockSize(block)
+     * @throws IOException if the chunk cannot be read
+     */
+    public int readTimestamps(int block, long[] dest, int offset) throws IOException
+    {
+        int rows = getBlockSize(block);
+        checkDest(dest.length, offset, rows);
+        ByteBuffer buf = readChunk(block, AngleSeries.Column.TIMESTAMP);
+        ColumnCodec.getTimestamps(buf, encodings[0], dest, offset, rows);
+        return rows;
+    }
+
+    /**
+     * Reads the values of a float column in a block.
+     * @param column a column other than TIMESTAMP
+     * @param block the index of the block
+     * @param dest an array in which to store the values
+     * @param offset the index in dest of the first value
+     * @return the number of values read, getBlockSize(block)
+     * @throws IOException if the chunk cannot be read
+     */
+    public int readColumn(AngleSeries.Column column, int block, float[] dest, int offset) throws IOException
+    {
+        checkFloatColumn(column);
+        int rows = getBlockSize(block);
+        checkDest(dest.length, offset, rows);
+        ByteBuffer buf = readChunk(block, column);
+        ColumnCodec.getFloats(buf, encodings[column.ordinal()], dest, offset, rows);
+        return rows;
+    }
+
+    /**
+     * Reads every timestamp in the series.
+     * @param dest an array of at least size() longs in which to store the timestamps
+     * @throws IOException if the column cannot be read
+     */
+    public void readTimestamps(long[] dest) throws IOException
+    {
+        checkDest(dest.length, 0, count);
+        int offset = 0;
+        for (int b = 0; b < blocks; ++b)
+            offset += readTimestamps(b, dest, offset);
+    }
+
+    /**
+     * Reads every value of a float column in the series.
+     * @param column a column other than TIMESTAMP
+     * @param dest an array of at least size() floats in which to store the values
+     * @throws IOException if the column cannot be read
+     */
+    public void readColumn(AngleSeries.Column column, float[] dest) throws IOException
+    {
+        checkDest(dest.length, 0, count);
+        int offset = 0;
+        for (int b = 0; b < blocks; ++b)
+            offset += readColumn(column, b, dest, offset);
+    }
+
+    /**
+     * Closes the file.
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+
+    private ByteBuffer readChunk(int block, AngleSeries.Column column) throws IOException
+    {
+        int entry = columnEntry(block, column);
+        long offset = index.getLong(entry);
+        int size = index.getInt(entry + 8);
+
+        if (chunk == null || chunk.capacity() < size)
+            chunk = ByteBuffer.allocateDirect(Math.max(size, chunk == null ? 0 : 2 * chunk.capacity())).order(ByteOrder.LITTLE_ENDIAN);
+        chunk.clear().limit(size);
+        while (chunk.hasRemaining())
+        {
+            if (channel.read(chunk, offset + chunk.position()) < 0)
+                throw new IOException("block " + block + " is truncated");
+        }
+        return chunk.flip();
+    }
+
+    private void readFully(ByteBuffer buf, long position, Path path) throws IOException
+    {
+        while (buf.hasRemaining())
+        {
+            if (channel.read(buf, position + buf.position()) < 0)
+                throw new IOException(path + " is truncated");
+        }
+    }
+
+    private int entry(int block)
+    {
+        checkBlock(block);
+        return block * AngleSeries.INDEX_ENTRY_SIZE;
+    }
+
+    private int columnEntry(int block, AngleSeries.Column column)
+    {
+        return entry(block) + 8 + column.ordinal() * AngleSeries.COLUMN_ENTRY_SIZE;
+    }
+
+    private void checkBlock(int block)
+    {
+        if (block < 0 || block >= blocks)
+            throw new IndexOutOfBoundsException("block " + block + " out of bounds for " + blocks + " blocks");
+    }
+
+    private static void checkFloatColumn(AngleSeries.Column column)
+    {
+        if (column == AngleSeries.Column.TIMESTAMP)
+            throw new IllegalArgumentException("TIMESTAMP is not a float column");
+    }
+
+    private static void checkDest(int length, int offset, long rows)
+    {
+        if (offset < 0 || offset + rows > length)
+            throw new IndexOutOfBoundsException("cannot store " + rows + " values at " + offset + " of " + length);
+    }
+}
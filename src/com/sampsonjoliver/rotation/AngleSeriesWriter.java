@@ -0,0 +1,320 @@
+package com.sampsonjoliver.rotation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes a series of timestamped angle changes and distances to a columnar file in the format
+ * described by AngleSeries. Rows are gathered into per-column arrays until a block is full; each
+ * block is then encoded column by column into a direct staging buffer, which is written to the
+ * file channel in large blocks. The block index and header are written when the writer is
+ * closed, and a series that was not closed cannot be read.
+ * <p>Every column is PLAIN unless setEncoding chooses otherwise before the first row.
+ */
+public class AngleSeriesWriter implements Closeable
+{
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 22;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final int blockRows;
+    private final AngleSeries.Encoding[] encodings = new AngleSeries.Encoding[AngleSeries.COLUMNS];
+
+    private final long[] timestamps;
+    private final float[][] values;
+    private int rows;
+    private long count;
+
+    private ByteBuffer index;
+    private int blocks;
+    private long written;
+    private boolean closed;
+
+    /**
+     * Creates a new series with DEFAULT_BLOCK_ROWS rows per block, replacing any existing file
+     * at path.
+     * @param path the file to write
+     * @throws IOException if the file cannot be created
+     */
+    public AngleSeriesWriter(Path path) throws IOException
+    {
+        this(path, AngleSeries.DEFAULT_BLOCK_ROWS);
+    }
+
+    /**
+     * Creates a new series, replacing any existing file at path.
+     * @param path the file to write
+     * @param blockRows the number of rows in each block, which sets the granularity of the
+     *                  block statistics
+     * @throws IOException if the file cannot be created
+     */
+    public AngleSeriesWriter(Path path, int blockRows) throws IOException
+    {
+        if (blockRows < 1)
+            throw new IllegalArgumentException("blockRows must be positive, not " + blockRows);
+
+        this.blockRows = blockRows;
+        this.timestamps = new long[blockRows];
+        this.values = new float[AngleSeries.COLUMNS - 1][blockRows];
+        for (int c = 0; c < AngleSeries.COLUMNS; ++c)
+            encodings[c] = AngleSeries.Encoding.PLAIN;
+
+        // Room for the largest possible block, whatever the encodings
+        long maxBlockSize = AngleSeries.maxChunkSize(AngleSeries.Encoding.DELTA_VARINT, AngleSeries.Column.TIMESTAMP, blockRows)
+                + 4L * AngleSeries.maxChunkSize(AngleSeries.Encoding.XOR, AngleSeries.Column.PHI, blockRows);
+        if (maxBlockSize > Integer.MAX_VALUE / 2)
+            throw new IllegalArgumentException("blockRows " + blockRows + " is too large");
+
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = ByteBuffer.allocateDirect((int)Math.max(DEFAULT_BUFFER_SIZE, maxBlockSize)).order(ByteOrder.LITTLE_ENDIAN);
+        this.index = ByteBuffer.allocate(64 * AngleSeries.INDEX_ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        // The header is filled in by close
+        buffer.position(AngleSeries.HEADER_SIZE);
+    }
+
+    /**
+     * Chooses the encoding of a column. Only allowed before the first row is written.
+     * @param column the column
+     * @param encoding an encoding that supports the column
+     */
+    public void setEncoding(AngleSeries.Column column, AngleSeries.Encoding encoding)
+    {
+        if (count > 0)
+            throw new IllegalStateException("encodings cannot change after rows have been written");
+        if (!encoding.supports(column))
+            throw new IllegalArgumentException(encoding + " cannot encode " + column);
+
+        encodings[column.ordinal()] = encoding;
+    }
+
+    /**
+     * Get the encoding of a column
+     * @param column the column
+     * @return the encoding
+     */
+    public AngleSeries.Encoding getEncoding(AngleSeries.Column column)
+    {
+        return encodings[column.ordinal()];
+    }
+
+    /**
+     * Get the number of rows written so far
+     * @return the number of rows
+     */
+    public long size()
+    {
+        return count;
+    }
+
+    /**
+     * Appends a row.
+     * @param timestamp the timestamp of the sample
+     * @param angleChange the [phi, theta, psi] angle change, as from getTaitBryanAngleChange
+     * @param distance the distance, as from getDistanceChange
+     * @throws IOException if a completed block cannot be written
+     */
+    public void write(long timestamp, float[] angleChange, float distance) throws IOException
+    {
+        write(timestamp, angleChange[0], angleChange[1], angleChange[2], distance);
+    }
+
+    /**
+     * Appends a row.
+     * @param timestamp the timestamp of the sample
+     * @param phi the rotation about x
+     * @param theta the rotation about y
+     * @param psi the rotation about z
+     * @param distance the angular distance
+     * @throws IOException if a completed block cannot be written
+     */
+    public void write(long timestamp, float phi, float theta, float psi, float distance) throws IOException
+    {
+        checkOpen();
+        timestamps[rows] = timestamp;
+        values[0][rows] = phi;
+        values[1][rows] = theta;
+        values[2][rows] = psi;
+        values[3][rows] = distance;
+        ++count;
+
+        if (++rows == blockRows)
+            writeBlock();
+    }
+
+    /**
+     * Appends rows [from, from + count) of parallel column arrays, such as those filled by
+     * QuaternionEngine.getTaitBryanAngleChanges and getDistanceChanges.
+     * @param timestamps the timestamps
+     * @param phi the rotations about x
+     * @param theta the rotations about y
+     * @param psi the rotations about z
+     * @param distance the angular distances
+     * @param from the index of the first row
+     * @param count the number of rows
+     * @throws IOException if a completed block cannot be written
+     */
+    public void write(long[] timestamps, float[] phi, float[] theta, float[] psi, float[] distance, int from, int count) throws IOException
+    {
+        checkOpen();
+        int end = from + count;
+        if (from < 0 || count < 0 || end > timestamps.length || end > phi.length || end > theta.length
+                || end > psi.length || end > distance.length)
+            throw new IndexOutOfBoundsException("range [" + from + ", " + end + ") out of bounds of the columns");
+
+        while (from < end)
+        {
+            int n = Math.min(end - from, blockRows - rows);
+            System.arraycopy(timestamps, from, this.timestamps, rows, n);
+            System.arraycopy(phi, from, values[0], rows, n);
+            System.arraycopy(theta, from, values[1], rows, n);
+            System.arraycopy(psi, from, values[2], rows, n);
+            System.arraycopy(distance, from, values[3], rows, n);
+            rows += n;
+            from += n;
+            this.count += n;
+
+            if (rows == blockRows)
+                writeBlock();
+        }
+    }
+
+    /**
+     * Writes any completed blocks staged in the buffer to the file. Rows of the incomplete block
+     * stay in memory until it fills or the writer is closed.
+     * @throws IOException if the blocks cannot be written
+     */
+    public void flush() throws IOException
+    {
+        buffer.flip();
+        while (buffer.hasRemaining())
+        {
+            written += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Writes any remaining rows, the block index and the header, and closes the file.
+     * @throws IOException if the series cannot be completed
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if (closed)
+            return;
+        closed = true;
+
+        try
+        {
+            if (rows > 0)
+                writeBlock();
+            flush();
+
+            long indexOffset = written;
+            index.flip();
+            while (index.hasRemaining())
+            {
+                written += channel.write(index);
+            }
+
+            buffer.putInt(AngleSeries.MAGIC);
+            buffer.putShort(AngleSeries.VERSION);
+            buffer.putShort((short)AngleSeries.COLUMNS);
+            buffer.putInt(blockRows);
+            buffer.putInt(blocks);
+            buffer.putLong(count);
+            buffer.putLong(indexOffset);
+            for (AngleSeries.Encoding encoding : encodings)
+                buffer.put((byte)encoding.ordinal());
+            buffer.put(new byte[AngleSeries.HEADER_SIZE - AngleSeries.ENCODINGS_OFFSET - AngleSeries.COLUMNS]);
+            buffer.flip();
+            long position = 0;
+            while (buffer.hasRemaining())
+            {
+                position += channel.write(buffer, position);
+            }
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+
+    private void checkOpen()
+    {
+        if (closed)
+            throw new IllegalStateException("writer is closed");
+    }
+
+    /**
+     * Encodes the rows of the current block into the buffer and records its index entry.
+     */
+    private void writeBlock() throws IOException
+    {
+        int maxSize = AngleSeries.maxChunkSize(encodings[0], AngleSeries.Column.TIMESTAMP, rows);
+        for (int c = 1; c < AngleSeries.COLUMNS; ++c)
+            maxSize += AngleSeries.maxChunkSize(encodings[c], AngleSeries.Column.PHI, rows);
+        if (buffer.remaining() < maxSize)
+            flush();
+
+        if (index.remaining() < AngleSeries.INDEX_ENTRY_SIZE)
+        {
+            ByteBuffer larger = ByteBuffer.allocate(index.capacity() * 2).order(ByteOrder.LITTLE_ENDIAN);
+            index.flip();
+            index = larger.put(index);
+        }
+
+        index.putInt(rows);
+        index.putInt(0);
+
+        long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+        for (int i = 0; i < rows; ++i)
+        {
+            min = Math.min(min, timestamps[i]);
+            max = Math.max(max, timestamps[i]);
+        }
+        long offset = written + buffer.position();
+        ColumnCodec.putTimestamps(buffer, encodings[0], timestamps, rows);
+        putColumnEntry(offset, min, max);
+
+        for (int c = 1; c < AngleSeries.COLUMNS; ++c)
+        {
+            float[] v = values[c - 1];
+            // NaN compares false, so is left out of both
+            float fmin = Float.POSITIVE_INFINITY, fmax = Float.NEGATIVE_INFINITY;
+            for (int i = 0; i < rows; ++i)
+            {
+                if (v[i] < fmin)
+                    fmin = v[i];
+                if (v[i] > fmax)
+                    fmax = v[i];
+            }
+            // Only when every value is NaN
+            if (fmin > fmax)
+                fmin = fmax = Float.NaN;
+
+            offset = written + buffer.position();
+            ColumnCodec.putFloats(buffer, encodings[c], v, rows);
+            putColumnEntry(offset, Float.floatToRawIntBits(fmin) & 0xffffffffL, Float.floatToRawIntBits(fmax) & 0xffffffffL);
+        }
+
+        ++blocks;
+        rows = 0;
+    }
+
+    private void putColumnEntry(long offset, long min, long max)
+    {
+        index.putLong(offset);
+        index.putInt((int)(written + buffer.position() - offset));
+        index.putInt(0);
+        index.putLong(min);
+        index.putLong(max);
+    }
+}
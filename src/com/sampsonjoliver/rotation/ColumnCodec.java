@@ -0,0 +1,228 @@
+package com.sampsonjoliver.rotation;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes and decodes the column chunks of an angle series, as described by AngleSeries. Each
+ * method reads or writes at the position of a little-endian buffer, advancing it.
+ */
+final class ColumnCodec
+{
+    private ColumnCodec()
+    {
+    }
+
+    static void putTimestamps(ByteBuffer buf, AngleSeries.Encoding encoding, long[] v, int n)
+    {
+        if (encoding == AngleSeries.Encoding.DELTA_VARINT)
+        {
+            long prev = 0;
+            for (int i = 0; i < n; ++i)
+            {
+                long d = v[i] - prev;
+                putVarint(buf, (d << 1) ^ (d >> 63));
+                prev = v[i];
+            }
+        }
+        else
+        {
+            for (int i = 0; i < n; ++i)
+                buf.putLong(v[i]);
+        }
+    }
+
+    static void getTimestamps(ByteBuffer buf, AngleSeries.Encoding encoding, long[] dest, int offset, int n)
+    {
+        if (encoding == AngleSeries.Encoding.DELTA_VARINT)
+        {
+            long prev = 0;
+            for (int i = 0; i < n; ++i)
+            {
+                long z = getVarint(buf);
+                prev += (z >>> 1) ^ -(z & 1);
+                dest[offset + i] = prev;
+            }
+        }
+        else
+        {
+            for (int i = 0; i < n; ++i)
+                dest[offset + i] = buf.getLong();
+        }
+    }
+
+    static void putFloats(ByteBuffer buf, AngleSeries.Encoding encoding, float[] v, int n)
+    {
+        if (encoding == AngleSeries.Encoding.XOR)
+        {
+            putXor(buf, v, n);
+        }
+        else
+        {
+            for (int i = 0; i < n; ++i)
+                buf.putFloat(v[i]);
+        }
+    }
+
+    static void getFloats(ByteBuffer buf, AngleSeries.Encoding encoding, float[] dest, int offset, int n)
+    {
+        if (encoding == AngleSeries.Encoding.XOR)
+        {
+            getXor(buf, dest, offset, n);
+        }
+        else
+        {
+            for (int i = 0; i < n; ++i)
+                dest[offset + i] = buf.getFloat();
+        }
+    }
+
+    private static void putVarint(ByteBuffer buf, long v)
+    {
+        while ((v & ~0x7fL) != 0)
+        {
+            buf.put((byte)(v | 0x80));
+            v >>>= 7;
+        }
+        buf.put((byte)v);
+    }
+
+    private static long getVarint(ByteBuffer buf)
+    {
+        long v = 0;
+        for (int shift = 0; ; shift += 7)
+        {
+            byte b = buf.get();
+            v |= (long)(b & 0x7f) << shift;
+            if (b >= 0)
+                return v;
+        }
+    }
+
+    private static void putXor(ByteBuffer buf, float[] v, int n)
+    {
+        if (n == 0)
+            return;
+
+        BitWriter out = new BitWriter(buf);
+        int prev = Float.floatToRawIntBits(v[0]);
+        out.write(prev, 32);
+
+        // No window until the first non-zero XOR
+        int lead = -1, trail = 0;
+        for (int i = 1; i < n; ++i)
+        {
+            int bits = Float.floatToRawIntBits(v[i]);
+            int x = bits ^ prev;
+            prev = bits;
+
+            if (x == 0)
+            {
+                out.write(0, 1);
+                continue;
+            }
+
+            int l = Integer.numberOfLeadingZeros(x);
+            int t = Integer.numberOfTrailingZeros(x);
+            if (lead >= 0 && l >= lead && t >= trail)
+            {
+                out.write(0b10, 2);
+                out.write(x >>> trail, 32 - lead - trail);
+            }
+            else
+            {
+                int len = 32 - l - t;
+                out.write(0b11, 2);
+                out.write(l, 5);
+                out.write(len - 1, 5);
+                out.write(x >>> t, len);
+                lead = l;
+                trail = t;
+            }
+        }
+        out.finish();
+    }
+
+    private static void getXor(ByteBuffer buf, float[] dest, int offset, int n)
+    {
+        if (n == 0)
+            return;
+
+        BitReader in = new BitReader(buf);
+        int prev = (int)in.read(32);
+        dest[offset] = Float.intBitsToFloat(prev);
+
+        int lead = 0, trail = 0;
+        for (int i = 1; i < n; ++i)
+        {
+            if (in.read(1) != 0)
+            {
+                if (in.read(1) != 0)
+                {
+                    lead = (int)in.read(5);
+                    trail = 32 - lead - ((int)in.read(5) + 1);
+                }
+                prev ^= (int)in.read(32 - lead - trail) << trail;
+            }
+            dest[offset + i] = Float.intBitsToFloat(prev);
+        }
+    }
+
+    /**
+     * Writes values of up to 32 bits, most significant bit first.
+     */
+    private static class BitWriter
+    {
+        private final ByteBuffer buf;
+        private long acc;
+        private int count;
+
+        BitWriter(ByteBuffer buf)
+        {
+            this.buf = buf;
+        }
+
+        void write(long value, int width)
+        {
+            // Bits above count + width have already been written, so may be shifted out
+            acc = (acc << width) | (value & ((1L << width) - 1));
+            count += width;
+            while (count >= 8)
+            {
+                count -= 8;
+                buf.put((byte)(acc >>> count));
+            }
+        }
+
+        void finish()
+        {
+            if (count > 0)
+                buf.put((byte)(acc << (8 - count)));
+        }
+    }
+
+    /**
+     * Reads values of up to 32 bits written by BitWriter.
+     */
+    private static class BitReader
+    {
+        private final ByteBuffer buf;
+        private long acc;
+        private int count;
+
+        BitReader(ByteBuffer buf)
+        {
+            this.buf = buf;
+        }
+
+        long read(int width)
+        {
+            while (count < width)
+            {
+                acc = (acc << 8) | (buf.get() & 0xff);
+                count += 8;
+            }
+            count -= width;
+            return (acc >>> count) & ((1L << width) - 1);
+        }
+    }
+}
@@ -0,0 +1,419 @@
+package com.sampsonjoliver.rotation;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Compressed encodings of unit quaternions for storage and transport, using the smallest-three
+ * scheme. q and -q are the same rotation, so the component of largest magnitude is made
+ * positive and dropped, and recovered on decode as sqrt(1 - a^2 - b^2 - c^2). The other three
+ * components lie in [-1/sqrt(2), 1/sqrt(2)] and are quantized uniformly to 2^bits - 1 levels,
+ * so that 0 is exact. The encoded value holds the 2-bit index of the dropped component (0 for
+ * w, then x, y, z) above the three quantized components, most significant first, in the low
+ * bits of a long.
+ * <p>Each format has this worst-case angular error between the input rotation and the decoded
+ * rotation, from getMaxAngularError:
+ * <pre>
+ *   format               bytes  bits per component  angular error
+ *   SMALLEST_THREE_32    4      10                  4.8e-3 rad (0.27 deg)
+ *   SMALLEST_THREE_48    6      15                  1.5e-4 rad
+ *   SMALLEST_THREE_64    8      20                  4.7e-6 rad
+ * </pre>
+ * Inputs need not be normalized; their versor is encoded. A zero quaternion encodes the
+ * identity. Decoded quaternions are unit length to float precision, and may be the negation of
+ * the input, which describes the same rotation.
+ * <p>In a ByteBuffer each value is stored in the buffer's byte order as an int, a 48-bit integer
+ * or a long. Bulk methods read and write at the buffer's position and advance it.
+ */
+public enum CompactQuaternion
+{
+    /**
+     * 32 bits: 2 bit index and three 10 bit components
+     */
+    SMALLEST_THREE_32(4, 10),
+
+    /**
+     * 48 bits: 2 bit index and three 15 bit components, with 1 unused bit
+     */
+    SMALLEST_THREE_48(6, 15),
+
+    /**
+     * 64 bits: 2 bit index and three 20 bit components, with 2 unused bits
+     */
+    SMALLEST_THREE_64(8, 20);
+
+    private static final double RANGE = Math.sqrt(0.5);
+
+    private final int bytes;
+    private final int componentBits;
+    private final long mask;
+    private final long maxLevel;
+    private final double toLevel;
+    private final double fromLevel;
+
+    CompactQuaternion(int bytes, int componentBits)
+    {
+        this.bytes = bytes;
+        this.componentBits = componentBits;
+        this.mask = (1L << componentBits) - 1;
+        // The stored components span [-1/sqrt(2), 1/sqrt(2)], a width of sqrt(2). An odd number
+        // of levels is used so that 0, and with it the identity, is represented exactly.
+        this.maxLevel = mask - 1;
+        this.toLevel = maxLevel / Math.sqrt(2);
+        this.fromLevel = Math.sqrt(2) / maxLevel;
+    }
+
+    /**
+     * Get the size of an encoded quaternion in a ByteBuffer
+     * @return the number of bytes
+     */
+    public int bytes()
+    {
+        return bytes;
+    }
+
+    /**
+     * Get the number of bits each of the three stored components is quantized to
+     * @return the number of bits
+     */
+    public int componentBits()
+    {
+        return componentBits;
+    }
+
+    /**
+     * Calculates the worst-case angle between an encoded rotation and its decoded rotation.
+     * Each stored component is off by at most half a quantization step d, and the recovered
+     * component, which is at least 1/2, by at most 3d. The decoded quaternion is therefore within
+     * a chord of sqrt(12) d of the input, and the rotations differ by twice the angle that chord
+     * subtends.
+     * @return the error in radians
+     */
+    public double getMaxAngularError()
+    {
+        double d = fromLevel / 2;
+        return 4 * Math.asin(Math.sqrt(12) * d / 2);
+    }
+
+    /**
+     * Encodes a quaternion.
+     * @param w the real-valued scalar part of the Quaternion
+     * @param x the x-component of the complex vector part of the Quaternion
+     * @param y the y-component of the complex vector part of the Quaternion
+     * @param z the z-component of the complex vector part of the Quaternion
+     * @return the encoded quaternion in the low bits
+     */
+    public long encode(float w, float x, float y, float z)
+    {
+        float aw = Math.abs(w), ax = Math.abs(x), ay = Math.abs(y), az = Math.abs(z);
+        double lenSquared = (double)w * w + (double)x * x + (double)y * y + (double)z * z;
+        if (lenSquared == 0)
+            return encode(1, 0, 0, 0);
+
+        // Drop the largest component, keeping the others in w, x, y, z order
+        int index;
+        float largest, a, b, c;
+        if (aw >= ax && aw >= ay && aw >= az)
+        {
+            index = 0; largest = w; a = x; b = y; c = z;
+        }
+        else if (ax >= ay && ax >= az)
+        {
+            index = 1; largest = x; a = w; b = y; c = z;
+        }
+        else if (ay >= az)
+        {
+            index = 2; largest = y; a = w; b = x; c = z;
+        }
+        else
+        {
+            index = 3; largest = z; a = w; b = x; c = y;
+        }
+
+        // Normalize, and negate so that the dropped component is positive
+        double scale = 1 / Math.sqrt(lenSquared);
+        if (largest < 0)
+            scale = -scale;
+
+        return ((long)index << (3 * componentBits))
+                | (quantize(a * scale) << (2 * componentBits))
+                | (quantize(b * scale) << componentBits)
+                | quantize(c * scale);
+    }
+
+    /**
+     * Encodes a quaternion.
+     * @param q the quaternion to encode
+     * @return the encoded quaternion in the low bits
+     */
+    public long encode(Quaternion q)
+    {
+        return encode(q.W(), q.X(), q.Y(), q.Z());
+    }
+
+    /**
+     * Encodes a quaternion.
+     * @param q the quaternion to encode
+     * @return the encoded quaternion in the low bits
+     */
+    public long encode(MutableQuaternion q)
+    {
+        return encode(q.w, q.x, q.y, q.z);
+    }
+
+    /**
+     * Encodes the quaternion of a 3- or 4- part rotation vector expressed as [x,y,z,w], as
+     * converted by Quaternion.getQuaternionFromVector.
+     * @param rv the rotation vector to encode
+     * @return the encoded quaternion in the low bits
+     */
+    public long encodeVector(float[] rv)
+    {
+        return encode(Quaternion.vectorW(rv), rv[0], rv[1], rv[2]);
+    }
+
+    /**
+     * Decodes a quaternion.
+     * @param bits the encoded quaternion
+     * @param dest the quaternion in which to store the result
+     * @return dest
+     */
+    public MutableQuaternion decode(long bits, MutableQuaternion dest)
+    {
+        float a = stored(bits, 2), b = stored(bits, 1), c = stored(bits, 0);
+        float largest = recovered(a, b, c);
+        int index = droppedIndex(bits);
+        return dest.set(
+                component(0, index, largest, a, b, c),
+                component(1, index, largest, a, b, c),
+                component(2, index, largest, a, b, c),
+                component(3, index, largest, a, b, c));
+    }
+
+    /**
+     * Decodes a quaternion.
+     * @param bits the encoded quaternion
+     * @return a new Quaternion
+     */
+    public Quaternion decode(long bits)
+    {
+        float a = stored(bits, 2), b = stored(bits, 1), c = stored(bits, 0);
+        float largest = recovered(a, b, c);
+        int index = droppedIndex(bits);
+        return new Quaternion(
+                component(0, index, largest, a, b, c),
+                component(1, index, largest, a, b, c),
+                component(2, index, largest, a, b, c),
+                component(3, index, largest, a, b, c));
+    }
+
+    /**
+     * Decodes a quaternion into an array in the [w,x,y,z] layout of
+     * Quaternion.getQuaternionFromVector.
+     * @param bits the encoded quaternion
+     * @param q an array of at least 4 floats in which to store the result
+     * @return q
+     */
+    public float[] decodeInto(long bits, float[] q)
+    {
+        float a = stored(bits, 2), b = stored(bits, 1), c = stored(bits, 0);
+        float largest = recovered(a, b, c);
+        int index = droppedIndex(bits);
+        q[0] = component(0, index, largest, a, b, c);
+        q[1] = component(1, index, largest, a, b, c);
+        q[2] = component(2, index, largest, a, b, c);
+        q[3] = component(3, index, largest, a, b, c);
+        return q;
+    }
+
+    /**
+     * Writes an encoded quaternion at the position of a buffer in its byte order.
+     * @param dst the buffer to write to
+     * @param bits the encoded quaternion
+     */
+    public void put(ByteBuffer dst, long bits)
+    {
+        switch (bytes)
+        {
+            case 4:
+                dst.putInt((int)bits);
+                break;
+            case 6:
+                if (dst.order() == ByteOrder.LITTLE_ENDIAN)
+                {
+                    dst.putShort((short)bits);
+                    dst.putInt((int)(bits >>> 16));
+                }
+                else
+                {
+                    dst.putShort((short)(bits >>> 32));
+                    dst.putInt((int)bits);
+                }
+                break;
+            default:
+                dst.putLong(bits);
+        }
+    }
+
+    /**
+     * Reads an encoded quaternion at the position of a buffer in its byte order.
+     * @param src the buffer to read from
+     * @return the encoded quaternion
+     */
+    public long get(ByteBuffer src)
+    {
+        switch (bytes)
+        {
+            case 4:
+                return src.getInt() & 0xFFFFFFFFL;
+            case 6:
+                if (src.order() == ByteOrder.LITTLE_ENDIAN)
+                {
+                    long low = src.getShort() & 0xFFFFL;
+                    return low | ((src.getInt() & 0xFFFFFFFFL) << 16);
+                }
+                else
+                {
+                    long high = src.getShort() & 0xFFFFL;
+                    return (high << 32) | (src.getInt() & 0xFFFFFFFFL);
+                }
+            default:
+                return src.getLong();
+        }
+    }
+
+    /**
+     * Encodes every quaternion of a buffer into an array.
+     * @param dest an array of at least src.size() longs
+     * @param src the quaternions to encode
+     */
+    public void encode(long[] dest, QuaternionBuffer src)
+    {
+        int size = src.size();
+        if (dest.length < size)
+            throw new IndexOutOfBoundsException("dest length " + dest.length + " is less than " + size);
+
+        float[] w = src.getW(), x = src.getX(), y = src.getY(), z = src.getZ();
+        for (int i = 0; i < size; ++i)
+        {
+            dest[i] = encode(w[i], x[i], y[i], z[i]);
+        }
+    }
+
+    /**
+     * Decodes an array of encoded quaternions into a buffer, replacing its contents.
+     * @param dest the buffer in which to store the quaternions, with a capacity of at least count
+     * @param src the encoded quaternions
+     * @param count the number of quaternions to decode
+     */
+    public void decode(QuaternionBuffer dest, long[] src, int count)
+    {
+        MutableQuaternion t = new MutableQuaternion();
+        dest.setSize(count);
+        for (int i = 0; i < count; ++i)
+        {
+            decode(src[i], t);
+            dest.set(i, t.w, t.x, t.y, t.z);
+        }
+    }
+
+    /**
+     * Encodes a range of a buffer of quaternions into a ByteBuffer.
+     * @param dst the buffer to write to, with at least count * bytes() remaining
+     * @param src the quaternions to encode
+     * @param from the index of the first quaternion to encode
+     * @param count the number of quaternions to encode
+     */
+    public void encode(ByteBuffer dst, QuaternionBuffer src, int from, int count)
+    {
+        if (from < 0 || count < 0 || from + count > src.size())
+            throw new IndexOutOfBoundsException("range [" + from + ", " + (from + count) + ") out of bounds for size " + src.size());
+
+        float[] w = src.getW(), x = src.getX(), y = src.getY(), z = src.getZ();
+        for (int i = from; i < from + count; ++i)
+        {
+            put(dst, encode(w[i], x[i], y[i], z[i]));
+        }
+    }
+
+    /**
+     * Decodes quaternions from a ByteBuffer into a buffer, replacing its contents.
+     * @param dest the buffer in which to store the quaternions, with a capacity of at least count
+     * @param src the buffer to read from, with at least count * bytes() remaining
+     * @param count the number of quaternions to decode
+     */
+    public void decode(QuaternionBuffer dest, ByteBuffer src, int count)
+    {
+        MutableQuaternion t = new MutableQuaternion();
+        dest.setSize(count);
+        for (int i = 0; i < count; ++i)
+        {
+            decode(get(src), t);
+            dest.set(i, t.w, t.x, t.y, t.z);
+        }
+    }
+
+    /**
+     * Encodes the quaternions of 3- or 4- part rotation vectors into a ByteBuffer, as
+     * encodeVector does.
+     * @param dst the buffer to write to, with at least rotationVectors.length * bytes() remaining
+     * @param rotationVectors the rotation vectors to encode
+     */
+    public void encode(ByteBuffer dst, float[][] rotationVectors)
+    {
+        for (float[] rv : rotationVectors)
+        {
+            put(dst, encodeVector(rv));
+        }
+    }
+
+    /**
+     * Decodes quaternions from a ByteBuffer into arrays in the [w,x,y,z] layout of
+     * Quaternion.getQuaternionFromVector.
+     * @param q arrays of at least 4 floats in which to store the quaternions, one per quaternion
+     * @param src the buffer to read from, with at least q.length * bytes() remaining
+     */
+    public void decode(float[][] q, ByteBuffer src)
+    {
+        for (float[] dest : q)
+        {
+            decodeInto(get(src), dest);
+        }
+    }
+
+    /**
+     * Dequantizes one of the three stored components, the one shift components above the lowest.
+     */
+    private float stored(long bits, int shift)
+    {
+        return (float)((((bits >>> (shift * componentBits)) & mask) * fromLevel) - RANGE);
+    }
+
+    private int droppedIndex(long bits)
+    {
+        return (int)(bits >>> (3 * componentBits)) & 3;
+    }
+
+    private static float recovered(float a, float b, float c)
+    {
+        float d = 1 - a * a - b * b - c * c;
+        return d > 0 ? (float)Math.sqrt(d) : 0;
+    }
+
+    /**
+     * Get a component of a decoded quaternion, with the largest component put back at its index
+     * and the stored components a, b, c filling the other slots in order. Written as selects
+     * rather than a switch so that it does not branch on the data.
+     */
+    private static float component(int slot, int index, float largest, float a, float b, float c)
+    {
+        int k = slot < index ? slot : slot - 1;
+        return slot == index ? largest : (k == 0 ? a : (k == 1 ? b : c));
+    }
+
+    private long quantize(double v)
+    {
+        long level = (long)((v + RANGE) * toLevel + 0.5);
+        return level < 0 ? 0 : (level > maxLevel ? maxLevel : level);
+    }
+}
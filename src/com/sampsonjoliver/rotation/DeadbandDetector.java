@@ -0,0 +1,248 @@
+package com.sampsonjoliver.rotation;
+
+/**
+ * Detects when a stream of rotation vectors moves further than a deadband from a reference
+ * orientation, without evaluating any trigonometry for samples inside the deadband.
+ * <p>The rotation between two unit quaternions exceeds an angle t exactly when the absolute value
+ * of their dot product is below cos(t/2), so each sample costs a single dot product against a
+ * cosine computed at construction. A sample outside the deadband is an event: it becomes the new
+ * reference, and the change from the previous reference is available from getDistanceChange and
+ * getTaitBryanAngleChange, which only then evaluate trigonometry.
+ * <p>With hysteresis, the detector starts at rest and a sample must move more than the enter
+ * threshold from the reference to start an event. While moving, every sample that moves more
+ * than the smaller exit threshold from the reference is also an event, and the first sample that
+ * does not returns the detector to rest. Without hysteresis both thresholds are the same.
+ * <p>Samples are expected to be unit quaternions. Angle changes have the same values as
+ * OrientationTracker computes for the two references. No method allocates.
+ */
+public class DeadbandDetector
+{
+    private final float enterThreshold;
+    private final float exitThreshold;
+    private final float cosEnter;
+    private final float cosExit;
+    private final AngleMath angleMath;
+
+    // Reference and previous reference quaternions as [w, x, y, z]
+    private float rw, rx, ry, rz;
+    private float pw, px, py, pz;
+    private boolean refFourWide;
+    private boolean prevFourWide;
+    private boolean moving;
+    private long samples;
+    private long events;
+
+    /**
+     * Creates a new DeadbandDetector without hysteresis, using exact trigonometry.
+     * @param threshold the angle in radians, in [0, pi], that a sample must move from the
+     *                  reference to be an event
+     */
+    public DeadbandDetector(float threshold)
+    {
+        this(threshold, threshold, AngleMath.EXACT);
+    }
+
+    /**
+     * Creates a new DeadbandDetector with hysteresis, using exact trigonometry.
+     * @param enterThreshold the angle in radians, in [0, pi], that a sample must move from the
+     *                       reference to be an event while at rest
+     * @param exitThreshold the angle in radians, no greater than enterThreshold, that a sample must
+     *                      move from the reference to be an event while moving
+     */
+    public DeadbandDetector(float enterThreshold, float exitThreshold)
+    {
+        this(enterThreshold, exitThreshold, AngleMath.EXACT);
+    }
+
+    /**
+     * Creates a new DeadbandDetector.
+     * @param enterThreshold the angle in radians, in [0, pi], that a sample must move from the
+     *                       reference to be an event while at rest
+     * @param exitThreshold the angle in radians, no greater than enterThreshold, that a sample must
+     *                      move from the reference to be an event while moving
+     * @param angleMath the trigonometry used to compute angle changes
+     */
+    public DeadbandDetector(float enterThreshold, float exitThreshold, AngleMath angleMath)
+    {
+        if (!(enterThreshold >= 0 && enterThreshold <= Math.PI))
+            throw new IllegalArgumentException("enterThreshold must be in [0, pi], not " + enterThreshold);
+        if (!(exitThreshold >= 0 && exitThreshold <= enterThreshold))
+            throw new IllegalArgumentException("exitThreshold must be in [0, enterThreshold], not " + exitThreshold);
+
+        this.enterThreshold = enterThreshold;
+        this.exitThreshold = exitThreshold;
+        this.cosEnter = (float)Math.cos(enterThreshold / 2.0);
+        this.cosExit = (float)Math.cos(exitThreshold / 2.0);
+        this.angleMath = angleMath;
+    }
+
+    /**
+     * Get the angle that a sample must move from the reference to be an event while at rest
+     * @return the threshold in radians
+     */
+    public float getEnterThreshold()
+    {
+        return enterThreshold;
+    }
+
+    /**
+     * Get the angle that a sample must move from the reference to be an event while moving
+     * @return the threshold in radians
+     */
+    public float getExitThreshold()
+    {
+        return exitThreshold;
+    }
+
+    /**
+     * Forgets the reference and every sample seen so far.
+     */
+    public void reset()
+    {
+        samples = 0;
+        events = 0;
+        moving = false;
+    }
+
+    /**
+     * Determine if the last sample was an event while using hysteresis, so that the exit
+     * threshold applies to the next sample
+     * @return true or false
+     */
+    public boolean isMoving()
+    {
+        return moving;
+    }
+
+    /**
+     * Get the number of samples seen since creation or the last reset
+     * @return the number of samples
+     */
+    public long getSampleCount()
+    {
+        return samples;
+    }
+
+    /**
+     * Get the number of events since creation or the last reset
+     * @return the number of events
+     */
+    public long getEventCount()
+    {
+        return events;
+    }
+
+    /**
+     * Adds the next sample from a 3- or 4- part rotation vector expressed as [x,y,z,w] where w
+     * is an optional angle of rotation.
+     * @param rv the rotation vector
+     * @return true if the sample was an event and is now the reference. The first sample
+     *         becomes the reference without being an event.
+     */
+    public boolean update(float[] rv)
+    {
+        return push(Quaternion.vectorW(rv), rv[0], rv[1], rv[2], rv.length == 4);
+    }
+
+    /**
+     * Adds the next sample as a quaternion.
+     * @param w the real-valued scalar part of the Quaternion
+     * @param x the x-component of the complex vector part of the Quaternion
+     * @param y the y-component of the complex vector part of the Quaternion
+     * @param z the z-component of the complex vector part of the Quaternion
+     * @return true if the sample was an event and is now the reference
+     */
+    public boolean update(float w, float x, float y, float z)
+    {
+        return push(w, x, y, z, false);
+    }
+
+    /**
+     * Copies the reference orientation into a MutableQuaternion
+     * @param dest the quaternion in which to store the reference
+     * @return dest
+     */
+    public MutableQuaternion getReference(MutableQuaternion dest)
+    {
+        return dest.set(rw, rx, ry, rz);
+    }
+
+    /**
+     * Calculates the angular distance between the previous reference and the reference, the
+     * change of the last event, as Quaternion.getDistanceChange does.
+     * @return the distance in radians, or NaN if there has been no event
+     */
+    public float getDistanceChange()
+    {
+        if (events == 0)
+            return Float.NaN;
+
+        // Sum in the same order as Quaternion.getDistanceChange does for each vector width
+        if (prevFourWide && refFourWide)
+            return 2 * angleMath.acos(px * rx + py * ry + pz * rz + pw * rw);
+
+        return 2 * angleMath.acos(pw * rw + px * rx + py * ry + pz * rz);
+    }
+
+    /**
+     * Calculates the Tait-Bryan angle change between the previous reference and the reference,
+     * the change of the last event, as OrientationTracker.getTaitBryanAngleChange does.
+     * @param res an array of 3 floats in which to store the change about x, y and z
+     * @return false, leaving res untouched, if there has been no event
+     */
+    public boolean getTaitBryanAngleChange(float[] res)
+    {
+        if (events == 0)
+            return false;
+
+        // Conjugate of the previous reference
+        float a0 = pw, a1 = -px, a2 = -py, a3 = -pz;
+
+        float q0 = -a1 * rx - a2 * ry - a3 * rz + a0 * rw;
+        float q1 =  a1 * rw + a2 * rz - a3 * ry + a0 * rx;
+        float q2 = -a1 * rz + a2 * rw + a3 * rx + a0 * ry;
+        float q3 =  a1 * ry - a2 * rx + a3 * rw + a0 * rz;
+
+        res[0] = angleMath.atan2(q2 * q3 + q0 * q1, 0.5 - (q1 * q1 + q2 * q2));
+        res[1] = angleMath.asin(-2.0 * (q1 * q3 - q0 * q2));
+        res[2] = angleMath.atan2(q1 * q2 + q0 * q3, 0.5 - (q2 * q2 + q3 * q3));
+        return true;
+    }
+
+    private boolean push(float w, float x, float y, float z, boolean fourWide)
+    {
+        if (samples++ == 0)
+        {
+            setReference(w, x, y, z, fourWide);
+            return false;
+        }
+
+        // q and -q are the same rotation, so the angle between them depends on |dot|
+        float dot = Math.abs(rw * w + rx * x + ry * y + rz * z);
+        if (dot >= (moving ? cosExit : cosEnter))
+        {
+            moving = false;
+            return false;
+        }
+
+        pw = rw;
+        px = rx;
+        py = ry;
+        pz = rz;
+        prevFourWide = refFourWide;
+        setReference(w, x, y, z, fourWide);
+
+        moving = true;
+        ++events;
+        return true;
+    }
+
+    private void setReference(float w, float x, float y, float z, boolean fourWide)
+    {
+        rw = w;
+        rx = x;
+        ry = y;
+        rz = z;
+        refFourWide = fourWide;
+    }
+}
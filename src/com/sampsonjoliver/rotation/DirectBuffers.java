@@ -0,0 +1,69 @@
+package com.sampsonjoliver.rotation;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/**
+ * Frees the memory of direct buffers immediately through sun.misc.Unsafe.invokeCleaner, which
+ * the jdk.unsupported module provides on Java 9 and later, instead of when the garbage collector
+ * reclaims them. Unsafe is looked up reflectively so that the library builds without the
+ * internal API warning, and still runs, freeing nothing, on a JVM without it.
+ */
+class DirectBuffers
+{
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static
+    {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try
+        {
+            Class<?> type = Class.forName("sun.misc.Unsafe");
+            Field field = type.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = type.getMethod("invokeCleaner", ByteBuffer.class);
+        }
+        catch (ReflectiveOperationException | RuntimeException e)
+        {
+            // Absent from the JVM, or jdk.unsupported is not in the module graph
+            unsafe = null;
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    /**
+     * Determine if free releases memory immediately
+     */
+    static boolean isAvailable()
+    {
+        return INVOKE_CLEANER != null;
+    }
+
+    /**
+     * Frees the memory of a direct buffer allocated by ByteBuffer.allocateDirect. The buffer, and
+     * every view of it, must not be used afterwards.
+     * @return false, leaving the memory to the garbage collector, if it could not be freed
+     */
+    static boolean free(ByteBuffer buffer)
+    {
+        if (INVOKE_CLEANER == null)
+            return false;
+
+        try
+        {
+            INVOKE_CLEANER.invoke(UNSAFE, buffer);
+            return true;
+        }
+        catch (IllegalAccessException | InvocationTargetException e)
+        {
+            return false;
+        }
+    }
+}
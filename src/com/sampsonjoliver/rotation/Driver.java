@@ -7,68 +7,9 @@ public class Driver
     public static void main(String[] args)
 	{
 		SimpleTest();
-        //RunEfficiencyBenchmark();
         //AccuracyBenchmark();
 	}
 
-    public static void RunEfficiencyBenchmark()
-    {
-        Scanner kb = new Scanner(System.in);
-        long[][][] res = new long[10][10][5];
-        long[][] average = new long[10][5];
-
-        // Get the results of the benchmark
-        for (int i = 0; i < 10; ++i)
-        {
-            for (int j = 0; j < 10; ++j)
-            {
-                res[i][j] = EfficiencyBenchmark((i+1) * 100000);
-            }
-        }
-
-        // Print the results
-        System.out.println();
-        System.out.println("Print the results?");
-        kb.next();
-
-        System.out.printf("%15s %15s %15s %15s %15s\n", "tb_qc", "tb_qf", "tb_m", "f_qc", "f_qf");
-        for (int i = 0; i < 10; ++i)
-        {
-            for (int j = 0; j < 10; ++j)
-            {
-                System.out.printf("%15d %15d %15d %15d %15d\n", res[i][j][0], res[i][j][1], res[i][j][2], res[i][j][3], res[i][j][4]);
-            }
-        }
-
-        // Calculate the average
-        for (int i = 0; i < 10; ++i)
-        {
-            // Sum the results for each benchmark
-            average[i] = new long[]{0,0,0,0,0};
-            for (int j = 0; j < 10; ++j)
-            {
-                for (int k = 0; k < 5; ++k)
-                {
-                    average[i][k] += res[i][j][k];
-                }
-            }
-            // Divide each sum by 10 to attain the average
-            for (int k = 0; k < 5; ++k)
-            {
-                average[i][k] /= 10;
-            }
-        }
-
-        System.out.println();
-        System.out.println("Print the average?");
-        kb.next();
-        System.out.printf("%15s %15s %15s %15s %15s\n", "tb_qc", "tb_qf", "tb_m", "f_qc", "f_qf");
-        for (int i = 0; i < 10; ++i)
-        {
-            System.out.printf("%15d %15d %15d %15d %15d\n", average[i][0], average[i][1], average[i][2], average[i][3], average[i][4]);
-        }
-    }
-
     public static void SimpleTest()
     {
         Scanner kb = new Scanner(System.in);
@@ -140,95 +81,6 @@ public class Driver
         }
     }
 
-    public static long[] EfficiencyBenchmark(int num)
-    {
-        //System.out.println();
-        //System.out.println("Generating " + num + " vectors...");
-        float[][] vecs = GenerateVectors(num);
-        //System.out.println("Done.\n");
-
-        float[] r1 = new float[16];
-        float[] r2 = new float[16];
-        float[] qf1 = new float[4];
-        float[] qf2 = new float[4];
-        float[] tb_delta = new float[3];
-        float f_delta;
-        Quaternion q1;
-        Quaternion q2;
-
-        long t0, t1;
-        long tb_qc, tb_qf, tb_m, f_qc, f_qf;
-
-        //System.out.println("Running Benchmark 1: Getting angular difference from vectors");
-
-        t0 = System.nanoTime();
-        for (int i = 1; i < num; ++i)
-        {
-            q1 = new Quaternion(vecs[i-1]);
-            q2 = new Quaternion(vecs[i]);
-            tb_delta = q1.Difference(q2).toTaitBryan();
-        }
-        t1 = System.nanoTime();
-
-        tb_qc = t1 - t0;
-
-        //System.out.println("Tait-Bryan angles using Quaternion classes calculated in " + tb_qc + "ns");
-
-        t0 = System.nanoTime();
-        for (int i = 1; i < num; ++i)
-        {
-            Quaternion.getQuaternionFromVector(qf1, vecs[i-1]);
-            Quaternion.getQuaternionFromVector(qf2, vecs[i]);
-            Quaternion.getTaitBryanAngleChange(tb_delta, vecs[i - 1], vecs[i]);
-        }
-        t1 = System.nanoTime();
-
-        tb_qf = t1 - t0;
-
-        //System.out.println("Tait-Bryan angles using Quaternion floats calculated in " + tb_qf + "ns");
-
-        t0 = System.nanoTime();
-        for (int i = 1; i < num; ++i)
-        {
-            RotationMatrix.getRotationMatrixFromVector(r1, vecs[i - 1]);
-            RotationMatrix.getRotationMatrixFromVector(r2, vecs[i]);
-            RotationMatrix.getAngleChange(tb_delta, r1, r2);
-        }
-        t1 = System.nanoTime();
-
-        tb_m = t1 - t0;
-
-        //System.out.println("Tait-Bryan angles using Matrices calculated in " + tb_m + "ns");
-
-        t0 = System.nanoTime();
-        for (int i = 1; i < num; ++i)
-        {
-            q1 = new Quaternion(vecs[i-1]);
-            q2 = new Quaternion(vecs[i]);
-            f_delta = q1.Distance(q2);
-        }
-        t1 = System.nanoTime();
-
-        f_qc = t1 - t0;
-
-        //System.out.println("Flexion angle using Quaternion classes calculated in " + f_qc + "ns");
-
-        t0 = System.nanoTime();
-        for (int i = 1; i < num; ++i)
-        {
-            Quaternion.getQuaternionFromVector(qf1, vecs[i - 1]);
-            Quaternion.getQuaternionFromVector(qf2, vecs[i]);
-            f_delta = Quaternion.getDistanceChange(vecs[i - 1], vecs[i]);
-        }
-        t1 = System.nanoTime();
-
-        f_qf = t1 - t0;
-
-        //System.out.println("Flexion angle using Quaternion floats calculated in " + f_qf + "ns");
-
-        return new long[]{tb_qc, tb_qf, tb_m, f_qc, f_qf};
-    }
-
     public static void AccuracyBenchmark()
     {
 
@@ -0,0 +1,161 @@
+package com.sampsonjoliver.rotation;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A preallocated, lock-free ring of fixed-width float slots for exactly one producer thread and
+ * one consumer thread. Each slot holds a long stamp, such as a timestamp, and slotWidth floats.
+ * <p>Values are copied into and out of the ring, so neither side allocates. offer and poll never
+ * block; put and take wait with the ring's WaitStrategy.
+ */
+public class FloatRing
+{
+    private final float[] values;
+    private final long[] stamps;
+    private final int slotWidth;
+    private final int mask;
+    private final WaitStrategy waitStrategy;
+
+    // Next sequence to read, written only by the consumer
+    private final AtomicLong head = new AtomicLong();
+    // Next sequence to write, written only by the producer
+    private final AtomicLong tail = new AtomicLong();
+
+    // Each side's last view of the other side's sequence, to avoid reading it on every call
+    private long cachedHead;
+    private long cachedTail;
+    private long polledStamp;
+
+    /**
+     * Creates a new FloatRing.
+     * @param capacity the number of slots, a power of two
+     * @param slotWidth the number of floats in each slot
+     * @param waitStrategy how put and take wait
+     */
+    public FloatRing(int capacity, int slotWidth, WaitStrategy waitStrategy)
+    {
+        if (capacity < 1 || Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("capacity must be a power of two, not " + capacity);
+        if (slotWidth < 1)
+            throw new IllegalArgumentException("slotWidth must be positive, not " + slotWidth);
+
+        this.values = new float[capacity * slotWidth];
+        this.stamps = new long[capacity];
+        this.slotWidth = slotWidth;
+        this.mask = capacity - 1;
+        this.waitStrategy = waitStrategy;
+    }
+
+    /**
+     * Get the number of slots in the ring
+     * @return the capacity
+     */
+    public int capacity()
+    {
+        return mask + 1;
+    }
+
+    /**
+     * Get the number of floats in each slot
+     * @return the slot width
+     */
+    public int slotWidth()
+    {
+        return slotWidth;
+    }
+
+    /**
+     * Get the number of slots currently filled. Only an estimate while both sides are running.
+     * @return the number of filled slots
+     */
+    public int size()
+    {
+        return (int)(tail.get() - head.get());
+    }
+
+    /**
+     * Copies a slot into the ring if there is space. Producer thread only.
+     * @param stamp the stamp of the slot
+     * @param src exactly slotWidth() floats to copy into the slot
+     * @return false if the ring is full
+     */
+    public boolean offer(long stamp, float[] src)
+    {
+        if (src.length != slotWidth)
+            throw new IllegalArgumentException("slot has " + slotWidth + " floats, not " + src.length);
+
+        long t = tail.get();
+        if (t - cachedHead > mask)
+        {
+            cachedHead = head.get();
+            if (t - cachedHead > mask)
+                return false;
+        }
+
+        int slot = (int)t & mask;
+        stamps[slot] = stamp;
+        System.arraycopy(src, 0, values, slot * slotWidth, slotWidth);
+
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Copies a slot into the ring, waiting for space if it is full. Producer thread only.
+     * @param stamp the stamp of the slot
+     * @param src exactly slotWidth() floats to copy into the slot
+     */
+    public void put(long stamp, float[] src)
+    {
+        while (!offer(stamp, src))
+        {
+            waitStrategy.idle();
+        }
+    }
+
+    /**
+     * Copies the oldest slot out of the ring if there is one. Consumer thread only.
+     * @param dest an array of at least slotWidth() floats
+     * @return false if the ring is empty
+     */
+    public boolean poll(float[] dest)
+    {
+        long h = head.get();
+        if (h >= cachedTail)
+        {
+            cachedTail = tail.get();
+            if (h >= cachedTail)
+                return false;
+        }
+
+        int slot = (int)h & mask;
+        polledStamp = stamps[slot];
+        System.arraycopy(values, slot * slotWidth, dest, 0, slotWidth);
+
+        head.lazySet(h + 1);
+        return true;
+    }
+
+    /**
+     * Copies the oldest slot out of the ring, waiting for one if it is empty. Consumer thread only.
+     * @param dest an array of at least slotWidth() floats
+     * @return the stamp of the slot
+     */
+    public long take(float[] dest)
+    {
+        while (!poll(dest))
+        {
+            waitStrategy.idle();
+        }
+        return polledStamp;
+    }
+
+    /**
+     * Get the stamp of the slot most recently returned by poll or take. Consumer thread only.
+     * @return the stamp
+     */
+    public long getPolledStamp()
+    {
+        return polledStamp;
+    }
+}
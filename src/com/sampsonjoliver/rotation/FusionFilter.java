@@ -0,0 +1,470 @@
+package com.sampsonjoliver.rotation;
+
+/**
+ * Fuses raw gyroscope, accelerometer and optional magnetometer samples into an orientation
+ * quaternion for each of many devices, with Madgwick's gradient-descent filter or Mahony's
+ * complementary filter.
+ * <p>The orientation of every device is held in packed arrays, structure-of-arrays across
+ * devices, and updated in place; no method allocates. updateAll advances every device by one
+ * sample from packed input arrays in a single pass, and update advances one device.
+ * <p>The filters estimate orientations that rotate sensor-frame vectors into a north-west-up
+ * (NWU) earth frame: x to magnetic north, y to the west and z up. getQuaternion and
+ * setQuaternion work in this frame. An Android rotation vector is instead relative to an
+ * east-north-up (ENU) frame, so getRotationVector and getQuaternions rotate the orientation by
+ * 90 degrees about z into ENU. Their results feed straight into getQuaternionFromVector,
+ * getRotationMatrixFromVector, OrientationTracker, QuaternionBuffer and the other angle-change
+ * functions, with the same absolute orientation as a ROTATION_VECTOR sensor. Gyroscope rates are
+ * in radians per second; accelerometer and magnetometer samples may be in any units, as only
+ * their directions are used. A zero accelerometer sample skips the correction step, and a zero
+ * magnetometer sample, or updating without one, corrects roll and pitch only.
+ */
+public class FusionFilter
+{
+    /**
+     * A fusion algorithm
+     */
+    public enum Algorithm
+    {
+        /**
+         * Madgwick's gradient-descent filter; gain is beta, the gyroscope error in rad/s
+         */
+        MADGWICK,
+        /**
+         * Mahony's complementary filter; gain is the proportional gain Kp, and integralGain
+         * Ki corrects gyroscope bias
+         */
+        MAHONY
+    }
+
+    /**
+     * The default Madgwick gain
+     */
+    public static final float DEFAULT_BETA = 0.1f;
+
+    // cos and sin of 45 degrees, the half angle of the NWU to ENU rotation about z
+    private static final float HALF_SQRT2 = (float)Math.sqrt(0.5);
+
+    /**
+     * The default Mahony proportional gain
+     */
+    public static final float DEFAULT_KP = 1.0f;
+
+    private final Algorithm algorithm;
+    private final float gain;
+    private final float integralGain;
+    private final float[] qw, qx, qy, qz;
+    // Mahony's integral feedback, scaled by 2
+    private final float[] ix, iy, iz;
+
+    /**
+     * Creates a new FusionFilter with the default gain of the algorithm and no integral
+     * feedback. Every device starts at the identity orientation.
+     * @param devices the number of devices
+     * @param algorithm the fusion algorithm
+     */
+    public FusionFilter(int devices, Algorithm algorithm)
+    {
+        this(devices, algorithm, algorithm == Algorithm.MADGWICK ? DEFAULT_BETA : DEFAULT_KP, 0);
+    }
+
+    /**
+     * Creates a new FusionFilter. Every device starts at the identity orientation.
+     * @param devices the number of devices
+     * @param algorithm the fusion algorithm
+     * @param gain beta for MADGWICK, or Kp for MAHONY
+     * @param integralGain Ki for MAHONY; must be 0 for MADGWICK
+     */
+    public FusionFilter(int devices, Algorithm algorithm, float gain, float integralGain)
+    {
+        if (devices < 0)
+            throw new IllegalArgumentException("devices must not be negative, not " + devices);
+        if (gain < 0 || integralGain < 0)
+            throw new IllegalArgumentException("gains must not be negative");
+        if (algorithm == Algorithm.MADGWICK && integralGain != 0)
+            throw new IllegalArgumentException("MADGWICK has no integral gain");
+
+        this.algorithm = algorithm;
+        this.gain = gain;
+        this.integralGain = integralGain;
+        this.qw = new float[devices];
+        this.qx = new float[devices];
+        this.qy = new float[devices];
+        this.qz = new float[devices];
+        this.ix = new float[devices];
+        this.iy = new float[devices];
+        this.iz = new float[devices];
+        reset();
+    }
+
+    /**
+     * Get the number of devices
+     * @return the number of devices
+     */
+    public int size()
+    {
+        return qw.length;
+    }
+
+    /**
+     * Get the fusion algorithm
+     * @return the algorithm
+     */
+    public Algorithm getAlgorithm()
+    {
+        return algorithm;
+    }
+
+    /**
+     * Returns every device to the identity orientation and clears any integral feedback.
+     */
+    public void reset()
+    {
+        for (int i = 0; i < qw.length; ++i)
+            reset(i);
+    }
+
+    /**
+     * Returns a device to the identity orientation and clears its integral feedback.
+     * @param device the index of the device
+     */
+    public void reset(int device)
+    {
+        setQuaternion(device, 1, 0, 0, 0);
+    }
+
+    /**
+     * Sets the orientation of a device relative to the NWU frame, such as an initial estimate,
+     * and clears its integral feedback.
+     * @param device the index of the device
+     * @param w the real-valued scalar part of the Quaternion
+     * @param x the x-component of the complex vector part of the Quaternion
+     * @param y the y-component of the complex vector part of the Quaternion
+     * @param z the z-component of the complex vector part of the Quaternion
+     */
+    public void setQuaternion(int device, float w, float x, float y, float z)
+    {
+        checkDevice(device);
+        qw[device] = w;
+        qx[device] = x;
+        qy[device] = y;
+        qz[device] = z;
+        ix[device] = 0;
+        iy[device] = 0;
+        iz[device] = 0;
+    }
+
+    /**
+     * Copies the orientation of a device, relative to the NWU frame, into a MutableQuaternion
+     * @param device the index of the device
+     * @param dest the quaternion in which to store the orientation
+     * @return dest
+     */
+    public MutableQuaternion getQuaternion(int device, MutableQuaternion dest)
+    {
+        checkDevice(device);
+        return dest.set(qw[device], qx[device], qy[device], qz[device]);
+    }
+
+    /**
+     * Converts the orientation of a device to a rotation vector relative to the ENU frame,
+     * expressed as [x,y,z] or [x,y,z,w] as an Android ROTATION_VECTOR sensor reports it. A
+     * 3-wide vector is taken from the quaternion with a non-negative w, the same rotation, so
+     * that getQuaternionFromVector recovers it.
+     * @param device the index of the device
+     * @param rv an array of 3 or 4 floats in which to store the rotation vector
+     * @return rv
+     */
+    public float[] getRotationVector(int device, float[] rv)
+    {
+        checkDevice(device);
+        float w = qw[device], x = qx[device], y = qy[device], z = qz[device];
+
+        // (cos 45, 0, 0, sin 45) * q, turning north from x to y
+        float ew = HALF_SQRT2 * (w - z);
+        float ex = HALF_SQRT2 * (x - y);
+        float ey = HALF_SQRT2 * (y + x);
+        float ez = HALF_SQRT2 * (z + w);
+
+        float s = (rv.length == 3 && ew < 0) ? -1 : 1;
+        rv[0] = s * ex;
+        rv[1] = s * ey;
+        rv[2] = s * ez;
+        if (rv.length > 3)
+            rv[3] = ew;
+        return rv;
+    }
+
+    /**
+     * Copies the orientation of every device relative to the ENU frame, as getRotationVector
+     * converts it, into a QuaternionBuffer at the index of the device.
+     * @param dest a buffer of at least size() capacity, whose size is set to size()
+     */
+    public void getQuaternions(QuaternionBuffer dest)
+    {
+        int n = qw.length;
+        dest.setSize(n);
+
+        float[] dw = dest.getW(), dx = dest.getX(), dy = dest.getY(), dz = dest.getZ();
+        for (int i = 0; i < n; ++i)
+        {
+            float w = qw[i], x = qx[i], y = qy[i], z = qz[i];
+            dw[i] = HALF_SQRT2 * (w - z);
+            dx[i] = HALF_SQRT2 * (x - y);
+            dy[i] = HALF_SQRT2 * (y + x);
+            dz[i] = HALF_SQRT2 * (z + w);
+        }
+    }
+
+    /**
+     * Fuses one gyroscope and accelerometer sample of a device, correcting roll and pitch.
+     * @param device the index of the device
+     * @param gx the angular rate about x in radians per second
+     * @param gy the angular rate about y in radians per second
+     * @param gz the angular rate about z in radians per second
+     * @param ax the acceleration along x
+     * @param ay the acceleration along y
+     * @param az the acceleration along z
+     * @param dt the time since the previous sample in seconds
+     */
+    public void update(int device, float gx, float gy, float gz, float ax, float ay, float az, float dt)
+    {
+        update(device, gx, gy, gz, ax, ay, az, 0, 0, 0, dt);
+    }
+
+    /**
+     * Fuses one gyroscope, accelerometer and magnetometer sample of a device.
+     * @param device the index of the device
+     * @param gx the angular rate about x in radians per second
+     * @param gy the angular rate about y in radians per second
+     * @param gz the angular rate about z in radians per second
+     * @param ax the acceleration along x
+     * @param ay the acceleration along y
+     * @param az the acceleration along z
+     * @param mx the magnetic field along x
+     * @param my the magnetic field along y
+     * @param mz the magnetic field along z
+     * @param dt the time since the previous sample in seconds
+     */
+    public void update(int device, float gx, float gy, float gz, float ax, float ay, float az,
+            float mx, float my, float mz, float dt)
+    {
+        checkDevice(device);
+        if (algorithm == Algorithm.MADGWICK)
+            madgwick(device, gx, gy, gz, ax, ay, az, mx, my, mz, dt);
+        else
+            mahony(device, gx, gy, gz, ax, ay, az, mx, my, mz, dt);
+    }
+
+    /**
+     * Fuses one sample of every device.
+     * @param gyro the angular rates of every device, as consecutive [x, y, z] in radians per
+     *             second, of at least 3 * size() floats
+     * @param accel the accelerations of every device as consecutive [x, y, z], of at least
+     *              3 * size() floats
+     * @param mag the magnetic fields of every device as consecutive [x, y, z], of at least
+     *            3 * size() floats, or null to correct roll and pitch only
+     * @param dt the time since the previous samples in seconds
+     */
+    public void updateAll(float[] gyro, float[] accel, float[] mag, float dt)
+    {
+        int n = qw.length;
+        if (gyro.length < 3 * n || accel.length < 3 * n || (mag != null && mag.length < 3 * n))
+            throw new IndexOutOfBoundsException("sample arrays must hold at least " + 3 * n + " floats");
+
+        // One loop per algorithm keeps each loop body monomorphic
+        if (algorithm == Algorithm.MADGWICK)
+        {
+            for (int i = 0, j = 0; i < n; ++i, j += 3)
+            {
+                if (mag != null)
+                    madgwick(i, gyro[j], gyro[j + 1], gyro[j + 2], accel[j], accel[j + 1], accel[j + 2], mag[j], mag[j + 1], mag[j + 2], dt);
+                else
+                    madgwick(i, gyro[j], gyro[j + 1], gyro[j + 2], accel[j], accel[j + 1], accel[j + 2], 0, 0, 0, dt);
+            }
+        }
+        else
+        {
+            for (int i = 0, j = 0; i < n; ++i, j += 3)
+            {
+                if (mag != null)
+                    mahony(i, gyro[j], gyro[j + 1], gyro[j + 2], accel[j], accel[j + 1], accel[j + 2], mag[j], mag[j + 1], mag[j + 2], dt);
+                else
+                    mahony(i, gyro[j], gyro[j + 1], gyro[j + 2], accel[j], accel[j + 1], accel[j + 2], 0, 0, 0, dt);
+            }
+        }
+    }
+
+    private void madgwick(int i, float gx, float gy, float gz, float ax, float ay, float az,
+            float mx, float my, float mz, float dt)
+    {
+        float q0 = qw[i], q1 = qx[i], q2 = qy[i], q3 = qz[i];
+
+        // Rate of change of the quaternion from the gyroscope, q * (0, rate) / 2
+        float qDot0 = 0.5f * (-q1 * gx - q2 * gy - q3 * gz);
+        float qDot1 = 0.5f * ( q0 * gx + q2 * gz - q3 * gy);
+        float qDot2 = 0.5f * ( q0 * gy - q1 * gz + q3 * gx);
+        float qDot3 = 0.5f * ( q0 * gz + q1 * gy - q2 * gx);
+
+        float aNorm = ax * ax + ay * ay + az * az;
+        if (aNorm > 0)
+        {
+            float r = 1 / (float)Math.sqrt(aNorm);
+            ax *= r;
+            ay *= r;
+            az *= r;
+
+            float _2q0 = 2 * q0, _2q1 = 2 * q1, _2q2 = 2 * q2, _2q3 = 2 * q3;
+            float q0q0 = q0 * q0, q1q1 = q1 * q1, q2q2 = q2 * q2, q3q3 = q3 * q3;
+            float s0, s1, s2, s3;
+
+            float mNorm = mx * mx + my * my + mz * mz;
+            if (mNorm > 0)
+            {
+                r = 1 / (float)Math.sqrt(mNorm);
+                mx *= r;
+                my *= r;
+                mz *= r;
+
+                float _2q0mx = _2q0 * mx, _2q0my = _2q0 * my, _2q0mz = _2q0 * mz, _2q1mx = _2q1 * mx;
+                float _2q0q2 = _2q0 * q2, _2q2q3 = _2q2 * q3;
+                float q0q1 = q0 * q1, q0q2 = q0 * q2, q0q3 = q0 * q3;
+                float q1q2 = q1 * q2, q1q3 = q1 * q3, q2q3 = q2 * q3;
+
+                // Direction of the earth's magnetic field in the earth frame, as [bx, 0, bz]
+                float hx = mx * q0q0 - _2q0my * q3 + _2q0mz * q2 + mx * q1q1 + _2q1 * my * q2 + _2q1 * mz * q3 - mx * q2q2 - mx * q3q3;
+                float hy = _2q0mx * q3 + my * q0q0 - _2q0mz * q1 + _2q1mx * q2 - my * q1q1 + my * q2q2 + _2q2 * mz * q3 - my * q3q3;
+                float _2bx = (float)Math.sqrt(hx * hx + hy * hy);
+                float _2bz = -_2q0mx * q2 + _2q0my * q1 + mz * q0q0 + _2q1mx * q3 - mz * q1q1 + _2q2 * my * q3 - mz * q2q2 + mz * q3q3;
+                float _4bx = 2 * _2bx, _4bz = 2 * _2bz;
+
+                // Residuals of the gravity and magnetic field directions
+                float fax = 2 * q1q3 - _2q0q2 - ax;
+                float fay = 2 * q0q1 + _2q2q3 - ay;
+                float faz = 1 - 2 * q1q1 - 2 * q2q2 - az;
+                float fmx = _2bx * (0.5f - q2q2 - q3q3) + _2bz * (q1q3 - q0q2) - mx;
+                float fmy = _2bx * (q1q2 - q0q3) + _2bz * (q0q1 + q2q3) - my;
+                float fmz = _2bx * (q0q2 + q1q3) + _2bz * (0.5f - q1q1 - q2q2) - mz;
+
+                // Gradient of the objective function
+                s0 = -_2q2 * fax + _2q1 * fay - _2bz * q2 * fmx + (-_2bx * q3 + _2bz * q1) * fmy + _2bx * q2 * fmz;
+                s1 = _2q3 * fax + _2q0 * fay - 4 * q1 * faz + _2bz * q3 * fmx + (_2bx * q2 + _2bz * q0) * fmy + (_2bx * q3 - _4bz * q1) * fmz;
+                s2 = -_2q0 * fax + _2q3 * fay - 4 * q2 * faz + (-_4bx * q2 - _2bz * q0) * fmx + (_2bx * q1 + _2bz * q3) * fmy + (_2bx * q0 - _4bz * q2) * fmz;
+                s3 = _2q1 * fax + _2q2 * fay + (-_4bx * q3 + _2bz * q1) * fmx + (-_2bx * q0 + _2bz * q2) * fmy + _2bx * q1 * fmz;
+            }
+            else
+            {
+                float _4q0 = 4 * q0, _4q1 = 4 * q1, _4q2 = 4 * q2, _8q1 = 8 * q1, _8q2 = 8 * q2;
+
+                // Gradient of the objective function for gravity alone
+                s0 = _4q0 * q2q2 + _2q2 * ax + _4q0 * q1q1 - _2q1 * ay;
+                s1 = _4q1 * q3q3 - _2q3 * ax + 4 * q0q0 * q1 - _2q0 * ay - _4q1 + _8q1 * q1q1 + _8q1 * q2q2 + _4q1 * az;
+                s2 = 4 * q0q0 * q2 + _2q0 * ax + _4q2 * q3q3 - _2q3 * ay - _4q2 + _8q2 * q1q1 + _8q2 * q2q2 + _4q2 * az;
+                s3 = 4 * q1q1 * q3 - _2q1 * ax + 4 * q2q2 * q3 - _2q2 * ay;
+            }
+
+            // A zero gradient means the estimate already fits the measurements
+            float sNorm = s0 * s0 + s1 * s1 + s2 * s2 + s3 * s3;
+            if (sNorm > 0)
+            {
+                float b = gain / (float)Math.sqrt(sNorm);
+                qDot0 -= b * s0;
+                qDot1 -= b * s1;
+                qDot2 -= b * s2;
+                qDot3 -= b * s3;
+            }
+        }
+
+        store(i, q0 + qDot0 * dt, q1 + qDot1 * dt, q2 + qDot2 * dt, q3 + qDot3 * dt);
+    }
+
+    private void mahony(int i, float gx, float gy, float gz, float ax, float ay, float az,
+            float mx, float my, float mz, float dt)
+    {
+        float q0 = qw[i], q1 = qx[i], q2 = qy[i], q3 = qz[i];
+
+        float aNorm = ax * ax + ay * ay + az * az;
+        if (aNorm > 0)
+        {
+            float r = 1 / (float)Math.sqrt(aNorm);
+            ax *= r;
+            ay *= r;
+            az *= r;
+
+            float q0q0 = q0 * q0, q0q1 = q0 * q1, q0q2 = q0 * q2, q0q3 = q0 * q3;
+            float q1q1 = q1 * q1, q1q2 = q1 * q2, q1q3 = q1 * q3;
+            float q2q2 = q2 * q2, q2q3 = q2 * q3, q3q3 = q3 * q3;
+
+            // Estimated direction of gravity, halved, and its error against the measurement
+            float vx = q1q3 - q0q2;
+            float vy = q0q1 + q2q3;
+            float vz = q0q0 - 0.5f + q3q3;
+            float ex = ay * vz - az * vy;
+            float ey = az * vx - ax * vz;
+            float ez = ax * vy - ay * vx;
+
+            float mNorm = mx * mx + my * my + mz * mz;
+            if (mNorm > 0)
+            {
+                r = 1 / (float)Math.sqrt(mNorm);
+                mx *= r;
+                my *= r;
+                mz *= r;
+
+                // Direction of the earth's magnetic field in the earth frame, as [bx, 0, bz]
+                float hx = 2 * (mx * (0.5f - q2q2 - q3q3) + my * (q1q2 - q0q3) + mz * (q1q3 + q0q2));
+                float hy = 2 * (mx * (q1q2 + q0q3) + my * (0.5f - q1q1 - q3q3) + mz * (q2q3 - q0q1));
+                float bx = (float)Math.sqrt(hx * hx + hy * hy);
+                float bz = 2 * (mx * (q1q3 - q0q2) + my * (q2q3 + q0q1) + mz * (0.5f - q1q1 - q2q2));
+
+                // Estimated direction of the magnetic field, halved, and its error
+                float wx = bx * (0.5f - q2q2 - q3q3) + bz * (q1q3 - q0q2);
+                float wy = bx * (q1q2 - q0q3) + bz * (q0q1 + q2q3);
+                float wz = bx * (q0q2 + q1q3) + bz * (0.5f - q1q1 - q2q2);
+                ex += my * wz - mz * wy;
+                ey += mz * wx - mx * wz;
+                ez += mx * wy - my * wx;
+            }
+
+            if (integralGain > 0)
+            {
+                float k = 2 * integralGain * dt;
+                ix[i] += k * ex;
+                iy[i] += k * ey;
+                iz[i] += k * ez;
+                gx += ix[i];
+                gy += iy[i];
+                gz += iz[i];
+            }
+
+            float k = 2 * gain;
+            gx += k * ex;
+            gy += k * ey;
+            gz += k * ez;
+        }
+
+        float h = 0.5f * dt;
+        gx *= h;
+        gy *= h;
+        gz *= h;
+        store(i,
+            q0 + (-q1 * gx - q2 * gy - q3 * gz),
+            q1 + ( q0 * gx + q2 * gz - q3 * gy),
+            q2 + ( q0 * gy - q1 * gz + q3 * gx),
+            q3 + ( q0 * gz + q1 * gy - q2 * gx));
+    }
+
+    private void store(int i, float w, float x, float y, float z)
+    {
+        float r = 1 / (float)Math.sqrt(w * w + x * x + y * y + z * z);
+        qw[i] = w * r;
+        qx[i] = x * r;
+        qy[i] = y * r;
+        qz[i] = z * r;
+    }
+
+    private void checkDevice(int device)
+    {
+        if (device < 0 || device >= qw.length)
+            throw new IndexOutOfBoundsException("device " + device + " out of bounds for size " + qw.length);
+    }
+}
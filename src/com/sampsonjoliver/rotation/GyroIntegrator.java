@@ -0,0 +1,265 @@
+package com.sampsonjoliver.rotation;
+
+/**
+ * Integrates gyroscope angular rates into an orientation quaternion, held in preallocated state.
+ * <p>Rates are body-frame angular velocities [x, y, z] in radians per second, so the orientation
+ * follows dq/dt = q * (0, rate) / 2 and each step multiplies it on the right. Three methods are
+ * provided:
+ * <ul>
+ * <li>FIRST_ORDER adds dt * q * (0, rate) / 2 and renormalizes; the cheapest, with an error
+ * that grows with the square of the angle turned per step,</li>
+ * <li>EXPONENTIAL multiplies by Exp((0, rate * dt / 2)), which is exact while the rate is
+ * constant over the step,</li>
+ * <li>RK4 takes a fourth-order Runge-Kutta step with the rate interpolated linearly from the
+ * previous sample, which follows a rate that changes within the step.</li>
+ * </ul>
+ * The orientation is renormalized after every step. No method allocates.
+ */
+public class GyroIntegrator
+{
+    /**
+     * An integration method
+     */
+    public enum Method
+    {
+        FIRST_ORDER,
+        EXPONENTIAL,
+        RK4
+    }
+
+    private final Method method;
+    private float w = 1, x, y, z;
+    private float prevX, prevY, prevZ;
+    private boolean hasPrevious;
+    private long sampleCount;
+
+    /**
+     * Creates a new GyroIntegrator at the identity orientation.
+     * @param method the integration method
+     */
+    public GyroIntegrator(Method method)
+    {
+        this.method = method;
+    }
+
+    /**
+     * Get the integration method
+     * @return the method
+     */
+    public Method getMethod()
+    {
+        return method;
+    }
+
+    /**
+     * Get the number of samples integrated since construction or the last reset
+     * @return the number of samples
+     */
+    public long getSampleCount()
+    {
+        return sampleCount;
+    }
+
+    /**
+     * Copies the current orientation into a MutableQuaternion
+     * @param dest the quaternion in which to store the orientation
+     * @return dest
+     */
+    public MutableQuaternion getOrientation(MutableQuaternion dest)
+    {
+        return dest.set(w, x, y, z);
+    }
+
+    /**
+     * Sets the current orientation, such as an initial orientation from the accelerometer.
+     * @param w the real-valued scalar part of the Quaternion
+     * @param x the x-component of the complex vector part of the Quaternion
+     * @param y the y-component of the complex vector part of the Quaternion
+     * @param z the z-component of the complex vector part of the Quaternion
+     */
+    public void setOrientation(float w, float x, float y, float z)
+    {
+        this.w = w;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+    }
+
+    /**
+     * Returns to the identity orientation and forgets the previous rate.
+     */
+    public void reset()
+    {
+        setOrientation(1, 0, 0, 0);
+        hasPrevious = false;
+        sampleCount = 0;
+    }
+
+    /**
+     * Integrates one gyroscope sample.
+     * @param gx the angular rate about x in radians per second
+     * @param gy the angular rate about y in radians per second
+     * @param gz the angular rate about z in radians per second
+     * @param dt the time since the previous sample in seconds
+     */
+    public void update(float gx, float gy, float gz, float dt)
+    {
+        switch (method)
+        {
+            case FIRST_ORDER:
+                stepFirstOrder(gx, gy, gz, dt);
+                break;
+            case EXPONENTIAL:
+                stepExponential(gx, gy, gz, dt);
+                break;
+            default:
+                stepRk4(gx, gy, gz, dt);
+                break;
+        }
+
+        prevX = gx;
+        prevY = gy;
+        prevZ = gz;
+        hasPrevious = true;
+        ++sampleCount;
+    }
+
+    /**
+     * Integrates a packed array of gyroscope samples at a fixed rate.
+     * @param rates the samples as consecutive [x, y, z] angular rates in radians per second
+     * @param offset the index in rates of the first sample's x rate
+     * @param count the number of samples
+     * @param dt the time between samples in seconds
+     */
+    public void integrate(float[] rates, int offset, int count, float dt)
+    {
+        checkRange(rates, offset, count);
+
+        for (int i = 0, j = offset; i < count; ++i, j += 3)
+            update(rates[j], rates[j + 1], rates[j + 2], dt);
+    }
+
+    /**
+     * Integrates a packed array of gyroscope samples at a fixed rate, storing the orientation
+     * after each sample.
+     * @param rates the samples as consecutive [x, y, z] angular rates in radians per second
+     * @param offset the index in rates of the first sample's x rate
+     * @param count the number of samples
+     * @param dt the time between samples in seconds
+     * @param dest a buffer of at least count capacity in which to store the orientations, whose
+     *             size is set to count
+     */
+    public void integrate(float[] rates, int offset, int count, float dt, QuaternionBuffer dest)
+    {
+        checkRange(rates, offset, count);
+        if (dest.capacity() < count)
+            throw new IndexOutOfBoundsException("dest capacity " + dest.capacity() + " is less than " + count);
+
+        float[] dw = dest.getW(), dx = dest.getX(), dy = dest.getY(), dz = dest.getZ();
+        for (int i = 0, j = offset; i < count; ++i, j += 3)
+        {
+            update(rates[j], rates[j + 1], rates[j + 2], dt);
+            dw[i] = w;
+            dx[i] = x;
+            dy[i] = y;
+            dz[i] = z;
+        }
+        dest.setSize(count);
+    }
+
+    private void stepFirstOrder(float gx, float gy, float gz, float dt)
+    {
+        float h = 0.5f * dt;
+        float nw = w + h * (-x * gx - y * gy - z * gz);
+        float nx = x + h * ( w * gx + y * gz - z * gy);
+        float ny = y + h * ( w * gy - x * gz + z * gx);
+        float nz = z + h * ( w * gz + x * gy - y * gx);
+        normalize(nw, nx, ny, nz);
+    }
+
+    private void stepExponential(float gx, float gy, float gz, float dt)
+    {
+        // Exp((0, rate * dt / 2)) is the rotation by |rate| dt about rate
+        float h = 0.5f * dt;
+        double ax = gx * h, ay = gy * h, az = gz * h;
+        double a2 = ax * ax + ay * ay + az * az;
+        double a = Math.sqrt(a2);
+        float bw = (float)Quaternion.cosOf(a, a2);
+        float s = (float)Quaternion.sincOf(a, a2);
+        float bx = (float)(s * ax), by = (float)(s * ay), bz = (float)(s * az);
+
+        normalize(
+            -x * bx - y * by - z * bz + w * bw,
+             x * bw + y * bz - z * by + w * bx,
+            -x * bz + y * bw + z * bx + w * by,
+             x * by - y * bx + z * bw + w * bz);
+    }
+
+    private void stepRk4(float gx, float gy, float gz, float dt)
+    {
+        float ax = hasPrevious ? prevX : gx, ay = hasPrevious ? prevY : gy, az = hasPrevious ? prevZ : gz;
+        float mx = 0.5f * (ax + gx), my = 0.5f * (ay + gy), mz = 0.5f * (az + gz);
+        float h = 0.5f * dt;
+
+        // Each k is the derivative q * (0, rate) / 2, evaluated at the start, twice at the
+        // middle and at the end of the step
+        float k1w = 0.5f * (-x * ax - y * ay - z * az);
+        float k1x = 0.5f * ( w * ax + y * az - z * ay);
+        float k1y = 0.5f * ( w * ay - x * az + z * ax);
+        float k1z = 0.5f * ( w * az + x * ay - y * ax);
+
+        float qw = w + h * k1w, qx = x + h * k1x, qy = y + h * k1y, qz = z + h * k1z;
+        float k2w = 0.5f * (-qx * mx - qy * my - qz * mz);
+        float k2x = 0.5f * ( qw * mx + qy * mz - qz * my);
+        float k2y = 0.5f * ( qw * my - qx * mz + qz * mx);
+        float k2z = 0.5f * ( qw * mz + qx * my - qy * mx);
+
+        qw = w + h * k2w; qx = x + h * k2x; qy = y + h * k2y; qz = z + h * k2z;
+        float k3w = 0.5f * (-qx * mx - qy * my - qz * mz);
+        float k3x = 0.5f * ( qw * mx + qy * mz - qz * my);
+        float k3y = 0.5f * ( qw * my - qx * mz + qz * mx);
+        float k3z = 0.5f * ( qw * mz + qx * my - qy * mx);
+
+        qw = w + dt * k3w; qx = x + dt * k3x; qy = y + dt * k3y; qz = z + dt * k3z;
+        float k4w = 0.5f * (-qx * gx - qy * gy - qz * gz);
+        float k4x = 0.5f * ( qw * gx + qy * gz - qz * gy);
+        float k4y = 0.5f * ( qw * gy - qx * gz + qz * gx);
+        float k4z = 0.5f * ( qw * gz + qx * gy - qy * gx);
+
+        float d = dt / 6;
+        normalize(
+            w + d * (k1w + 2 * (k2w + k3w) + k4w),
+            x + d * (k1x + 2 * (k2x + k3x) + k4x),
+            y + d * (k1y + 2 * (k2y + k3y) + k4y),
+            z + d * (k1z + 2 * (k2z + k3z) + k4z));
+    }
+
+    /**
+     * Stores a new orientation, renormalized as MutableQuaternion.RenormalizeInto does.
+     */
+    private void normalize(float nw, float nx, float ny, float nz)
+    {
+        float e = 1 - (nw * nw + nx * nx + ny * ny + nz * nz);
+        float s;
+        if (Math.abs(e) > Quaternion.RENORMALIZE_LIMIT)
+        {
+            float n = (float)Math.sqrt(1 - e);
+            s = n > 0 ? 1 / n : 1;
+        }
+        else
+        {
+            s = Quaternion.renormalizeScale(e);
+        }
+
+        w = nw * s;
+        x = nx * s;
+        y = ny * s;
+        z = nz * s;
+    }
+
+    private static void checkRange(float[] rates, int offset, int count)
+    {
+        if (offset < 0 || count < 0 || offset + 3L * count > rates.length)
+            throw new IndexOutOfBoundsException("cannot read " + count + " samples at " + offset + " of " + rates.length);
+    }
+}
@@ -0,0 +1,504 @@
+package com.sampsonjoliver.rotation;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An embeddable server that receives rotation vector packets, in the format described by
+ * SensorPacket, from many devices over TCP and UDP, and reports the angle change of every sample
+ * after the first from each device to a Sink.
+ * <p>Each TCP connection is served by its own thread doing blocking reads, and UDP datagrams by
+ * a single receiving thread. On Java 21 and later these are virtual threads, so thousands of
+ * connections cost little more than their buffers; on earlier JVMs they are daemon platform
+ * threads.
+ * <p>A session is the state kept for one device id on one connection, or for one device id
+ * across all UDP datagrams: an OrientationTracker holding the previous sample. Results are the
+ * tracker's, so phi, theta and psi match Quaternion.getTaitBryanAngleChange for 3-wide vectors
+ * and the distance matches Quaternion.getDistanceChange. A TCP connection that sends a packet
+ * with an unsupported header is closed; a UDP datagram is dropped from its first unsupported
+ * packet on. Both are counted by getMalformedCount.
+ * <p>TCP sessions end with their connection. UDP sessions have no end, so one that has sent
+ * nothing for a minute is forgotten, and at most 65536 are kept: while that many are active, the
+ * samples of new devices are dropped and counted by getDroppedCount.
+ */
+public class IngestionServer implements AutoCloseable
+{
+    /**
+     * Receives the angle change of each sample.
+     */
+    public interface Sink
+    {
+        /**
+         * Called for every sample after the first from each session. Called concurrently from
+         * the threads of different connections, and in order for each session.
+         * @param deviceId the device id of the sample
+         * @param timestamp the timestamp of the sample
+         * @param angleChange the [phi, theta, psi] change from the previous sample of the
+         *                    session. The array is reused and is only valid for the duration of
+         *                    the call.
+         * @param distance the angular distance from the previous sample
+         */
+        void accept(int deviceId, long timestamp, float[] angleChange, float distance);
+    }
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final int DATAGRAM_SIZE = 65536;
+    // Absorbs bursts from many devices while the receiving thread catches up
+    private static final int UDP_RECEIVE_BUFFER = 1 << 22;
+    private static final long UDP_IDLE_NANOS = 60_000_000_000L;
+    private static final long UDP_SWEEP_NANOS = UDP_IDLE_NANOS / 4;
+    private static final int MAX_UDP_SESSIONS = 1 << 16;
+
+    private final Sink sink;
+    private final Set<SocketChannel> connections = ConcurrentHashMap.newKeySet();
+    private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong packets = new AtomicLong();
+    private final AtomicLong malformed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private ServerSocketChannel tcp;
+    private DatagramChannel udp;
+    private volatile boolean closed;
+
+    /**
+     * Creates a new IngestionServer. It receives nothing until bound.
+     * @param sink the receiver of the angle changes
+     */
+    public IngestionServer(Sink sink)
+    {
+        this.sink = sink;
+    }
+
+    /**
+     * Determine if connections are served by virtual threads
+     * @return true on Java 21 and later
+     */
+    public static boolean isVirtual()
+    {
+        return VirtualThreads.isAvailable();
+    }
+
+    /**
+     * Starts accepting TCP connections.
+     * @param address the address to listen on; port 0 picks a free port
+     * @return the bound address
+     * @throws IOException if the address cannot be bound
+     */
+    public synchronized InetSocketAddress bindTcp(InetSocketAddress address) throws IOException
+    {
+        checkBind(tcp, "TCP");
+        tcp = ServerSocketChannel.open();
+        tcp.bind(address, 1024);
+        start("ingestion-tcp-acceptor", new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                accept();
+            }
+        });
+        return (InetSocketAddress)tcp.getLocalAddress();
+    }
+
+    /**
+     * Starts receiving UDP datagrams.
+     * @param address the address to listen on; port 0 picks a free port
+     * @return the bound address
+     * @throws IOException if the address cannot be bound
+     */
+    public synchronized InetSocketAddress bindUdp(InetSocketAddress address) throws IOException
+    {
+        checkBind(udp, "UDP");
+        udp = DatagramChannel.open();
+        udp.setOption(StandardSocketOptions.SO_RCVBUF, UDP_RECEIVE_BUFFER);
+        udp.bind(address);
+        start("ingestion-udp", new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                receive();
+            }
+        });
+        return (InetSocketAddress)udp.getLocalAddress();
+    }
+
+    /**
+     * Get the number of TCP connections accepted
+     * @return the count
+     */
+    public long getAcceptedCount()
+    {
+        return accepted.get();
+    }
+
+    /**
+     * Get the number of TCP connections currently open
+     * @return the count
+     */
+    public int getConnectionCount()
+    {
+        return connections.size();
+    }
+
+    /**
+     * Get the number of well-formed packets received
+     * @return the count
+     */
+    public long getPacketCount()
+    {
+        return packets.get();
+    }
+
+    /**
+     * Get the number of TCP connections closed, and UDP datagrams dropped, for an unsupported
+     * packet header
+     * @return the count
+     */
+    public long getMalformedCount()
+    {
+        return malformed.get();
+    }
+
+    /**
+     * Get the number of UDP samples dropped because the maximum number of sessions were active
+     * @return the count
+     */
+    public long getDroppedCount()
+    {
+        return dropped.get();
+    }
+
+    /**
+     * Stops listening, closes every connection and waits for their threads to finish.
+     * @throws IOException if a channel fails to close
+     */
+    @Override
+    public void close() throws IOException
+    {
+        synchronized (this)
+        {
+            if (closed)
+                return;
+            closed = true;
+        }
+
+        if (tcp != null)
+            tcp.close();
+        if (udp != null)
+            udp.close();
+        for (SocketChannel connection : connections)
+            connection.close();
+
+        // The acceptor may start a last connection thread while it is being joined
+        try
+        {
+            while (!threads.isEmpty())
+            {
+                for (Thread thread : threads)
+                    thread.join();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void checkBind(Object channel, String protocol)
+    {
+        if (closed)
+            throw new IllegalStateException("server is closed");
+        if (channel != null)
+            throw new IllegalStateException(protocol + " is already bound");
+    }
+
+    private void start(String name, final Runnable task)
+    {
+        Runnable tracked = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    task.run();
+                }
+                finally
+                {
+                    threads.remove(Thread.currentThread());
+                }
+            }
+        };
+
+        // Registered before the thread runs, so that it is always removed when it finishes
+        Thread thread = VirtualThreads.newThread(name, tracked);
+        threads.add(thread);
+        thread.start();
+    }
+
+    private void accept()
+    {
+        while (!closed)
+        {
+            final SocketChannel connection;
+            try
+            {
+                connection = tcp.accept();
+            }
+            catch (IOException e)
+            {
+                // Closed by close(); any other failure also stops the acceptor
+                return;
+            }
+
+            accepted.incrementAndGet();
+            connections.add(connection);
+            if (closed)
+            {
+                closeQuietly(connection);
+                return;
+            }
+            start("ingestion-tcp-" + accepted.get(), new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    serve(connection);
+                }
+            });
+        }
+    }
+
+    private void serve(SocketChannel connection)
+    {
+        Sessions sessions = new Sessions(Integer.MAX_VALUE);
+        ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        try
+        {
+            connection.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            while (connection.read(buf) >= 0)
+            {
+                buf.flip();
+                boolean valid = decode(buf, sessions);
+                buf.compact();
+                if (!valid)
+                {
+                    malformed.incrementAndGet();
+                    break;
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            // The peer reset the connection, or close() closed it
+        }
+        finally
+        {
+            connections.remove(connection);
+            closeQuietly(connection);
+        }
+    }
+
+    private void receive()
+    {
+        Sessions sessions = new Sessions(MAX_UDP_SESSIONS);
+        ByteBuffer buf = ByteBuffer.allocate(DATAGRAM_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        long lastSweep = System.nanoTime();
+
+        while (!closed)
+        {
+            buf.clear();
+            try
+            {
+                udp.receive(buf);
+            }
+            catch (ClosedChannelException e)
+            {
+                return;
+            }
+            catch (IOException e)
+            {
+                continue;
+            }
+
+            long now = System.nanoTime();
+            sessions.now = now;
+            if (now - lastSweep >= UDP_SWEEP_NANOS)
+            {
+                sessions.evictIdle(now - UDP_IDLE_NANOS);
+                lastSweep = now;
+            }
+
+            buf.flip();
+            // A datagram holds whole packets, so a trailing fragment is malformed too
+            if (!decode(buf, sessions) || buf.hasRemaining())
+                malformed.incrementAndGet();
+        }
+    }
+
+    /**
+     * Processes every whole packet from the position of buf, leaving it at the start of the
+     * first incomplete packet.
+     * @return false, leaving buf at the packet, if a packet has an unsupported header
+     */
+    private boolean decode(ByteBuffer buf, Sessions sessions)
+    {
+        while (buf.hasRemaining())
+        {
+            int p = buf.position();
+            int size = SensorPacket.sizeOf(buf.get(p));
+            if (size < 0)
+                return false;
+            if (buf.remaining() < size)
+                return true;
+
+            int deviceId = buf.getInt(p + SensorPacket.DEVICE_OFFSET);
+            long timestamp = buf.getLong(p + SensorPacket.TIMESTAMP_OFFSET);
+            float[] rv = size == SensorPacket.size(3) ? sessions.rv3 : sessions.rv4;
+            for (int k = 0; k < rv.length; ++k)
+                rv[k] = buf.getFloat(p + SensorPacket.HEADER_SIZE + 4 * k);
+            buf.position(p + size);
+
+            packets.incrementAndGet();
+            sessions.update(deviceId, timestamp, rv);
+        }
+        return true;
+    }
+
+    private static void closeQuietly(SocketChannel connection)
+    {
+        try
+        {
+            connection.close();
+        }
+        catch (IOException e)
+        {
+            // Nothing more can be done with it
+        }
+    }
+
+    /**
+     * The sessions of one connection, or of the UDP receiver, with scratch arrays for its
+     * thread. Trackers are kept in an open-addressed table keyed by device id, so that looking
+     * one up does not box the id.
+     */
+    private class Sessions
+    {
+        private final int maxSessions;
+        private int[] ids = new int[16];
+        private OrientationTracker[] trackers = new OrientationTracker[16];
+        private long[] lastSeen = new long[16];
+        private int count;
+        // The time given to sessions updated from now on, set by the UDP receiver
+        private long now;
+
+        private final float[] rv3 = new float[3];
+        private final float[] rv4 = new float[4];
+        private final float[] tb = new float[3];
+
+        Sessions(int maxSessions)
+        {
+            this.maxSessions = maxSessions;
+        }
+
+        void update(int deviceId, long timestamp, float[] rv)
+        {
+            int i = slotOf(deviceId);
+            OrientationTracker tracker = trackers[i];
+            if (tracker == null)
+            {
+                if (count >= maxSessions)
+                {
+                    dropped.incrementAndGet();
+                    return;
+                }
+                if (2 * (count + 1) > trackers.length)
+                {
+                    rebuild(2 * trackers.length, false, 0);
+                    i = slotOf(deviceId);
+                }
+                tracker = new OrientationTracker();
+                ids[i] = deviceId;
+                trackers[i] = tracker;
+                ++count;
+            }
+            lastSeen[i] = now;
+
+            tracker.update(rv);
+            if (tracker.getTaitBryanAngleChange(tb))
+                sink.accept(deviceId, timestamp, tb, tracker.getDistanceChange());
+        }
+
+        /**
+         * Forgets every session last updated before a time, shrinking the table to fit the rest.
+         * @param before the System.nanoTime before which a session is idle
+         */
+        void evictIdle(long before)
+        {
+            int live = 0;
+            for (int k = 0; k < trackers.length; ++k)
+            {
+                if (trackers[k] != null && lastSeen[k] - before >= 0)
+                    ++live;
+            }
+            if (live == count)
+                return;
+
+            int capacity = 16;
+            while (2 * live > capacity)
+                capacity *= 2;
+            rebuild(capacity, true, before);
+        }
+
+        /**
+         * Moves every session into a table of a capacity, leaving out those last updated before
+         * a time if evicting.
+         */
+        private void rebuild(int capacity, boolean evict, long before)
+        {
+            int[] oldIds = ids;
+            OrientationTracker[] oldTrackers = trackers;
+            long[] oldLastSeen = lastSeen;
+
+            ids = new int[capacity];
+            trackers = new OrientationTracker[capacity];
+            lastSeen = new long[capacity];
+            count = 0;
+            for (int k = 0; k < oldTrackers.length; ++k)
+            {
+                if (oldTrackers[k] == null || (evict && oldLastSeen[k] - before < 0))
+                    continue;
+                int i = slotOf(oldIds[k]);
+                ids[i] = oldIds[k];
+                trackers[i] = oldTrackers[k];
+                lastSeen[i] = oldLastSeen[k];
+                ++count;
+            }
+        }
+
+        /**
+         * Finds the slot holding an id, or the empty slot where it belongs.
+         */
+        private int slotOf(int deviceId)
+        {
+            int mask = trackers.length - 1;
+            int h = deviceId * 0x9E3779B9;
+            int i = (h ^ h >>> 16) & mask;
+            while (trackers[i] != null && ids[i] != deviceId)
+                i = (i + 1) & mask;
+            return i;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.sampsonjoliver.rotation;
+
+/**
+ * A QuaternionEngine that records the latency of every call to another engine in
+ * RotationMetrics. Only created when metrics are enabled.
+ */
+class InstrumentedQuaternionEngine implements QuaternionEngine
+{
+    static final QuaternionEngine SCALAR = new InstrumentedQuaternionEngine(ScalarQuaternionEngine.INSTANCE);
+
+    private static final RotationMetrics.Stage STAGE = RotationMetrics.Stage.QUATERNION_ENGINE;
+
+    private final QuaternionEngine engine;
+
+    InstrumentedQuaternionEngine(QuaternionEngine engine)
+    {
+        this.engine = engine;
+    }
+
+    @Override
+    public boolean isVectorized()
+    {
+        return engine.isVectorized();
+    }
+
+    @Override
+    public void getProducts(QuaternionBuffer dest, QuaternionBuffer a, QuaternionBuffer b)
+    {
+        long start = RotationMetrics.start();
+        engine.getProducts(dest, a, b);
+        RotationMetrics.end(STAGE, "getProducts", start, dest.size());
+    }
+
+    @Override
+    public void getDifferences(QuaternionBuffer dest, QuaternionBuffer src)
+    {
+        long start = RotationMetrics.start();
+        engine.getDifferences(dest, src);
+        RotationMetrics.end(STAGE, "getDifferences", start, dest.size());
+    }
+
+    @Override
+    public void getDistanceChanges(float[] res, QuaternionBuffer src, int from, int to)
+    {
+        long start = RotationMetrics.start();
+        engine.getDistanceChanges(res, src, from, to);
+        RotationMetrics.end(STAGE, "getDistanceChanges", start, Math.max(0, to - from));
+    }
+
+    @Override
+    public void getTaitBryanAngleChanges(float[] phi, float[] theta, float[] psi, QuaternionBuffer src, int from, int to)
+    {
+        long start = RotationMetrics.start();
+        engine.getTaitBryanAngleChanges(phi, theta, psi, src, from, to);
+        RotationMetrics.end(STAGE, "getTaitBryanAngleChanges", start, Math.max(0, to - from));
+    }
+
+    @Override
+    public void getRotationMatrices(float[] R, int matrixSize, QuaternionBuffer src)
+    {
+        long start = RotationMetrics.start();
+        engine.getRotationMatrices(R, matrixSize, src);
+        RotationMetrics.end(STAGE, "getRotationMatrices", start, src.size());
+    }
+}
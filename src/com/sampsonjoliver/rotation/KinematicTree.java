@@ -0,0 +1,364 @@
+package com.sampsonjoliver.rotation;
+
+/**
+ * A tree of joints, such as a skeleton with IMUs attached to its segments, that keeps the local
+ * rotation of every joint relative to its parent and its global rotation relative to the root
+ * frame, and brings them up to date incrementally.
+ * <p>Each joint is driven either by its local rotation, set with setLocal, or by a global
+ * rotation measured by a sensor, set with setGlobal. update then runs forward kinematics:
+ * <ul>
+ * <li>a local-driven joint gets global = parentGlobal * local, as HamiltonProduct computes it,</li>
+ * <li>a global-driven joint gets local = conjugate(parentGlobal) * global, its joint rotation,</li>
+ * </ul>
+ * with the identity as the parent of root joints. Only the joints whose own rotation was set, and
+ * the joints below them whose global rotation depends on one that changed, are recomputed; a
+ * global-driven joint shields its subtree from changes above it. Rotations are expected to be
+ * unit quaternions.
+ * <p>Joints are numbered in the order they are added and every parent is added before its
+ * children, so a single pass in index order visits parents first. Rotations are held in packed
+ * arrays, and no method allocates.
+ */
+public class KinematicTree
+{
+    /**
+     * The parent of a root joint
+     */
+    public static final int ROOT = -1;
+
+    private final int[] parent;
+    private final boolean[] globalDriven;
+    private final float[] lw, lx, ly, lz;
+    private final float[] gw, gx, gy, gz;
+    private final boolean[] changed;
+    private final long[] localStamp;
+    private final long[] globalStamp;
+    private final AngleMath angleMath;
+    private int size;
+    private int firstChanged;
+    private long epoch;
+
+    /**
+     * Creates a new KinematicTree using exact trigonometry.
+     * @param capacity the largest number of joints
+     */
+    public KinematicTree(int capacity)
+    {
+        this(capacity, AngleMath.EXACT);
+    }
+
+    /**
+     * Creates a new KinematicTree.
+     * @param capacity the largest number of joints
+     * @param angleMath the trigonometry used to compute joint angles
+     */
+    public KinematicTree(int capacity, AngleMath angleMath)
+    {
+        if (capacity < 0)
+            throw new IllegalArgumentException("capacity must not be negative, not " + capacity);
+
+        this.parent = new int[capacity];
+        this.globalDriven = new boolean[capacity];
+        this.lw = new float[capacity];
+        this.lx = new float[capacity];
+        this.ly = new float[capacity];
+        this.lz = new float[capacity];
+        this.gw = new float[capacity];
+        this.gx = new float[capacity];
+        this.gy = new float[capacity];
+        this.gz = new float[capacity];
+        this.changed = new boolean[capacity];
+        this.localStamp = new long[capacity];
+        this.globalStamp = new long[capacity];
+        this.angleMath = angleMath;
+        this.firstChanged = capacity;
+    }
+
+    /**
+     * Get the number of joints
+     * @return the number of joints
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Get the largest number of joints
+     * @return the capacity
+     */
+    public int capacity()
+    {
+        return parent.length;
+    }
+
+    /**
+     * Adds a local-driven joint with the identity rotation.
+     * @param parent the index of the parent joint, or ROOT
+     * @return the index of the new joint
+     */
+    public int addJoint(int parent)
+    {
+        if (size == capacity())
+            throw new IndexOutOfBoundsException("tree is full at capacity " + capacity());
+        if (parent != ROOT)
+            checkJoint(parent);
+
+        int joint = size++;
+        this.parent[joint] = parent;
+        setLocal(joint, 1, 0, 0, 0);
+        return joint;
+    }
+
+    /**
+     * Get the parent of a joint
+     * @param joint the index of the joint
+     * @return the index of the parent joint, or ROOT
+     */
+    public int getParent(int joint)
+    {
+        checkJoint(joint);
+        return parent[joint];
+    }
+
+    /**
+     * Determine if a joint is driven by a global rotation
+     * @param joint the index of the joint
+     * @return true after setGlobal, false after setLocal
+     */
+    public boolean isGlobalDriven(int joint)
+    {
+        checkJoint(joint);
+        return globalDriven[joint];
+    }
+
+    /**
+     * Sets the rotation of a joint relative to its parent, and makes it local-driven.
+     * @param joint the index of the joint
+     * @param w the real-valued scalar part of the Quaternion
+     * @param x the x-component of the complex vector part of the Quaternion
+     * @param y the y-component of the complex vector part of the Quaternion
+     * @param z the z-component of the complex vector part of the Quaternion
+     */
+    public void setLocal(int joint, float w, float x, float y, float z)
+    {
+        checkJoint(joint);
+        lw[joint] = w;
+        lx[joint] = x;
+        ly[joint] = y;
+        lz[joint] = z;
+        globalDriven[joint] = false;
+        markChanged(joint);
+    }
+
+    /**
+     * Sets the rotation of a joint relative to its parent from a 3- or 4- part rotation vector
+     * expressed as [x,y,z,w], and makes it local-driven.
+     * @param joint the index of the joint
+     * @param rv the rotation vector
+     */
+    public void setLocal(int joint, float[] rv)
+    {
+        setLocal(joint, Quaternion.vectorW(rv), rv[0], rv[1], rv[2]);
+    }
+
+    /**
+     * Sets the rotation of a joint relative to the root frame, such as the orientation of the
+     * sensor on its segment, and makes it global-driven.
+     * @param joint the index of the joint
+     * @param w the real-valued scalar part of the Quaternion
+     * @param x the x-component of the complex vector part of the Quaternion
+     * @param y the y-component of the complex vector part of the Quaternion
+     * @param z the z-component of the complex vector part of the Quaternion
+     */
+    public void setGlobal(int joint, float w, float x, float y, float z)
+    {
+        checkJoint(joint);
+        gw[joint] = w;
+        gx[joint] = x;
+        gy[joint] = y;
+        gz[joint] = z;
+        globalDriven[joint] = true;
+        markChanged(joint);
+    }
+
+    /**
+     * Sets the rotation of a joint relative to the root frame from a 3- or 4- part rotation
+     * vector expressed as [x,y,z,w], and makes it global-driven.
+     * @param joint the index of the joint
+     * @param rv the rotation vector
+     */
+    public void setGlobal(int joint, float[] rv)
+    {
+        setGlobal(joint, Quaternion.vectorW(rv), rv[0], rv[1], rv[2]);
+    }
+
+    /**
+     * Recomputes the rotations that depend on those set since the last update.
+     * @return the number of joints recomputed
+     */
+    public int update()
+    {
+        ++epoch;
+        int recomputed = 0;
+
+        for (int i = firstChanged; i < size; ++i)
+        {
+            int p = parent[i];
+            boolean parentMoved = p != ROOT && globalStamp[p] == epoch;
+            if (!changed[i] && !parentMoved)
+                continue;
+
+            float pw = 1, px = 0, py = 0, pz = 0;
+            if (p != ROOT)
+            {
+                pw = gw[p];
+                px = gx[p];
+                py = gy[p];
+                pz = gz[p];
+            }
+
+            if (globalDriven[i])
+            {
+                // Conjugate of the parent's global rotation times the joint's
+                float a1 = -px, a2 = -py, a3 = -pz;
+                float b0 = gw[i], b1 = gx[i], b2 = gy[i], b3 = gz[i];
+                lw[i] = -a1 * b1 - a2 * b2 - a3 * b3 + pw * b0;
+                lx[i] =  a1 * b0 + a2 * b3 - a3 * b2 + pw * b1;
+                ly[i] = -a1 * b3 + a2 * b0 + a3 * b1 + pw * b2;
+                lz[i] =  a1 * b2 - a2 * b1 + a3 * b0 + pw * b3;
+
+                // Only a new measurement moves the subtree
+                if (changed[i])
+                    globalStamp[i] = epoch;
+            }
+            else
+            {
+                float b0 = lw[i], b1 = lx[i], b2 = ly[i], b3 = lz[i];
+                gw[i] = -px * b1 - py * b2 - pz * b3 + pw * b0;
+                gx[i] =  px * b0 + py * b3 - pz * b2 + pw * b1;
+                gy[i] = -px * b3 + py * b0 + pz * b1 + pw * b2;
+                gz[i] =  px * b2 - py * b1 + pz * b0 + pw * b3;
+                globalStamp[i] = epoch;
+            }
+
+            changed[i] = false;
+            localStamp[i] = epoch;
+            ++recomputed;
+        }
+
+        firstChanged = capacity();
+        return recomputed;
+    }
+
+    /**
+     * Determine if the local rotation of a joint was recomputed by the last update
+     * @param joint the index of the joint
+     * @return true or false
+     */
+    public boolean isUpdated(int joint)
+    {
+        checkJoint(joint);
+        return localStamp[joint] == epoch;
+    }
+
+    /**
+     * Copies the rotation of a joint relative to its parent into a MutableQuaternion
+     * @param joint the index of the joint
+     * @param dest the quaternion in which to store the rotation
+     * @return dest
+     */
+    public MutableQuaternion getLocal(int joint, MutableQuaternion dest)
+    {
+        checkJoint(joint);
+        return dest.set(lw[joint], lx[joint], ly[joint], lz[joint]);
+    }
+
+    /**
+     * Copies the rotation of a joint relative to the root frame into a MutableQuaternion
+     * @param joint the index of the joint
+     * @param dest the quaternion in which to store the rotation
+     * @return dest
+     */
+    public MutableQuaternion getGlobal(int joint, MutableQuaternion dest)
+    {
+        checkJoint(joint);
+        return dest.set(gw[joint], gx[joint], gy[joint], gz[joint]);
+    }
+
+    /**
+     * Copies the local rotation of every joint into a QuaternionBuffer, at the index of the joint.
+     * @param dest a buffer of at least size() capacity, whose size is set to size()
+     */
+    public void getLocals(QuaternionBuffer dest)
+    {
+        copy(dest, lw, lx, ly, lz);
+    }
+
+    /**
+     * Copies the global rotation of every joint into a QuaternionBuffer, at the index of the joint.
+     * @param dest a buffer of at least size() capacity, whose size is set to size()
+     */
+    public void getGlobals(QuaternionBuffer dest)
+    {
+        copy(dest, gw, gx, gy, gz);
+    }
+
+    /**
+     * Converts the local rotation of a joint, its joint angles, to Tait-Bryan angles as
+     * Quaternion.toTaitBryan does.
+     * @param joint the index of the joint
+     * @param res an array of at least 3 floats in which to store [phi, theta, psi]
+     * @return res
+     */
+    public float[] getTaitBryan(int joint, float[] res)
+    {
+        checkJoint(joint);
+        float w = lw[joint], x = lx[joint], y = ly[joint], z = lz[joint];
+        res[0] = angleMath.atan2(w * x + y * z, 0.5f - (x * x + y * y));
+        res[1] = angleMath.asin(2.0f * (x * z - w * y));
+        res[2] = angleMath.atan2(w * z + x * y, 0.5f - (y * y + z * z));
+        return res;
+    }
+
+    /**
+     * Converts the local rotation of every joint to Tait-Bryan angles as getTaitBryan does,
+     * storing the angles of each joint at its index.
+     * @param phi an array of at least size() floats in which to store the rotation about x
+     * @param theta an array of at least size() floats in which to store the rotation about y
+     * @param psi an array of at least size() floats in which to store the rotation about z
+     * @param onlyUpdated if true, only the joints recomputed by the last update are converted
+     *                    and the others are left untouched
+     */
+    public void getTaitBryanAngles(float[] phi, float[] theta, float[] psi, boolean onlyUpdated)
+    {
+        for (int i = 0; i < size; ++i)
+        {
+            if (onlyUpdated && localStamp[i] != epoch)
+                continue;
+
+            float w = lw[i], x = lx[i], y = ly[i], z = lz[i];
+            phi[i] = angleMath.atan2(w * x + y * z, 0.5f - (x * x + y * y));
+            theta[i] = angleMath.asin(2.0f * (x * z - w * y));
+            psi[i] = angleMath.atan2(w * z + x * y, 0.5f - (y * y + z * z));
+        }
+    }
+
+    private void markChanged(int joint)
+    {
+        changed[joint] = true;
+        firstChanged = Math.min(firstChanged, joint);
+    }
+
+    private void copy(QuaternionBuffer dest, float[] w, float[] x, float[] y, float[] z)
+    {
+        dest.setSize(size);
+        for (int i = 0; i < size; ++i)
+            dest.set(i, w[i], x[i], y[i], z[i]);
+    }
+
+    private void checkJoint(int joint)
+    {
+        if (joint < 0 || joint >= size)
+            throw new IndexOutOfBoundsException("joint " + joint + " out of bounds for size " + size);
+    }
+}
@@ -0,0 +1,142 @@
+package com.sampsonjoliver.rotation;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread-safe histogram of latencies in nanoseconds, with log-linear buckets in the style of
+ * HdrHistogram. Values below 128 are counted exactly; above that each power of two is split
+ * into 64 buckets, so a reported value is within 1/64 (1.6%) of the true value. The whole
+ * range of long is covered with a fixed array, so recording never allocates.
+ */
+public class LatencyHistogram
+{
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = index(Long.MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a value.
+     * @param nanos the latency in nanoseconds; negative values are recorded as 0
+     */
+    public void record(long nanos)
+    {
+        long v = Math.max(nanos, 0);
+        counts.incrementAndGet(index(v));
+        count.increment();
+        sum.add(v);
+
+        long m;
+        while (v > (m = max.get()) && !max.compareAndSet(m, v))
+        {
+            // Retry until v is stored or a larger value has been
+        }
+    }
+
+    /**
+     * Get the number of values recorded
+     * @return the count
+     */
+    public long getCount()
+    {
+        return count.sum();
+    }
+
+    /**
+     * Get the largest value recorded
+     * @return the exact maximum in nanoseconds, or 0 if nothing has been recorded
+     */
+    public long getMax()
+    {
+        return max.get();
+    }
+
+    /**
+     * Get the mean of the values recorded
+     * @return the exact mean in nanoseconds, or NaN if nothing has been recorded
+     */
+    public double getMean()
+    {
+        long n = count.sum();
+        return n == 0 ? Double.NaN : (double)sum.sum() / n;
+    }
+
+    /**
+     * Get the value at a percentile of the values recorded
+     * @param percentile the percentile, in [0, 100]
+     * @return the largest value in the bucket holding the percentile, in nanoseconds, or 0 if
+     *         nothing has been recorded
+     */
+    public long getValueAtPercentile(double percentile)
+    {
+        if (!(percentile >= 0 && percentile <= 100))
+            throw new IllegalArgumentException("percentile must be in [0, 100], not " + percentile);
+
+        long total = 0;
+        for (int i = 0; i < BUCKETS; ++i)
+            total += counts.get(i);
+        if (total == 0)
+            return 0;
+
+        long rank = Math.max(1, (long)Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; ++i)
+        {
+            seen += counts.get(i);
+            if (seen >= rank)
+                return Math.min(highestEquivalent(i), getMax());
+        }
+        return getMax();
+    }
+
+    /**
+     * Discards every recorded value. Values recorded concurrently may be partly kept.
+     */
+    public void reset()
+    {
+        for (int i = 0; i < BUCKETS; ++i)
+            counts.set(i, 0);
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    /**
+     * Summarizes the histogram.
+     * @return the count, mean, percentiles and maximum in nanoseconds
+     */
+    @Override
+    public String toString()
+    {
+        return "count=" + getCount()
+            + " mean=" + (long)getMean()
+            + " p50=" + getValueAtPercentile(50)
+            + " p90=" + getValueAtPercentile(90)
+            + " p99=" + getValueAtPercentile(99)
+            + " p99.9=" + getValueAtPercentile(99.9)
+            + " max=" + getMax();
+    }
+
+    /**
+     * Get the bucket of a non-negative value: the value itself below 2 * SUB_BUCKETS, and
+     * otherwise SUB_BUCKETS buckets per power of two.
+     */
+    private static int index(long v)
+    {
+        int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(v) - SUB_BUCKET_BITS);
+        return (shift << SUB_BUCKET_BITS) + (int)(v >>> shift);
+    }
+
+    private static long highestEquivalent(int index)
+    {
+        int shift = Math.max(0, (index >>> SUB_BUCKET_BITS) - 1);
+        long low = (long)(index - (shift << SUB_BUCKET_BITS)) << shift;
+        return low + (1L << shift) - 1;
+    }
+}
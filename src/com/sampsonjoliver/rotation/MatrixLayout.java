@@ -0,0 +1,247 @@
+package com.sampsonjoliver.rotation;
+
+/**
+ * The layout of a rotation matrix in a float array: 3x3 or 4x4, row- or column-major, resolved
+ * once into the array index of each element. The RotationMatrix helpers check R.length on every
+ * call; a MatrixLayout held by the caller reads and writes each element at a fixed index, so a
+ * loop over many matrices carries no layout branches, and matrices may sit at any offset in a
+ * larger packed array.
+ * <p>Every method gives the same values as the RotationMatrix method it names.
+ */
+public abstract class MatrixLayout
+{
+    /**
+     * 3x3 row-major, as the 9-element arrays of RotationMatrix.getRotationMatrixFromVector
+     */
+    public static final MatrixLayout ROW_MAJOR_3X3 = new Compact(MatrixOrder.ROW_MAJOR);
+
+    /**
+     * 4x4 row-major, as the 16-element arrays of RotationMatrix.getRotationMatrixFromVector
+     */
+    public static final MatrixLayout ROW_MAJOR_4X4 = new Padded(MatrixOrder.ROW_MAJOR);
+
+    /**
+     * 3x3 column-major
+     */
+    public static final MatrixLayout COLUMN_MAJOR_3X3 = new Compact(MatrixOrder.COLUMN_MAJOR);
+
+    /**
+     * 4x4 column-major, as expected by OpenGL
+     */
+    public static final MatrixLayout COLUMN_MAJOR_4X4 = new Padded(MatrixOrder.COLUMN_MAJOR);
+
+    private final int size;
+    private final MatrixOrder order;
+    // The index of each element of the rotation, relative to the start of the matrix
+    final int e00, e01, e02, e10, e11, e12, e20, e21, e22;
+
+    MatrixLayout(int size, MatrixOrder order)
+    {
+        int n = size == 16 ? 4 : 3;
+        int row = order == MatrixOrder.ROW_MAJOR ? n : 1;
+        int col = order == MatrixOrder.ROW_MAJOR ? 1 : n;
+
+        this.size = size;
+        this.order = order;
+        this.e00 = 0;
+        this.e01 = col;
+        this.e02 = 2 * col;
+        this.e10 = row;
+        this.e11 = row + col;
+        this.e12 = row + 2 * col;
+        this.e20 = 2 * row;
+        this.e21 = 2 * row + col;
+        this.e22 = 2 * row + 2 * col;
+    }
+
+    /**
+     * Get the layout of a matrix
+     * @param matrixSize 9 for 3x3 matrices or 16 for 4x4 matrices
+     * @param order the order of the elements
+     * @return the layout
+     */
+    public static MatrixLayout of(int matrixSize, MatrixOrder order)
+    {
+        if (matrixSize != 9 && matrixSize != 16)
+            throw new IllegalArgumentException("matrixSize must be 9 or 16, not " + matrixSize);
+
+        if (order == MatrixOrder.ROW_MAJOR)
+            return matrixSize == 9 ? ROW_MAJOR_3X3 : ROW_MAJOR_4X4;
+        return matrixSize == 9 ? COLUMN_MAJOR_3X3 : COLUMN_MAJOR_4X4;
+    }
+
+    /**
+     * Get the number of floats in a matrix
+     * @return 9 or 16
+     */
+    public int getSize()
+    {
+        return size;
+    }
+
+    /**
+     * Get the order of the elements
+     * @return the order
+     */
+    public MatrixOrder getOrder()
+    {
+        return order;
+    }
+
+    /**
+     * Writes the rotation matrix of a unit quaternion, as RotationMatrix.getRotationMatrixFromVector.
+     * @param R the array in which to store the matrix
+     * @param offset the index in R of the first element of the matrix
+     * @param w the real-valued scalar part of the Quaternion
+     * @param x the x-component of the complex vector part of the Quaternion
+     * @param y the y-component of the complex vector part of the Quaternion
+     * @param z the z-component of the complex vector part of the Quaternion
+     */
+    public void getRotationMatrix(float[] R, int offset, float w, float x, float y, float z)
+    {
+        float sq_q1 = 2 * x * x;
+        float sq_q2 = 2 * y * y;
+        float sq_q3 = 2 * z * z;
+        float q1_q2 = 2 * x * y;
+        float q3_q0 = 2 * z * w;
+        float q1_q3 = 2 * x * z;
+        float q2_q0 = 2 * y * w;
+        float q2_q3 = 2 * y * z;
+        float q1_q0 = 2 * x * w;
+
+        R[offset + e00] = 1 - sq_q2 - sq_q3;
+        R[offset + e01] = q1_q2 - q3_q0;
+        R[offset + e02] = q1_q3 + q2_q0;
+
+        R[offset + e10] = q1_q2 + q3_q0;
+        R[offset + e11] = 1 - sq_q1 - sq_q3;
+        R[offset + e12] = q2_q3 - q1_q0;
+
+        R[offset + e20] = q1_q3 - q2_q0;
+        R[offset + e21] = q2_q3 + q1_q0;
+        R[offset + e22] = 1 - sq_q1 - sq_q2;
+
+        pad(R, offset);
+    }
+
+    /**
+     * Writes the elements of a 4x4 matrix outside the rotation.
+     */
+    abstract void pad(float[] R, int offset);
+
+    /**
+     * Converts a rotation matrix to a quaternion [w,x,y,z], as RotationMatrix.getQuaternionFromMatrix.
+     * @param q an array of at least 4 floats in which to store the quaternion
+     * @param R the array holding the matrix
+     * @param offset the index in R of the first element of the matrix
+     */
+    public void getQuaternion(float[] q, float[] R, int offset)
+    {
+        RotationMatrix.getQuaternionFromMatrix(q,
+                R[offset + e00], R[offset + e01], R[offset + e02],
+                R[offset + e10], R[offset + e11], R[offset + e12],
+                R[offset + e20], R[offset + e21], R[offset + e22]);
+    }
+
+    /**
+     * Calculates the z, x and y angle change from prevR to R, as RotationMatrix.getAngleChange.
+     * @param angleChange an array of at least 3 floats in which to store the angle change
+     * @param R current rotation matrix
+     * @param prevR previous rotation matrix
+     */
+    public void getAngleChange(float[] angleChange, float[] R, float[] prevR)
+    {
+        getAngleChange(angleChange, R, 0, prevR, 0, AngleMath.EXACT);
+    }
+
+    /**
+     * Calculates the z, x and y angle change from prevR to R, as RotationMatrix.getAngleChange.
+     * @param angleChange an array of at least 3 floats in which to store the angle change
+     * @param R current rotation matrix
+     * @param prevR previous rotation matrix
+     * @param angleMath the trigonometry to use
+     */
+    public void getAngleChange(float[] angleChange, float[] R, float[] prevR, AngleMath angleMath)
+    {
+        getAngleChange(angleChange, R, 0, prevR, 0, angleMath);
+    }
+
+    /**
+     * Calculates the z, x and y angle change between two matrices of packed arrays, as
+     * RotationMatrix.getAngleChange.
+     * @param angleChange an array of at least 3 floats in which to store the angle change
+     * @param R the array holding the current rotation matrix
+     * @param offset the index in R of the first element of the current matrix
+     * @param prevR the array holding the previous rotation matrix
+     * @param prevOffset the index in prevR of the first element of the previous matrix
+     * @param angleMath the trigonometry to use
+     */
+    public void getAngleChange(float[] angleChange, float[] R, int offset, float[] prevR, int prevOffset, AngleMath angleMath)
+    {
+        if (RotationMetrics.ENABLED)
+            RotationMetrics.increment(RotationMetrics.Counter.ANGLE_CHANGES);
+
+        float ri0 = R[offset + e00], ri1 = R[offset + e01], ri2 = R[offset + e02];
+        float ri3 = R[offset + e10], ri4 = R[offset + e11], ri5 = R[offset + e12];
+        float ri6 = R[offset + e20], ri7 = R[offset + e21], ri8 = R[offset + e22];
+
+        float pri0 = prevR[prevOffset + e00], pri1 = prevR[prevOffset + e01], pri2 = prevR[prevOffset + e02];
+        float pri3 = prevR[prevOffset + e10], pri4 = prevR[prevOffset + e11], pri5 = prevR[prevOffset + e12];
+        float pri6 = prevR[prevOffset + e20], pri7 = prevR[prevOffset + e21], pri8 = prevR[prevOffset + e22];
+
+        // rd[i][j] = pri[0][i] * ri[0][j] + pri[1][i] * ri[1][j] + pri[2][i] * ri[2][j];
+        float rd1 = pri0 * ri1 + pri3 * ri4 + pri6 * ri7; //rd[0][1]
+        float rd4 = pri1 * ri1 + pri4 * ri4 + pri7 * ri7; //rd[1][1]
+        float rd6 = pri2 * ri0 + pri5 * ri3 + pri8 * ri6; //rd[2][0]
+        float rd7 = pri2 * ri1 + pri5 * ri4 + pri8 * ri7; //rd[2][1]
+        float rd8 = pri2 * ri2 + pri5 * ri5 + pri8 * ri8; //rd[2][2]
+
+        angleChange[0] = angleMath.atan2(rd1, rd4);
+        angleChange[1] = angleMath.asin(-rd7);
+        angleChange[2] = angleMath.atan2(-rd6, rd8);
+    }
+
+    /**
+     * Converts the layout to a string.
+     * @return the order and dimensions of the matrix
+     */
+    @Override
+    public String toString()
+    {
+        return order + (size == 9 ? "_3X3" : "_4X4");
+    }
+
+    private static final class Compact extends MatrixLayout
+    {
+        Compact(MatrixOrder order)
+        {
+            super(9, order);
+        }
+
+        @Override
+        void pad(float[] R, int offset)
+        {
+        }
+    }
+
+    private static final class Padded extends MatrixLayout
+    {
+        Padded(MatrixOrder order)
+        {
+            super(16, order);
+        }
+
+        @Override
+        void pad(float[] R, int offset)
+        {
+            // The padding is the same in either order
+            R[offset + 3] = 0.0f;
+            R[offset + 7] = 0.0f;
+            R[offset + 11] = 0.0f;
+            R[offset + 12] = 0.0f;
+            R[offset + 13] = 0.0f;
+            R[offset + 14] = 0.0f;
+            R[offset + 15] = 1.0f;
+        }
+    }
+}
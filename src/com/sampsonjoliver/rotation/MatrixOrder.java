@@ -0,0 +1,17 @@
+package com.sampsonjoliver.rotation;
+
+/**
+ * The order in which the elements of a rotation matrix are laid out in memory.
+ */
+public enum MatrixOrder
+{
+    /**
+     * Each row is contiguous, as in the arrays of RotationMatrix.getRotationMatrixFromVector
+     */
+    ROW_MAJOR,
+
+    /**
+     * Each column is contiguous, as expected by OpenGL and most rendering APIs
+     */
+    COLUMN_MAJOR
+}
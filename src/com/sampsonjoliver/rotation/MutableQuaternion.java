@@ -0,0 +1,628 @@
+package com.sampsonjoliver.rotation;
+
+/**
+ * A mutable quaternion formatted as {w, x, y, z} for allocation-free hot paths.
+ * <p>Every operation of Quaternion is provided in two forms: an Into variant that writes the
+ * result into a caller-supplied destination and returns it, and an InPlace variant that
+ * overwrites this quaternion and returns it. The destination may be this quaternion or one of
+ * the operands. Results are identical to the equivalent Quaternion operations.
+ */
+public class MutableQuaternion
+{
+    public float w;
+    public float x;
+    public float y;
+    public float z;
+
+    /**
+     * Creates a new identity quaternion.
+     */
+    public MutableQuaternion()
+    {
+        this.w = 1;
+    }
+
+    /**
+     * Constructor creates a new MutableQuaternion from floats w, x, y, and z.
+     * @param w the real-valued scalar part of the Quaternion
+     * @param x the x-component of the complex vector part of the Quaternion
+     * @param y the y-component of the complex vector part of the Quaternion
+     * @param z the z-component of the complex vector part of the Quaternion
+     */
+    public MutableQuaternion(float w, float x, float y, float z)
+    {
+        set(w, x, y, z);
+    }
+
+    /**
+     * Creates a new MutableQuaternion from a 3- or 4- part rotation vector expressed as
+     * [x,y,z,w] where w is an optional angle of rotation.
+     * @param rv the rotation vector to convert
+     */
+    public MutableQuaternion(float[] rv)
+    {
+        setValues(rv);
+    }
+
+    /**
+     * Creates a new MutableQuaternion holding a copy of a Quaternion.
+     * @param q the quaternion to copy
+     */
+    public MutableQuaternion(Quaternion q)
+    {
+        set(q);
+    }
+
+    /**
+     * Get the real-valued scalar part of the quaternion
+     * @return the w value
+     */
+    public float W()
+    {
+        return w;
+    }
+
+    /**
+     * Get the x component of the complex vector part of the quaternion
+     * @return the x value
+     */
+    public float X()
+    {
+        return x;
+    }
+
+    /**
+     * Get the y component of the complex vector part of the quaternion
+     * @return the y value
+     */
+    public float Y()
+    {
+        return y;
+    }
+
+    /**
+     * Get the z component of the complex vector part of the quaternion
+     * @return the z value
+     */
+    public float Z()
+    {
+        return z;
+    }
+
+    /**
+     * Sets the quaternion from floats w, x, y, and z.
+     * @return this quaternion
+     */
+    public MutableQuaternion set(float w, float x, float y, float z)
+    {
+        this.w = w;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        return this;
+    }
+
+    /**
+     * Sets the quaternion to a copy of another.
+     * @param q the quaternion to copy
+     * @return this quaternion
+     */
+    public MutableQuaternion set(MutableQuaternion q)
+    {
+        return set(q.w, q.x, q.y, q.z);
+    }
+
+    /**
+     * Sets the quaternion to a copy of a Quaternion.
+     * @param q the quaternion to copy
+     * @return this quaternion
+     */
+    public MutableQuaternion set(Quaternion q)
+    {
+        return set(q.W(), q.X(), q.Y(), q.Z());
+    }
+
+    /**
+     * Sets the quaternion from a 3- or 4- part rotation vector expressed as [x,y,z,w] where w is
+     * an optional angle of rotation. Equivalent to Quaternion.getQuaternionFromVector.
+     * @param rv the rotation vector to convert
+     * @return this quaternion
+     */
+    public MutableQuaternion setValues(float[] rv)
+    {
+        if (RotationMetrics.ENABLED)
+            RotationMetrics.increment(RotationMetrics.Counter.VECTOR_CONVERSIONS);
+
+        w = Quaternion.vectorW(rv);
+        // Set the vector component
+        x = rv[0];
+        y = rv[1];
+        z = rv[2];
+        return this;
+    }
+
+    /**
+     * Creates a new Quaternion holding a copy of this quaternion
+     * @return the new Quaternion
+     */
+    public Quaternion toQuaternion()
+    {
+        return new Quaternion(w, x, y, z);
+    }
+
+    /**
+     * Copies the complex vector part of the quaternion into an array
+     * @param dest an array of at least 3 floats in which to store [x,y,z]
+     * @return dest
+     */
+    public float[] getVectorInto(float[] dest)
+    {
+        dest[0] = x;
+        dest[1] = y;
+        dest[2] = z;
+        return dest;
+    }
+
+    /**
+     * Calculates the scalar multiplication of the quaternion's parts
+     * @param c the constant to scale by
+     * @param dest the quaternion in which to store the result
+     * @return dest
+     */
+    public MutableQuaternion MultiplyInto(float c, MutableQuaternion dest)
+    {
+        return dest.set(w * c, x * c, y * c, z * c);
+    }
+
+    /**
+     * Scales the quaternion's parts by c
+     * @param c the constant to scale by
+     * @return this quaternion
+     */
+    public MutableQuaternion MultiplyInPlace(float c)
+    {
+        return MultiplyInto(c, this);
+    }
+
+    /**
+     * Calculates the scalar division of the quaternion's parts
+     * @param c the constant to scale by
+     * @param dest the quaternion in which to store the result
+     * @return dest
+     */
+    public MutableQuaternion DivideInto(float c, MutableQuaternion dest)
+    {
+        return dest.set(w / c, x / c, y / c, z / c);
+    }
+
+    /**
+     * Inversely scales the quaternion's parts by c
+     * @param c the constant to scale by
+     * @return this quaternion
+     */
+    public MutableQuaternion DivideInPlace(float c)
+    {
+        return DivideInto(c, this);
+    }
+
+    /**
+     * Calculates the Hamilton product of this and another quaternion
+     * @param q2 the right-hand-side of the product operand
+     * @param dest the quaternion in which to store the result
+     * @return dest
+     */
+    public MutableQuaternion HamiltonProductInto(MutableQuaternion q2, MutableQuaternion dest)
+    {
+        return dest.set(
+            -x * q2.x - y * q2.y - z * q2.z + w * q2.w,
+             x * q2.w + y * q2.z - z * q2.y + w * q2.x,
+            -x * q2.z + y * q2.w + z * q2.x + w * q2.y,
+             x * q2.y - y * q2.x + z * q2.w + w * q2.z);
+    }
+
+    /**
+     * Replaces this quaternion with the Hamilton product of this and another quaternion
+     * @param q2 the right-hand-side of the product operand
+     * @return this quaternion
+     */
+    public MutableQuaternion HamiltonProductInPlace(MutableQuaternion q2)
+    {
+        return HamiltonProductInto(q2, this);
+    }
+
+    /**
+     * Calculates the addition of two quaternions
+     * @param q2 the right-hand-side of the addition operand
+     * @param dest the quaternion in which to store the result
+     * @return dest
+     */
+    public MutableQuaternion AddInto(MutableQuaternion q2, MutableQuaternion dest)
+    {
+        return dest.set(w + q2.w, x + q2.x, y + q2.y, z + q2.z);
+    }
+
+    /**
+     * Adds another quaternion to this quaternion
+     * @param q2 the right-hand-side of the addition operand
+     * @return this quaternion
+     */
+    public MutableQuaternion AddInPlace(MutableQuaternion q2)
+    {
+        return AddInto(q2, this);
+    }
+
+    /**
+     * Calculates the subtraction of two quaternions
+     * @param q2 the right-hand-side of the subtraction operand
+     * @param dest the quaternion in which to store the result
+     * @return dest
+     */
+    public MutableQuaternion SubtractInto(MutableQuaternion q2, MutableQuaternion dest)
+    {
+        return dest.set(w - q2.w, x - q2.x, y - q2.y, z - q2.z);
+    }
+
+    /**
+     * Subtracts another quaternion from this quaternion
+     * @param q2 the right-hand-side of the subtraction operand
+     * @return this quaternion
+     */
+    public MutableQuaternion SubtractInPlace(MutableQuaternion q2)
+    {
+        return SubtractInto(q2, this);
+    }
+
+    /**
+     * Calculates the length squared of the quaternion.
+     * @return a float representing the squared length of the quaternion
+     */
+    public float LengthSquared()
+    {
+        return w*w + x*x + y*y + z*z;
+    }
+
+    /**
+     * Calculates the norm (size, or length) of the quaternion.
+     * @return a float representing the norm of the quaternion
+     */
+    public float Norm()
+    {
+        return LengthSquared() > 0
+               ? (float)Math.sqrt(LengthSquared())
+               : 0;
+    }
+
+    /**
+     * Determine if the quaternion is unit. That is, if its norm has a unit length of 1.
+     * @return true or false
+     */
+    public boolean isUnit()
+    {
+        return Math.abs(1.0 - this.Norm()) <= Quaternion.EPSILON;
+    }
+
+    /**
+     * Determine if the quaternion is equal to the zero vector
+     * @return true or false
+     */
+    public boolean isZero()
+    {
+        return (x == 0 && y == 0 && z == 0 && w == 0);
+    }
+
+    /**
+     * Calculate the complex conjugate of the quaternion.
+     * @param dest the quaternion in which to store the result
+     * @return dest
+     */
+    public MutableQuaternion ConjugateInto(MutableQuaternion dest)
+    {
+        return dest.set(w, -x, -y, -z);
+    }
+
+    /**
+     * Replaces this quaternion with its complex conjugate.
+     * @return this quaternion
+     */
+    public MutableQuaternion ConjugateInPlace()
+    {
+        return ConjugateInto(this);
+    }
+
+    /**
+     * Calculate the inverse of the quaternion.
+     * If it is unit, this is equal to the conjugate.
+     * @param dest the quaternion in which to store the result
+     * @return dest
+     */
+    public MutableQuaternion InverseInto(MutableQuaternion dest)
+    {
+        float d = this.isUnit() ? 1 : this.LengthSquared();
+
+        return dest.set(w / d, -x / d, -y / d, -z / d);
+    }
+
+    /**
+     * Replaces this quaternion with its inverse.
+     * @return this quaternion
+     */
+    public MutableQuaternion InverseInPlace()
+    {
+        return InverseInto(this);
+    }
+
+    /**
+     * Calculates the equivalent unit-length quaternion.
+     * @param dest the quaternion in which to store the result
+     * @return dest
+     */
+    public MutableQuaternion VersorInto(MutableQuaternion dest)
+    {
+        float n = (this.isUnit() || this.isZero()) ? 1 : this.Norm();
+        if (RotationMetrics.ENABLED && n != 1)
+            RotationMetrics.increment(RotationMetrics.Counter.RENORMALIZATIONS);
+
+        return dest.set(w / n, x / n, y / n, z / n);
+    }
+
+    /**
+     * Normalizes this quaternion to unit length.
+     * @return this quaternion
+     */
+    public MutableQuaternion VersorInPlace()
+    {
+        return VersorInto(this);
+    }
+
+    /**
+     * Calculates the equivalent unit-length quaternion of a quaternion that has drifted slightly
+     * from unit length, to first order. Equivalent to Quaternion.Renormalize.
+     * @param dest the quaternion in which to store the result
+     * @return dest
+     */
+    public MutableQuaternion RenormalizeInto(MutableQuaternion dest)
+    {
+        float e = 1 - LengthSquared();
+        if (Math.abs(e) > Quaternion.RENORMALIZE_LIMIT)
+            return VersorInto(dest);
+        if (RotationMetrics.ENABLED)
+            RotationMetrics.increment(RotationMetrics.Counter.RENORMALIZATIONS);
+
+        float s = Quaternion.renormalizeScale(e);
+        return dest.set(w * s, x * s, y * s, z * s);
+    }
+
+    /**
+     * Renormalizes this quaternion to unit length, to first order.
+     * @return this quaternion
+     */
+    public MutableQuaternion RenormalizeInPlace()
+    {
+        return RenormalizeInto(this);
+    }
+
+    /**
+     * Calculates the quaternion exponential. Equivalent to Quaternion.Exp.
+     * @param dest the quaternion in which to store the result
+     * @return dest
+     */
+    public MutableQuaternion ExpInto(MutableQuaternion dest)
+    {
+        double vn2 = x * x + y * y + z * z;
+        double vn = Math.sqrt(vn2);
+        double ew = Math.exp(w);
+        double sinc = ew * Quaternion.sincOf(vn, vn2);
+
+        return dest.set((float)(ew * Quaternion.cosOf(vn, vn2)), (float)(sinc * x), (float)(sinc * y), (float)(sinc * z));
+    }
+
+    /**
+     * Replaces this quaternion with its exponential.
+     * @return this quaternion
+     */
+    public MutableQuaternion ExpInPlace()
+    {
+        return ExpInto(this);
+    }
+
+    /**
+     * Calculates the principal quaternion logarithm. Equivalent to Quaternion.Log.
+     * @param dest the quaternion in which to store the result
+     * @return dest
+     */
+    public MutableQuaternion LogInto(MutableQuaternion dest)
+    {
+        double vn2 = x * x + y * y + z * z;
+        double vn = Math.sqrt(vn2);
+        double s = vn > 0 ? Math.atan2(vn, w) / vn : 0;
+
+        return dest.set((float)(0.5 * Math.log(vn2 + w * w)), (float)(s * x), (float)(s * y), (float)(s * z));
+    }
+
+    /**
+     * Replaces this quaternion with its logarithm.
+     * @return this quaternion
+     */
+    public MutableQuaternion LogInPlace()
+    {
+        return LogInto(this);
+    }
+
+    /**
+     * Raises the quaternion to a real power. Equivalent to Quaternion.Pow.
+     * @param t the exponent
+     * @param dest the quaternion in which to store the result
+     * @return dest
+     */
+    public MutableQuaternion PowInto(float t, MutableQuaternion dest)
+    {
+        double vn2 = x * x + y * y + z * z;
+        double vn = Math.sqrt(vn2);
+        double s = t * (vn > 0 ? Math.atan2(vn, w) / vn : 0);
+
+        // Scaled logarithm
+        double lw = t * 0.5 * Math.log(vn2 + w * w);
+        double lx = s * x, ly = s * y, lz = s * z;
+
+        double ln2 = lx * lx + ly * ly + lz * lz;
+        double ln = Math.sqrt(ln2);
+        double ew = Math.exp(lw);
+        double sinc = ew * Quaternion.sincOf(ln, ln2);
+
+        return dest.set((float)(ew * Quaternion.cosOf(ln, ln2)), (float)(sinc * lx), (float)(sinc * ly), (float)(sinc * lz));
+    }
+
+    /**
+     * Replaces this quaternion with its real power.
+     * @param t the exponent
+     * @return this quaternion
+     */
+    public MutableQuaternion PowInPlace(float t)
+    {
+        return PowInto(t, this);
+    }
+
+    /**
+     * Calculates the difference quaternion that expresses the rotation between this and
+     * another quaternion. Equivalent to Quaternion.Difference.
+     * @param qPrev the quaternion to calculate the difference between.
+     * @param dest the quaternion in which to store the result
+     * @return dest
+     */
+    public MutableQuaternion DifferenceInto(MutableQuaternion qPrev, MutableQuaternion dest)
+    {
+        float n1 = (this.isUnit() || this.isZero()) ? 1 : this.Norm();
+        float n2 = (qPrev.isUnit() || qPrev.isZero()) ? 1 : qPrev.Norm();
+
+        // Conjugate of the normalized left-hand-side
+        float a0 = w / n1, a1 = -(x / n1), a2 = -(y / n1), a3 = -(z / n1);
+        float b0 = qPrev.w / n2, b1 = qPrev.x / n2, b2 = qPrev.y / n2, b3 = qPrev.z / n2;
+
+        return dest.set(
+            -a1 * b1 - a2 * b2 - a3 * b3 + a0 * b0,
+             a1 * b0 + a2 * b3 - a3 * b2 + a0 * b1,
+            -a1 * b3 + a2 * b0 + a3 * b1 + a0 * b2,
+             a1 * b2 - a2 * b1 + a3 * b0 + a0 * b3);
+    }
+
+    /**
+     * Replaces this quaternion with the difference between this and another quaternion.
+     * @param qPrev the quaternion to calculate the difference between.
+     * @return this quaternion
+     */
+    public MutableQuaternion DifferenceInPlace(MutableQuaternion qPrev)
+    {
+        return DifferenceInto(qPrev, this);
+    }
+
+    /**
+     * Interpolates linearly between this and another quaternion along the shorter arc and
+     * normalizes the result. Cheaper than SlerpInto, at the cost of a non-constant angular rate.
+     * @param q2 the quaternion reached when t is 1
+     * @param t the interpolation fraction, usually in [0, 1]
+     * @param dest the quaternion in which to store the result
+     * @return dest
+     */
+    public MutableQuaternion NlerpInto(MutableQuaternion q2, float t, MutableQuaternion dest)
+    {
+        // q and -q are the same rotation; take the shorter arc
+        float s = this.DotProduct(q2) < 0 ? -t : t;
+        float u = 1 - t;
+
+        float rw = u * w + s * q2.w;
+        float rx = u * x + s * q2.x;
+        float ry = u * y + s * q2.y;
+        float rz = u * z + s * q2.z;
+
+        float lenSquared = rw * rw + rx * rx + ry * ry + rz * rz;
+        float n = lenSquared > 0 ? (float)Math.sqrt(lenSquared) : 1;
+        return dest.set(rw / n, rx / n, ry / n, rz / n);
+    }
+
+    /**
+     * Interpolates spherically between this and another unit quaternion along the shorter arc,
+     * at a constant angular rate. Nearly parallel quaternions fall back to NlerpInto.
+     * @param q2 the quaternion reached when t is 1
+     * @param t the interpolation fraction, usually in [0, 1]
+     * @param dest the quaternion in which to store the result
+     * @return dest
+     */
+    public MutableQuaternion SlerpInto(MutableQuaternion q2, float t, MutableQuaternion dest)
+    {
+        float dot = this.DotProduct(q2);
+        float sign = dot < 0 ? -1 : 1;
+        dot *= sign;
+
+        if (dot > 1 - Quaternion.EPSILON)
+            return NlerpInto(q2, t, dest);
+
+        double theta = Math.acos(dot);
+        double sinTheta = Math.sin(theta);
+        float a = (float)(Math.sin((1 - t) * theta) / sinTheta);
+        float b = sign * (float)(Math.sin(t * theta) / sinTheta);
+
+        return dest.set(
+            a * w + b * q2.w,
+            a * x + b * q2.x,
+            a * y + b * q2.y,
+            a * z + b * q2.z);
+    }
+
+    /**
+     * Calculates the total magnitude of the angular rotation applied by the quaternion.
+     * @return a float expressing the theta value of the quaternion in radians.
+     */
+    public float Magnitude()
+    {
+        float lenSquared = x * x + y * y + z * z;
+        float vecNorm = (lenSquared > 0 ? (float)Math.sqrt(lenSquared) : 0);
+
+        return 2 * (float)Math.atan2(vecNorm, w);
+    }
+
+    /**
+     * Calculates the quaternion dot product of this and another quaternion.
+     * @param q2 the right-hand-side of the dot product operand
+     * @return the result of the dot product operation
+     */
+    public float DotProduct(MutableQuaternion q2)
+    {
+        return w * q2.w + x * q2.x + y * q2.y + z * q2.z;
+    }
+
+    /**
+     * Calculates the angular (arc) distance between this and another quaternion.
+     * @param q2 the quaternion to calculate the distance to.
+     * @return a float expressing the angular distance in radians.
+     */
+    public float Distance(MutableQuaternion q2)
+    {
+        float dot = this.DotProduct(q2);
+        if (RotationMetrics.ENABLED)
+            RotationMetrics.countDistance(dot);
+
+        return 2 * (float)Math.acos(dot);
+    }
+
+    /**
+     * Converts the quaternion to Tait-Bryan angles. Equivalent to Quaternion.toTaitBryan.
+     * @param res an array of at least 3 floats in which to store [phi, theta, psi]
+     * @return res
+     */
+    public float[] toTaitBryanInto(float[] res)
+    {
+        res[0] = (float) Math.atan2(w * x + y * z, 0.5f - (x * x + y * y));
+        res[1] = (float) Math.asin(2.0f * (x * z - w * y));
+        res[2] = (float) Math.atan2(w * z + x * y, 0.5f - (y * y + z * z));
+        return res;
+    }
+
+    /**
+     * Converts the quaternion to a string.
+     * @return a string expressing the w,x,y, and z components of the quaternion.
+     */
+    public String toString()
+    {
+        return "w: " + w + ", x: " + x + ", y: " + y + ", z: " + z;
+    }
+}
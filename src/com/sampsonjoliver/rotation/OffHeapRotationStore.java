@@ -0,0 +1,657 @@
+package com.sampsonjoliver.rotation;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A fixed capacity store of quaternions or rotation matrices held outside the Java heap, for
+ * long-lived caches of millions of rotations. The data lives in direct buffers of at most 1 GB
+ * each, so the store is a handful of heap objects however many rotations it holds, and the
+ * garbage collector never scans or copies the payload.
+ * <p>Each element is packed as consecutive native-order floats in one of three layouts:
+ * <ul>
+ * <li>QUATERNION: [w, x, y, z]</li>
+ * <li>MATRIX_9: the 9 element row-major matrix of RotationMatrix.getRotationMatrixFromVector</li>
+ * <li>MATRIX_16: the 16 element row-major matrix of RotationMatrix.getRotationMatrixFromVector</li>
+ * </ul>
+ * Pairwise methods compare the elements (i-1, i) for i in [from, from + count) and store the
+ * result for each pair at index i - from, reading the elements straight from the off-heap
+ * buffers. Their results are identical to the QuaternionBuffer and RotationMatrix methods they
+ * name.
+ * <p>Segments are allocated as the store grows into them, so a store holds off-heap memory
+ * only for the capacity it has used. close() frees the segments immediately, so a cache can be
+ * closed and rebuilt without waiting for a garbage collection, and any later call throws
+ * IllegalStateException. On a JVM without sun.misc.Unsafe.invokeCleaner the memory is instead
+ * returned when the garbage collector reclaims the dropped buffers. Calling a method that needs
+ * a different layout than the store was created with also throws IllegalStateException.
+ * Instances are not thread safe, and closing a store while another thread uses it may crash the
+ * JVM.
+ */
+public class OffHeapRotationStore implements AutoCloseable
+{
+    /**
+     * The packing of each element of the store
+     */
+    public enum Layout
+    {
+        QUATERNION(4),
+        MATRIX_9(9),
+        MATRIX_16(16);
+
+        private final int width;
+
+        Layout(int width)
+        {
+            this.width = width;
+        }
+
+        /**
+         * Get the number of floats in each element
+         * @return 4, 9 or 16
+         */
+        public int width()
+        {
+            return width;
+        }
+    }
+
+    private static final int DEFAULT_SEGMENT_SIZE = 1 << 30;
+
+    private final Layout layout;
+    private final long capacity;
+    private final int stride;
+    private final int elementsPerSegment;
+    private ByteBuffer[] segments;
+    private long size;
+
+    /**
+     * Creates a new, empty OffHeapRotationStore.
+     * @param layout the packing of each element
+     * @param capacity the maximum number of elements held
+     */
+    public OffHeapRotationStore(Layout layout, long capacity)
+    {
+        this(layout, capacity, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Creates a new, empty OffHeapRotationStore. No off-heap memory is allocated until elements
+     * are added.
+     * @param layout the packing of each element
+     * @param capacity the maximum number of elements held
+     * @param maxSegmentSize the maximum number of bytes in each direct buffer
+     */
+    public OffHeapRotationStore(Layout layout, long capacity, int maxSegmentSize)
+    {
+        if (capacity < 0)
+            throw new IllegalArgumentException("capacity must not be negative, not " + capacity);
+
+        this.layout = layout;
+        this.capacity = capacity;
+        this.stride = layout.width * 4;
+        this.elementsPerSegment = maxSegmentSize / stride;
+        if (elementsPerSegment < 1)
+            throw new IllegalArgumentException("maxSegmentSize " + maxSegmentSize + " cannot hold an element");
+
+        int numSegments = (int)((capacity + elementsPerSegment - 1) / elementsPerSegment);
+        this.segments = new ByteBuffer[numSegments];
+    }
+
+    /**
+     * Get the packing of each element
+     * @return the layout
+     */
+    public Layout layout()
+    {
+        return layout;
+    }
+
+    /**
+     * Get the number of elements in the store
+     * @return the number of elements
+     */
+    public long size()
+    {
+        return size;
+    }
+
+    /**
+     * Get the maximum number of elements the store can hold
+     * @return the capacity
+     */
+    public long capacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * Determine if the store has not been closed
+     * @return true or false
+     */
+    public boolean isOpen()
+    {
+        return segments != null;
+    }
+
+    /**
+     * Removes every element from the store. The segments allocated so far are kept for reuse.
+     */
+    public void clear()
+    {
+        segments();
+        size = 0;
+    }
+
+    /**
+     * Closes the store and frees its off-heap segments. Calling close more than once has no
+     * effect.
+     */
+    @Override
+    public void close()
+    {
+        ByteBuffer[] s = segments;
+        if (s == null)
+            return;
+
+        // Unreachable through the store before any memory is freed
+        segments = null;
+        size = 0;
+        for (int n = 0; n < s.length; ++n)
+        {
+            if (s[n] != null)
+                DirectBuffers.free(s[n]);
+            s[n] = null;
+        }
+    }
+
+    /**
+     * Appends a quaternion to a QUATERNION store.
+     * @param w the real-valued scalar part of the Quaternion
+     * @param x the x-component of the complex vector part of the Quaternion
+     * @param y the y-component of the complex vector part of the Quaternion
+     * @param z the z-component of the complex vector part of the Quaternion
+     * @return the index of the new element
+     */
+    public long add(float w, float x, float y, float z)
+    {
+        checkLayout(Layout.QUATERNION);
+
+        long i = next();
+        put(i, w, x, y, z);
+        size = i + 1;
+        return i;
+    }
+
+    /**
+     * Replaces quaternion i of a QUATERNION store.
+     * @param i the index of the element, less than size()
+     * @param w the real-valued scalar part of the Quaternion
+     * @param x the x-component of the complex vector part of the Quaternion
+     * @param y the y-component of the complex vector part of the Quaternion
+     * @param z the z-component of the complex vector part of the Quaternion
+     */
+    public void set(long i, float w, float x, float y, float z)
+    {
+        checkLayout(Layout.QUATERNION);
+        checkIndex(i);
+
+        put(i, w, x, y, z);
+    }
+
+    /**
+     * Copies quaternion i of a QUATERNION store into dest.
+     * @param i the index of the element
+     * @param dest the quaternion in which to store the element
+     * @return dest
+     */
+    public MutableQuaternion get(long i, MutableQuaternion dest)
+    {
+        checkLayout(Layout.QUATERNION);
+        checkIndex(i);
+
+        ByteBuffer segment = segment(i);
+        int o = offset(i);
+        return dest.set(segment.getFloat(o), segment.getFloat(o + 4), segment.getFloat(o + 8), segment.getFloat(o + 12));
+    }
+
+    /**
+     * Appends a 3- or 4- part rotation vector expressed as [x,y,z,w], converted to a quaternion
+     * as Quaternion.getQuaternionFromVector does, or to a matrix as
+     * RotationMatrix.getRotationMatrixFromVector does.
+     * @param rv the rotation vector to convert
+     * @return the index of the new element
+     */
+    public long addVector(float[] rv)
+    {
+        checkVector(rv);
+
+        long i = next();
+        putVector(i, rv);
+        size = i + 1;
+        return i;
+    }
+
+    /**
+     * Replaces element i with a 3- or 4- part rotation vector expressed as [x,y,z,w], converted
+     * as addVector does.
+     * @param i the index of the element, less than size()
+     * @param rv the rotation vector to convert
+     */
+    public void setVector(long i, float[] rv)
+    {
+        checkVector(rv);
+        checkIndex(i);
+
+        putVector(i, rv);
+    }
+
+    private void putVector(long i, float[] rv)
+    {
+        float w = Quaternion.vectorW(rv);
+        if (layout == Layout.QUATERNION)
+            put(i, w, rv[0], rv[1], rv[2]);
+        else
+            putMatrix(segment(i), offset(i), w, rv[0], rv[1], rv[2]);
+    }
+
+    /**
+     * Appends a rotation matrix to a MATRIX_9 or MATRIX_16 store.
+     * @param R the matrix, of layout().width() floats
+     * @return the index of the new element
+     */
+    public long addMatrix(float[] R)
+    {
+        checkMatrixLayout();
+        checkMatrix(R);
+
+        long i = next();
+        putMatrix(i, R);
+        size = i + 1;
+        return i;
+    }
+
+    /**
+     * Replaces matrix i of a MATRIX_9 or MATRIX_16 store.
+     * @param i the index of the element, less than size()
+     * @param R the matrix, of layout().width() floats
+     */
+    public void setMatrix(long i, float[] R)
+    {
+        checkMatrixLayout();
+        checkMatrix(R);
+        checkIndex(i);
+
+        putMatrix(i, R);
+    }
+
+    /**
+     * Copies matrix i of a MATRIX_9 or MATRIX_16 store into R.
+     * @param i the index of the element
+     * @param R an array of layout().width() floats in which to store the matrix
+     * @return R
+     */
+    public float[] getMatrix(long i, float[] R)
+    {
+        checkMatrixLayout();
+        checkIndex(i);
+
+        ByteBuffer segment = segment(i);
+        int o = offset(i);
+        for (int k = 0; k < layout.width; ++k)
+        {
+            R[k] = segment.getFloat(o + 4 * k);
+        }
+        return R;
+    }
+
+    /**
+     * Appends every quaternion of a buffer to a QUATERNION store.
+     * @param src the quaternions to append
+     */
+    public void addQuaternions(QuaternionBuffer src)
+    {
+        checkLayout(Layout.QUATERNION);
+        int n = src.size();
+        if (size + n > capacity)
+            throw new IndexOutOfBoundsException("size " + (size + n) + " exceeds capacity " + capacity);
+
+        float[] w = src.getW(), x = src.getX(), y = src.getY(), z = src.getZ();
+        for (int k = 0; k < n; ++k)
+        {
+            long i = next();
+            put(i, w[k], x[k], y[k], z[k]);
+            size = i + 1;
+        }
+    }
+
+    /**
+     * Appends quaternions [from, from + count) of a QUATERNION store to a buffer.
+     * @param dest the buffer to append to
+     * @param from the index of the first element
+     * @param count the number of elements
+     */
+    public void getQuaternions(QuaternionBuffer dest, long from, int count)
+    {
+        checkLayout(Layout.QUATERNION);
+        checkRange(from, count);
+
+        for (int k = 0; k < count; ++k)
+        {
+            long i = from + k;
+            ByteBuffer segment = segment(i);
+            int o = offset(i);
+            dest.add(segment.getFloat(o), segment.getFloat(o + 4), segment.getFloat(o + 8), segment.getFloat(o + 12));
+        }
+    }
+
+    /**
+     * Appends the rotation matrices of quaternions [from, from + count) of a QUATERNION store to
+     * a MATRIX_9 or MATRIX_16 store, with the values of QuaternionEngine.getRotationMatrices.
+     * @param dest the matrix store to append to
+     * @param from the index of the first quaternion
+     * @param count the number of quaternions
+     */
+    public void getRotationMatrices(OffHeapRotationStore dest, long from, int count)
+    {
+        checkLayout(Layout.QUATERNION);
+        checkRange(from, count);
+        dest.checkMatrixLayout();
+        if (dest.size + count > dest.capacity)
+            throw new IndexOutOfBoundsException("dest size " + (dest.size + count) + " exceeds capacity " + dest.capacity);
+
+        for (int k = 0; k < count; ++k)
+        {
+            long i = from + k;
+            ByteBuffer segment = segment(i);
+            int o = offset(i);
+
+            long j = dest.next();
+            dest.putMatrix(dest.segment(j), dest.offset(j),
+                    segment.getFloat(o), segment.getFloat(o + 4), segment.getFloat(o + 8), segment.getFloat(o + 12));
+            dest.size = j + 1;
+        }
+    }
+
+    /**
+     * Calculates the Tait-Bryan angle change between consecutive quaternions of a QUATERNION
+     * store, with the same values as QuaternionBuffer.getTaitBryanAngleChanges.
+     * @param phi an array of at least count floats in which to store the rotation about x
+     * @param theta an array of at least count floats in which to store the rotation about y
+     * @param psi an array of at least count floats in which to store the rotation about z
+     * @param from the index of the first element to compare against its predecessor, at least 1
+     * @param count the number of pairs to compare
+     */
+    public void getTaitBryanAngleChanges(float[] phi, float[] theta, float[] psi, long from, int count)
+    {
+        checkLayout(Layout.QUATERNION);
+        checkPairRange(from, count);
+        if (count == 0)
+            return;
+
+        ByteBuffer segment = segment(from - 1);
+        int o = offset(from - 1);
+        float pw = segment.getFloat(o), px = segment.getFloat(o + 4), py = segment.getFloat(o + 8), pz = segment.getFloat(o + 12);
+
+        for (int k = 0; k < count; ++k)
+        {
+            long i = from + k;
+            segment = segment(i);
+            o = offset(i);
+            float b0 = segment.getFloat(o), b1 = segment.getFloat(o + 4), b2 = segment.getFloat(o + 8), b3 = segment.getFloat(o + 12);
+
+            // Conjugate of the previous quaternion
+            float a0 = pw, a1 = -px, a2 = -py, a3 = -pz;
+
+            float q0 = -a1 * b1 - a2 * b2 - a3 * b3 + a0 * b0;
+            float q1 =  a1 * b0 + a2 * b3 - a3 * b2 + a0 * b1;
+            float q2 = -a1 * b3 + a2 * b0 + a3 * b1 + a0 * b2;
+            float q3 =  a1 * b2 - a2 * b1 + a3 * b0 + a0 * b3;
+
+            phi[k] = (float) Math.atan2(q2 * q3 + q0 * q1, 0.5 - (q1 * q1 + q2 * q2));
+            theta[k] = (float) Math.asin(-2.0 * (q1 * q3 - q0 * q2));
+            psi[k] = (float) Math.atan2(q1 * q2 + q0 * q3, 0.5 - (q2 * q2 + q3 * q3));
+
+            pw = b0;
+            px = b1;
+            py = b2;
+            pz = b3;
+        }
+    }
+
+    /**
+     * Calculates the angular distance between consecutive quaternions of a QUATERNION store, with
+     * the same values as QuaternionBuffer.getDistanceChanges.
+     * @param res an array of at least count floats in which to store the distances in radians
+     * @param from the index of the first element to compare against its predecessor, at least 1
+     * @param count the number of pairs to compare
+     */
+    public void getDistanceChanges(float[] res, long from, int count)
+    {
+        checkLayout(Layout.QUATERNION);
+        checkPairRange(from, count);
+        if (count == 0)
+            return;
+
+        ByteBuffer segment = segment(from - 1);
+        int o = offset(from - 1);
+        float pw = segment.getFloat(o), px = segment.getFloat(o + 4), py = segment.getFloat(o + 8), pz = segment.getFloat(o + 12);
+
+        for (int k = 0; k < count; ++k)
+        {
+            long i = from + k;
+            segment = segment(i);
+            o = offset(i);
+            float w = segment.getFloat(o), x = segment.getFloat(o + 4), y = segment.getFloat(o + 8), z = segment.getFloat(o + 12);
+
+            res[k] = 2 * (float)Math.acos(pw * w + px * x + py * y + pz * z);
+
+            pw = w;
+            px = x;
+            py = y;
+            pz = z;
+        }
+    }
+
+    /**
+     * Calculates the angle change between consecutive matrices of a MATRIX_9 or MATRIX_16 store,
+     * with the same values as RotationMatrix.getAngleChange(angleChange, R, prevR) where R is
+     * matrix i and prevR matrix i-1.
+     * @param z an array of at least count floats in which to store the z angle change
+     * @param x an array of at least count floats in which to store the x angle change
+     * @param y an array of at least count floats in which to store the y angle change
+     * @param from the index of the first element to compare against its predecessor, at least 1
+     * @param count the number of pairs to compare
+     */
+    public void getMatrixAngleChanges(float[] z, float[] x, float[] y, long from, int count)
+    {
+        checkMatrixLayout();
+        checkPairRange(from, count);
+        if (count == 0)
+            return;
+
+        float[] prevR = readMatrix(from - 1, new float[layout.width]);
+        float[] R = new float[layout.width];
+        float[] angleChange = new float[3];
+
+        for (int k = 0; k < count; ++k)
+        {
+            RotationMatrix.getAngleChange(angleChange, readMatrix(from + k, R), prevR);
+            z[k] = angleChange[0];
+            x[k] = angleChange[1];
+            y[k] = angleChange[2];
+
+            float[] t = prevR;
+            prevR = R;
+            R = t;
+        }
+    }
+
+    private void put(long i, float w, float x, float y, float z)
+    {
+        ByteBuffer segment = segment(i);
+        int o = offset(i);
+        segment.putFloat(o, w);
+        segment.putFloat(o + 4, x);
+        segment.putFloat(o + 8, y);
+        segment.putFloat(o + 12, z);
+    }
+
+    private void putMatrix(long i, float[] R)
+    {
+        ByteBuffer segment = segment(i);
+        int o = offset(i);
+        for (int k = 0; k < layout.width; ++k)
+        {
+            segment.putFloat(o + 4 * k, R[k]);
+        }
+    }
+
+    private float[] readMatrix(long i, float[] R)
+    {
+        ByteBuffer segment = segment(i);
+        int o = offset(i);
+        for (int k = 0; k < R.length; ++k)
+        {
+            R[k] = segment.getFloat(o + 4 * k);
+        }
+        return R;
+    }
+
+    /**
+     * Writes the rotation matrix of a quaternion as RotationMatrix.getRotationMatrixFromVector does.
+     */
+    private void putMatrix(ByteBuffer segment, int o, float q0, float q1, float q2, float q3)
+    {
+        float sq_q1 = 2 * q1 * q1;
+        float sq_q2 = 2 * q2 * q2;
+        float sq_q3 = 2 * q3 * q3;
+        float q1_q2 = 2 * q1 * q2;
+        float q3_q0 = 2 * q3 * q0;
+        float q1_q3 = 2 * q1 * q3;
+        float q2_q0 = 2 * q2 * q0;
+        float q2_q3 = 2 * q2 * q3;
+        float q1_q0 = 2 * q1 * q0;
+
+        if (layout == Layout.MATRIX_9)
+        {
+            segment.putFloat(o, 1 - sq_q2 - sq_q3);
+            segment.putFloat(o + 4, q1_q2 - q3_q0);
+            segment.putFloat(o + 8, q1_q3 + q2_q0);
+
+            segment.putFloat(o + 12, q1_q2 + q3_q0);
+            segment.putFloat(o + 16, 1 - sq_q1 - sq_q3);
+            segment.putFloat(o + 20, q2_q3 - q1_q0);
+
+            segment.putFloat(o + 24, q1_q3 - q2_q0);
+            segment.putFloat(o + 28, q2_q3 + q1_q0);
+            segment.putFloat(o + 32, 1 - sq_q1 - sq_q2);
+        }
+        else
+        {
+            segment.putFloat(o, 1 - sq_q2 - sq_q3);
+            segment.putFloat(o + 4, q1_q2 - q3_q0);
+            segment.putFloat(o + 8, q1_q3 + q2_q0);
+            segment.putFloat(o + 12, 0.0f);
+
+            segment.putFloat(o + 16, q1_q2 + q3_q0);
+            segment.putFloat(o + 20, 1 - sq_q1 - sq_q3);
+            segment.putFloat(o + 24, q2_q3 - q1_q0);
+            segment.putFloat(o + 28, 0.0f);
+
+            segment.putFloat(o + 32, q1_q3 - q2_q0);
+            segment.putFloat(o + 36, q2_q3 + q1_q0);
+            segment.putFloat(o + 40, 1 - sq_q1 - sq_q2);
+            segment.putFloat(o + 44, 0.0f);
+
+            segment.putFloat(o + 48, 0.0f);
+            segment.putFloat(o + 52, 0.0f);
+            segment.putFloat(o + 56, 0.0f);
+            segment.putFloat(o + 60, 1.0f);
+        }
+    }
+
+    private ByteBuffer[] segments()
+    {
+        ByteBuffer[] s = segments;
+        if (s == null)
+            throw new IllegalStateException("store is closed");
+        return s;
+    }
+
+    private ByteBuffer segment(long i)
+    {
+        return segments()[(int)(i / elementsPerSegment)];
+    }
+
+    private int offset(long i)
+    {
+        return (int)(i % elementsPerSegment) * stride;
+    }
+
+    /**
+     * Get the index of the next element to append, allocating its segment if needed. The caller
+     * writes the element and only then grows size, so a failed append leaves the store unchanged.
+     */
+    private long next()
+    {
+        ByteBuffer[] s = segments();
+        if (size == capacity)
+            throw new IndexOutOfBoundsException("store is full at capacity " + capacity);
+
+        long i = size;
+        int n = (int)(i / elementsPerSegment);
+        if (s[n] == null)
+        {
+            long elements = Math.min(elementsPerSegment, capacity - (long)n * elementsPerSegment);
+            s[n] = ByteBuffer.allocateDirect((int)(elements * stride)).order(ByteOrder.nativeOrder());
+        }
+        return i;
+    }
+
+    private static void checkVector(float[] rv)
+    {
+        if (rv.length != 3 && rv.length != 4)
+            throw new IllegalArgumentException("rotation vector must have 3 or 4 elements, not " + rv.length);
+    }
+
+    private void checkMatrix(float[] R)
+    {
+        if (R.length < layout.width)
+            throw new IllegalArgumentException("matrix has " + R.length + " elements, fewer than " + layout.width);
+    }
+
+    private void checkLayout(Layout expected)
+    {
+        if (layout != expected)
+            throw new IllegalStateException("requires a " + expected + " store, not " + layout);
+    }
+
+    private void checkMatrixLayout()
+    {
+        if (layout == Layout.QUATERNION)
+            throw new IllegalStateException("requires a MATRIX_9 or MATRIX_16 store, not " + layout);
+    }
+
+    private void checkIndex(long i)
+    {
+        segments();
+        if (i < 0 || i >= size)
+            throw new IndexOutOfBoundsException("element " + i + " outside of [0, " + size + ")");
+    }
+
+    private void checkRange(long from, int count)
+    {
+        segments();
+        if (from < 0 || count < 0 || from + count > size)
+            throw new IndexOutOfBoundsException("elements [" + from + ", " + (from + count) + ") outside of [0, " + size + ")");
+    }
+
+    private void checkPairRange(long from, int count)
+    {
+        segments();
+        if (count > 0 && (from < 1 || from + count > size))
+            throw new IndexOutOfBoundsException("pairs [" + from + ", " + (from + count) + ") outside of [1, " + size + ")");
+        if (count < 0)
+            throw new IndexOutOfBoundsException("negative count " + count);
+    }
+}
@@ -0,0 +1,33 @@
+package com.sampsonjoliver.rotation;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * The JFR event committed by RotationMetrics for each batch or stream operation. Only loaded
+ * when metrics are enabled.
+ */
+@Name("com.sampsonjoliver.rotation.Operation")
+@Label("Rotation Operation")
+@Category("Rotation")
+@Description("A batch or stream operation of the rotation library")
+class OperationEvent extends Event
+{
+    @Label("Stage")
+    String stage;
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Elements")
+    @Description("The number of samples or pairs processed")
+    int elements;
+
+    @Label("Latency")
+    @Timespan(Timespan.NANOSECONDS)
+    long latency;
+}
@@ -0,0 +1,228 @@
+package com.sampsonjoliver.rotation;
+
+/**
+ * Tracks a stream of rotation vectors one sample at a time and reports the angle change between
+ * the latest sample and the one before it.
+ * <p>Each sample is converted to a quaternion once, when it is passed to update, and kept as the
+ * previous sample for the next update. Rotation matrices are only built when a matrix angle change
+ * is asked for, and are likewise built once per sample. No method allocates.
+ * <p>Angle changes have the same values as the float API called on the last two samples:
+ * getTaitBryanAngleChange matches Quaternion.getTaitBryanAngleChange for 3-wide vectors,
+ * getDistanceChange matches Quaternion.getDistanceChange, and getMatrixAngleChange matches
+ * RotationMatrix.getAngleChange over matrices from RotationMatrix.getRotationMatrixFromVector.
+ * For 4-wide [x,y,z,w] vectors the Tait-Bryan change is taken from the conjugate difference of
+ * the two quaternions, as it is for 3-wide vectors and in Quaternion.Difference.
+ * <p>Angles are computed with the AngleMath given at construction, EXACT by default.
+ */
+public class OrientationTracker
+{
+    // Previous and current quaternions as [w, x, y, z]
+    private float pw, px, py, pz;
+    private float cw, cx, cy, cz;
+    private boolean prevFourWide;
+    private boolean curFourWide;
+    private int samples;
+
+    private float[] prevR = new float[9];
+    private float[] R = new float[9];
+    private boolean prevMatrixValid;
+    private boolean curMatrixValid;
+
+    private final AngleMath angleMath;
+
+    /**
+     * Creates a new OrientationTracker using exact trigonometry.
+     */
+    public OrientationTracker()
+    {
+        this(AngleMath.EXACT);
+    }
+
+    /**
+     * Creates a new OrientationTracker.
+     * @param angleMath the trigonometry used to compute angles
+     */
+    public OrientationTracker(AngleMath angleMath)
+    {
+        this.angleMath = angleMath;
+    }
+
+    /**
+     * Forgets every sample seen so far.
+     */
+    public void reset()
+    {
+        samples = 0;
+        prevMatrixValid = false;
+        curMatrixValid = false;
+    }
+
+    /**
+     * Get the number of samples seen since creation or the last reset
+     * @return the number of samples
+     */
+    public int getSampleCount()
+    {
+        return samples;
+    }
+
+    /**
+     * Determine if at least two samples have been seen, so that an angle change is available
+     * @return true or false
+     */
+    public boolean hasChange()
+    {
+        return samples >= 2;
+    }
+
+    /**
+     * Adds the next sample from a 3- or 4- part rotation vector expressed as [x,y,z,w] where w
+     * is an optional angle of rotation.
+     * @param rv the rotation vector to convert
+     */
+    public void update(float[] rv)
+    {
+        push(Quaternion.vectorW(rv), rv[0], rv[1], rv[2], rv.length == 4);
+    }
+
+    /**
+     * Adds the next sample as a quaternion.
+     * @param w the real-valued scalar part of the Quaternion
+     * @param x the x-component of the complex vector part of the Quaternion
+     * @param y the y-component of the complex vector part of the Quaternion
+     * @param z the z-component of the complex vector part of the Quaternion
+     */
+    public void update(float w, float x, float y, float z)
+    {
+        push(w, x, y, z, false);
+    }
+
+    /**
+     * Copies the latest sample into a MutableQuaternion
+     * @param dest the quaternion in which to store the latest sample
+     * @return dest
+     */
+    public MutableQuaternion getQuaternion(MutableQuaternion dest)
+    {
+        return dest.set(cw, cx, cy, cz);
+    }
+
+    /**
+     * Calculates the Tait-Bryan angle change between the previous and latest samples.
+     * @param res an array of 3 floats in which to store the change about x, y and z
+     * @return false, leaving res untouched, if fewer than two samples have been seen
+     */
+    public boolean getTaitBryanAngleChange(float[] res)
+    {
+        if (!hasChange())
+            return false;
+
+        // Conjugate of the previous quaternion
+        float a0 = pw, a1 = -px, a2 = -py, a3 = -pz;
+
+        float q0 = -a1 * cx - a2 * cy - a3 * cz + a0 * cw;
+        float q1 =  a1 * cw + a2 * cz - a3 * cy + a0 * cx;
+        float q2 = -a1 * cz + a2 * cw + a3 * cx + a0 * cy;
+        float q3 =  a1 * cy - a2 * cx + a3 * cw + a0 * cz;
+
+        res[0] = angleMath.atan2(q2 * q3 + q0 * q1, 0.5 - (q1 * q1 + q2 * q2));
+        res[1] = angleMath.asin(-2.0 * (q1 * q3 - q0 * q2));
+        res[2] = angleMath.atan2(q1 * q2 + q0 * q3, 0.5 - (q2 * q2 + q3 * q3));
+        return true;
+    }
+
+    /**
+     * Calculates the angular distance between the previous and latest samples.
+     * @return the distance in radians, or NaN if fewer than two samples have been seen
+     */
+    public float getDistanceChange()
+    {
+        if (!hasChange())
+            return Float.NaN;
+
+        // Sum in the same order as Quaternion.getDistanceChange does for each vector width
+        if (prevFourWide && curFourWide)
+            return 2 * angleMath.acos(px * cx + py * cy + pz * cz + pw * cw);
+
+        return 2 * angleMath.acos(pw * cw + px * cx + py * cy + pz * cz);
+    }
+
+    /**
+     * Calculates the angle change between the previous and latest samples through rotation
+     * matrices, as RotationMatrix.getAngleChange does.
+     * @param angleChange an array of 3 floats in which to store the z, x and y angle change
+     * @return false, leaving angleChange untouched, if fewer than two samples have been seen
+     */
+    public boolean getMatrixAngleChange(float[] angleChange)
+    {
+        if (!hasChange())
+            return false;
+
+        if (!prevMatrixValid)
+        {
+            getRotationMatrix(prevR, pw, px, py, pz);
+            prevMatrixValid = true;
+        }
+        if (!curMatrixValid)
+        {
+            getRotationMatrix(R, cw, cx, cy, cz);
+            curMatrixValid = true;
+        }
+
+        RotationMatrix.getAngleChange(angleChange, R, prevR, angleMath);
+        return true;
+    }
+
+    private void push(float w, float x, float y, float z, boolean fourWide)
+    {
+        pw = cw;
+        px = cx;
+        py = cy;
+        pz = cz;
+        prevFourWide = curFourWide;
+
+        cw = w;
+        cx = x;
+        cy = y;
+        cz = z;
+        curFourWide = fourWide;
+
+        // The current matrix, if built, becomes the previous one
+        float[] t = prevR;
+        prevR = R;
+        R = t;
+        prevMatrixValid = curMatrixValid;
+        curMatrixValid = false;
+
+        if (samples < Integer.MAX_VALUE)
+            ++samples;
+    }
+
+    /**
+     * Fills a 9 element rotation matrix as RotationMatrix.getRotationMatrixFromVector does.
+     */
+    private static void getRotationMatrix(float[] R, float q0, float q1, float q2, float q3)
+    {
+        float sq_q1 = 2 * q1 * q1;
+        float sq_q2 = 2 * q2 * q2;
+        float sq_q3 = 2 * q3 * q3;
+        float q1_q2 = 2 * q1 * q2;
+        float q3_q0 = 2 * q3 * q0;
+        float q1_q3 = 2 * q1 * q3;
+        float q2_q0 = 2 * q2 * q0;
+        float q2_q3 = 2 * q2 * q3;
+        float q1_q0 = 2 * q1 * q0;
+
+        R[0] = 1 - sq_q2 - sq_q3;
+        R[1] = q1_q2 - q3_q0;
+        R[2] = q1_q3 + q2_q0;
+
+        R[3] = q1_q2 + q3_q0;
+        R[4] = 1 - sq_q1 - sq_q3;
+        R[5] = q2_q3 - q1_q0;
+
+        R[6] = q1_q3 - q2_q0;
+        R[7] = q2_q3 + q1_q0;
+        R[8] = 1 - sq_q1 - sq_q2;
+    }
+}
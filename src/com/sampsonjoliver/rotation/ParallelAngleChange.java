@@ -0,0 +1,233 @@
+package com.sampsonjoliver.rotation;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes the angle change between every consecutive pair of a long series of rotation vectors
+ * or quaternions in parallel on a ForkJoinPool. The series is split recursively until a chunk
+ * holds no more than threshold pairs, and each chunk is processed sequentially.
+ * <p>Every pair is independent, so the output is identical to running the sequential methods
+ * (Quaternion.getTaitBryanAngleChange, Quaternion.getDistanceChange, or the QuaternionEngine
+ * kernels) over the whole series. Unlike Quaternion.getTaitBryanAngleChange, the input vectors
+ * are never modified. With a vectorized engine the angles carry the same few-ulp tolerance
+ * described by QuaternionEngine, whether run sequentially or in parallel.
+ */
+public class ParallelAngleChange
+{
+    /**
+     * The default number of pairs below which a chunk is processed sequentially
+     */
+    public static final int DEFAULT_THRESHOLD = 1 << 14;
+
+    // Chunk boundaries are kept a multiple of this many pairs from the start of the series so that
+    // vectorized kernels see the same lane grouping as a single sequential call.
+    private static final int ALIGNMENT = 64;
+
+    private final ForkJoinPool pool;
+    private final int threshold;
+    private final QuaternionEngine engine;
+
+    /**
+     * Creates a new ParallelAngleChange running on the common pool with the default threshold
+     * and the scalar engine.
+     */
+    public ParallelAngleChange()
+    {
+        this(ForkJoinPool.commonPool(), DEFAULT_THRESHOLD, QuaternionEngine.scalar());
+    }
+
+    /**
+     * Creates a new ParallelAngleChange using the scalar engine.
+     * @param pool the pool on which to run
+     * @param threshold the number of pairs below which a chunk is processed sequentially
+     */
+    public ParallelAngleChange(ForkJoinPool pool, int threshold)
+    {
+        this(pool, threshold, QuaternionEngine.scalar());
+    }
+
+    /**
+     * Creates a new ParallelAngleChange.
+     * @param pool the pool on which to run
+     * @param threshold the number of pairs below which a chunk is processed sequentially
+     * @param engine the engine used to process chunks of packed quaternions
+     */
+    public ParallelAngleChange(ForkJoinPool pool, int threshold, QuaternionEngine engine)
+    {
+        if (threshold < 1)
+            throw new IllegalArgumentException("threshold must be positive, not " + threshold);
+
+        this.pool = pool;
+        this.threshold = threshold;
+        this.engine = engine;
+    }
+
+    /**
+     * Get the pool on which work is run
+     * @return the pool
+     */
+    public ForkJoinPool getPool()
+    {
+        return pool;
+    }
+
+    /**
+     * Get the number of pairs below which a chunk is processed sequentially
+     * @return the threshold
+     */
+    public int getThreshold()
+    {
+        return threshold;
+    }
+
+    /**
+     * Calculates the Tait-Bryan angle change between every consecutive pair of 3- or 4- part
+     * rotation vectors. res[i-1] receives the same values as
+     * Quaternion.getTaitBryanAngleChange(res[i-1], vectors[i-1], vectors[i]).
+     * @param res an array of at least vectors.length-1 arrays of 3 floats
+     * @param vectors the rotation vectors, all of the same width
+     */
+    public void getTaitBryanAngleChanges(final float[][] res, final float[][] vectors)
+    {
+        if (res.length < vectors.length - 1)
+            throw new IndexOutOfBoundsException("res length " + res.length + " is less than " + (vectors.length - 1));
+
+        invoke("getTaitBryanAngleChanges", vectors.length, new RangeKernel()
+        {
+            @Override
+            public void apply(int from, int to)
+            {
+                for (int i = from; i < to; ++i)
+                {
+                    Quaternion.getTaitBryanAngleChangeUnmodified(res[i-1], vectors[i-1], vectors[i]);
+                }
+            }
+        });
+    }
+
+    /**
+     * Calculates the angular distance between every consecutive pair of 3- or 4- part rotation
+     * vectors. res[i-1] receives Quaternion.getDistanceChange(vectors[i-1], vectors[i]).
+     * @param res an array of at least vectors.length-1 floats
+     * @param vectors the rotation vectors, all of the same width
+     */
+    public void getDistanceChanges(final float[] res, final float[][] vectors)
+    {
+        if (res.length < vectors.length - 1)
+            throw new IndexOutOfBoundsException("res length " + res.length + " is less than " + (vectors.length - 1));
+
+        invoke("getDistanceChanges", vectors.length, new RangeKernel()
+        {
+            @Override
+            public void apply(int from, int to)
+            {
+                for (int i = from; i < to; ++i)
+                {
+                    res[i-1] = Quaternion.getDistanceChange(vectors[i-1], vectors[i]);
+                }
+            }
+        });
+    }
+
+    /**
+     * Calculates the Tait-Bryan angle change between every consecutive pair of packed
+     * quaternions, as QuaternionEngine.getTaitBryanAngleChanges would over the whole buffer.
+     * @param phi an array of at least quats.size()-1 floats in which to store the rotation about x
+     * @param theta an array of at least quats.size()-1 floats in which to store the rotation about y
+     * @param psi an array of at least quats.size()-1 floats in which to store the rotation about z
+     * @param quats the quaternions to compare
+     */
+    public void getTaitBryanAngleChanges(final float[] phi, final float[] theta, final float[] psi, final QuaternionBuffer quats)
+    {
+        invoke("getTaitBryanAngleChanges", quats.size(), new RangeKernel()
+        {
+            @Override
+            public void apply(int from, int to)
+            {
+                engine.getTaitBryanAngleChanges(phi, theta, psi, quats, from, to);
+            }
+        });
+    }
+
+    /**
+     * Calculates the angular distance between every consecutive pair of packed quaternions, as
+     * QuaternionEngine.getDistanceChanges would over the whole buffer.
+     * @param res an array of at least quats.size()-1 floats in which to store the distances
+     * @param quats the quaternions to compare
+     */
+    public void getDistanceChanges(final float[] res, final QuaternionBuffer quats)
+    {
+        invoke("getDistanceChanges", quats.size(), new RangeKernel()
+        {
+            @Override
+            public void apply(int from, int to)
+            {
+                engine.getDistanceChanges(res, quats, from, to);
+            }
+        });
+    }
+
+    /**
+     * Runs kernel over the pairs (i-1, i) for i in [1, size), recording the operation in
+     * RotationMetrics when enabled.
+     */
+    private void invoke(String operation, int size, RangeKernel kernel)
+    {
+        if (size < 2)
+            return;
+
+        long start = RotationMetrics.ENABLED ? RotationMetrics.start() : 0;
+        PairTask task = new PairTask(kernel, 1, size);
+        if (size - 1 <= threshold)
+            task.compute();
+        else
+            pool.invoke(task);
+
+        if (RotationMetrics.ENABLED)
+            RotationMetrics.end(RotationMetrics.Stage.PARALLEL_ANGLE_CHANGE, operation, start, size - 1);
+    }
+
+    /**
+     * Processes the pairs (i-1, i) for i in [from, to).
+     */
+    private interface RangeKernel
+    {
+        void apply(int from, int to);
+    }
+
+    private class PairTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final RangeKernel kernel;
+        private final int from;
+        private final int to;
+
+        PairTask(RangeKernel kernel, int from, int to)
+        {
+            this.kernel = kernel;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            int pairs = to - from;
+            if (pairs <= threshold || pairs <= ALIGNMENT)
+            {
+                kernel.apply(from, to);
+                return;
+            }
+
+            // Split roughly in half, on a multiple of ALIGNMENT pairs from the start of the series
+            int mid = from + pairs / 2;
+            mid = 1 + ((mid - 1) / ALIGNMENT) * ALIGNMENT;
+            if (mid <= from)
+                mid = from + ALIGNMENT;
+
+            invokeAll(new PairTask(kernel, from, mid), new PairTask(kernel, mid, to));
+        }
+    }
+}
@@ -3,8 +3,25 @@ package com.sampsonjoliver.rotation;
 public class Quaternion
 {
 	// Precision error constant
-    private static float epsilon = 0.0001f;
-    private float[] q;
+    static final float EPSILON = 0.0001f;
+    // Components are held as plain fields rather than an array so that escape analysis can
+    // scalar-replace temporaries in chained calls such as a.Versor().Conjugate().HamiltonProduct(b)
+    private float w;
+    private float x;
+    private float y;
+    private float z;
+    // A bound on |1 - Norm()| when this quaternion is known to be unit, or 0 when unknown. It is
+    // only ever set at or below EPSILON, so a positive value means isUnit() is true without
+    // computing the norm. Operations that preserve unit length add their rounding to the bound.
+    private float unitBound;
+
+    // An upper bound on the rounding added to unitBound by one normalization or product
+    private static final float UNIT_ROUNDING = 1e-6f;
+    // The largest drift from unit length that Renormalize corrects to first order
+    static final float RENORMALIZE_LIMIT = 1e-3f;
+    // The largest squared angle for which Exp, Pow and GyroIntegrator use a series instead of
+    // sin and cos; the first omitted term is below float precision
+    static final double SERIES_LIMIT = 1e-2;
 
     /**
      * Constructor creates a new Quaternion from floats w, x, y, and z.
@@ -15,7 +32,19 @@ public class Quaternion
      */
     public Quaternion(float w, float x, float y, float z)
     {
-        this.q = new float[]{w,x,y,z};
+        this.w = w;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+    }
+
+    /**
+     * Creates a new Quaternion with a known bound on its distance from unit length.
+     */
+    private Quaternion(float w, float x, float y, float z, float unitBound)
+    {
+        this(w, x, y, z);
+        this.unitBound = unitBound;
     }
 
     /**
@@ -25,29 +54,24 @@ public class Quaternion
      */
     public Quaternion(float[] rv)
     {
-		this.q = new float[4];
         getQuaternionFromVector(rv);
     }
 
     /** Helper function to convert a rotation vector to a normalized quaternion.
      *  Given a rotation vector (presumably from a ROTATION_VECTOR sensor), returns a normalized
-     *  quaternion in the array Q.  The quaternion is stored as [w, x, y, z]
+     *  quaternion in this Quaternion's w, x, y and z components.
      *  @param rv the rotation vector to convert
      */
     private void getQuaternionFromVector(float[] rv) {
-        // Take the vector w component if it exists
-        if (rv.length == 4) {
-            q[0] = rv[3];
-        }
-        // Calculate the w component as sqrt(1 - |rv|)
-        else {
-            q[0] = 1 - rv[0]*rv[0] - rv[1]*rv[1] - rv[2]*rv[2];
-            q[0] = (q[0] > 0) ? (float)Math.sqrt(q[0]) : 0;
-        }
+        if (RotationMetrics.ENABLED)
+            RotationMetrics.increment(RotationMetrics.Counter.VECTOR_CONVERSIONS);
+
+        w = vectorW(rv);
         // Set the vector component
-        q[1] = rv[0];
-        q[2] = rv[1];
-        q[3] = rv[2];
+        x = rv[0];
+        y = rv[1];
+        z = rv[2];
+        unitBound = 0;
     }
 
     /**
@@ -56,7 +80,7 @@ public class Quaternion
      */
     public float W()
     {
-        return q[0];
+        return w;
     }
 
     /**
@@ -65,7 +89,7 @@ public class Quaternion
      */
     public float X()
     {
-        return q[1];
+        return x;
     }
 
     /**
@@ -74,7 +98,7 @@ public class Quaternion
      */
     public float Y()
     {
-        return q[2];
+        return y;
     }
 
     /**
@@ -83,7 +107,7 @@ public class Quaternion
      */
     public float Z()
     {
-        return q[3];
+        return z;
     }
 
     /**
@@ -101,7 +125,7 @@ public class Quaternion
      */
     public float[] getVector()
     {
-        return new float[]{q[1], q[2], q[3]};
+        return new float[]{x, y, z};
     }
 
     /**
@@ -123,9 +147,10 @@ public class Quaternion
     {
         if (vec.length == 3)
         {
-            this.q[1] = vec[0];
-            this.q[2] = vec[1];
-            this.q[3] = vec[2];
+            this.x = vec[0];
+            this.y = vec[1];
+            this.z = vec[2];
+            this.unitBound = 0;
         }
     }
 
@@ -135,7 +160,8 @@ public class Quaternion
      */
     public void setScalar(float w)
     {
-        this.q[3] = w;
+        this.w = w;
+        this.unitBound = 0;
     }
 
     /**
@@ -145,7 +171,7 @@ public class Quaternion
      */
     public Quaternion Multiply(float c)
     {
-        return new Quaternion(q[0] * c, q[1] * c, q[2] * c, q[3] * c );
+        return new Quaternion(w * c, x * c, y * c, z * c);
     }
 
     /**
@@ -155,7 +181,7 @@ public class Quaternion
      */
     public Quaternion Divide(float c)
     {
-        return new Quaternion(q[0] / c, q[1] / c, q[2] / c, q[3] / c );
+        return new Quaternion(w / c, x / c, y / c, z / c);
     }
 
     /**
@@ -173,10 +199,11 @@ public class Quaternion
                 q[0] * q2.Z() + q[1]*q2.Y() + q[2]*q2.X() + q[3]*q2.W()
         );*/
 		return new Quaternion(
-			-q[1] * q2.X() - q[2] * q2.Y() - q[3] * q2.Z() + q[0] * q2.W(),
-			 q[1] * q2.W() + q[2] * q2.Z() - q[3] * q2.Y() + q[0] * q2.X(),
-			-q[1] * q2.Z() + q[2] * q2.W() + q[3] * q2.X() + q[0] * q2.Y(),
-			 q[1] * q2.Y() - q[2] * q2.X() + q[3] * q2.W() + q[0] * q2.Z());
+			-x * q2.x - y * q2.y - z * q2.z + w * q2.w,
+			 x * q2.w + y * q2.z - z * q2.y + w * q2.x,
+			-x * q2.z + y * q2.w + z * q2.x + w * q2.y,
+			 x * q2.y - y * q2.x + z * q2.w + w * q2.z,
+			 productBound(unitBound, q2.unitBound));
     }
 
     /**
@@ -186,10 +213,10 @@ public class Quaternion
      */
     public Quaternion Add(Quaternion q2)
     {
-        return new Quaternion(q[0] + q2.W(),
-                              q[1] + q2.X(),
-                              q[2] + q2.Y(),
-                              q[3] + q2.Z());
+        return new Quaternion(w + q2.w,
+                              x + q2.x,
+                              y + q2.y,
+                              z + q2.z);
     }
 
     /**
@@ -199,10 +226,10 @@ public class Quaternion
      */
     public Quaternion Subtract(Quaternion q2)
     {
-        return new Quaternion(q[0] + q2.W(),
-                              q[1] + q2.X(),
-                              q[2] + q2.Y(),
-                              q[3] + q2.Z());
+        return new Quaternion(w - q2.w,
+                              x - q2.x,
+                              y - q2.y,
+                              z - q2.z);
     }
 
     /**
@@ -212,7 +239,7 @@ public class Quaternion
      */
 	public float LengthSquared()
 	{
-		return q[0]*q[0] + q[1]*q[1] + q[2]*q[2] + q[3]*q[3];
+		return w*w + x*x + y*y + z*z;
 	}
 
     /**
@@ -237,7 +264,18 @@ public class Quaternion
      */
     public boolean isUnit()
     {
-        return Math.abs(1.0 - this.Norm()) <= epsilon;
+        if (unitBound > 0)
+            return true;
+
+        double error = Math.abs(1.0 - this.Norm());
+        if (error > EPSILON)
+            return false;
+
+        // Remember the result so that later Versor, Inverse and Difference calls skip the norm
+        float bound = (float)error + UNIT_ROUNDING;
+        if (bound <= EPSILON)
+            unitBound = bound;
+        return true;
     }
 
     /**
@@ -255,7 +293,7 @@ public class Quaternion
      */
     public Quaternion Conjugate()
     {
-        return new Quaternion(q[0], -q[1], -q[2], -q[3]);
+        return new Quaternion(w, -x, -y, -z, unitBound);
     }
 
     /**
@@ -265,10 +303,11 @@ public class Quaternion
      */
     public Quaternion Inverse()
     {
-        if (this.isUnit())
-            return this.Conjugate();
+        // A single allocation site keeps the result scalar-replaceable;
+        // equivalent to this.Conjugate() or this.Conjugate().Divide(this.LengthSquared())
+        float d = this.isUnit() ? 1 : this.LengthSquared();
 
-        return this.Conjugate().Divide(this.LengthSquared());
+        return new Quaternion(w / d, -x / d, -y / d, -z / d, unitBound);
     }
 
     /**
@@ -277,14 +316,141 @@ public class Quaternion
      */
 	public Quaternion Versor()
 	{
-		if (this.isUnit())
-			return this;
+        // A single allocation site keeps the result scalar-replaceable, where returning this
+        // from one branch would force the normalized copy onto the heap
+        float n, bound;
+        if (this.isUnit())
+        {
+            n = 1;
+            bound = unitBound;
+        }
         else if (this.isZero())
-            return this;
+        {
+            n = 1;
+            bound = 0;
+        }
         else
-		    return this.Divide(this.Norm());
+        {
+            n = this.Norm();
+            bound = UNIT_ROUNDING;
+            if (RotationMetrics.ENABLED)
+                RotationMetrics.increment(RotationMetrics.Counter.RENORMALIZATIONS);
+        }
+
+        return new Quaternion(w / n, x / n, y / n, z / n, bound);
 	}
 
+    /**
+     * Calculates an equivalent unit-length quaternion for a quaternion that has drifted slightly
+     * from unit length, such as one accumulated through many products. Uses the first-order
+     * approximation 1/|q| = (3 - |q|^2) / 2, which needs no square root or division, and falls
+     * back to Versor when the drift is too large for it.
+     * @return the new equivalent quaternion with a norm of 1.
+     */
+    public Quaternion Renormalize()
+    {
+        float e = 1 - LengthSquared();
+        if (Math.abs(e) > RENORMALIZE_LIMIT)
+            return Versor();
+        if (RotationMetrics.ENABLED)
+            RotationMetrics.increment(RotationMetrics.Counter.RENORMALIZATIONS);
+
+        // The remaining error is 3/8 e^2
+        float s = renormalizeScale(e);
+        return new Quaternion(w * s, x * s, y * s, z * s, UNIT_ROUNDING + 0.375f * e * e);
+    }
+
+    /**
+     * Get the factor Renormalize scales by, the first-order approximation 1/|q| = 1 + e/2 for a
+     * drift e = 1 - |q|^2 no larger than RENORMALIZE_LIMIT.
+     */
+    static float renormalizeScale(float e)
+    {
+        return 1 + 0.5f * e;
+    }
+
+    /**
+     * Calculates the quaternion exponential, e^w (cos|v| + v/|v| sin|v|) where v is the vector
+     * part. The exponential of (0, v) is the unit quaternion rotating by 2|v| about v.
+     * @return the new Quaternion result of the exponential
+     */
+    public Quaternion Exp()
+    {
+        double vn2 = x * x + y * y + z * z;
+        double vn = Math.sqrt(vn2);
+        double ew = Math.exp(w);
+        double sinc = ew * sincOf(vn, vn2);
+
+        return new Quaternion((float)(ew * cosOf(vn, vn2)), (float)(sinc * x), (float)(sinc * y), (float)(sinc * z));
+    }
+
+    /**
+     * Calculates the principal quaternion logarithm, (ln|q|, v/|v| atan2(|v|, w)) where v is the
+     * vector part. The logarithm of a unit quaternion is (0, half the rotation vector). A real
+     * quaternion has the logarithm (ln|w|, 0), and the zero quaternion (-infinity, 0).
+     * @return the new Quaternion result of the logarithm
+     */
+    public Quaternion Log()
+    {
+        double vn2 = x * x + y * y + z * z;
+        double vn = Math.sqrt(vn2);
+        double s = vn > 0 ? Math.atan2(vn, w) / vn : 0;
+
+        return new Quaternion((float)(0.5 * Math.log(vn2 + w * w)), (float)(s * x), (float)(s * y), (float)(s * z));
+    }
+
+    /**
+     * Raises the quaternion to a real power as Exp(t * Log()). For a unit quaternion this scales
+     * the angle of rotation by t about the same axis.
+     * @param t the exponent
+     * @return the new Quaternion result of the power
+     */
+    public Quaternion Pow(float t)
+    {
+        double vn2 = x * x + y * y + z * z;
+        double vn = Math.sqrt(vn2);
+        double s = t * (vn > 0 ? Math.atan2(vn, w) / vn : 0);
+
+        // Scaled logarithm
+        double lw = t * 0.5 * Math.log(vn2 + w * w);
+        double lx = s * x, ly = s * y, lz = s * z;
+
+        double ln2 = lx * lx + ly * ly + lz * lz;
+        double ln = Math.sqrt(ln2);
+        double ew = Math.exp(lw);
+        double sinc = ew * sincOf(ln, ln2);
+
+        return new Quaternion((float)(ew * cosOf(ln, ln2)), (float)(sinc * lx), (float)(sinc * ly), (float)(sinc * lz));
+    }
+
+    /**
+     * Get cos(a), by series when a is small enough for it to be exact in float.
+     */
+    static double cosOf(double a, double a2)
+    {
+        return a2 < SERIES_LIMIT ? 1 - a2 / 2 * (1 - a2 / 12) : Math.cos(a);
+    }
+
+    /**
+     * Get sin(a)/a, by series when a is small enough for it to be exact in float.
+     */
+    static double sincOf(double a, double a2)
+    {
+        return a2 < SERIES_LIMIT ? 1 - a2 / 6 * (1 - a2 / 20) : Math.sin(a) / a;
+    }
+
+    /**
+     * Get the unit bound of a product of two quaternions with the given unit bounds.
+     */
+    private static float productBound(float a, float b)
+    {
+        if (a == 0 || b == 0)
+            return 0;
+
+        float bound = a + b + UNIT_ROUNDING;
+        return bound <= EPSILON ? bound : 0;
+    }
+
     /**
      * Calculates the difference quaternion that expresses the rotation between this and
      * another quaternion.
@@ -312,21 +478,36 @@ public class Quaternion
      */
 	public float Magnitude()
 	{
-		float lenSquared = q[1] * q[1] + q[2] * q[2] + q[3] * q[3];
+        return Magnitude(AngleMath.EXACT);
+	}
+
+    /**
+     * Calculates the total magnitude of the angular rotation applied by the quaternion.
+     * @param angleMath the trigonometry to use
+     * @return a float expressing the theta value of the quaternion in radians.
+     */
+	public float Magnitude(AngleMath angleMath)
+	{
+		float lenSquared = x * x + y * y + z * z;
 		float vecNorm = (lenSquared > 0 ? (float)Math.sqrt(lenSquared) : 0);
 
-		return 2 * (float)Math.atan2(vecNorm, q[0]);
+		return 2 * angleMath.atan2(vecNorm, w);
 
         // Equivalent methods:
-		//return 2 * (float)Math.atan2(Math.sqrt(1 - q[0]*q[0]), q[0]);
-		//return 2 * (float)Math.acos(q[0]);
+		//return 2 * (float)Math.atan2(Math.sqrt(1 - w*w), w);
+		//return 2 * (float)Math.acos(w);
 	}
 
     public static float getMagnitude(float[] vec)
+    {
+        return getMagnitude(vec, AngleMath.EXACT);
+    }
+
+    public static float getMagnitude(float[] vec, AngleMath angleMath)
     {
         if (vec.length == 4)
         {
-            return 2 * (float)Math.atan2(vec[1] * vec[1] + vec[2] * vec[2] + vec[3] * vec[3], vec[0]);
+            return 2 * angleMath.atan2(vec[1] * vec[1] + vec[2] * vec[2] + vec[3] * vec[3], vec[0]);
         }
         else
         {
@@ -334,7 +515,7 @@ public class Quaternion
 
             getQuaternionFromVector(q, vec);
 
-            return 2 * (float)Math.atan2(q[1] * q[1] + q[2] * q[2] + q[3] * q[3], q[0]);
+            return 2 * angleMath.atan2(q[1] * q[1] + q[2] * q[2] + q[3] * q[3], q[0]);
         }
     }
 
@@ -345,7 +526,7 @@ public class Quaternion
      */
 	public float DotProduct(Quaternion q2)
 	{
-		return q[0] * q2.W() + q[1] * q2.X() + q[2] * q2.Y() + q[3] * q2.Z();
+		return w * q2.w + x * q2.x + y * q2.y + z * q2.z;
 	}
 
     /**
@@ -356,14 +537,39 @@ public class Quaternion
      */
 	public float Distance(Quaternion q2)
 	{
-		return 2 * (float)Math.acos(this.DotProduct(q2));
+		return Distance(q2, AngleMath.EXACT);
+	}
+
+    /**
+     * Calculates the angular (arc) distance between this and another quaternion.
+     * @param q2 the quaternion to calculate the distance to.
+     * @param angleMath the trigonometry to use
+     * @return a float expressing the angular distance in radians.
+     */
+	public float Distance(Quaternion q2, AngleMath angleMath)
+	{
+		float dot = this.DotProduct(q2);
+		if (RotationMetrics.ENABLED)
+			RotationMetrics.countDistance(dot);
+
+		return 2 * angleMath.acos(dot);
 	}
 
     public float[] toTaitBryan()
     {
-        float phi = (float) Math.atan2(W() * X() + Y() * Z(), 0.5f - (X() * X() + Y() * Y()));
-        float theta = (float) Math.asin(2.0f * (X()*Z() - W()*Y()));
-        float psi = (float) Math.atan2(W() * Z() + X() * Y(), 0.5f - (Y() * Y() + Z() * Z()));
+        return toTaitBryan(AngleMath.EXACT);
+    }
+
+    /**
+     * Converts the quaternion to Tait-Bryan angles.
+     * @param angleMath the trigonometry to use
+     * @return a new array of the [phi, theta, psi] rotations about x, y and z in radians
+     */
+    public float[] toTaitBryan(AngleMath angleMath)
+    {
+        float phi = angleMath.atan2(w * x + y * z, 0.5f - (x * x + y * y));
+        float theta = angleMath.asin(2.0f * (x * z - w * y));
+        float psi = angleMath.atan2(w * z + x * y, 0.5f - (y * y + z * z));
 
         return new float[] {phi, theta, psi};
     }
@@ -374,14 +580,23 @@ public class Quaternion
      */
 	public String toString()
 	{
-		return "w: " + q[0] + ", x: " + q[1] + ", y: " + q[2] + ", z: " + q[3];
+		return "w: " + w + ", x: " + x + ", y: " + y + ", z: " + z;
 	}
 
     public static float getDistanceChange(float[] v1, float[] v2)
+    {
+        return getDistanceChange(v1, v2, AngleMath.EXACT);
+    }
+
+    public static float getDistanceChange(float[] v1, float[] v2, AngleMath angleMath)
     {
         if (v1.length == 4)
         {
-            return 2 * (float)Math.acos(v1[0] * v2[0] + v1[1] * v2[1] + v1[2] * v2[2] + v1[3] * v2[3]);
+            float dot = v1[0] * v2[0] + v1[1] * v2[1] + v1[2] * v2[2] + v1[3] * v2[3];
+            if (RotationMetrics.ENABLED)
+                RotationMetrics.countDistance(dot);
+
+            return 2 * angleMath.acos(dot);
         }
         else
         {
@@ -391,12 +606,24 @@ public class Quaternion
             getQuaternionFromVector(q1, v1);
             getQuaternionFromVector(q2, v2);
 
-            return 2 * (float)Math.acos(q1[0] * q2[0] + q1[1] * q2[1] + q1[2] * q2[2] + q1[3] * q2[3]);
+            float dot = q1[0] * q2[0] + q1[1] * q2[1] + q1[2] * q2[2] + q1[3] * q2[3];
+            if (RotationMetrics.ENABLED)
+                RotationMetrics.countDistance(dot);
+
+            return 2 * angleMath.acos(dot);
         }
     }
 
     public static void getTaitBryanAngleChange(float[] res, float[] v1, float[] v2)
     {
+        getTaitBryanAngleChange(res, v1, v2, AngleMath.EXACT);
+    }
+
+    public static void getTaitBryanAngleChange(float[] res, float[] v1, float[] v2, AngleMath angleMath)
+    {
+        if (RotationMetrics.ENABLED)
+            RotationMetrics.increment(RotationMetrics.Counter.ANGLE_CHANGES);
+
         float[] q = new float[4];
         if (v1.length == 4)
         {
@@ -405,9 +632,9 @@ public class Quaternion
             q[2] = -v1[1] * v2[3] + v1[2] * v2[0] + v1[3] * v2[1] + v1[0] * v2[2];
             q[3] =  v1[1] * v2[2] - v1[2] * v2[1] + v1[3] * v2[0] + v1[0] * v2[3];
 
-            res[0] = (float) Math.atan2(q[2] * q[3] + q[0] * q[1], 0.5 - (q[1] * q[1] + q[2] * q[2]));
-            res[1] = (float) Math.asin(-2.0 * (q[1] * q[3] - q[0] * q[2]));
-            res[2] = (float) Math.atan2(q[1] * q[2] + q[0] * q[3], 0.5 - (q[2] * q[2] + q[3] * q[3]));
+            res[0] = angleMath.atan2(q[2] * q[3] + q[0] * q[1], 0.5 - (q[1] * q[1] + q[2] * q[2]));
+            res[1] = angleMath.asin(-2.0 * (q[1] * q[3] - q[0] * q[2]));
+            res[2] = angleMath.atan2(q[1] * q[2] + q[0] * q[3], 0.5 - (q[2] * q[2] + q[3] * q[3]));
         }
         else
         {
@@ -426,25 +653,73 @@ public class Quaternion
             q[2] = -q1[1] * q2[3] + q1[2] * q2[0] + q1[3] * q2[1] + q1[0] * q2[2];
             q[3] = q1[1] * q2[2] - q1[2] * q2[1] + q1[3] * q2[0] + q1[0] * q2[3];
 
-            res[0] = (float) Math.atan2(q[2] * q[3] + q[0] * q[1], 0.5 - (q[1] * q[1] + q[2] * q[2]));
-            res[1] = (float) Math.asin(-2.0 * (q[1] * q[3] - q[0] * q[2]));
-            res[2] = (float) Math.atan2(q[1] * q[2] + q[0] * q[3], 0.5 - (q[2] * q[2] + q[3] * q[3]));
+            res[0] = angleMath.atan2(q[2] * q[3] + q[0] * q[1], 0.5 - (q[1] * q[1] + q[2] * q[2]));
+            res[1] = angleMath.asin(-2.0 * (q[1] * q[3] - q[0] * q[2]));
+            res[2] = angleMath.atan2(q[1] * q[2] + q[0] * q[3], 0.5 - (q[2] * q[2] + q[3] * q[3]));
         }
     }
 
-    public static void getQuaternionFromVector(float[] q, float[] rv) {
-        // Take the vector w component if it exists
-        if (rv.length == 4) {
-            q[0] = rv[3];
+    /**
+     * Equivalent to Quaternion.getTaitBryanAngleChange without negating v1 for 3-wide vectors.
+     */
+    static void getTaitBryanAngleChangeUnmodified(float[] res, float[] v1, float[] v2)
+    {
+        float q0, q1, q2, q3;
+        if (v1.length == 4)
+        {
+            q0 = -v1[1] * v2[1] - v1[2] * v2[2] - v1[3] * v2[3] + v1[0] * v2[0];
+            q1 =  v1[1] * v2[0] + v1[2] * v2[3] - v1[3] * v2[2] + v1[0] * v2[1];
+            q2 = -v1[1] * v2[3] + v1[2] * v2[0] + v1[3] * v2[1] + v1[0] * v2[2];
+            q3 =  v1[1] * v2[2] - v1[2] * v2[1] + v1[3] * v2[0] + v1[0] * v2[3];
         }
-        // Calculate the w component as sqrt(1 - |rv|)
-        else {
-            q[0] = 1 - rv[0]*rv[0] - rv[1]*rv[1] - rv[2]*rv[2];
-            q[0] = (q[0] > 0) ? (float)Math.sqrt(q[0]) : 0;
+        else
+        {
+            // Conjugate of the first quaternion
+            float a0 = vectorW(v1[0], v1[1], v1[2]);
+            float a1 = -v1[0], a2 = -v1[1], a3 = -v1[2];
+
+            float b0 = vectorW(v2[0], v2[1], v2[2]);
+            float b1 = v2[0], b2 = v2[1], b3 = v2[2];
+
+            q0 = -a1 * b1 - a2 * b2 - a3 * b3 + a0 * b0;
+            q1 =  a1 * b0 + a2 * b3 - a3 * b2 + a0 * b1;
+            q2 = -a1 * b3 + a2 * b0 + a3 * b1 + a0 * b2;
+            q3 =  a1 * b2 - a2 * b1 + a3 * b0 + a0 * b3;
         }
+
+        res[0] = (float) Math.atan2(q2 * q3 + q0 * q1, 0.5 - (q1 * q1 + q2 * q2));
+        res[1] = (float) Math.asin(-2.0 * (q1 * q3 - q0 * q2));
+        res[2] = (float) Math.atan2(q1 * q2 + q0 * q3, 0.5 - (q2 * q2 + q3 * q3));
+    }
+
+    public static void getQuaternionFromVector(float[] q, float[] rv) {
+        if (RotationMetrics.ENABLED)
+            RotationMetrics.increment(RotationMetrics.Counter.VECTOR_CONVERSIONS);
+
+        q[0] = vectorW(rv);
         // Set the vector component
         q[1] = rv[0];
         q[2] = rv[1];
         q[3] = rv[2];
     }
+
+    /**
+     * Get the w component of a 3- or 4- part rotation vector expressed as [x,y,z,w], as
+     * getQuaternionFromVector converts it.
+     */
+    static float vectorW(float[] rv) {
+        // Take the vector w component if it exists
+        if (rv.length == 4)
+            return rv[3];
+
+        return vectorW(rv[0], rv[1], rv[2]);
+    }
+
+    /**
+     * Calculate the w component of a unit quaternion as sqrt(1 - |v|^2) from its vector part.
+     */
+    static float vectorW(float x, float y, float z) {
+        float w = 1 - x*x - y*y - z*z;
+        return (w > 0) ? (float)Math.sqrt(w) : 0;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,374 @@
+package com.sampsonjoliver.rotation;
+
+/**
+ * A packed, structure-of-arrays store of quaternions. Each component is held in its own
+ * float column (w, x, y and z) so that bulk operations can stream over the data without
+ * creating a Quaternion object, or a backing array, per element.
+ * <p>All bulk operations write into caller-provided output columns and perform no per-element
+ * allocation. Pairwise operations follow the float API in Quaternion: the value written
+ * at index i-1 describes the change from quaternion i-1 to quaternion i.
+ */
+public class QuaternionBuffer
+{
+    private final float[] w;
+    private final float[] x;
+    private final float[] y;
+    private final float[] z;
+    private int size;
+
+    /**
+     * Creates a new, empty QuaternionBuffer able to hold capacity quaternions.
+     * @param capacity the maximum number of quaternions the buffer can hold
+     */
+    public QuaternionBuffer(int capacity)
+    {
+        this.w = new float[capacity];
+        this.x = new float[capacity];
+        this.y = new float[capacity];
+        this.z = new float[capacity];
+        this.size = 0;
+    }
+
+    /**
+     * Creates a new QuaternionBuffer filled from an array of 3- or 4- part rotation vectors
+     * expressed as [x,y,z,w] where w is an optional angle of rotation.
+     * @param rvs the rotation vectors to convert
+     * @return a new QuaternionBuffer holding one quaternion per rotation vector
+     */
+    public static QuaternionBuffer fromVectors(float[][] rvs)
+    {
+        QuaternionBuffer buffer = new QuaternionBuffer(rvs.length);
+
+        for (int i = 0; i < rvs.length; ++i)
+        {
+            buffer.addVector(rvs[i]);
+        }
+
+        return buffer;
+    }
+
+    /**
+     * Get the number of quaternions held in the buffer
+     * @return the number of quaternions
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Get the maximum number of quaternions the buffer can hold
+     * @return the capacity of the buffer
+     */
+    public int capacity()
+    {
+        return w.length;
+    }
+
+    /**
+     * Sets the number of quaternions held in the buffer. Values beyond the previous size are
+     * left as they are, which allows the columns to be filled directly before resizing.
+     * @param size the new number of quaternions, between 0 and capacity()
+     */
+    public void setSize(int size)
+    {
+        if (size < 0 || size > capacity())
+            throw new IndexOutOfBoundsException("size " + size + " outside of [0, " + capacity() + "]");
+
+        this.size = size;
+    }
+
+    /**
+     * Removes all quaternions from the buffer without releasing its storage.
+     */
+    public void clear()
+    {
+        size = 0;
+    }
+
+    /**
+     * Get the column of real-valued scalar parts. The array is backed by the buffer.
+     * @return the w column
+     */
+    public float[] getW()
+    {
+        return w;
+    }
+
+    /**
+     * Get the column of x components. The array is backed by the buffer.
+     * @return the x column
+     */
+    public float[] getX()
+    {
+        return x;
+    }
+
+    /**
+     * Get the column of y components. The array is backed by the buffer.
+     * @return the y column
+     */
+    public float[] getY()
+    {
+        return y;
+    }
+
+    /**
+     * Get the column of z components. The array is backed by the buffer.
+     * @return the z column
+     */
+    public float[] getZ()
+    {
+        return z;
+    }
+
+    /**
+     * Get the real-valued scalar part of the quaternion at index i
+     * @param i the index of the quaternion
+     * @return the w value
+     */
+    public float W(int i)
+    {
+        return w[i];
+    }
+
+    /**
+     * Get the x component of the quaternion at index i
+     * @param i the index of the quaternion
+     * @return the x value
+     */
+    public float X(int i)
+    {
+        return x[i];
+    }
+
+    /**
+     * Get the y component of the quaternion at index i
+     * @param i the index of the quaternion
+     * @return the y value
+     */
+    public float Y(int i)
+    {
+        return y[i];
+    }
+
+    /**
+     * Get the z component of the quaternion at index i
+     * @param i the index of the quaternion
+     * @return the z value
+     */
+    public float Z(int i)
+    {
+        return z[i];
+    }
+
+    /**
+     * Creates a new Quaternion holding a copy of the quaternion at index i
+     * @param i the index of the quaternion
+     * @return the new Quaternion
+     */
+    public Quaternion get(int i)
+    {
+        return new Quaternion(w[i], x[i], y[i], z[i]);
+    }
+
+    /**
+     * Sets the quaternion at index i from floats w, x, y, and z.
+     * @param i the index of the quaternion
+     * @param w the real-valued scalar part of the Quaternion
+     * @param x the x-component of the complex vector part of the Quaternion
+     * @param y the y-component of the complex vector part of the Quaternion
+     * @param z the z-component of the complex vector part of the Quaternion
+     */
+    public void set(int i, float w, float x, float y, float z)
+    {
+        this.w[i] = w;
+        this.x[i] = x;
+        this.y[i] = y;
+        this.z[i] = z;
+    }
+
+    /**
+     * Sets the quaternion at index i from a 3- or 4- part rotation vector expressed as
+     * [x,y,z,w] where w is an optional angle of rotation. Equivalent to
+     * Quaternion.getQuaternionFromVector.
+     * @param i the index of the quaternion
+     * @param rv the rotation vector to convert
+     */
+    public void setVector(int i, float[] rv)
+    {
+        w[i] = Quaternion.vectorW(rv);
+        // Set the vector component
+        x[i] = rv[0];
+        y[i] = rv[1];
+        z[i] = rv[2];
+    }
+
+    /**
+     * Appends a quaternion converted from a 3- or 4- part rotation vector to the end of the buffer.
+     * @param rv the rotation vector to convert
+     */
+    public void addVector(float[] rv)
+    {
+        if (size == capacity())
+            throw new IndexOutOfBoundsException("buffer is full at capacity " + capacity());
+
+        setVector(size++, rv);
+    }
+
+    /**
+     * Appends a quaternion from floats w, x, y, and z to the end of the buffer.
+     * @param w the real-valued scalar part of the Quaternion
+     * @param x the x-component of the complex vector part of the Quaternion
+     * @param y the y-component of the complex vector part of the Quaternion
+     * @param z the z-component of the complex vector part of the Quaternion
+     */
+    public void add(float w, float x, float y, float z)
+    {
+        if (size == capacity())
+            throw new IndexOutOfBoundsException("buffer is full at capacity " + capacity());
+
+        set(size++, w, x, y, z);
+    }
+
+    /**
+     * Calculates the magnitude of the angular rotation of every quaternion in the buffer.
+     * Equivalent to calling Quaternion.Magnitude on each element.
+     * @param res an array of at least size() floats in which to store the magnitudes in radians
+     */
+    public void getMagnitudes(float[] res)
+    {
+        for (int i = 0; i < size; ++i)
+        {
+            float lenSquared = x[i] * x[i] + y[i] * y[i] + z[i] * z[i];
+            float vecNorm = (lenSquared > 0 ? (float)Math.sqrt(lenSquared) : 0);
+
+            res[i] = 2 * (float)Math.atan2(vecNorm, w[i]);
+        }
+    }
+
+    /**
+     * Converts every quaternion in the buffer to its Tait-Bryan representation.
+     * Equivalent to calling Quaternion.toTaitBryan on each element.
+     * @param phi an array of at least size() floats in which to store the rotation about x
+     * @param theta an array of at least size() floats in which to store the rotation about y
+     * @param psi an array of at least size() floats in which to store the rotation about z
+     */
+    public void getTaitBryan(float[] phi, float[] theta, float[] psi)
+    {
+        for (int i = 0; i < size; ++i)
+        {
+            float q0 = w[i], q1 = x[i], q2 = y[i], q3 = z[i];
+
+            phi[i] = (float) Math.atan2(q0 * q1 + q2 * q3, 0.5f - (q1 * q1 + q2 * q2));
+            theta[i] = (float) Math.asin(2.0f * (q1 * q3 - q0 * q2));
+            psi[i] = (float) Math.atan2(q0 * q3 + q1 * q2, 0.5f - (q2 * q2 + q3 * q3));
+        }
+    }
+
+    /**
+     * Calculates the difference quaternion between every consecutive pair of quaternions in the
+     * buffer, as the conjugate of quaternion i-1 multiplied by quaternion i. Quaternions are
+     * expected to be unit length, as they are in the float API.
+     * @param dest the buffer in which to store the size()-1 differences; may not be this buffer
+     */
+    public void getDifferences(QuaternionBuffer dest)
+    {
+        if (dest == this)
+            throw new IllegalArgumentException("dest may not be the source buffer");
+
+        int n = Math.max(size - 1, 0);
+        if (dest.capacity() < n)
+            throw new IndexOutOfBoundsException("dest capacity " + dest.capacity() + " is less than " + n);
+
+        for (int i = 1; i < size; ++i)
+        {
+            // Conjugate of the previous quaternion
+            float a0 = w[i-1], a1 = -x[i-1], a2 = -y[i-1], a3 = -z[i-1];
+            float b0 = w[i], b1 = x[i], b2 = y[i], b3 = z[i];
+
+            dest.w[i-1] = -a1 * b1 - a2 * b2 - a3 * b3 + a0 * b0;
+            dest.x[i-1] =  a1 * b0 + a2 * b3 - a3 * b2 + a0 * b1;
+            dest.y[i-1] = -a1 * b3 + a2 * b0 + a3 * b1 + a0 * b2;
+            dest.z[i-1] =  a1 * b2 - a2 * b1 + a3 * b0 + a0 * b3;
+        }
+
+        dest.size = n;
+    }
+
+    /**
+     * Calculates the Tait-Bryan angle change between every consecutive pair of quaternions in the
+     * buffer. Produces the same values as Quaternion.getTaitBryanAngleChange called on each pair of
+     * 3-wide rotation vectors, without modifying the input.
+     * @param phi an array of at least size()-1 floats in which to store the rotation about x
+     * @param theta an array of at least size()-1 floats in which to store the rotation about y
+     * @param psi an array of at least size()-1 floats in which to store the rotation about z
+     */
+    public void getTaitBryanAngleChanges(float[] phi, float[] theta, float[] psi)
+    {
+        getTaitBryanAngleChanges(phi, theta, psi, 1, Math.max(size, 1));
+    }
+
+    /**
+     * Calculates the Tait-Bryan angle change for the consecutive pairs (i-1, i) with i in
+     * [from, to), storing the result for each pair at index i-1.
+     * @param phi an array in which to store the rotation about x
+     * @param theta an array in which to store the rotation about y
+     * @param psi an array in which to store the rotation about z
+     * @param from the index of the first quaternion to compare against its predecessor, at least 1
+     * @param to one past the index of the last quaternion to compare, at most size()
+     */
+    public void getTaitBryanAngleChanges(float[] phi, float[] theta, float[] psi, int from, int to)
+    {
+        checkPairRange(from, to);
+
+        for (int i = from; i < to; ++i)
+        {
+            // Conjugate of the previous quaternion
+            float a0 = w[i-1], a1 = -x[i-1], a2 = -y[i-1], a3 = -z[i-1];
+            float b0 = w[i], b1 = x[i], b2 = y[i], b3 = z[i];
+
+            float q0 = -a1 * b1 - a2 * b2 - a3 * b3 + a0 * b0;
+            float q1 =  a1 * b0 + a2 * b3 - a3 * b2 + a0 * b1;
+            float q2 = -a1 * b3 + a2 * b0 + a3 * b1 + a0 * b2;
+            float q3 =  a1 * b2 - a2 * b1 + a3 * b0 + a0 * b3;
+
+            phi[i-1] = (float) Math.atan2(q2 * q3 + q0 * q1, 0.5 - (q1 * q1 + q2 * q2));
+            theta[i-1] = (float) Math.asin(-2.0 * (q1 * q3 - q0 * q2));
+            psi[i-1] = (float) Math.atan2(q1 * q2 + q0 * q3, 0.5 - (q2 * q2 + q3 * q3));
+        }
+    }
+
+    /**
+     * Calculates the angular distance between every consecutive pair of quaternions in the
+     * buffer. Produces the same values as Quaternion.getDistanceChange called on each pair.
+     * @param res an array of at least size()-1 floats in which to store the distances in radians
+     */
+    public void getDistanceChanges(float[] res)
+    {
+        getDistanceChanges(res, 1, Math.max(size, 1));
+    }
+
+    /**
+     * Calculates the angular distance for the consecutive pairs (i-1, i) with i in [from, to),
+     * storing the result for each pair at index i-1.
+     * @param res an array in which to store the distances in radians
+     * @param from the index of the first quaternion to compare against its predecessor, at least 1
+     * @param to one past the index of the last quaternion to compare, at most size()
+     */
+    public void getDistanceChanges(float[] res, int from, int to)
+    {
+        checkPairRange(from, to);
+
+        for (int i = from; i < to; ++i)
+        {
+            res[i-1] = 2 * (float)Math.acos(w[i-1] * w[i] + x[i-1] * x[i] + y[i-1] * y[i] + z[i-1] * z[i]);
+        }
+    }
+
+    void checkPairRange(int from, int to)
+    {
+        if (from > to || (from < to && (from < 1 || to > size)))
+            throw new IndexOutOfBoundsException("pair range [" + from + ", " + to + ") outside of [1, " + size + "]");
+    }
+}
@@ -0,0 +1,94 @@
+package com.sampsonjoliver.rotation;
+
+/**
+ * A batch engine that applies quaternion operations to every element, or every consecutive
+ * pair of elements, of a QuaternionBuffer.
+ * <p>Two implementations exist: a scalar engine that runs on any JVM, and a vectorized engine
+ * built on the jdk.incubator.vector module that processes as many samples per instruction as the
+ * preferred vector species allows (8 on AVX2, 16 on AVX-512). preferred() picks the vectorized
+ * engine when the module has been added with --add-modules jdk.incubator.vector, and falls back
+ * to the scalar engine otherwise. Setting the system property
+ * com.sampsonjoliver.rotation.disableVector to true forces the scalar engine. When RotationMetrics
+ * are enabled, both methods return engines that record the latency of every call.
+ * <p>The scalar engine gives the same values as the Quaternion float API. Products and
+ * differences from the vectorized engine are identical to the scalar engine; angles are
+ * computed with float-precision trigonometry and may differ from it by a few ulps. The Vector
+ * API evaluates that trigonometry differently in interpreted and compiled code, so vectorized
+ * angles are not bit-for-bit reproducible from one call to the next.
+ */
+public interface QuaternionEngine
+{
+    /**
+     * Get the scalar engine
+     * @return an engine that runs on any JVM
+     */
+    static QuaternionEngine scalar()
+    {
+        return RotationMetrics.ENABLED ? InstrumentedQuaternionEngine.SCALAR : ScalarQuaternionEngine.INSTANCE;
+    }
+
+    /**
+     * Get the fastest engine available to this JVM
+     * @return the vectorized engine if the Vector API is available, otherwise the scalar engine
+     */
+    static QuaternionEngine preferred()
+    {
+        return VectorSupport.PREFERRED;
+    }
+
+    /**
+     * Determine if the engine processes several samples per instruction
+     * @return true or false
+     */
+    boolean isVectorized();
+
+    /**
+     * Calculates the Hamilton product of each pair of quaternions a[i] * b[i].
+     * @param dest the buffer in which to store the min(a.size(), b.size()) products
+     * @param a the left-hand-side operands of the products
+     * @param b the right-hand-side operands of the products
+     */
+    void getProducts(QuaternionBuffer dest, QuaternionBuffer a, QuaternionBuffer b);
+
+    /**
+     * Calculates the difference quaternion between every consecutive pair of quaternions in src.
+     * Equivalent to QuaternionBuffer.getDifferences.
+     * @param dest the buffer in which to store the src.size()-1 differences; may not be src
+     * @param src the quaternions to compare
+     */
+    void getDifferences(QuaternionBuffer dest, QuaternionBuffer src);
+
+    /**
+     * Calculates the angular distance for the consecutive pairs (i-1, i) of src with i in
+     * [from, to), storing the result for each pair at index i-1.
+     * Equivalent to QuaternionBuffer.getDistanceChanges.
+     * @param res an array in which to store the distances in radians
+     * @param src the quaternions to compare
+     * @param from the index of the first quaternion to compare against its predecessor, at least 1
+     * @param to one past the index of the last quaternion to compare, at most src.size()
+     */
+    void getDistanceChanges(float[] res, QuaternionBuffer src, int from, int to);
+
+    /**
+     * Calculates the Tait-Bryan angle change for the consecutive pairs (i-1, i) of src with i in
+     * [from, to), storing the result for each pair at index i-1.
+     * Equivalent to QuaternionBuffer.getTaitBryanAngleChanges.
+     * @param phi an array in which to store the rotation about x
+     * @param theta an array in which to store the rotation about y
+     * @param psi an array in which to store the rotation about z
+     * @param src the quaternions to compare
+     * @param from the index of the first quaternion to compare against its predecessor, at least 1
+     * @param to one past the index of the last quaternion to compare, at most src.size()
+     */
+    void getTaitBryanAngleChanges(float[] phi, float[] theta, float[] psi, QuaternionBuffer src, int from, int to);
+
+    /**
+     * Converts every quaternion in src to a rotation matrix, laid out one after another in R.
+     * Each matrix has the 9 or 16 element row-major layout documented by
+     * RotationMatrix.getRotationMatrixFromVector.
+     * @param R an array of at least src.size() * matrixSize floats in which to store the matrices
+     * @param matrixSize 9 or 16
+     * @param src the quaternions to convert
+     */
+    void getRotationMatrices(float[] R, int matrixSize, QuaternionBuffer src);
+}
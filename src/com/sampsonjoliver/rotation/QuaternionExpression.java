@@ -0,0 +1,205 @@
+package com.sampsonjoliver.rotation;
+
+/**
+ * Describes a chain of Quaternion operations, such as
+ * input(1).difference(input(0)).compileTaitBryan() for q1.Difference(q0).toTaitBryan(), to be
+ * compiled into a QuaternionKernel that runs the whole chain as one fused loop.
+ * <p>Each method names the Quaternion operation it stands for and returns a new expression, so
+ * expressions are immutable and may be shared between chains. Inputs are numbered slots whose
+ * values are set on the kernel before each evaluation.
+ */
+public final class QuaternionExpression
+{
+    enum Op
+    {
+        INPUT, VERSOR, CONJUGATE, INVERSE, RENORMALIZE, MULTIPLY, PRODUCT
+    }
+
+    final Op op;
+    final QuaternionExpression operand;
+    final QuaternionExpression rhs;
+    final int slot;
+    final float constant;
+
+    private QuaternionExpression(Op op, QuaternionExpression operand, QuaternionExpression rhs, int slot, float constant)
+    {
+        this.op = op;
+        this.operand = operand;
+        this.rhs = rhs;
+        this.slot = slot;
+        this.constant = constant;
+    }
+
+    /**
+     * Get an expression for the value of an input slot
+     * @param slot the index of the input, from 0
+     * @return the expression
+     */
+    public static QuaternionExpression input(int slot)
+    {
+        if (slot < 0)
+            throw new IllegalArgumentException("slot must not be negative, not " + slot);
+
+        return new QuaternionExpression(Op.INPUT, null, null, slot, 0);
+    }
+
+    /**
+     * Equivalent to Quaternion.Versor
+     * @return the expression
+     */
+    public QuaternionExpression versor()
+    {
+        return new QuaternionExpression(Op.VERSOR, this, null, 0, 0);
+    }
+
+    /**
+     * Equivalent to Quaternion.Conjugate
+     * @return the expression
+     */
+    public QuaternionExpression conjugate()
+    {
+        return new QuaternionExpression(Op.CONJUGATE, this, null, 0, 0);
+    }
+
+    /**
+     * Equivalent to Quaternion.Inverse
+     * @return the expression
+     */
+    public QuaternionExpression inverse()
+    {
+        return new QuaternionExpression(Op.INVERSE, this, null, 0, 0);
+    }
+
+    /**
+     * Equivalent to Quaternion.Renormalize
+     * @return the expression
+     */
+    public QuaternionExpression renormalize()
+    {
+        return new QuaternionExpression(Op.RENORMALIZE, this, null, 0, 0);
+    }
+
+    /**
+     * Equivalent to Quaternion.Multiply
+     * @param c the constant to scale by
+     * @return the expression
+     */
+    public QuaternionExpression multiply(float c)
+    {
+        return new QuaternionExpression(Op.MULTIPLY, this, null, 0, c);
+    }
+
+    /**
+     * Equivalent to Quaternion.HamiltonProduct
+     * @param q2 the right-hand-side of the product
+     * @return the expression
+     */
+    public QuaternionExpression product(QuaternionExpression q2)
+    {
+        return new QuaternionExpression(Op.PRODUCT, this, q2, 0, 0);
+    }
+
+    /**
+     * Equivalent to Quaternion.Difference, this.Versor().Conjugate().HamiltonProduct(qPrev.Versor())
+     * @param qPrev the quaternion to calculate the difference between
+     * @return the expression
+     */
+    public QuaternionExpression difference(QuaternionExpression qPrev)
+    {
+        return versor().conjugate().product(qPrev.versor());
+    }
+
+    /**
+     * Compiles a kernel whose result is the quaternion [w, x, y, z].
+     * @return the kernel
+     */
+    public QuaternionKernel compile()
+    {
+        return QuaternionKernel.compile(this, null, QuaternionKernel.RESULT_QUATERNION, AngleMath.EXACT);
+    }
+
+    /**
+     * Compiles a kernel whose result is the [phi, theta, psi] of Quaternion.toTaitBryan.
+     * @return the kernel
+     */
+    public QuaternionKernel compileTaitBryan()
+    {
+        return compileTaitBryan(AngleMath.EXACT);
+    }
+
+    /**
+     * Compiles a kernel whose result is the [phi, theta, psi] of Quaternion.toTaitBryan.
+     * @param angleMath the trigonometry to use
+     * @return the kernel
+     */
+    public QuaternionKernel compileTaitBryan(AngleMath angleMath)
+    {
+        return QuaternionKernel.compile(this, null, QuaternionKernel.RESULT_TAIT_BRYAN, angleMath);
+    }
+
+    /**
+     * Compiles a kernel whose result is the Quaternion.Magnitude of this expression.
+     * @return the kernel
+     */
+    public QuaternionKernel compileMagnitude()
+    {
+        return compileMagnitude(AngleMath.EXACT);
+    }
+
+    /**
+     * Compiles a kernel whose result is the Quaternion.Magnitude of this expression.
+     * @param angleMath the trigonometry to use
+     * @return the kernel
+     */
+    public QuaternionKernel compileMagnitude(AngleMath angleMath)
+    {
+        return QuaternionKernel.compile(this, null, QuaternionKernel.RESULT_MAGNITUDE, angleMath);
+    }
+
+    /**
+     * Compiles a kernel whose result is the Quaternion.Distance from this expression to another.
+     * @param q2 the quaternion to calculate the distance to
+     * @return the kernel
+     */
+    public QuaternionKernel compileDistance(QuaternionExpression q2)
+    {
+        return compileDistance(q2, AngleMath.EXACT);
+    }
+
+    /**
+     * Compiles a kernel whose result is the Quaternion.Distance from this expression to another.
+     * @param q2 the quaternion to calculate the distance to
+     * @param angleMath the trigonometry to use
+     * @return the kernel
+     */
+    public QuaternionKernel compileDistance(QuaternionExpression q2, AngleMath angleMath)
+    {
+        return QuaternionKernel.compile(this, q2, QuaternionKernel.RESULT_DISTANCE, angleMath);
+    }
+
+    /**
+     * Converts the expression to a string.
+     * @return the expression as a chain of Quaternion calls
+     */
+    @Override
+    public String toString()
+    {
+        switch (op)
+        {
+            case INPUT:
+                return "q" + slot;
+            case VERSOR:
+                return operand + ".Versor()";
+            case CONJUGATE:
+                return operand + ".Conjugate()";
+            case INVERSE:
+                return operand + ".Inverse()";
+            case RENORMALIZE:
+                return operand + ".Renormalize()";
+            case MULTIPLY:
+                return operand + ".Multiply(" + constant + ")";
+            default:
+                return operand + ".HamiltonProduct(" + rhs + ")";
+        }
+    }
+}
@@ -0,0 +1,583 @@
+package com.sampsonjoliver.rotation;
+
+/**
+ * A chain of Quaternion operations compiled from a QuaternionExpression. The difference of two
+ * inputs, input(a).difference(input(b)), compiles to straight-line code. Any other chain
+ * compiles to a short program whose steps carry the quaternion being built in local
+ * variables, with a preallocated register for each input slot and for each intermediate
+ * result that a later product or distance needs. Either way, evaluating reads each input once
+ * and allocates nothing; results are written into the caller's array or into a preallocated
+ * array of the kernel.
+ * <p>Results are the same, bit for bit, as the step-by-step Quaternion calls the expression
+ * names, evaluated on quaternions built with the Quaternion(w, x, y, z) constructor. Where
+ * escape analysis already removes the intermediate Quaternions of a chain, as it does for
+ * q1.Difference(q0).toTaitBryan(), the kernel saves only the result array, and the time is
+ * dominated by the trigonometry of the terminal step.
+ * <p>A kernel holds its inputs, so each thread needs its own; copy makes another kernel for the
+ * same chain.
+ */
+public abstract class QuaternionKernel
+{
+    static final int RESULT_QUATERNION = 0;
+    static final int RESULT_TAIT_BRYAN = 1;
+    static final int RESULT_MAGNITUDE = 2;
+    static final int RESULT_DISTANCE = 3;
+
+    private static final int LOAD = 0;
+    private static final int STORE = 1;
+    private static final int VERSOR = 2;
+    private static final int CONJUGATE = 3;
+    private static final int INVERSE = 4;
+    private static final int RENORMALIZE = 5;
+    private static final int MULTIPLY = 6;
+    private static final int PRODUCT = 7;
+
+    final String description;
+    final int inputs;
+    final int registers;
+    final int result;
+    final int distanceRegister;
+    final AngleMath angleMath;
+    final float[] regs;
+    private final float[] out = new float[4];
+
+    QuaternionKernel(String description, int inputs, int registers, int result, int distanceRegister, AngleMath angleMath)
+    {
+        this.description = description;
+        this.inputs = inputs;
+        this.registers = registers;
+        this.result = result;
+        this.distanceRegister = distanceRegister;
+        this.angleMath = angleMath;
+        this.regs = new float[4 * registers];
+    }
+
+    static QuaternionKernel compile(QuaternionExpression expr, QuaternionExpression other, int result, AngleMath angleMath)
+    {
+        int inputs = Math.max(maxSlot(expr), other == null ? -1 : maxSlot(other)) + 1;
+        String description = (result == RESULT_TAIT_BRYAN) ? expr + ".toTaitBryan()"
+                : (result == RESULT_MAGNITUDE) ? expr + ".Magnitude()"
+                : (result == RESULT_DISTANCE) ? expr + ".Distance(" + other + ")"
+                : expr.toString();
+
+        if (isDifference(expr) && (other == null || other.op == QuaternionExpression.Op.INPUT))
+        {
+            return new Difference(description, inputs, result, other == null ? -1 : other.slot, angleMath,
+                    expr.operand.operand.operand.slot, expr.rhs.operand.slot);
+        }
+
+        Compiler c = new Compiler(inputs);
+
+        int distanceRegister = -1;
+        if (other != null)
+        {
+            if (other.op == QuaternionExpression.Op.INPUT)
+            {
+                distanceRegister = other.slot;
+            }
+            else
+            {
+                c.emit(other);
+                distanceRegister = c.temp();
+                c.add(STORE, distanceRegister);
+            }
+        }
+        c.emit(expr);
+
+        return new Program(description, trim(c.ops, c.size), trim(c.args, c.size), trim(c.constants, c.constantCount),
+                inputs, c.registers, result, distanceRegister, angleMath);
+    }
+
+    /**
+     * Determine if an expression is input(a).versor().conjugate().product(input(b).versor()),
+     * as QuaternionExpression.difference builds it.
+     */
+    private static boolean isDifference(QuaternionExpression expr)
+    {
+        return expr.op == QuaternionExpression.Op.PRODUCT
+                && expr.operand.op == QuaternionExpression.Op.CONJUGATE
+                && expr.operand.operand.op == QuaternionExpression.Op.VERSOR
+                && expr.operand.operand.operand.op == QuaternionExpression.Op.INPUT
+                && expr.rhs.op == QuaternionExpression.Op.VERSOR
+                && expr.rhs.operand.op == QuaternionExpression.Op.INPUT;
+    }
+
+    /**
+     * Creates another kernel for the same chain, with its own inputs.
+     * @return the new kernel
+     */
+    public abstract QuaternionKernel copy();
+
+    /**
+     * Get the number of input slots
+     * @return one more than the highest slot in the expression
+     */
+    public int getInputCount()
+    {
+        return inputs;
+    }
+
+    /**
+     * Get the number of floats in the result
+     * @return 4 for a quaternion, 3 for Tait-Bryan angles, or 1 for a magnitude or distance
+     */
+    public int getResultWidth()
+    {
+        return result == RESULT_QUATERNION ? 4 : result == RESULT_TAIT_BRYAN ? 3 : 1;
+    }
+
+    /**
+     * Sets an input from floats w, x, y, and z.
+     * @param slot the index of the input
+     * @param w the real-valued scalar part of the Quaternion
+     * @param x the x-component of the complex vector part of the Quaternion
+     * @param y the y-component of the complex vector part of the Quaternion
+     * @param z the z-component of the complex vector part of the Quaternion
+     */
+    public void set(int slot, float w, float x, float y, float z)
+    {
+        if (slot < 0 || slot >= inputs)
+            throw new IndexOutOfBoundsException("slot " + slot + " out of bounds for " + inputs + " inputs");
+
+        int r = 4 * slot;
+        regs[r] = w;
+        regs[r + 1] = x;
+        regs[r + 2] = y;
+        regs[r + 3] = z;
+    }
+
+    /**
+     * Sets an input from a Quaternion.
+     * @param slot the index of the input
+     * @param q the quaternion
+     */
+    public void set(int slot, Quaternion q)
+    {
+        set(slot, q.W(), q.X(), q.Y(), q.Z());
+    }
+
+    /**
+     * Sets an input from a MutableQuaternion.
+     * @param slot the index of the input
+     * @param q the quaternion
+     */
+    public void set(int slot, MutableQuaternion q)
+    {
+        set(slot, q.w, q.x, q.y, q.z);
+    }
+
+    /**
+     * Sets an input from a quaternion in a QuaternionBuffer.
+     * @param slot the index of the input
+     * @param buffer the buffer
+     * @param i the index of the quaternion in the buffer
+     */
+    public void set(int slot, QuaternionBuffer buffer, int i)
+    {
+        set(slot, buffer.W(i), buffer.X(i), buffer.Y(i), buffer.Z(i));
+    }
+
+    /**
+     * Sets an input from a 3- or 4- part rotation vector expressed as [x,y,z,w], as
+     * Quaternion.getQuaternionFromVector converts it. The vector is not modified.
+     * @param slot the index of the input
+     * @param rv the rotation vector
+     */
+    public void setVector(int slot, float[] rv)
+    {
+        set(slot, Quaternion.vectorW(rv), rv[0], rv[1], rv[2]);
+    }
+
+    /**
+     * Evaluates the chain on the current inputs.
+     * @param res an array of at least getResultWidth() floats in which to store the result
+     * @return res
+     */
+    public abstract float[] evaluate(float[] res);
+
+    /**
+     * Evaluates a chain whose result is a quaternion on the current inputs.
+     * @param dest the quaternion in which to store the result
+     * @return dest
+     */
+    public MutableQuaternion evaluate(MutableQuaternion dest)
+    {
+        if (result != RESULT_QUATERNION)
+            throw new IllegalStateException("kernel does not produce a quaternion: " + description);
+
+        float[] res = evaluate(out);
+        return dest.set(res[0], res[1], res[2], res[3]);
+    }
+
+    /**
+     * Evaluates a chain whose result is a magnitude or distance on the current inputs.
+     * @return the result in radians
+     */
+    public float evaluateScalar()
+    {
+        if (result != RESULT_MAGNITUDE && result != RESULT_DISTANCE)
+            throw new IllegalStateException("kernel does not produce a scalar: " + description);
+
+        return evaluate(out)[0];
+    }
+
+    /**
+     * Converts the kernel to a string.
+     * @return the chain of Quaternion calls the kernel evaluates
+     */
+    @Override
+    public String toString()
+    {
+        return description;
+    }
+
+    /**
+     * Stores the terminal step of the chain, applied to its quaternion w, x, y, z, in res.
+     */
+    final float[] finish(float[] res, float w, float x, float y, float z)
+    {
+        switch (result)
+        {
+            case RESULT_QUATERNION:
+                res[0] = w;
+                res[1] = x;
+                res[2] = y;
+                res[3] = z;
+                break;
+            case RESULT_TAIT_BRYAN:
+                res[0] = angleMath.atan2(w * x + y * z, 0.5f - (x * x + y * y));
+                res[1] = angleMath.asin(2.0f * (x * z - w * y));
+                res[2] = angleMath.atan2(w * z + x * y, 0.5f - (y * y + z * z));
+                break;
+            case RESULT_MAGNITUDE:
+            {
+                float lenSquared = x * x + y * y + z * z;
+                float vecNorm = (lenSquared > 0 ? (float)Math.sqrt(lenSquared) : 0);
+                res[0] = 2 * angleMath.atan2(vecNorm, w);
+                break;
+            }
+            default:
+            {
+                float[] r = regs;
+                int i = 4 * distanceRegister;
+                float dot = w * r[i] + x * r[i + 1] + y * r[i + 2] + z * r[i + 3];
+                if (RotationMetrics.ENABLED)
+                    RotationMetrics.countDistance(dot);
+                res[0] = 2 * angleMath.acos(dot);
+                break;
+            }
+        }
+
+        return res;
+    }
+
+    /**
+     * Get the norm that Quaternion.Versor divides by: 1 when the quaternion is unit or zero.
+     */
+    private static float versorNorm(float w, float x, float y, float z)
+    {
+        float lenSquared = w*w + x*x + y*y + z*z;
+        float norm = lenSquared > 0 ? (float)Math.sqrt(lenSquared) : 0;
+        if (Math.abs(1.0 - norm) <= Quaternion.EPSILON || (x == 0 && y == 0 && z == 0 && w == 0))
+            return 1;
+
+        if (RotationMetrics.ENABLED)
+            RotationMetrics.increment(RotationMetrics.Counter.RENORMALIZATIONS);
+        return norm;
+    }
+
+    private static boolean isUnit(float w, float x, float y, float z)
+    {
+        float lenSquared = w*w + x*x + y*y + z*z;
+        float norm = lenSquared > 0 ? (float)Math.sqrt(lenSquared) : 0;
+        return Math.abs(1.0 - norm) <= Quaternion.EPSILON;
+    }
+
+    private static int maxSlot(QuaternionExpression expr)
+    {
+        if (expr.op == QuaternionExpression.Op.INPUT)
+            return expr.slot;
+
+        int max = maxSlot(expr.operand);
+        return expr.rhs == null ? max : Math.max(max, maxSlot(expr.rhs));
+    }
+
+    private static int[] trim(int[] a, int n)
+    {
+        int[] t = new int[n];
+        System.arraycopy(a, 0, t, 0, n);
+        return t;
+    }
+
+    private static float[] trim(float[] a, int n)
+    {
+        float[] t = new float[n];
+        System.arraycopy(a, 0, t, 0, n);
+        return t;
+    }
+
+    /**
+     * Evaluates any chain by stepping through its program.
+     */
+    private static final class Program extends QuaternionKernel
+    {
+        private final int[] ops;
+        private final int[] args;
+        private final float[] constants;
+
+        Program(String description, int[] ops, int[] args, float[] constants, int inputs, int registers,
+                int result, int distanceRegister, AngleMath angleMath)
+        {
+            super(description, inputs, registers, result, distanceRegister, angleMath);
+            this.ops = ops;
+            this.args = args;
+            this.constants = constants;
+        }
+
+        @Override
+        public QuaternionKernel copy()
+        {
+            return new Program(description, ops, args, constants, inputs, registers, result, distanceRegister, angleMath);
+        }
+
+        @Override
+        public float[] evaluate(float[] res)
+        {
+            float[] r = regs;
+            float w = 0, x = 0, y = 0, z = 0;
+
+            for (int pc = 0; pc < ops.length; ++pc)
+            {
+                int a = args[pc];
+                switch (ops[pc])
+                {
+                    case LOAD:
+                    {
+                        int i = 4 * a;
+                        w = r[i];
+                        x = r[i + 1];
+                        y = r[i + 2];
+                        z = r[i + 3];
+                        break;
+                    }
+                    case STORE:
+                    {
+                        int i = 4 * a;
+                        r[i] = w;
+                        r[i + 1] = x;
+                        r[i + 2] = y;
+                        r[i + 3] = z;
+                        break;
+                    }
+                    case VERSOR:
+                    {
+                        float n = versorNorm(w, x, y, z);
+                        w = w / n;
+                        x = x / n;
+                        y = y / n;
+                        z = z / n;
+                        break;
+                    }
+                    case CONJUGATE:
+                        x = -x;
+                        y = -y;
+                        z = -z;
+                        break;
+                    case INVERSE:
+                    {
+                        float d = isUnit(w, x, y, z) ? 1 : w*w + x*x + y*y + z*z;
+                        w = w / d;
+                        x = -x / d;
+                        y = -y / d;
+                        z = -z / d;
+                        break;
+                    }
+                    case RENORMALIZE:
+                    {
+                        float e = 1 - (w*w + x*x + y*y + z*z);
+                        if (Math.abs(e) > Quaternion.RENORMALIZE_LIMIT)
+                        {
+                            float n = versorNorm(w, x, y, z);
+                            w = w / n;
+                            x = x / n;
+                            y = y / n;
+                            z = z / n;
+                        }
+                        else
+                        {
+                            if (RotationMetrics.ENABLED)
+                                RotationMetrics.increment(RotationMetrics.Counter.RENORMALIZATIONS);
+                            float s = Quaternion.renormalizeScale(e);
+                            w = w * s;
+                            x = x * s;
+                            y = y * s;
+                            z = z * s;
+                        }
+                        break;
+                    }
+                    case MULTIPLY:
+                    {
+                        float c = constants[a];
+                        w = w * c;
+                        x = x * c;
+                        y = y * c;
+                        z = z * c;
+                        break;
+                    }
+                    default:
+                    {
+                        int i = 4 * a;
+                        float bw = r[i], bx = r[i + 1], by = r[i + 2], bz = r[i + 3];
+                        float nw = -x * bx - y * by - z * bz + w * bw;
+                        float nx =  x * bw + y * bz - z * by + w * bx;
+                        float ny = -x * bz + y * bw + z * bx + w * by;
+                        float nz =  x * by - y * bx + z * bw + w * bz;
+                        w = nw;
+                        x = nx;
+                        y = ny;
+                        z = nz;
+                        break;
+                    }
+                }
+            }
+
+            return finish(res, w, x, y, z);
+        }
+    }
+
+    /**
+     * Evaluates input(a).difference(input(b)), the chain of Quaternion.Difference, as
+     * straight-line code.
+     */
+    private static final class Difference extends QuaternionKernel
+    {
+        private final int a;
+        private final int b;
+
+        Difference(String description, int inputs, int result, int distanceRegister, AngleMath angleMath, int a, int b)
+        {
+            super(description, inputs, inputs, result, distanceRegister, angleMath);
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override
+        public QuaternionKernel copy()
+        {
+            return new Difference(description, inputs, result, distanceRegister, angleMath, a, b);
+        }
+
+        @Override
+        public float[] evaluate(float[] res)
+        {
+            float[] r = regs;
+            int i = 4 * b;
+            float bw = r[i], bx = r[i + 1], by = r[i + 2], bz = r[i + 3];
+            float n = versorNorm(bw, bx, by, bz);
+            bw = bw / n;
+            bx = bx / n;
+            by = by / n;
+            bz = bz / n;
+
+            i = 4 * a;
+            float w = r[i], x = r[i + 1], y = r[i + 2], z = r[i + 3];
+            n = versorNorm(w, x, y, z);
+            w = w / n;
+            x = -(x / n);
+            y = -(y / n);
+            z = -(z / n);
+
+            return finish(res,
+                    -x * bx - y * by - z * bz + w * bw,
+                     x * bw + y * bz - z * by + w * bx,
+                    -x * bz + y * bw + z * bx + w * by,
+                     x * by - y * bx + z * bw + w * bz);
+        }
+    }
+
+    /**
+     * Flattens an expression tree into a program for the accumulator in evaluate. A product
+     * evaluates its right-hand side first and stores it in a register, unless it is an input.
+     */
+    private static class Compiler
+    {
+        int[] ops = new int[16];
+        int[] args = new int[16];
+        float[] constants = new float[4];
+        int size;
+        int constantCount;
+        int registers;
+
+        Compiler(int inputs)
+        {
+            this.registers = inputs;
+        }
+
+        int temp()
+        {
+            return registers++;
+        }
+
+        void add(int op, int arg)
+        {
+            if (size == ops.length)
+            {
+                ops = java.util.Arrays.copyOf(ops, 2 * size);
+                args = java.util.Arrays.copyOf(args, 2 * size);
+            }
+            ops[size] = op;
+            args[size] = arg;
+            ++size;
+        }
+
+        void emit(QuaternionExpression expr)
+        {
+            switch (expr.op)
+            {
+                case INPUT:
+                    add(LOAD, expr.slot);
+                    break;
+                case VERSOR:
+                    emit(expr.operand);
+                    add(VERSOR, 0);
+                    break;
+                case CONJUGATE:
+                    emit(expr.operand);
+                    add(CONJUGATE, 0);
+                    break;
+                case INVERSE:
+                    emit(expr.operand);
+                    add(INVERSE, 0);
+                    break;
+                case RENORMALIZE:
+                    emit(expr.operand);
+                    add(RENORMALIZE, 0);
+                    break;
+                case MULTIPLY:
+                    emit(expr.operand);
+                    if (constantCount == constants.length)
+                        constants = java.util.Arrays.copyOf(constants, 2 * constantCount);
+                    constants[constantCount] = expr.constant;
+                    add(MULTIPLY, constantCount++);
+                    break;
+                default:
+                {
+                    int rhs;
+                    if (expr.rhs.op == QuaternionExpression.Op.INPUT)
+                    {
+                        rhs = expr.rhs.slot;
+                    }
+                    else
+                    {
+                        emit(expr.rhs);
+                        rhs = temp();
+                        add(STORE, rhs);
+                    }
+                    emit(expr.operand);
+                    add(PRODUCT, rhs);
+                    break;
+                }
+            }
+        }
+    }
+}
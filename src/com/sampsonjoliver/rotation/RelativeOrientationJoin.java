@@ -0,0 +1,396 @@
+package com.sampsonjoliver.rotation;
+
+/**
+ * Joins two timestamped streams of rotation vectors, such as IMUs on the thigh and shank, and
+ * reports the orientation of the target stream relative to the reference stream.
+ * <p>One of the streams drives the join, usually the faster one. For every driving sample the
+ * other stream is interpolated to the same timestamp, with SLERP or NLERP between the two of its
+ * samples that bracket it, and the relative rotation is emitted to a Sink as
+ * reference.DifferenceInto(target), the same maths as Quaternion.Difference. The Sink may turn
+ * it into angles with MutableQuaternion.toTaitBryanInto.
+ * <p>The streams may arrive in any interleaving. Driving samples wait in a fixed-size queue until
+ * the other stream has caught up with them, and interpolated samples are kept only until no
+ * pending or future driving sample can fall between them. A constant clock offset between the
+ * streams is removed with setTargetOffset. Driving samples are dropped, and counted by
+ * getDroppedCount, when they:
+ * <ul>
+ * <li>go backwards in time relative to the previous sample of their stream,</li>
+ * <li>precede every retained sample of the other stream,</li>
+ * <li>fall in a gap longer than maxGap between two samples of the other stream, or</li>
+ * <li>are pushed out of a full queue while the other stream has stalled.</li>
+ * </ul>
+ * Interpolated samples that go backwards in time are ignored and also counted. Every buffer is
+ * allocated at construction, so updates never allocate. Instances are not thread safe.
+ */
+public class RelativeOrientationJoin
+{
+    /**
+     * The stream whose samples drive the join
+     */
+    public enum Driver
+    {
+        REFERENCE,
+        TARGET
+    }
+
+    /**
+     * The interpolation applied to the stream that does not drive the join
+     */
+    public enum Interpolation
+    {
+        SLERP,
+        NLERP
+    }
+
+    /**
+     * Receives the relative orientation for each joined sample.
+     */
+    public interface Sink
+    {
+        /**
+         * Called once per joined driving sample, in timestamp order.
+         * @param timestamp the timestamp of the driving sample, on the reference clock
+         * @param relative the rotation of the target relative to the reference. The instance is
+         *                 reused and is only valid for the duration of the call.
+         */
+        void accept(long timestamp, MutableQuaternion relative);
+    }
+
+    /**
+     * The default number of samples buffered for each stream
+     */
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private final Driver driver;
+    private final Interpolation interpolation;
+    private final long maxGap;
+    private final Sink sink;
+
+    private final SampleQueue driving;
+    private final SampleQueue interpolated;
+    private boolean hasDriving;
+    private boolean hasInterpolated;
+    private long lastDriving;
+    private long lastInterpolated;
+
+    private long targetOffset;
+    private long emitted;
+    private long dropped;
+
+    private final MutableQuaternion a = new MutableQuaternion();
+    private final MutableQuaternion b = new MutableQuaternion();
+    private final MutableQuaternion q = new MutableQuaternion();
+    private final MutableQuaternion relative = new MutableQuaternion();
+
+    /**
+     * Creates a new RelativeOrientationJoin with SLERP interpolation and DEFAULT_CAPACITY.
+     * @param driver the stream whose samples drive the join
+     * @param maxGap the longest interval between two samples of the other stream that may be
+     *               interpolated across, in timestamp units
+     * @param sink the receiver of the relative orientations
+     */
+    public RelativeOrientationJoin(Driver driver, long maxGap, Sink sink)
+    {
+        this(driver, Interpolation.SLERP, maxGap, DEFAULT_CAPACITY, sink);
+    }
+
+    /**
+     * Creates a new RelativeOrientationJoin.
+     * @param driver the stream whose samples drive the join
+     * @param interpolation the interpolation applied to the other stream
+     * @param maxGap the longest interval between two samples of the other stream that may be
+     *               interpolated across, in timestamp units
+     * @param capacity the number of samples buffered for each stream, at least 2
+     * @param sink the receiver of the relative orientations
+     */
+    public RelativeOrientationJoin(Driver driver, Interpolation interpolation, long maxGap, int capacity, Sink sink)
+    {
+        if (maxGap < 0)
+            throw new IllegalArgumentException("maxGap must not be negative, not " + maxGap);
+        if (capacity < 2)
+            throw new IllegalArgumentException("capacity must be at least 2, not " + capacity);
+
+        this.driver = driver;
+        this.interpolation = interpolation;
+        this.maxGap = maxGap;
+        this.sink = sink;
+        this.driving = new SampleQueue(capacity);
+        this.interpolated = new SampleQueue(capacity);
+    }
+
+    /**
+     * Sets the offset subtracted from target timestamps to bring them onto the reference clock.
+     * Only samples added after the call are affected.
+     * @param offset the target clock minus the reference clock, in timestamp units
+     */
+    public void setTargetOffset(long offset)
+    {
+        this.targetOffset = offset;
+    }
+
+    /**
+     * Get the offset subtracted from target timestamps
+     * @return the offset
+     */
+    public long getTargetOffset()
+    {
+        return targetOffset;
+    }
+
+    /**
+     * Get the number of relative orientations emitted since creation or the last reset
+     * @return the count
+     */
+    public long getEmittedCount()
+    {
+        return emitted;
+    }
+
+    /**
+     * Get the number of samples dropped since creation or the last reset
+     * @return the count
+     */
+    public long getDroppedCount()
+    {
+        return dropped;
+    }
+
+    /**
+     * Get the number of driving samples waiting for the other stream to catch up
+     * @return the count
+     */
+    public int getPendingCount()
+    {
+        return driving.size;
+    }
+
+    /**
+     * Forgets every buffered sample and resets the counters. The target offset is kept.
+     */
+    public void reset()
+    {
+        driving.clear();
+        interpolated.clear();
+        hasDriving = false;
+        hasInterpolated = false;
+        emitted = 0;
+        dropped = 0;
+    }
+
+    /**
+     * Adds the next reference sample from a 3- or 4- part rotation vector expressed as [x,y,z,w]
+     * where w is an optional angle of rotation.
+     * @param timestamp the sample timestamp
+     * @param rv the rotation vector
+     */
+    public void updateReference(long timestamp, float[] rv)
+    {
+        q.setValues(rv);
+        update(Driver.REFERENCE, timestamp, q.w, q.x, q.y, q.z);
+    }
+
+    /**
+     * Adds the next reference sample as a quaternion.
+     * @param timestamp the sample timestamp
+     * @param w the real-valued scalar part of the Quaternion
+     * @param x the x-component of the complex vector part of the Quaternion
+     * @param y the y-component of the complex vector part of the Quaternion
+     * @param z the z-component of the complex vector part of the Quaternion
+     */
+    public void updateReference(long timestamp, float w, float x, float y, float z)
+    {
+        update(Driver.REFERENCE, timestamp, w, x, y, z);
+    }
+
+    /**
+     * Adds the next target sample from a 3- or 4- part rotation vector expressed as [x,y,z,w]
+     * where w is an optional angle of rotation.
+     * @param timestamp the sample timestamp, on the target clock
+     * @param rv the rotation vector
+     */
+    public void updateTarget(long timestamp, float[] rv)
+    {
+        q.setValues(rv);
+        update(Driver.TARGET, timestamp - targetOffset, q.w, q.x, q.y, q.z);
+    }
+
+    /**
+     * Adds the next target sample as a quaternion.
+     * @param timestamp the sample timestamp, on the target clock
+     * @param w the real-valued scalar part of the Quaternion
+     * @param x the x-component of the complex vector part of the Quaternion
+     * @param y the y-component of the complex vector part of the Quaternion
+     * @param z the z-component of the complex vector part of the Quaternion
+     */
+    public void updateTarget(long timestamp, float w, float x, float y, float z)
+    {
+        update(Driver.TARGET, timestamp - targetOffset, w, x, y, z);
+    }
+
+    private void update(Driver stream, long timestamp, float w, float x, float y, float z)
+    {
+        if (stream == driver)
+        {
+            if (hasDriving && timestamp < lastDriving)
+            {
+                ++dropped;
+                return;
+            }
+            hasDriving = true;
+            lastDriving = timestamp;
+
+            if (driving.isFull())
+            {
+                driving.removeFirst();
+                ++dropped;
+            }
+            driving.add(timestamp, w, x, y, z);
+        }
+        else
+        {
+            if (hasInterpolated && timestamp < lastInterpolated)
+            {
+                ++dropped;
+                return;
+            }
+            hasInterpolated = true;
+            lastInterpolated = timestamp;
+
+            // Only reachable if the driving stream has stalled; its next samples will be dropped
+            // as preceding the retained samples
+            if (interpolated.isFull())
+                interpolated.removeFirst();
+            interpolated.add(timestamp, w, x, y, z);
+        }
+
+        drain();
+    }
+
+    /**
+     * Joins every pending driving sample that the other stream has caught up with.
+     */
+    private void drain()
+    {
+        while (driving.size > 0)
+        {
+            long t = driving.time(0);
+
+            // Find the first retained sample at or after t
+            int j = 0;
+            while (j < interpolated.size && interpolated.time(j) < t)
+                ++j;
+
+            // The other stream has not reached t yet
+            if (j == interpolated.size)
+                break;
+
+            if (interpolated.time(j) == t)
+            {
+                interpolated.get(j, b);
+                emit(t, b);
+            }
+            else if (j == 0 || interpolated.time(j) - interpolated.time(j - 1) > maxGap)
+            {
+                ++dropped;
+            }
+            else
+            {
+                long t0 = interpolated.time(j - 1);
+                float f = (float)((double)(t - t0) / (interpolated.time(j) - t0));
+                interpolated.get(j - 1, a);
+                interpolated.get(j, b);
+                if (interpolation == Interpolation.SLERP)
+                    a.SlerpInto(b, f, q);
+                else
+                    a.NlerpInto(b, f, q);
+                emit(t, q);
+            }
+
+            driving.removeFirst();
+        }
+
+        // Keep only the samples that a pending or future driving sample could still need
+        long next = driving.size > 0 ? driving.time(0) : lastDriving;
+        if (hasDriving)
+        {
+            while (interpolated.size >= 2 && interpolated.time(1) <= next)
+                interpolated.removeFirst();
+        }
+    }
+
+    private void emit(long timestamp, MutableQuaternion other)
+    {
+        driving.get(0, a);
+        if (driver == Driver.REFERENCE)
+            a.DifferenceInto(other, relative);
+        else
+            other.DifferenceInto(a, relative);
+
+        ++emitted;
+        sink.accept(timestamp, relative);
+    }
+
+    /**
+     * A fixed capacity FIFO of timestamped quaternions held as parallel arrays.
+     */
+    private static class SampleQueue
+    {
+        private final long[] t;
+        private final float[] w, x, y, z;
+        private int head;
+        private int size;
+
+        SampleQueue(int capacity)
+        {
+            t = new long[capacity];
+            w = new float[capacity];
+            x = new float[capacity];
+            y = new float[capacity];
+            z = new float[capacity];
+        }
+
+        boolean isFull()
+        {
+            return size == t.length;
+        }
+
+        void clear()
+        {
+            head = 0;
+            size = 0;
+        }
+
+        void add(long time, float qw, float qx, float qy, float qz)
+        {
+            int i = index(size++);
+            t[i] = time;
+            w[i] = qw;
+            x[i] = qx;
+            y[i] = qy;
+            z[i] = qz;
+        }
+
+        void removeFirst()
+        {
+            head = index(1);
+            --size;
+        }
+
+        long time(int n)
+        {
+            return t[index(n)];
+        }
+
+        void get(int n, MutableQuaternion dest)
+        {
+            int i = index(n);
+            dest.set(w[i], x[i], y[i], z[i]);
+        }
+
+        private int index(int n)
+        {
+            int i = head + n;
+            return i < t.length ? i : i - t.length;
+        }
+    }
+}
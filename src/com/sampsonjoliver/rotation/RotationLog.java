@@ -0,0 +1,65 @@
+package com.sampsonjoliver.rotation;
+
+/**
+ * Constants describing the binary rotation vector log format written by RotationLogWriter and
+ * read by RotationLogReader.
+ * <p>All values are little-endian. The file starts with a 32 byte header:
+ * <pre>
+ *   offset  size  field
+ *        0     4  magic, the bytes 'R' 'V' 'L' 'G'
+ *        4     2  format version, currently 1
+ *        6     2  vector width, 3 or 4
+ *        8     4  record size in bytes, 8 + 4 * width
+ *       12     4  reserved, 0
+ *       16     8  number of records
+ *       24     8  reserved, 0
+ * </pre>
+ * followed by fixed-stride records, each holding a timestamp and a rotation vector laid out as
+ * accepted by Quaternion.getQuaternionFromVector:
+ * <pre>
+ *   offset  size  field
+ *        0     8  timestamp (int64, in a unit chosen by the writer)
+ *        8     4  x
+ *       12     4  y
+ *       16     4  z
+ *       20     4  w, only present when the width is 4
+ * </pre>
+ */
+public final class RotationLog
+{
+    /**
+     * The first four bytes of every log, 'R' 'V' 'L' 'G' read as a little-endian int
+     */
+    public static final int MAGIC = 'R' | ('V' << 8) | ('L' << 16) | ('G' << 24);
+
+    /**
+     * The version of the format written by RotationLogWriter
+     */
+    public static final short VERSION = 1;
+
+    /**
+     * The size of the header in bytes
+     */
+    public static final int HEADER_SIZE = 32;
+
+    static final int WIDTH_OFFSET = 6;
+    static final int RECORD_SIZE_OFFSET = 8;
+    static final int COUNT_OFFSET = 16;
+
+    private RotationLog()
+    {
+    }
+
+    /**
+     * Get the size in bytes of each record for a given vector width
+     * @param width 3 or 4
+     * @return the record size
+     */
+    public static int recordSize(int width)
+    {
+        if (width != 3 && width != 4)
+            throw new IllegalArgumentException("width must be 3 or 4, not " + width);
+
+        return 8 + 4 * width;
+    }
+}
@@ -0,0 +1,365 @@
+package com.sampsonjoliver.rotation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a binary rotation vector log, in the format described by RotationLog, through memory
+ * mapping. The records are mapped read-only in segments of at most 1 GB, so logs larger than
+ * 2 GB are supported, and the angle change computations read each sample straight out of the
+ * mapped pages rather than from a parsed copy of the file.
+ * <p>Pairwise methods compare the records (i-1, i) for i in [from, from + count) and store the
+ * result for each pair at index i - from of the output arrays. Each record is read and converted
+ * once, to a quaternion or a rotation matrix that is carried over as the previous record of the
+ * next pair, and the results are identical to the float API methods they name.
+ * <p>A log that was not closed by its writer has no record count in its header; its size is
+ * taken from the length of the file instead.
+ */
+public class RotationLogReader implements Closeable
+{
+    private static final int DEFAULT_SEGMENT_SIZE = 1 << 30;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] segments;
+    private final int width;
+    private final int recordSize;
+    private final int recordsPerSegment;
+    private final long count;
+
+    /**
+     * Opens a log for reading.
+     * @param path the file to read
+     * @throws IOException if the file cannot be read or is not a rotation log
+     */
+    public RotationLogReader(Path path) throws IOException
+    {
+        this(path, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Opens a log for reading.
+     * @param path the file to read
+     * @param maxSegmentSize the maximum number of bytes mapped by each segment
+     * @throws IOException if the file cannot be read or is not a rotation log
+     */
+    public RotationLogReader(Path path, int maxSegmentSize) throws IOException
+    {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+
+        try
+        {
+            ByteBuffer header = ByteBuffer.allocate(RotationLog.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining())
+            {
+                if (channel.read(header, header.position()) < 0)
+                    throw new IOException(path + " is too short to be a rotation log");
+            }
+
+            if (header.getInt(0) != RotationLog.MAGIC)
+                throw new IOException(path + " is not a rotation log");
+            if (header.getShort(4) != RotationLog.VERSION)
+                throw new IOException(path + " has unsupported version " + header.getShort(4));
+
+            this.width = header.getShort(RotationLog.WIDTH_OFFSET);
+            if (width != 3 && width != 4)
+                throw new IOException(path + " has unsupported vector width " + width);
+
+            this.recordSize = header.getInt(RotationLog.RECORD_SIZE_OFFSET);
+            if (recordSize != RotationLog.recordSize(width))
+                throw new IOException(path + " has record size " + recordSize + " for width " + width);
+
+            long available = (channel.size() - RotationLog.HEADER_SIZE) / recordSize;
+            long headerCount = header.getLong(RotationLog.COUNT_OFFSET);
+            if (headerCount > available)
+                throw new IOException(path + " is truncated: header records " + headerCount + " but only " + available + " are present");
+            this.count = headerCount > 0 ? headerCount : available;
+
+            this.recordsPerSegment = maxSegmentSize / recordSize;
+            if (recordsPerSegment < 1)
+                throw new IllegalArgumentException("maxSegmentSize " + maxSegmentSize + " cannot hold a record");
+
+            int numSegments = (int)((count + recordsPerSegment - 1) / recordsPerSegment);
+            this.segments = new MappedByteBuffer[numSegments];
+            for (int s = 0; s < numSegments; ++s)
+            {
+                long first = (long)s * recordsPerSegment;
+                long records = Math.min(recordsPerSegment, count - first);
+                MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY,
+                        RotationLog.HEADER_SIZE + first * recordSize, records * recordSize);
+                segment.order(ByteOrder.LITTLE_ENDIAN);
+                segments[s] = segment;
+            }
+        }
+        catch (IOException | RuntimeException e)
+        {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Get the width of the rotation vectors in the log
+     * @return 3 or 4
+     */
+    public int width()
+    {
+        return width;
+    }
+
+    /**
+     * Get the number of records in the log
+     * @return the number of records
+     */
+    public long size()
+    {
+        return count;
+    }
+
+    /**
+     * Get the timestamp of record i
+     * @param i the index of the record
+     * @return the timestamp
+     */
+    public long getTimestamp(long i)
+    {
+        checkIndex(i);
+        return segments[(int)(i / recordsPerSegment)].getLong((int)(i % recordsPerSegment) * recordSize);
+    }
+
+    /**
+     * Copies the rotation vector of record i into rv
+     * @param i the index of the record
+     * @param rv an array of width() floats in which to store [x,y,z] or [x,y,z,w]
+     * @return rv
+     */
+    public float[] getVector(long i, float[] rv)
+    {
+        checkIndex(i);
+        return readVector(i, rv);
+    }
+
+    /**
+     * Copies the timestamps of records [from, from + count) into res
+     * @param res an array of at least count longs
+     * @param from the index of the first record
+     * @param count the number of records
+     */
+    public void getTimestamps(long[] res, long from, int count)
+    {
+        checkRange(from, count);
+        for (int k = 0; k < count; ++k)
+        {
+            long i = from + k;
+            res[k] = segments[(int)(i / recordsPerSegment)].getLong((int)(i % recordsPerSegment) * recordSize);
+        }
+    }
+
+    /**
+     * Converts records [from, from + count) to quaternions appended to dest.
+     * @param dest the buffer to append to
+     * @param from the index of the first record
+     * @param count the number of records
+     */
+    public void getQuaternions(QuaternionBuffer dest, long from, int count)
+    {
+        checkRange(from, count);
+        float[] rv = new float[width];
+        for (int k = 0; k < count; ++k)
+        {
+            dest.addVector(readVector(from + k, rv));
+        }
+    }
+
+    /**
+     * Calculates the Tait-Bryan angle change between consecutive records, with the same values as
+     * Quaternion.getTaitBryanAngleChange but without modifying the log.
+     * @param phi an array of at least count floats in which to store the rotation about x
+     * @param theta an array of at least count floats in which to store the rotation about y
+     * @param psi an array of at least count floats in which to store the rotation about z
+     * @param from the index of the first record to compare against its predecessor, at least 1
+     * @param count the number of pairs to compare
+     */
+    public void getTaitBryanAngleChanges(float[] phi, float[] theta, float[] psi, long from, int count)
+    {
+        checkPairRange(from, count);
+        if (count == 0)
+            return;
+
+        float[] prev = readQuaternion(from - 1, new float[4]);
+        float[] cur = new float[4];
+
+        for (int k = 0; k < count; ++k)
+        {
+            readQuaternion(from + k, cur);
+
+            // Conjugate of the previous quaternion; a 4-wide record is taken as it is stored
+            float a0 = prev[0], a1 = prev[1], a2 = prev[2], a3 = prev[3];
+            if (width == 3)
+            {
+                a1 = -a1;
+                a2 = -a2;
+                a3 = -a3;
+            }
+
+            float q0 = -a1 * cur[1] - a2 * cur[2] - a3 * cur[3] + a0 * cur[0];
+            float q1 =  a1 * cur[0] + a2 * cur[3] - a3 * cur[2] + a0 * cur[1];
+            float q2 = -a1 * cur[3] + a2 * cur[0] + a3 * cur[1] + a0 * cur[2];
+            float q3 =  a1 * cur[2] - a2 * cur[1] + a3 * cur[0] + a0 * cur[3];
+
+            phi[k] = (float) Math.atan2(q2 * q3 + q0 * q1, 0.5 - (q1 * q1 + q2 * q2));
+            theta[k] = (float) Math.asin(-2.0 * (q1 * q3 - q0 * q2));
+            psi[k] = (float) Math.atan2(q1 * q2 + q0 * q3, 0.5 - (q2 * q2 + q3 * q3));
+
+            float[] t = prev;
+            prev = cur;
+            cur = t;
+        }
+    }
+
+    /**
+     * Calculates the angular distance between consecutive records, with the same values as
+     * Quaternion.getDistanceChange.
+     * @param res an array of at least count floats in which to store the distances in radians
+     * @param from the index of the first record to compare against its predecessor, at least 1
+     * @param count the number of pairs to compare
+     */
+    public void getDistanceChanges(float[] res, long from, int count)
+    {
+        checkPairRange(from, count);
+        if (count == 0)
+            return;
+
+        float[] prev = readQuaternion(from - 1, new float[4]);
+        float[] cur = new float[4];
+
+        for (int k = 0; k < count; ++k)
+        {
+            readQuaternion(from + k, cur);
+            float dot = prev[0] * cur[0] + prev[1] * cur[1] + prev[2] * cur[2] + prev[3] * cur[3];
+            if (RotationMetrics.ENABLED)
+                RotationMetrics.countDistance(dot);
+
+            res[k] = 2 * AngleMath.EXACT.acos(dot);
+
+            float[] t = prev;
+            prev = cur;
+            cur = t;
+        }
+    }
+
+    /**
+     * Calculates the angle change between consecutive records through rotation matrices, with the
+     * same values as RotationMatrix.getAngleChange(angleChange, R, prevR) where R is the matrix of
+     * record i and prevR that of record i-1. Each record is converted to a matrix once.
+     * @param z an array of at least count floats in which to store the z angle change
+     * @param x an array of at least count floats in which to store the x angle change
+     * @param y an array of at least count floats in which to store the y angle change
+     * @param from the index of the first record to compare against its predecessor, at least 1
+     * @param count the number of pairs to compare
+     */
+    public void getMatrixAngleChanges(float[] z, float[] x, float[] y, long from, int count)
+    {
+        checkPairRange(from, count);
+        if (count == 0)
+            return;
+
+        float[] rv = readVector(from - 1, new float[width]);
+        float[] prevR = new float[9];
+        float[] R = new float[9];
+        float[] angleChange = new float[3];
+        RotationMatrix.getRotationMatrixFromVector(prevR, rv);
+
+        for (int k = 0; k < count; ++k)
+        {
+            RotationMatrix.getRotationMatrixFromVector(R, readVector(from + k, rv));
+            RotationMatrix.getAngleChange(angleChange, R, prevR);
+            z[k] = angleChange[0];
+            x[k] = angleChange[1];
+            y[k] = angleChange[2];
+
+            float[] t = prevR;
+            prevR = R;
+            R = t;
+        }
+    }
+
+    /**
+     * Closes the underlying file. Mapped segments are released by the JVM once the reader is
+     * no longer reachable.
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+
+    private float[] readVector(long i, float[] rv)
+    {
+        MappedByteBuffer segment = segments[(int)(i / recordsPerSegment)];
+        int offset = (int)(i % recordsPerSegment) * recordSize + 8;
+
+        rv[0] = segment.getFloat(offset);
+        rv[1] = segment.getFloat(offset + 4);
+        rv[2] = segment.getFloat(offset + 8);
+        if (width == 4)
+            rv[3] = segment.getFloat(offset + 12);
+
+        return rv;
+    }
+
+    /**
+     * Reads a record as the four floats the float API multiplies: a 4-wide vector as stored, and
+     * a 3-wide vector as the [w,x,y,z] of Quaternion.getQuaternionFromVector.
+     */
+    private float[] readQuaternion(long i, float[] q)
+    {
+        MappedByteBuffer segment = segments[(int)(i / recordsPerSegment)];
+        int offset = (int)(i % recordsPerSegment) * recordSize + 8;
+
+        float x = segment.getFloat(offset);
+        float y = segment.getFloat(offset + 4);
+        float z = segment.getFloat(offset + 8);
+        if (width == 4)
+        {
+            q[0] = x;
+            q[1] = y;
+            q[2] = z;
+            q[3] = segment.getFloat(offset + 12);
+        }
+        else
+        {
+            q[0] = Quaternion.vectorW(x, y, z);
+            q[1] = x;
+            q[2] = y;
+            q[3] = z;
+        }
+        return q;
+    }
+
+    private void checkIndex(long i)
+    {
+        if (i < 0 || i >= count)
+            throw new IndexOutOfBoundsException("record " + i + " outside of [0, " + count + ")");
+    }
+
+    private void checkRange(long from, int count)
+    {
+        if (from < 0 || count < 0 || from + count > this.count)
+            throw new IndexOutOfBoundsException("records [" + from + ", " + (from + count) + ") outside of [0, " + this.count + ")");
+    }
+
+    private void checkPairRange(long from, int count)
+    {
+        if (count > 0 && (from < 1 || count < 0 || from + count > this.count))
+            throw new IndexOutOfBoundsException("pairs [" + from + ", " + (from + count) + ") outside of [1, " + this.count + ")");
+        if (count < 0)
+            throw new IndexOutOfBoundsException("negative count " + count);
+    }
+}
@@ -0,0 +1,147 @@
+package com.sampsonjoliver.rotation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes timestamped rotation vectors to a binary log in the format described by RotationLog.
+ * Records are staged in a direct buffer and written to the file channel in large blocks; the
+ * record count in the header is filled in when the writer is closed.
+ */
+public class RotationLogWriter implements Closeable
+{
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final int width;
+    private final int recordSize;
+    private long count;
+    private boolean closed;
+
+    /**
+     * Creates a new log, replacing any existing file at path.
+     * @param path the file to write
+     * @param width the width of every rotation vector, 3 or 4
+     * @throws IOException if the file cannot be created
+     */
+    public RotationLogWriter(Path path, int width) throws IOException
+    {
+        this(path, width, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a new log, replacing any existing file at path.
+     * @param path the file to write
+     * @param width the width of every rotation vector, 3 or 4
+     * @param bufferSize the size in bytes of the staging buffer
+     * @throws IOException if the file cannot be created
+     */
+    public RotationLogWriter(Path path, int width, int bufferSize) throws IOException
+    {
+        this.width = width;
+        this.recordSize = RotationLog.recordSize(width);
+        if (bufferSize < Math.max(recordSize, RotationLog.HEADER_SIZE))
+            throw new IllegalArgumentException("bufferSize " + bufferSize + " cannot hold a record");
+
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+
+        buffer.putInt(RotationLog.MAGIC);
+        buffer.putShort(RotationLog.VERSION);
+        buffer.putShort((short)width);
+        buffer.putInt(recordSize);
+        buffer.putInt(0);
+        buffer.putLong(0);
+        buffer.putLong(0);
+    }
+
+    /**
+     * Get the width of the rotation vectors in the log
+     * @return 3 or 4
+     */
+    public int width()
+    {
+        return width;
+    }
+
+    /**
+     * Get the number of records written so far
+     * @return the number of records
+     */
+    public long size()
+    {
+        return count;
+    }
+
+    /**
+     * Appends a record to the log.
+     * @param timestamp the timestamp of the sample
+     * @param rv the rotation vector expressed as [x,y,z] or [x,y,z,w], matching width()
+     * @throws IOException if the record cannot be written
+     */
+    public void write(long timestamp, float[] rv) throws IOException
+    {
+        if (rv.length != width)
+            throw new IllegalArgumentException("expected a " + width + "-wide vector, not " + rv.length);
+
+        if (buffer.remaining() < recordSize)
+            flush();
+
+        buffer.putLong(timestamp);
+        for (int j = 0; j < width; ++j)
+        {
+            buffer.putFloat(rv[j]);
+        }
+        ++count;
+    }
+
+    /**
+     * Writes any staged records to the file.
+     * @throws IOException if the records cannot be written
+     */
+    public void flush() throws IOException
+    {
+        buffer.flip();
+        while (buffer.hasRemaining())
+        {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Writes any staged records, records the final count in the header and closes the file.
+     * @throws IOException if the log cannot be completed
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if (closed)
+            return;
+        closed = true;
+
+        try
+        {
+            flush();
+
+            buffer.putLong(count);
+            buffer.flip();
+            long position = RotationLog.COUNT_OFFSET;
+            while (buffer.hasRemaining())
+            {
+                position += channel.write(buffer, position);
+            }
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+}
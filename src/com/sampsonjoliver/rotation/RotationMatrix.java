@@ -1,7 +1,13 @@
 package com.sampsonjoliver.rotation;
 
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
 public class RotationMatrix
 {
+    // Matrices converted into a scratch array before each bulk copy into a buffer
+    private static final int MATRIX_BLOCK = 256;
+
     /** Helper function to convert a rotation vector to a rotation matrix.
      *  Given a rotation vector (presumably from a ROTATION_VECTOR sensor), returns a
      *  9  or 16 element rotation matrix in the array R.  R must have length 9 or 16.
@@ -22,19 +28,14 @@ public class RotationMatrix
      *  @param R an array of floats in which to store the rotation matrix
      */
     public static void getRotationMatrixFromVector(float[] R, float[] rotationVector) {
+        if (RotationMetrics.ENABLED)
+            RotationMetrics.increment(RotationMetrics.Counter.VECTOR_CONVERSIONS);
 
-        float q0;
+        float q0 = Quaternion.vectorW(rotationVector);
         float q1 = rotationVector[0];
         float q2 = rotationVector[1];
         float q3 = rotationVector[2];
 
-        if (rotationVector.length == 4) {
-            q0 = rotationVector[3];
-        } else {
-            q0 = 1 - q1*q1 - q2*q2 - q3*q3;
-            q0 = (q0 > 0) ? (float)Math.sqrt(q0) : 0;
-        }
-
         float sq_q1 = 2 * q1 * q1;
         float sq_q2 = 2 * q2 * q2;
         float sq_q3 = 2 * q3 * q3;
@@ -78,6 +79,339 @@ public class RotationMatrix
         }
     }
 
+    /** Helper function to convert a rotation matrix to a quaternion using Shepperd's method,
+     *  which takes the square root of whichever of 4w^2, 4x^2, 4y^2 or 4z^2 is largest, so that
+     *  it never divides by a small number. The inverse of getRotationMatrixFromVector.
+     *  <p>R is a 9 or 16 element row-major matrix as documented by getRotationMatrixFromVector.
+     *  The quaternion is stored as [w,x,y,z], the layout of Quaternion.getQuaternionFromVector,
+     *  with w made non-negative so that [x,y,z] is a valid 3-part rotation vector.
+     *  @param q an array of at least 4 floats in which to store the quaternion
+     *  @param R the rotation matrix to convert
+     */
+    public static void getQuaternionFromMatrix(float[] q, float[] R) {
+        if (R.length == 16) {
+            getQuaternionFromMatrix(q, R[0], R[1], R[2], R[4], R[5], R[6], R[8], R[9], R[10]);
+        } else {
+            getQuaternionFromMatrix(q, R[0], R[1], R[2], R[3], R[4], R[5], R[6], R[7], R[8]);
+        }
+    }
+
+    /** Converts count packed rotation matrices to quaternions with Shepperd's method, as
+     *  getQuaternionFromMatrix does, replacing the contents of dest.
+     *  @param dest the buffer in which to store the quaternions, with a capacity of at least count
+     *  @param R the matrices, each of matrixSize consecutive floats in the layout of getRotationMatrixFromVector
+     *  @param matrixSize 9 for 3x3 matrices or 16 for 4x4 matrices
+     *  @param count the number of matrices to convert
+     */
+    public static void getQuaternionsFromMatrices(QuaternionBuffer dest, float[] R, int matrixSize, int count) {
+        if (matrixSize != 9 && matrixSize != 16)
+            throw new IllegalArgumentException("matrixSize must be 9 or 16, not " + matrixSize);
+        if (count < 0 || R.length < (long)count * matrixSize)
+            throw new IndexOutOfBoundsException("R length " + R.length + " cannot hold " + count + " matrices");
+
+        dest.setSize(count);
+        float[] q = new float[4];
+        int row = matrixSize == 16 ? 4 : 3;
+
+        for (int i = 0; i < count; ++i) {
+            int o = i * matrixSize;
+            getQuaternionFromMatrix(q,
+                    R[o], R[o + 1], R[o + 2],
+                    R[o + row], R[o + row + 1], R[o + row + 2],
+                    R[o + 2 * row], R[o + 2 * row + 1], R[o + 2 * row + 2]);
+            dest.set(i, q[0], q[1], q[2], q[3]);
+        }
+    }
+
+    /** Computes the angle change between two rotations given as quaternions, with the same
+     *  z, x and y angles that getAngleChange computes from their rotation matrices, up to
+     *  rounding, from the difference quaternion conj(prevQ) * q. This suits rotations already
+     *  held as quaternions, including matrices converted once with getQuaternionFromMatrix.
+     *  When both rotations are only available as matrices, getAngleChange is as fast, since it
+     *  forms only the five elements of the matrix product that it needs.
+     *  @param angleChange an array of floats (z, x, and y) in which the angle change is stored
+     *  @param q the current rotation as [w,x,y,z]
+     *  @param prevQ the previous rotation as [w,x,y,z]
+     */
+    public static void getQuaternionAngleChange(float[] angleChange, float[] q, float[] prevQ) {
+        getQuaternionAngleChange(angleChange, q, prevQ, AngleMath.EXACT);
+    }
+
+    /** Computes the angle change between two rotations given as quaternions, as
+     *  getQuaternionAngleChange(angleChange, q, prevQ) does, with a choice of trigonometry.
+     *  @param angleChange an array of floats (z, x, and y) in which the angle change is stored
+     *  @param q the current rotation as [w,x,y,z]
+     *  @param prevQ the previous rotation as [w,x,y,z]
+     *  @param angleMath the trigonometry to use
+     */
+    public static void getQuaternionAngleChange(float[] angleChange, float[] q, float[] prevQ, AngleMath angleMath) {
+        if (RotationMetrics.ENABLED)
+            RotationMetrics.increment(RotationMetrics.Counter.ANGLE_CHANGES);
+
+        // Conjugate of the previous quaternion
+        float a0 = prevQ[0], a1 = -prevQ[1], a2 = -prevQ[2], a3 = -prevQ[3];
+        float b0 = q[0], b1 = q[1], b2 = q[2], b3 = q[3];
+
+        float d0 = -a1 * b1 - a2 * b2 - a3 * b3 + a0 * b0;
+        float d1 =  a1 * b0 + a2 * b3 - a3 * b2 + a0 * b1;
+        float d2 = -a1 * b3 + a2 * b0 + a3 * b1 + a0 * b2;
+        float d3 =  a1 * b2 - a2 * b1 + a3 * b0 + a0 * b3;
+
+        // The elements of the rotation difference matrix that getAngleChange uses
+        float rd1 = 2 * (d1 * d2 - d3 * d0);
+        float rd4 = 1 - 2 * (d1 * d1 + d3 * d3);
+        float rd6 = 2 * (d1 * d3 - d2 * d0);
+        float rd7 = 2 * (d2 * d3 + d1 * d0);
+        float rd8 = 1 - 2 * (d1 * d1 + d2 * d2);
+
+        angleChange[0] = angleMath.atan2(rd1, rd4);
+        angleChange[1] = angleMath.asin(-rd7);
+        angleChange[2] = angleMath.atan2(-rd6, rd8);
+    }
+
+    static void getQuaternionFromMatrix(float[] q,
+            float r00, float r01, float r02,
+            float r10, float r11, float r12,
+            float r20, float r21, float r22) {
+        float trace = r00 + r11 + r22;
+        float w, x, y, z;
+
+        // s is twice the largest component, and each other component is a sum or difference of
+        // two off-diagonal elements divided by 2s
+        if (trace >= r00 && trace >= r11 && trace >= r22) {
+            float s = (float)Math.sqrt(1 + trace);
+            float inv = 0.5f / s;
+            w = 0.5f * s;
+            x = (r21 - r12) * inv;
+            y = (r02 - r20) * inv;
+            z = (r10 - r01) * inv;
+        } else if (r00 >= r11 && r00 >= r22) {
+            float s = (float)Math.sqrt(1 + r00 - r11 - r22);
+            float inv = 0.5f / s;
+            w = (r21 - r12) * inv;
+            x = 0.5f * s;
+            y = (r01 + r10) * inv;
+            z = (r02 + r20) * inv;
+        } else if (r11 >= r22) {
+            float s = (float)Math.sqrt(1 + r11 - r00 - r22);
+            float inv = 0.5f / s;
+            w = (r02 - r20) * inv;
+            x = (r01 + r10) * inv;
+            y = 0.5f * s;
+            z = (r12 + r21) * inv;
+        } else {
+            float s = (float)Math.sqrt(1 + r22 - r00 - r11);
+            float inv = 0.5f / s;
+            w = (r10 - r01) * inv;
+            x = (r02 + r20) * inv;
+            y = (r12 + r21) * inv;
+            z = 0.5f * s;
+        }
+
+        // q and -q are the same rotation; keep w non-negative
+        if (w < 0) {
+            w = -w; x = -x; y = -y; z = -z;
+        }
+
+        q[0] = w;
+        q[1] = x;
+        q[2] = y;
+        q[3] = z;
+    }
+
+    /** Converts a batch of rotation vectors to rotation matrices in a FloatBuffer, such as a
+     *  direct buffer shared with a renderer, with the same values as getRotationMatrixFromVector.
+     *  Matrices are built in blocks and bulk copied into dst, rather than through an array per
+     *  matrix. Matrix i starts at index offset + i * stride of dst, and
+     *  only its matrixSize elements are written, so interleaved data between matrices is
+     *  left untouched. The position of dst is not changed.
+     *  @param dst the buffer in which to store the matrices
+     *  @param offset the index in dst of the first element of the first matrix
+     *  @param stride the number of floats from the start of one matrix to the next, at least matrixSize
+     *  @param matrixSize 9 for 3x3 matrices or 16 for 4x4 matrices
+     *  @param order the layout of the elements of each matrix
+     *  @param rotationVectors the 3- or 4- part rotation vectors to convert
+     */
+    public static void getRotationMatrices(FloatBuffer dst, int offset, int stride, int matrixSize, MatrixOrder order, float[][] rotationVectors) {
+        int count = rotationVectors.length;
+        checkMatrices(dst.limit(), offset, stride, matrixSize, count);
+        long startTime = RotationMetrics.ENABLED ? RotationMetrics.start() : 0;
+        boolean columnMajor = order == MatrixOrder.COLUMN_MAJOR;
+        float[] block = new float[Math.min(count, MATRIX_BLOCK) * matrixSize];
+
+        for (int start = 0; start < count; start += MATRIX_BLOCK) {
+            int n = Math.min(MATRIX_BLOCK, count - start);
+            for (int k = 0; k < n; ++k) {
+                float[] rv = rotationVectors[start + k];
+                putRotationMatrix(block, k * matrixSize, matrixSize, columnMajor, Quaternion.vectorW(rv), rv[0], rv[1], rv[2]);
+            }
+            flushMatrices(dst, offset + start * stride, stride, matrixSize, block, n);
+        }
+
+        if (RotationMetrics.ENABLED) {
+            RotationMetrics.add(RotationMetrics.Counter.VECTOR_CONVERSIONS, count);
+            RotationMetrics.end(RotationMetrics.Stage.MATRIX_BATCH, "getRotationMatrices", startTime, count);
+        }
+    }
+
+    /** Converts quaternions [from, from + count) of a QuaternionBuffer to rotation matrices in
+     *  a FloatBuffer, as getRotationMatrices does for rotation vectors.
+     *  @param dst the buffer in which to store the matrices
+     *  @param offset the index in dst of the first element of the first matrix
+     *  @param stride the number of floats from the start of one matrix to the next, at least matrixSize
+     *  @param matrixSize 9 for 3x3 matrices or 16 for 4x4 matrices
+     *  @param order the layout of the elements of each matrix
+     *  @param quats the quaternions to convert
+     *  @param from the index of the first quaternion
+     *  @param count the number of quaternions
+     */
+    public static void getRotationMatrices(FloatBuffer dst, int offset, int stride, int matrixSize, MatrixOrder order, QuaternionBuffer quats, int from, int count) {
+        if (from < 0 || count < 0 || from + count > quats.size())
+            throw new IndexOutOfBoundsException("range [" + from + ", " + (from + count) + ") out of bounds for size " + quats.size());
+        checkMatrices(dst.limit(), offset, stride, matrixSize, count);
+        long startTime = RotationMetrics.ENABLED ? RotationMetrics.start() : 0;
+        boolean columnMajor = order == MatrixOrder.COLUMN_MAJOR;
+        float[] block = new float[Math.min(count, MATRIX_BLOCK) * matrixSize];
+
+        float[] w = quats.getW(), x = quats.getX(), y = quats.getY(), z = quats.getZ();
+        for (int start = 0; start < count; start += MATRIX_BLOCK) {
+            int n = Math.min(MATRIX_BLOCK, count - start);
+            for (int k = 0; k < n; ++k) {
+                int i = from + start + k;
+                putRotationMatrix(block, k * matrixSize, matrixSize, columnMajor, w[i], x[i], y[i], z[i]);
+            }
+            flushMatrices(dst, offset + start * stride, stride, matrixSize, block, n);
+        }
+
+        if (RotationMetrics.ENABLED)
+            RotationMetrics.end(RotationMetrics.Stage.MATRIX_BATCH, "getRotationMatrices", startTime, count);
+    }
+
+    /** Converts a batch of rotation vectors to rotation matrices in a ByteBuffer, as floats in
+     *  the buffer's byte order, as the FloatBuffer variant does.
+     *  @param dst the buffer in which to store the matrices
+     *  @param offset the byte index in dst of the first matrix
+     *  @param stride the number of bytes from the start of one matrix to the next, a multiple of 4
+     *  @param matrixSize 9 for 3x3 matrices or 16 for 4x4 matrices
+     *  @param order the layout of the elements of each matrix
+     *  @param rotationVectors the 3- or 4- part rotation vectors to convert
+     */
+    public static void getRotationMatrices(ByteBuffer dst, int offset, int stride, int matrixSize, MatrixOrder order, float[][] rotationVectors) {
+        getRotationMatrices(asFloatBuffer(dst, offset, stride), 0, stride / 4, matrixSize, order, rotationVectors);
+    }
+
+    /** Converts quaternions [from, from + count) of a QuaternionBuffer to rotation matrices in
+     *  a ByteBuffer, as floats in the buffer's byte order, as the FloatBuffer variant does.
+     *  @param dst the buffer in which to store the matrices
+     *  @param offset the byte index in dst of the first matrix
+     *  @param stride the number of bytes from the start of one matrix to the next, a multiple of 4
+     *  @param matrixSize 9 for 3x3 matrices or 16 for 4x4 matrices
+     *  @param order the layout of the elements of each matrix
+     *  @param quats the quaternions to convert
+     *  @param from the index of the first quaternion
+     *  @param count the number of quaternions
+     */
+    public static void getRotationMatrices(ByteBuffer dst, int offset, int stride, int matrixSize, MatrixOrder order, QuaternionBuffer quats, int from, int count) {
+        getRotationMatrices(asFloatBuffer(dst, offset, stride), 0, stride / 4, matrixSize, order, quats, from, count);
+    }
+
+    /**
+     * Copies n matrices from block into dst, in a single bulk copy when they are contiguous.
+     */
+    private static void flushMatrices(FloatBuffer dst, int o, int stride, int matrixSize, float[] block, int n) {
+        if (stride == matrixSize) {
+            dst.put(o, block, 0, n * matrixSize);
+        } else {
+            for (int k = 0; k < n; ++k) {
+                dst.put(o + k * stride, block, k * matrixSize, matrixSize);
+            }
+        }
+    }
+
+    /**
+     * Writes the matrix of a quaternion at index o, as getRotationMatrixFromVector does.
+     */
+    private static void putRotationMatrix(float[] dst, int o, int matrixSize, boolean columnMajor, float q0, float q1, float q2, float q3) {
+        float sq_q1 = 2 * q1 * q1;
+        float sq_q2 = 2 * q2 * q2;
+        float sq_q3 = 2 * q3 * q3;
+        float q1_q2 = 2 * q1 * q2;
+        float q3_q0 = 2 * q3 * q0;
+        float q1_q3 = 2 * q1 * q3;
+        float q2_q0 = 2 * q2 * q0;
+        float q2_q3 = 2 * q2 * q3;
+        float q1_q0 = 2 * q1 * q0;
+
+        float r00 = 1 - sq_q2 - sq_q3, r01 = q1_q2 - q3_q0,     r02 = q1_q3 + q2_q0;
+        float r10 = q1_q2 + q3_q0,     r11 = 1 - sq_q1 - sq_q3, r12 = q2_q3 - q1_q0;
+        float r20 = q1_q3 - q2_q0,     r21 = q2_q3 + q1_q0,     r22 = 1 - sq_q1 - sq_q2;
+
+        // Column-major is the transpose: swap the off-diagonal elements
+        if (columnMajor) {
+            float t;
+            t = r01; r01 = r10; r10 = t;
+            t = r02; r02 = r20; r20 = t;
+            t = r12; r12 = r21; r21 = t;
+        }
+
+        if (matrixSize == 9) {
+            dst[o] = r00;
+            dst[o + 1] = r01;
+            dst[o + 2] = r02;
+
+            dst[o + 3] = r10;
+            dst[o + 4] = r11;
+            dst[o + 5] = r12;
+
+            dst[o + 6] = r20;
+            dst[o + 7] = r21;
+            dst[o + 8] = r22;
+        } else {
+            dst[o] = r00;
+            dst[o + 1] = r01;
+            dst[o + 2] = r02;
+            dst[o + 3] = 0.0f;
+
+            dst[o + 4] = r10;
+            dst[o + 5] = r11;
+            dst[o + 6] = r12;
+            dst[o + 7] = 0.0f;
+
+            dst[o + 8] = r20;
+            dst[o + 9] = r21;
+            dst[o + 10] = r22;
+            dst[o + 11] = 0.0f;
+
+            dst[o + 12] = 0.0f;
+            dst[o + 13] = 0.0f;
+            dst[o + 14] = 0.0f;
+            dst[o + 15] = 1.0f;
+        }
+    }
+
+    private static void checkMatrices(int limit, int offset, int stride, int matrixSize, int count) {
+        if (matrixSize != 9 && matrixSize != 16)
+            throw new IllegalArgumentException("matrixSize must be 9 or 16, not " + matrixSize);
+        if (stride < matrixSize)
+            throw new IllegalArgumentException("stride " + stride + " is less than matrixSize " + matrixSize);
+        if (count > 0 && (offset < 0 || offset + (long)(count - 1) * stride + matrixSize > limit))
+            throw new IndexOutOfBoundsException(count + " matrices at offset " + offset + " with stride " + stride + " exceed limit " + limit);
+    }
+
+    /**
+     * Views dst from byte offset onwards as floats in its byte order.
+     */
+    private static FloatBuffer asFloatBuffer(ByteBuffer dst, int offset, int stride) {
+        if (stride % 4 != 0)
+            throw new IllegalArgumentException("stride " + stride + " is not a multiple of 4 bytes");
+        if (offset < 0 || offset > dst.limit())
+            throw new IndexOutOfBoundsException("offset " + offset + " outside of [0, " + dst.limit() + "]");
+
+        ByteBuffer view = dst.duplicate().order(dst.order());
+        view.position(offset);
+        return view.asFloatBuffer();
+    }
+
     /** Helper function to compute the angle change between two rotation matrices.
      *  Given a current rotation matrix (R) and a previous rotation matrix
      *  (prevR) computes the rotation around the z,x, and y axes which
@@ -104,6 +438,20 @@ public class RotationMatrix
      * @param angleChange an an array of floats (z, x, and y) in which the angle change is stored
      */
 	public static void getAngleChange( float[] angleChange, float[] R, float[] prevR) {
+        getAngleChange(angleChange, R, prevR, AngleMath.EXACT);
+    }
+
+    /** Helper function to compute the angle change between two rotation matrices, as
+     *  getAngleChange(angleChange, R, prevR) does, with a choice of trigonometry.
+     * @param R current rotation matrix
+     * @param prevR previous rotation matrix
+     * @param angleChange an an array of floats (z, x, and y) in which the angle change is stored
+     * @param angleMath the trigonometry to use
+     */
+	public static void getAngleChange( float[] angleChange, float[] R, float[] prevR, AngleMath angleMath) {
+        if (RotationMetrics.ENABLED)
+            RotationMetrics.increment(RotationMetrics.Counter.ANGLE_CHANGES);
+
         float rd1=0,rd4=0, rd6=0,rd7=0, rd8=0;
         float ri0=0,ri1=0,ri2=0,ri3=0,ri4=0,ri5=0,ri6=0,ri7=0,ri8=0;
         float pri0=0, pri1=0, pri2=0, pri3=0, pri4=0, pri5=0, pri6=0, pri7=0, pri8=0;
@@ -161,9 +509,9 @@ public class RotationMatrix
         rd7 = pri2 * ri1 + pri5 * ri4 + pri8 * ri7; //rd[2][1]
         rd8 = pri2 * ri2 + pri5 * ri5 + pri8 * ri8; //rd[2][2]
 
-        angleChange[0] = (float)Math.atan2(rd1, rd4);
-        angleChange[1] = (float)Math.asin(-rd7);
-        angleChange[2] = (float)Math.atan2(-rd6, rd8);
+        angleChange[0] = angleMath.atan2(rd1, rd4);
+        angleChange[1] = angleMath.asin(-rd7);
+        angleChange[2] = angleMath.atan2(-rd6, rd8);
 
     }
 }
\ No newline at end of file
@@ -0,0 +1,198 @@
+package com.sampsonjoliver.rotation;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Optional instrumentation of the library: operation counters, latency histograms and JFR
+ * events.
+ * <p>Metrics are off unless the JVM is started with the system property
+ * com.sampsonjoliver.rotation.metrics set to true. The property is read once into the constant
+ * ENABLED, and every instrumented call site is guarded by it, so when metrics are off the JIT
+ * compiler removes the instrumentation entirely.
+ * <p>When enabled, the scalar entry points of Quaternion, MutableQuaternion and RotationMatrix
+ * increment the counters, which are cheap enough for per-sample calls. The batch and stream
+ * stages (QuaternionEngine, ParallelAngleChange, AngleChangePipeline and the bulk
+ * RotationMatrix.getRotationMatrices) also record their latency in a LatencyHistogram per Stage
+ * and commit a com.sampsonjoliver.rotation.Operation JFR event, which is recorded when a flight
+ * recording has it enabled.
+ */
+public final class RotationMetrics
+{
+    /**
+     * The system property that enables metrics
+     */
+    public static final String ENABLE_PROPERTY = "com.sampsonjoliver.rotation.metrics";
+
+    /**
+     * Whether metrics are enabled for this JVM
+     */
+    public static final boolean ENABLED = Boolean.getBoolean(ENABLE_PROPERTY);
+
+    /**
+     * The events counted by the scalar and batch entry points
+     */
+    public enum Counter
+    {
+        /**
+         * Rotation vectors converted to a quaternion or rotation matrix
+         */
+        VECTOR_CONVERSIONS,
+        /**
+         * Non-unit, non-zero quaternions scaled to unit length by Versor or Renormalize
+         */
+        RENORMALIZATIONS,
+        /**
+         * Angular distances computed by Distance or getDistanceChange
+         */
+        DISTANCES,
+        /**
+         * Distances whose acos argument fell outside [-1, 1], giving NaN
+         */
+        NAN_DISTANCES,
+        /**
+         * Tait-Bryan or matrix angle changes computed
+         */
+        ANGLE_CHANGES
+    }
+
+    /**
+     * The batch and stream stages whose latency is recorded
+     */
+    public enum Stage
+    {
+        /**
+         * A call to a QuaternionEngine method
+         */
+        QUATERNION_ENGINE,
+        /**
+         * A call to a ParallelAngleChange method
+         */
+        PARALLEL_ANGLE_CHANGE,
+        /**
+         * One sample processed by the worker of an AngleChangePipeline, including any wait for
+         * space in the output ring
+         */
+        ANGLE_CHANGE_PIPELINE,
+        /**
+         * A call to RotationMatrix.getRotationMatrices
+         */
+        MATRIX_BATCH
+    }
+
+    private static final LongAdder[] COUNTERS = new LongAdder[Counter.values().length];
+    private static final LatencyHistogram[] HISTOGRAMS = new LatencyHistogram[Stage.values().length];
+
+    static
+    {
+        for (int i = 0; i < COUNTERS.length; ++i)
+            COUNTERS[i] = new LongAdder();
+        for (int i = 0; i < HISTOGRAMS.length; ++i)
+            HISTOGRAMS[i] = new LatencyHistogram();
+    }
+
+    private RotationMetrics()
+    {
+    }
+
+    /**
+     * Get the value of a counter
+     * @param counter the counter
+     * @return the number of events counted since startup or the last reset; always 0 when
+     *         metrics are disabled
+     */
+    public static long getCount(Counter counter)
+    {
+        return COUNTERS[counter.ordinal()].sum();
+    }
+
+    /**
+     * Get the latency histogram of a stage
+     * @param stage the stage
+     * @return the live histogram; always empty when metrics are disabled
+     */
+    public static LatencyHistogram getHistogram(Stage stage)
+    {
+        return HISTOGRAMS[stage.ordinal()];
+    }
+
+    /**
+     * Resets every counter and histogram.
+     */
+    public static void reset()
+    {
+        for (LongAdder counter : COUNTERS)
+            counter.reset();
+        for (LatencyHistogram histogram : HISTOGRAMS)
+            histogram.reset();
+    }
+
+    /**
+     * Summarizes every counter and histogram, one per line.
+     * @return the summary
+     */
+    public static String report()
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("enabled=").append(ENABLED).append('\n');
+        for (Counter counter : Counter.values())
+            sb.append(counter).append(' ').append(getCount(counter)).append('\n');
+        for (Stage stage : Stage.values())
+            sb.append(stage).append(' ').append(getHistogram(stage)).append('\n');
+        return sb.toString();
+    }
+
+    /**
+     * Counts one event. Callers check ENABLED first.
+     */
+    static void increment(Counter counter)
+    {
+        COUNTERS[counter.ordinal()].increment();
+    }
+
+    /**
+     * Counts several events. Callers check ENABLED first.
+     */
+    static void add(Counter counter, long n)
+    {
+        COUNTERS[counter.ordinal()].add(n);
+    }
+
+    /**
+     * Counts a distance, and a NaN distance if the acos argument is outside [-1, 1]. Callers
+     * check ENABLED first.
+     */
+    static void countDistance(float cosHalfAngle)
+    {
+        COUNTERS[Counter.DISTANCES.ordinal()].increment();
+        if (!(cosHalfAngle >= -1 && cosHalfAngle <= 1))
+            COUNTERS[Counter.NAN_DISTANCES.ordinal()].increment();
+    }
+
+    /**
+     * Get the start time of a stage. Callers check ENABLED first.
+     */
+    static long start()
+    {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records the latency of a stage that began at start, and commits its JFR event. Callers
+     * check ENABLED first.
+     */
+    static void end(Stage stage, String operation, long start, int elements)
+    {
+        long latency = System.nanoTime() - start;
+        HISTOGRAMS[stage.ordinal()].record(latency);
+
+        OperationEvent event = new OperationEvent();
+        if (event.shouldCommit())
+        {
+            event.stage = stage.name();
+            event.operation = operation;
+            event.elements = elements;
+            event.latency = latency;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.sampsonjoliver.rotation;
+
+/**
+ * The QuaternionEngine that processes one sample at a time.
+ */
+class ScalarQuaternionEngine implements QuaternionEngine
+{
+    static final ScalarQuaternionEngine INSTANCE = new ScalarQuaternionEngine();
+
+    @Override
+    public boolean isVectorized()
+    {
+        return false;
+    }
+
+    @Override
+    public void getProducts(QuaternionBuffer dest, QuaternionBuffer a, QuaternionBuffer b)
+    {
+        int n = checkProducts(dest, a, b);
+        getProducts(dest, a, b, 0, n);
+        dest.setSize(n);
+    }
+
+    @Override
+    public void getDifferences(QuaternionBuffer dest, QuaternionBuffer src)
+    {
+        src.getDifferences(dest);
+    }
+
+    @Override
+    public void getDistanceChanges(float[] res, QuaternionBuffer src, int from, int to)
+    {
+        src.getDistanceChanges(res, from, to);
+    }
+
+    @Override
+    public void getTaitBryanAngleChanges(float[] phi, float[] theta, float[] psi, QuaternionBuffer src, int from, int to)
+    {
+        src.getTaitBryanAngleChanges(phi, theta, psi, from, to);
+    }
+
+    @Override
+    public void getRotationMatrices(float[] R, int matrixSize, QuaternionBuffer src)
+    {
+        checkMatrices(R, matrixSize, src);
+        getRotationMatrices(R, matrixSize, src, 0, src.size());
+    }
+
+    /**
+     * Calculates the products a[i] * b[i] for i in [from, to) without checking bounds.
+     */
+    static void getProducts(QuaternionBuffer dest, QuaternionBuffer a, QuaternionBuffer b, int from, int to)
+    {
+        float[] aw = a.getW(), ax = a.getX(), ay = a.getY(), az = a.getZ();
+        float[] bw = b.getW(), bx = b.getX(), by = b.getY(), bz = b.getZ();
+        float[] dw = dest.getW(), dx = dest.getX(), dy = dest.getY(), dz = dest.getZ();
+
+        for (int i = from; i < to; ++i)
+        {
+            float a0 = aw[i], a1 = ax[i], a2 = ay[i], a3 = az[i];
+            float b0 = bw[i], b1 = bx[i], b2 = by[i], b3 = bz[i];
+
+            dw[i] = -a1 * b1 - a2 * b2 - a3 * b3 + a0 * b0;
+            dx[i] =  a1 * b0 + a2 * b3 - a3 * b2 + a0 * b1;
+            dy[i] = -a1 * b3 + a2 * b0 + a3 * b1 + a0 * b2;
+            dz[i] =  a1 * b2 - a2 * b1 + a3 * b0 + a0 * b3;
+        }
+    }
+
+    /**
+     * Converts the quaternions in [from, to) to rotation matrices without checking bounds.
+     */
+    static void getRotationMatrices(float[] R, int matrixSize, QuaternionBuffer src, int from, int to)
+    {
+        float[] w = src.getW(), x = src.getX(), y = src.getY(), z = src.getZ();
+
+        for (int i = from; i < to; ++i)
+        {
+            float q0 = w[i], q1 = x[i], q2 = y[i], q3 = z[i];
+            int o = i * matrixSize;
+
+            float sq_q1 = 2 * q1 * q1;
+            float sq_q2 = 2 * q2 * q2;
+            float sq_q3 = 2 * q3 * q3;
+            float q1_q2 = 2 * q1 * q2;
+            float q3_q0 = 2 * q3 * q0;
+            float q1_q3 = 2 * q1 * q3;
+            float q2_q0 = 2 * q2 * q0;
+            float q2_q3 = 2 * q2 * q3;
+            float q1_q0 = 2 * q1 * q0;
+
+            if (matrixSize == 9)
+            {
+                R[o] = 1 - sq_q2 - sq_q3;
+                R[o + 1] = q1_q2 - q3_q0;
+                R[o + 2] = q1_q3 + q2_q0;
+
+                R[o + 3] = q1_q2 + q3_q0;
+                R[o + 4] = 1 - sq_q1 - sq_q3;
+                R[o + 5] = q2_q3 - q1_q0;
+
+                R[o + 6] = q1_q3 - q2_q0;
+                R[o + 7] = q2_q3 + q1_q0;
+                R[o + 8] = 1 - sq_q1 - sq_q2;
+            }
+            else
+            {
+                R[o] = 1 - sq_q2 - sq_q3;
+                R[o + 1] = q1_q2 - q3_q0;
+                R[o + 2] = q1_q3 + q2_q0;
+                R[o + 3] = 0.0f;
+
+                R[o + 4] = q1_q2 + q3_q0;
+                R[o + 5] = 1 - sq_q1 - sq_q3;
+                R[o + 6] = q2_q3 - q1_q0;
+                R[o + 7] = 0.0f;
+
+                R[o + 8] = q1_q3 - q2_q0;
+                R[o + 9] = q2_q3 + q1_q0;
+                R[o + 10] = 1 - sq_q1 - sq_q2;
+                R[o + 11] = 0.0f;
+
+                R[o + 12] = R[o + 13] = R[o + 14] = 0.0f;
+                R[o + 15] = 1.0f;
+            }
+        }
+    }
+
+    static int checkProducts(QuaternionBuffer dest, QuaternionBuffer a, QuaternionBuffer b)
+    {
+        int n = Math.min(a.size(), b.size());
+        if (dest.capacity() < n)
+            throw new IndexOutOfBoundsException("dest capacity " + dest.capacity() + " is less than " + n);
+
+        return n;
+    }
+
+    static void checkMatrices(float[] R, int matrixSize, QuaternionBuffer src)
+    {
+        if (matrixSize != 9 && matrixSize != 16)
+            throw new IllegalArgumentException("matrixSize must be 9 or 16, not " + matrixSize);
+        if (R.length < src.size() * matrixSize)
+            throw new IndexOutOfBoundsException("R length " + R.length + " is less than " + src.size() * matrixSize);
+    }
+}
@@ -0,0 +1,94 @@
+package com.sampsonjoliver.rotation;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Constants and helpers for the binary rotation vector packets decoded by IngestionServer.
+ * <p>All values are little-endian. Each packet is 25 or 29 bytes:
+ * <pre>
+ *   offset  size  field
+ *        0     1  header, the format version (currently 1) in the high four bits and the
+ *                 vector width (3 or 4) in the low four bits
+ *        1     4  device id (int32)
+ *        5     8  timestamp (int64, in a unit chosen by the device)
+ *       13     4  x
+ *       17     4  y
+ *       21     4  z
+ *       25     4  w, only present when the width is 4
+ * </pre>
+ * Over TCP packets follow one another on the stream; over UDP a datagram holds one or more
+ * whole packets. The rotation vector is laid out as accepted by Quaternion.getQuaternionFromVector.
+ */
+public final class SensorPacket
+{
+    /**
+     * The version of the format
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * The size in bytes of the fields before the rotation vector
+     */
+    public static final int HEADER_SIZE = 13;
+
+    /**
+     * The size in bytes of the largest packet
+     */
+    public static final int MAX_SIZE = HEADER_SIZE + 16;
+
+    static final int DEVICE_OFFSET = 1;
+    static final int TIMESTAMP_OFFSET = 5;
+
+    private SensorPacket()
+    {
+    }
+
+    /**
+     * Get the size in bytes of a packet for a given vector width
+     * @param width 3 or 4
+     * @return the packet size
+     */
+    public static int size(int width)
+    {
+        if (width != 3 && width != 4)
+            throw new IllegalArgumentException("width must be 3 or 4, not " + width);
+
+        return HEADER_SIZE + 4 * width;
+    }
+
+    /**
+     * Get the size in bytes of a packet from its header byte
+     * @param header the first byte of the packet
+     * @return the packet size, or -1 if the header is not of a supported version and width
+     */
+    public static int sizeOf(byte header)
+    {
+        int width = header & 0x0f;
+        if ((header & 0xf0) != VERSION << 4 || (width != 3 && width != 4))
+            return -1;
+
+        return HEADER_SIZE + 4 * width;
+    }
+
+    /**
+     * Writes a packet at the position of a little-endian buffer, advancing it.
+     * @param buf the buffer in which to write the packet
+     * @param deviceId the device id
+     * @param timestamp the sample timestamp
+     * @param rv the 3- or 4- part rotation vector
+     */
+    public static void put(ByteBuffer buf, int deviceId, long timestamp, float[] rv)
+    {
+        if (buf.order() != ByteOrder.LITTLE_ENDIAN)
+            throw new IllegalArgumentException("buffer must be little-endian");
+        int width = rv.length;
+        size(width);
+
+        buf.put((byte)(VERSION << 4 | width));
+        buf.putInt(deviceId);
+        buf.putLong(timestamp);
+        for (int k = 0; k < width; ++k)
+            buf.putFloat(rv[k]);
+    }
+}
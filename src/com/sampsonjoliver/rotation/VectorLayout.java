@@ -0,0 +1,385 @@
+package com.sampsonjoliver.rotation;
+
+/**
+ * The layout of a rotation vector in a float array, resolved once instead of on every call.
+ * The static Quaternion and RotationMatrix helpers branch on rv.length for each sample, and
+ * for 3-part vectors Quaternion.getTaitBryanAngleChange negates the caller's first vector. A
+ * VectorLayout held by the caller reads each component at a fixed index, never modifies its
+ * inputs and never allocates, so a loop over many samples carries no layout branches.
+ * <p>Three layouts are provided:
+ * <ul>
+ * <li>XYZ, a 3-part vector [x,y,z] of a unit quaternion whose w is sqrt(1 - |v|^2), as
+ * reported by the Android ROTATION_VECTOR sensor,</li>
+ * <li>XYZW, a 4-part vector [x,y,z,w], as read by Quaternion.getQuaternionFromVector,</li>
+ * <li>WXYZ, a 4-part quaternion [w,x,y,z], as written by Quaternion.getQuaternionFromVector.</li>
+ * </ul>
+ * Angle changes are conj(v1) * v2, the rotation from v1 to v2, with the same values as
+ * QuaternionBuffer.getTaitBryanAngleChanges and getDistanceChanges over the same quaternions.
+ */
+public abstract class VectorLayout
+{
+    /**
+     * A 3-part vector [x,y,z] with a non-negative w derived from the vector part
+     */
+    public static final VectorLayout XYZ = new Derived();
+
+    /**
+     * A 4-part vector [x,y,z,w]
+     */
+    public static final VectorLayout XYZW = new Explicit(3, 0);
+
+    /**
+     * A 4-part quaternion [w,x,y,z]
+     */
+    public static final VectorLayout WXYZ = new Explicit(0, 1);
+
+    VectorLayout()
+    {
+    }
+
+    /**
+     * Get the layout the static helpers assume for a vector of the given length
+     * @param width 3 or 4
+     * @return XYZ for 3 or XYZW for 4
+     */
+    public static VectorLayout of(int width)
+    {
+        if (width == 3)
+            return XYZ;
+        if (width == 4)
+            return XYZW;
+
+        throw new IllegalArgumentException("width must be 3 or 4, not " + width);
+    }
+
+    /**
+     * Get the number of floats in a vector
+     * @return 3 or 4
+     */
+    public abstract int getWidth();
+
+    /**
+     * Converts a vector to a quaternion [w,x,y,z], as Quaternion.getQuaternionFromVector.
+     * @param q an array of at least 4 floats in which to store the quaternion
+     * @param rv the rotation vector
+     */
+    public abstract void getQuaternion(float[] q, float[] rv);
+
+    /**
+     * Converts a vector to a MutableQuaternion.
+     * @param dest the quaternion in which to store the result
+     * @param rv the rotation vector
+     * @return dest
+     */
+    public abstract MutableQuaternion getQuaternion(MutableQuaternion dest, float[] rv);
+
+    /**
+     * Converts a vector to a rotation matrix, as RotationMatrix.getRotationMatrixFromVector.
+     * @param R the array in which to store the matrix
+     * @param offset the index in R of the first element of the matrix
+     * @param rv the rotation vector
+     * @param layout the layout of the matrix
+     */
+    public abstract void getRotationMatrix(float[] R, int offset, float[] rv, MatrixLayout layout);
+
+    /**
+     * Converts packed vectors to quaternions.
+     * @param dest a buffer of at least count capacity in which to store the quaternions, whose
+     *             size is set to count
+     * @param packed the vectors, getWidth() floats each
+     * @param offset the index in packed of the first vector
+     * @param count the number of vectors
+     */
+    public abstract void getQuaternions(QuaternionBuffer dest, float[] packed, int offset, int count);
+
+    /**
+     * Calculates the total rotation of a vector, as Quaternion.Magnitude.
+     * @param rv the rotation vector
+     * @return the rotation in radians
+     */
+    public float getMagnitude(float[] rv)
+    {
+        return getMagnitude(rv, AngleMath.EXACT);
+    }
+
+    /**
+     * Calculates the total rotation of a vector, as Quaternion.Magnitude.
+     * @param rv the rotation vector
+     * @param angleMath the trigonometry to use
+     * @return the rotation in radians
+     */
+    public abstract float getMagnitude(float[] rv, AngleMath angleMath);
+
+    /**
+     * Calculates the angular distance between two vectors, as QuaternionBuffer.getDistanceChanges.
+     * @param v1 the previous rotation vector
+     * @param v2 the current rotation vector
+     * @return the distance in radians
+     */
+    public float getDistanceChange(float[] v1, float[] v2)
+    {
+        return getDistanceChange(v1, v2, AngleMath.EXACT);
+    }
+
+    /**
+     * Calculates the angular distance between two vectors, as QuaternionBuffer.getDistanceChanges.
+     * @param v1 the previous rotation vector
+     * @param v2 the current rotation vector
+     * @param angleMath the trigonometry to use
+     * @return the distance in radians
+     */
+    public abstract float getDistanceChange(float[] v1, float[] v2, AngleMath angleMath);
+
+    /**
+     * Calculates the Tait-Bryan angle change from v1 to v2, as Quaternion.getTaitBryanAngleChange
+     * does for 3-part vectors, without modifying v1.
+     * @param res an array of at least 3 floats in which to store [phi, theta, psi]
+     * @param v1 the previous rotation vector
+     * @param v2 the current rotation vector
+     */
+    public void getTaitBryanAngleChange(float[] res, float[] v1, float[] v2)
+    {
+        getTaitBryanAngleChange(res, v1, v2, AngleMath.EXACT);
+    }
+
+    /**
+     * Calculates the Tait-Bryan angle change from v1 to v2, as Quaternion.getTaitBryanAngleChange
+     * does for 3-part vectors, without modifying v1.
+     * @param res an array of at least 3 floats in which to store [phi, theta, psi]
+     * @param v1 the previous rotation vector
+     * @param v2 the current rotation vector
+     * @param angleMath the trigonometry to use
+     */
+    public abstract void getTaitBryanAngleChange(float[] res, float[] v1, float[] v2, AngleMath angleMath);
+
+    static float magnitude(float w, float x, float y, float z, AngleMath angleMath)
+    {
+        float lenSquared = x * x + y * y + z * z;
+        float vecNorm = (lenSquared > 0 ? (float)Math.sqrt(lenSquared) : 0);
+
+        return 2 * angleMath.atan2(vecNorm, w);
+    }
+
+    static float distance(float aw, float ax, float ay, float az, float bw, float bx, float by, float bz, AngleMath angleMath)
+    {
+        float dot = aw * bw + ax * bx + ay * by + az * bz;
+        if (RotationMetrics.ENABLED)
+            RotationMetrics.countDistance(dot);
+
+        return 2 * angleMath.acos(dot);
+    }
+
+    static void taitBryanChange(float[] res, float aw, float ax, float ay, float az, float bw, float bx, float by, float bz, AngleMath angleMath)
+    {
+        if (RotationMetrics.ENABLED)
+            RotationMetrics.increment(RotationMetrics.Counter.ANGLE_CHANGES);
+
+        // Conjugate of the previous quaternion
+        float a0 = aw, a1 = -ax, a2 = -ay, a3 = -az;
+
+        float q0 = -a1 * bx - a2 * by - a3 * bz + a0 * bw;
+        float q1 =  a1 * bw + a2 * bz - a3 * by + a0 * bx;
+        float q2 = -a1 * bz + a2 * bw + a3 * bx + a0 * by;
+        float q3 =  a1 * by - a2 * bx + a3 * bw + a0 * bz;
+
+        res[0] = angleMath.atan2(q2 * q3 + q0 * q1, 0.5 - (q1 * q1 + q2 * q2));
+        res[1] = angleMath.asin(-2.0 * (q1 * q3 - q0 * q2));
+        res[2] = angleMath.atan2(q1 * q2 + q0 * q3, 0.5 - (q2 * q2 + q3 * q3));
+    }
+
+    static void checkPacked(QuaternionBuffer dest, float[] packed, int offset, int count, int width)
+    {
+        if (offset < 0 || count < 0 || offset + (long)width * count > packed.length)
+            throw new IndexOutOfBoundsException("cannot read " + count + " vectors at " + offset + " of " + packed.length);
+        if (dest.capacity() < count)
+            throw new IndexOutOfBoundsException("dest capacity " + dest.capacity() + " is less than " + count);
+    }
+
+    /**
+     * The XYZ layout, deriving w from the vector part.
+     */
+    private static final class Derived extends VectorLayout
+    {
+        @Override
+        public int getWidth()
+        {
+            return 3;
+        }
+
+        @Override
+        public void getQuaternion(float[] q, float[] rv)
+        {
+            if (RotationMetrics.ENABLED)
+                RotationMetrics.increment(RotationMetrics.Counter.VECTOR_CONVERSIONS);
+
+            float x = rv[0], y = rv[1], z = rv[2];
+            q[0] = Quaternion.vectorW(x, y, z);
+            q[1] = x;
+            q[2] = y;
+            q[3] = z;
+        }
+
+        @Override
+        public MutableQuaternion getQuaternion(MutableQuaternion dest, float[] rv)
+        {
+            if (RotationMetrics.ENABLED)
+                RotationMetrics.increment(RotationMetrics.Counter.VECTOR_CONVERSIONS);
+
+            float x = rv[0], y = rv[1], z = rv[2];
+            return dest.set(Quaternion.vectorW(x, y, z), x, y, z);
+        }
+
+        @Override
+        public void getRotationMatrix(float[] R, int offset, float[] rv, MatrixLayout layout)
+        {
+            if (RotationMetrics.ENABLED)
+                RotationMetrics.increment(RotationMetrics.Counter.VECTOR_CONVERSIONS);
+
+            float x = rv[0], y = rv[1], z = rv[2];
+            layout.getRotationMatrix(R, offset, Quaternion.vectorW(x, y, z), x, y, z);
+        }
+
+        @Override
+        public void getQuaternions(QuaternionBuffer dest, float[] packed, int offset, int count)
+        {
+            checkPacked(dest, packed, offset, count, 3);
+
+            float[] dw = dest.getW(), dx = dest.getX(), dy = dest.getY(), dz = dest.getZ();
+            for (int i = 0, j = offset; i < count; ++i, j += 3)
+            {
+                float x = packed[j], y = packed[j + 1], z = packed[j + 2];
+                dw[i] = Quaternion.vectorW(x, y, z);
+                dx[i] = x;
+                dy[i] = y;
+                dz[i] = z;
+            }
+            dest.setSize(count);
+
+            if (RotationMetrics.ENABLED)
+                RotationMetrics.add(RotationMetrics.Counter.VECTOR_CONVERSIONS, count);
+        }
+
+        @Override
+        public float getMagnitude(float[] rv, AngleMath angleMath)
+        {
+            float x = rv[0], y = rv[1], z = rv[2];
+            return magnitude(Quaternion.vectorW(x, y, z), x, y, z, angleMath);
+        }
+
+        @Override
+        public float getDistanceChange(float[] v1, float[] v2, AngleMath angleMath)
+        {
+            float ax = v1[0], ay = v1[1], az = v1[2];
+            float bx = v2[0], by = v2[1], bz = v2[2];
+            return distance(Quaternion.vectorW(ax, ay, az), ax, ay, az, Quaternion.vectorW(bx, by, bz), bx, by, bz, angleMath);
+        }
+
+        @Override
+        public void getTaitBryanAngleChange(float[] res, float[] v1, float[] v2, AngleMath angleMath)
+        {
+            float ax = v1[0], ay = v1[1], az = v1[2];
+            float bx = v2[0], by = v2[1], bz = v2[2];
+            taitBryanChange(res, Quaternion.vectorW(ax, ay, az), ax, ay, az, Quaternion.vectorW(bx, by, bz), bx, by, bz, angleMath);
+        }
+
+        @Override
+        public String toString()
+        {
+            return "XYZ";
+        }
+    }
+
+    /**
+     * A 4-part layout with w at index wi and [x,y,z] from index xi.
+     */
+    private static final class Explicit extends VectorLayout
+    {
+        private final int wi;
+        private final int xi;
+
+        Explicit(int wi, int xi)
+        {
+            this.wi = wi;
+            this.xi = xi;
+        }
+
+        @Override
+        public int getWidth()
+        {
+            return 4;
+        }
+
+        @Override
+        public void getQuaternion(float[] q, float[] rv)
+        {
+            if (RotationMetrics.ENABLED)
+                RotationMetrics.increment(RotationMetrics.Counter.VECTOR_CONVERSIONS);
+
+            q[0] = rv[wi];
+            q[1] = rv[xi];
+            q[2] = rv[xi + 1];
+            q[3] = rv[xi + 2];
+        }
+
+        @Override
+        public MutableQuaternion getQuaternion(MutableQuaternion dest, float[] rv)
+        {
+            if (RotationMetrics.ENABLED)
+                RotationMetrics.increment(RotationMetrics.Counter.VECTOR_CONVERSIONS);
+
+            return dest.set(rv[wi], rv[xi], rv[xi + 1], rv[xi + 2]);
+        }
+
+        @Override
+        public void getRotationMatrix(float[] R, int offset, float[] rv, MatrixLayout layout)
+        {
+            if (RotationMetrics.ENABLED)
+                RotationMetrics.increment(RotationMetrics.Counter.VECTOR_CONVERSIONS);
+
+            layout.getRotationMatrix(R, offset, rv[wi], rv[xi], rv[xi + 1], rv[xi + 2]);
+        }
+
+        @Override
+        public void getQuaternions(QuaternionBuffer dest, float[] packed, int offset, int count)
+        {
+            checkPacked(dest, packed, offset, count, 4);
+
+            float[] dw = dest.getW(), dx = dest.getX(), dy = dest.getY(), dz = dest.getZ();
+            for (int i = 0, j = offset; i < count; ++i, j += 4)
+            {
+                dw[i] = packed[j + wi];
+                dx[i] = packed[j + xi];
+                dy[i] = packed[j + xi + 1];
+                dz[i] = packed[j + xi + 2];
+            }
+            dest.setSize(count);
+
+            if (RotationMetrics.ENABLED)
+                RotationMetrics.add(RotationMetrics.Counter.VECTOR_CONVERSIONS, count);
+        }
+
+        @Override
+        public float getMagnitude(float[] rv, AngleMath angleMath)
+        {
+            return magnitude(rv[wi], rv[xi], rv[xi + 1], rv[xi + 2], angleMath);
+        }
+
+        @Override
+        public float getDistanceChange(float[] v1, float[] v2, AngleMath angleMath)
+        {
+            return distance(v1[wi], v1[xi], v1[xi + 1], v1[xi + 2], v2[wi], v2[xi], v2[xi + 1], v2[xi + 2], angleMath);
+        }
+
+        @Override
+        public void getTaitBryanAngleChange(float[] res, float[] v1, float[] v2, AngleMath angleMath)
+        {
+            taitBryanChange(res, v1[wi], v1[xi], v1[xi + 1], v1[xi + 2], v2[wi], v2[xi], v2[xi + 1], v2[xi + 2], angleMath);
+        }
+
+        @Override
+        public String toString()
+        {
+            return wi == 0 ? "WXYZ" : "XYZW";
+        }
+    }
+}
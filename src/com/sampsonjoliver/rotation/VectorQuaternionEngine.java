@@ -0,0 +1,266 @@
+package com.sampsonjoliver.rotation;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The QuaternionEngine built on the jdk.incubator.vector module. Each loop processes
+ * SPECIES.length() samples at a time and finishes the remaining tail with the scalar engine.
+ * Arithmetic is performed in the same order as the scalar engine so that products agree exactly.
+ */
+class VectorQuaternionEngine implements QuaternionEngine
+{
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    private final int[] matrixMap9;
+    private final int[] matrixMap16;
+
+    VectorQuaternionEngine()
+    {
+        int lanes = SPECIES.length();
+        if (lanes < 4)
+            throw new UnsupportedOperationException("preferred species has only " + lanes + " float lanes");
+
+        matrixMap9 = new int[lanes];
+        matrixMap16 = new int[lanes];
+        for (int j = 0; j < lanes; ++j)
+        {
+            matrixMap9[j] = j * 9;
+            matrixMap16[j] = j * 16;
+        }
+    }
+
+    @Override
+    public boolean isVectorized()
+    {
+        return true;
+    }
+
+    @Override
+    public void getProducts(QuaternionBuffer dest, QuaternionBuffer a, QuaternionBuffer b)
+    {
+        int n = ScalarQuaternionEngine.checkProducts(dest, a, b);
+
+        float[] aw = a.getW(), ax = a.getX(), ay = a.getY(), az = a.getZ();
+        float[] bw = b.getW(), bx = b.getX(), by = b.getY(), bz = b.getZ();
+        float[] dw = dest.getW(), dx = dest.getX(), dy = dest.getY(), dz = dest.getZ();
+
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length())
+        {
+            FloatVector a0 = FloatVector.fromArray(SPECIES, aw, i);
+            FloatVector a1 = FloatVector.fromArray(SPECIES, ax, i);
+            FloatVector a2 = FloatVector.fromArray(SPECIES, ay, i);
+            FloatVector a3 = FloatVector.fromArray(SPECIES, az, i);
+            FloatVector b0 = FloatVector.fromArray(SPECIES, bw, i);
+            FloatVector b1 = FloatVector.fromArray(SPECIES, bx, i);
+            FloatVector b2 = FloatVector.fromArray(SPECIES, by, i);
+            FloatVector b3 = FloatVector.fromArray(SPECIES, bz, i);
+
+            productW(a0, a1, a2, a3, b0, b1, b2, b3).intoArray(dw, i);
+            productX(a0, a1, a2, a3, b0, b1, b2, b3).intoArray(dx, i);
+            productY(a0, a1, a2, a3, b0, b1, b2, b3).intoArray(dy, i);
+            productZ(a0, a1, a2, a3, b0, b1, b2, b3).intoArray(dz, i);
+        }
+        ScalarQuaternionEngine.getProducts(dest, a, b, i, n);
+
+        dest.setSize(n);
+    }
+
+    @Override
+    public void getDifferences(QuaternionBuffer dest, QuaternionBuffer src)
+    {
+        if (dest == src)
+            throw new IllegalArgumentException("dest may not be the source buffer");
+
+        int size = src.size();
+        int n = Math.max(size - 1, 0);
+        if (dest.capacity() < n)
+            throw new IndexOutOfBoundsException("dest capacity " + dest.capacity() + " is less than " + n);
+
+        float[] w = src.getW(), x = src.getX(), y = src.getY(), z = src.getZ();
+        float[] dw = dest.getW(), dx = dest.getX(), dy = dest.getY(), dz = dest.getZ();
+
+        int i = 1;
+        for (; i + SPECIES.length() <= size; i += SPECIES.length())
+        {
+            // Conjugate of the previous quaternions
+            FloatVector a0 = FloatVector.fromArray(SPECIES, w, i - 1);
+            FloatVector a1 = FloatVector.fromArray(SPECIES, x, i - 1).neg();
+            FloatVector a2 = FloatVector.fromArray(SPECIES, y, i - 1).neg();
+            FloatVector a3 = FloatVector.fromArray(SPECIES, z, i - 1).neg();
+            FloatVector b0 = FloatVector.fromArray(SPECIES, w, i);
+            FloatVector b1 = FloatVector.fromArray(SPECIES, x, i);
+            FloatVector b2 = FloatVector.fromArray(SPECIES, y, i);
+            FloatVector b3 = FloatVector.fromArray(SPECIES, z, i);
+
+            productW(a0, a1, a2, a3, b0, b1, b2, b3).intoArray(dw, i - 1);
+            productX(a0, a1, a2, a3, b0, b1, b2, b3).intoArray(dx, i - 1);
+            productY(a0, a1, a2, a3, b0, b1, b2, b3).intoArray(dy, i - 1);
+            productZ(a0, a1, a2, a3, b0, b1, b2, b3).intoArray(dz, i - 1);
+        }
+        for (; i < size; ++i)
+        {
+            float a0 = w[i-1], a1 = -x[i-1], a2 = -y[i-1], a3 = -z[i-1];
+            float b0 = w[i], b1 = x[i], b2 = y[i], b3 = z[i];
+
+            dw[i-1] = -a1 * b1 - a2 * b2 - a3 * b3 + a0 * b0;
+            dx[i-1] =  a1 * b0 + a2 * b3 - a3 * b2 + a0 * b1;
+            dy[i-1] = -a1 * b3 + a2 * b0 + a3 * b1 + a0 * b2;
+            dz[i-1] =  a1 * b2 - a2 * b1 + a3 * b0 + a0 * b3;
+        }
+
+        dest.setSize(n);
+    }
+
+    @Override
+    public void getDistanceChanges(float[] res, QuaternionBuffer src, int from, int to)
+    {
+        src.checkPairRange(from, to);
+
+        float[] w = src.getW(), x = src.getX(), y = src.getY(), z = src.getZ();
+
+        int i = from;
+        for (; i + SPECIES.length() <= to; i += SPECIES.length())
+        {
+            FloatVector dot = FloatVector.fromArray(SPECIES, w, i - 1).mul(FloatVector.fromArray(SPECIES, w, i))
+                    .add(FloatVector.fromArray(SPECIES, x, i - 1).mul(FloatVector.fromArray(SPECIES, x, i)))
+                    .add(FloatVector.fromArray(SPECIES, y, i - 1).mul(FloatVector.fromArray(SPECIES, y, i)))
+                    .add(FloatVector.fromArray(SPECIES, z, i - 1).mul(FloatVector.fromArray(SPECIES, z, i)));
+
+            dot.lanewise(VectorOperators.ACOS).mul(2.0f).intoArray(res, i - 1);
+        }
+        src.getDistanceChanges(res, i, to);
+    }
+
+    @Override
+    public void getTaitBryanAngleChanges(float[] phi, float[] theta, float[] psi, QuaternionBuffer src, int from, int to)
+    {
+        src.checkPairRange(from, to);
+
+        float[] w = src.getW(), x = src.getX(), y = src.getY(), z = src.getZ();
+
+        int i = from;
+        for (; i + SPECIES.length() <= to; i += SPECIES.length())
+        {
+            // Conjugate of the previous quaternions
+            FloatVector a0 = FloatVector.fromArray(SPECIES, w, i - 1);
+            FloatVector a1 = FloatVector.fromArray(SPECIES, x, i - 1).neg();
+            FloatVector a2 = FloatVector.fromArray(SPECIES, y, i - 1).neg();
+            FloatVector a3 = FloatVector.fromArray(SPECIES, z, i - 1).neg();
+            FloatVector b0 = FloatVector.fromArray(SPECIES, w, i);
+            FloatVector b1 = FloatVector.fromArray(SPECIES, x, i);
+            FloatVector b2 = FloatVector.fromArray(SPECIES, y, i);
+            FloatVector b3 = FloatVector.fromArray(SPECIES, z, i);
+
+            FloatVector q0 = productW(a0, a1, a2, a3, b0, b1, b2, b3);
+            FloatVector q1 = productX(a0, a1, a2, a3, b0, b1, b2, b3);
+            FloatVector q2 = productY(a0, a1, a2, a3, b0, b1, b2, b3);
+            FloatVector q3 = productZ(a0, a1, a2, a3, b0, b1, b2, b3);
+
+            FloatVector half = FloatVector.broadcast(SPECIES, 0.5f);
+
+            q2.mul(q3).add(q0.mul(q1))
+                    .lanewise(VectorOperators.ATAN2, half.sub(q1.mul(q1).add(q2.mul(q2))))
+                    .intoArray(phi, i - 1);
+            q1.mul(q3).sub(q0.mul(q2)).mul(-2.0f)
+                    .lanewise(VectorOperators.ASIN)
+                    .intoArray(theta, i - 1);
+            q1.mul(q2).add(q0.mul(q3))
+                    .lanewise(VectorOperators.ATAN2, half.sub(q2.mul(q2).add(q3.mul(q3))))
+                    .intoArray(psi, i - 1);
+        }
+        src.getTaitBryanAngleChanges(phi, theta, psi, i, to);
+    }
+
+    @Override
+    public void getRotationMatrices(float[] R, int matrixSize, QuaternionBuffer src)
+    {
+        ScalarQuaternionEngine.checkMatrices(R, matrixSize, src);
+
+        int n = src.size();
+        int[] map = matrixSize == 9 ? matrixMap9 : matrixMap16;
+        float[] w = src.getW(), x = src.getX(), y = src.getY(), z = src.getZ();
+        FloatVector zero = FloatVector.zero(SPECIES);
+        FloatVector one = FloatVector.broadcast(SPECIES, 1.0f);
+
+        int i = 0;
+        for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length())
+        {
+            FloatVector q0 = FloatVector.fromArray(SPECIES, w, i);
+            FloatVector q1 = FloatVector.fromArray(SPECIES, x, i);
+            FloatVector q2 = FloatVector.fromArray(SPECIES, y, i);
+            FloatVector q3 = FloatVector.fromArray(SPECIES, z, i);
+
+            FloatVector q1_2 = q1.mul(2.0f);
+            FloatVector q2_2 = q2.mul(2.0f);
+            FloatVector q3_2 = q3.mul(2.0f);
+
+            FloatVector sq_q1 = q1_2.mul(q1);
+            FloatVector sq_q2 = q2_2.mul(q2);
+            FloatVector sq_q3 = q3_2.mul(q3);
+            FloatVector q1_q2 = q1_2.mul(q2);
+            FloatVector q3_q0 = q3_2.mul(q0);
+            FloatVector q1_q3 = q1_2.mul(q3);
+            FloatVector q2_q0 = q2_2.mul(q0);
+            FloatVector q2_q3 = q2_2.mul(q3);
+            FloatVector q1_q0 = q1_2.mul(q0);
+
+            int o = i * matrixSize;
+            int row = matrixSize == 9 ? 3 : 4;
+
+            one.sub(sq_q2).sub(sq_q3).intoArray(R, o, map, 0);
+            q1_q2.sub(q3_q0).intoArray(R, o + 1, map, 0);
+            q1_q3.add(q2_q0).intoArray(R, o + 2, map, 0);
+
+            q1_q2.add(q3_q0).intoArray(R, o + row, map, 0);
+            one.sub(sq_q1).sub(sq_q3).intoArray(R, o + row + 1, map, 0);
+            q2_q3.sub(q1_q0).intoArray(R, o + row + 2, map, 0);
+
+            q1_q3.sub(q2_q0).intoArray(R, o + 2 * row, map, 0);
+            q2_q3.add(q1_q0).intoArray(R, o + 2 * row + 1, map, 0);
+            one.sub(sq_q1).sub(sq_q2).intoArray(R, o + 2 * row + 2, map, 0);
+
+            if (matrixSize == 16)
+            {
+                zero.intoArray(R, o + 3, map, 0);
+                zero.intoArray(R, o + 7, map, 0);
+                zero.intoArray(R, o + 11, map, 0);
+                zero.intoArray(R, o + 12, map, 0);
+                zero.intoArray(R, o + 13, map, 0);
+                zero.intoArray(R, o + 14, map, 0);
+                one.intoArray(R, o + 15, map, 0);
+            }
+        }
+        ScalarQuaternionEngine.getRotationMatrices(R, matrixSize, src, i, n);
+    }
+
+    private static FloatVector productW(FloatVector a0, FloatVector a1, FloatVector a2, FloatVector a3,
+                                        FloatVector b0, FloatVector b1, FloatVector b2, FloatVector b3)
+    {
+        // -a1 * b1 - a2 * b2 - a3 * b3 + a0 * b0
+        return a1.neg().mul(b1).sub(a2.mul(b2)).sub(a3.mul(b3)).add(a0.mul(b0));
+    }
+
+    private static FloatVector productX(FloatVector a0, FloatVector a1, FloatVector a2, FloatVector a3,
+                                        FloatVector b0, FloatVector b1, FloatVector b2, FloatVector b3)
+    {
+        // a1 * b0 + a2 * b3 - a3 * b2 + a0 * b1
+        return a1.mul(b0).add(a2.mul(b3)).sub(a3.mul(b2)).add(a0.mul(b1));
+    }
+
+    private static FloatVector productY(FloatVector a0, FloatVector a1, FloatVector a2, FloatVector a3,
+                                        FloatVector b0, FloatVector b1, FloatVector b2, FloatVector b3)
+    {
+        // -a1 * b3 + a2 * b0 + a3 * b1 + a0 * b2
+        return a1.neg().mul(b3).add(a2.mul(b0)).add(a3.mul(b1)).add(a0.mul(b2));
+    }
+
+    private static FloatVector productZ(FloatVector a0, FloatVector a1, FloatVector a2, FloatVector a3,
+                                        FloatVector b0, FloatVector b1, FloatVector b2, FloatVector b3)
+    {
+        // a1 * b2 - a2 * b1 + a3 * b0 + a0 * b3
+        return a1.mul(b2).sub(a2.mul(b1)).add(a3.mul(b0)).add(a0.mul(b3));
+    }
+}
@@ -0,0 +1,30 @@
+package com.sampsonjoliver.rotation;
+
+/**
+ * Lazily selects the preferred QuaternionEngine. VectorQuaternionEngine references the
+ * jdk.incubator.vector module, so it is only loaded once the module is known to be present.
+ */
+class VectorSupport
+{
+    static final String DISABLE_PROPERTY = "com.sampsonjoliver.rotation.disableVector";
+
+    static final QuaternionEngine PREFERRED = RotationMetrics.ENABLED ? new InstrumentedQuaternionEngine(load()) : load();
+
+    private static QuaternionEngine load()
+    {
+        if (Boolean.getBoolean(DISABLE_PROPERTY))
+            return ScalarQuaternionEngine.INSTANCE;
+
+        if (!ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent())
+            return ScalarQuaternionEngine.INSTANCE;
+
+        try
+        {
+            return new VectorQuaternionEngine();
+        }
+        catch (LinkageError | UnsupportedOperationException e)
+        {
+            return ScalarQuaternionEngine.INSTANCE;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.sampsonjoliver.rotation;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Starts threads on virtual threads when the JVM has them (Java 21 and later), and on daemon
+ * platform threads otherwise. Thread.ofVirtual is looked up reflectively so that the library
+ * still builds and runs on Java 17.
+ */
+class VirtualThreads
+{
+    static final ThreadFactory FACTORY = load();
+
+    private static ThreadFactory load()
+    {
+        try
+        {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory)Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        }
+        catch (ReflectiveOperationException | UnsupportedOperationException e)
+        {
+            // Absent before Java 19, and a preview feature that may be disabled before Java 21
+            return null;
+        }
+    }
+
+    /**
+     * Determine if threads are started on virtual threads
+     */
+    static boolean isAvailable()
+    {
+        return FACTORY != null;
+    }
+
+    /**
+     * Creates a thread without starting it.
+     */
+    static Thread newThread(String name, Runnable task)
+    {
+        Thread thread;
+        if (FACTORY != null)
+        {
+            thread = FACTORY.newThread(task);
+            thread.setName(name);
+        }
+        else
+        {
+            thread = new Thread(task, name);
+            thread.setDaemon(true);
+        }
+        return thread;
+    }
+}
@@ -0,0 +1,52 @@
+package com.sampsonjoliver.rotation;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How a thread waits for a ring to gain data or free space.
+ */
+public enum WaitStrategy
+{
+    /**
+     * Spin on the CPU. Lowest latency, but occupies a core while waiting.
+     */
+    BUSY_SPIN
+    {
+        @Override
+        public void idle()
+        {
+            Thread.onSpinWait();
+        }
+    },
+
+    /**
+     * Yield the CPU to other runnable threads between checks.
+     */
+    YIELD
+    {
+        @Override
+        public void idle()
+        {
+            Thread.yield();
+        }
+    },
+
+    /**
+     * Park the thread for a short time between checks. Lowest CPU use, highest latency.
+     */
+    PARK
+    {
+        @Override
+        public void idle()
+        {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    };
+
+    private static final long PARK_NANOS = 1000;
+
+    /**
+     * Waits once before the caller checks its condition again.
+     */
+    public abstract void idle();
+}